@@ -154,4 +154,63 @@ class DatabaseObserverTest {
     assertEquals(1, thread1Count.get())
     assertEquals(1, thread2Count.get())
   }
+
+  @Test
+  fun notifyConversationListeners_fullInvalidationSupersedesMessageChangesInSameTransaction() {
+    val changedCount = AtomicInteger(0)
+    val messagesChangedCount = AtomicInteger(0)
+
+    observer.registerConversationObserver(
+      1,
+      object : DatabaseObserver.ConversationObserver {
+        override fun onChanged() {
+          changedCount.incrementAndGet()
+        }
+
+        override fun onMessagesChanged(messageIds: Set<Long>) {
+          messagesChangedCount.incrementAndGet()
+        }
+      }
+    )
+
+    db.beginTransaction()
+
+    observer.notifyConversationListeners(1, listOf(10L, 11L))
+    observer.notifyConversationListeners(1)
+    observer.notifyConversationListeners(1, listOf(12L))
+
+    db.setTransactionSuccessful()
+    db.endTransaction()
+
+    observer.flush()
+    assertEquals(1, changedCount.get())
+    assertEquals(0, messagesChangedCount.get())
+  }
+
+  @Test
+  fun notifyConversationListeners_messageChangesAreAggregatedInTransaction() {
+    val changed = mutableListOf<Set<Long>>()
+
+    observer.registerConversationObserver(
+      1,
+      object : DatabaseObserver.ConversationObserver {
+        override fun onChanged() = Unit
+
+        override fun onMessagesChanged(messageIds: Set<Long>) {
+          changed += messageIds
+        }
+      }
+    )
+
+    db.beginTransaction()
+
+    observer.notifyConversationListeners(1, listOf(10L, 11L))
+    observer.notifyConversationListeners(1, listOf(11L, 12L))
+
+    db.setTransactionSuccessful()
+    db.endTransaction()
+
+    observer.flush()
+    assertEquals(listOf(setOf(10L, 11L, 12L)), changed)
+  }
 }
@@ -0,0 +1,97 @@
+package org.thoughtcrime.securesms.database
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.thoughtcrime.securesms.database.model.databaseprotos.GiftBadge
+import org.thoughtcrime.securesms.mms.IncomingMessage
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.thoughtcrime.securesms.testing.SignalActivityRule
+
+@RunWith(AndroidJUnit4::class)
+class MessageTableTest_insertMessagesInbox {
+
+  @get:Rule
+  val harness = SignalActivityRule()
+
+  @Test
+  fun givenPlainTextMessages_whenIInsertInBulk_thenIExpectAllInsertedInOrder() {
+    val alice = harness.others[0]
+    val bob = harness.others[1]
+
+    val messages = listOf(
+      textMessage(alice, 1000),
+      textMessage(bob, 1001),
+      textMessage(alice, 1002)
+    )
+
+    val results = SignalDatabase.messages.insertMessagesInbox(messages)
+
+    assertEquals(3, results.size)
+    assertTrue(results.all { it.isPresent })
+    assertEquals(results[0].get().threadId, results[2].get().threadId)
+    assertTrue(results[0].get().messageId < results[1].get().messageId)
+    assertTrue(results[1].get().messageId < results[2].get().messageId)
+
+    val record = SignalDatabase.messages.getMessageRecord(results[1].get().messageId)
+    assertEquals("body-1001", record.body)
+    assertEquals(1001L, record.dateSent)
+    assertEquals(bob, record.fromRecipient.id)
+  }
+
+  @Test
+  fun givenDuplicates_whenIInsertInBulk_thenIExpectDuplicatesSkipped() {
+    val alice = harness.others[0]
+
+    SignalDatabase.messages.insertMessageInbox(textMessage(alice, 2000))
+
+    val results = SignalDatabase.messages.insertMessagesInbox(
+      listOf(
+        textMessage(alice, 2000),
+        textMessage(alice, 2001),
+        textMessage(alice, 2001)
+      )
+    )
+
+    assertFalse(results[0].isPresent)
+    assertTrue(results[1].isPresent)
+    assertFalse(results[2].isPresent)
+  }
+
+  @Test
+  fun givenAMixOfMessages_whenIInsertInBulk_thenIExpectNonTextMessagesInsertedNormally() {
+    val alice = harness.others[0]
+
+    val gift = IncomingMessage(
+      type = MessageType.NORMAL,
+      from = alice,
+      sentTimeMillis = 3001,
+      serverTimeMillis = 3001,
+      receivedTimeMillis = 3001,
+      giftBadge = GiftBadge()
+    )
+
+    assertFalse(MessageTable.isPlainText(gift))
+
+    val results = SignalDatabase.messages.insertMessagesInbox(listOf(textMessage(alice, 3000), gift, textMessage(alice, 3002)))
+
+    assertTrue(results.all { it.isPresent })
+    assertTrue(results[0].get().messageId < results[1].get().messageId)
+    assertTrue(results[1].get().messageId < results[2].get().messageId)
+  }
+
+  private fun textMessage(from: RecipientId, sentTime: Long): IncomingMessage {
+    return IncomingMessage(
+      type = MessageType.NORMAL,
+      from = from,
+      sentTimeMillis = sentTime,
+      serverTimeMillis = sentTime,
+      receivedTimeMillis = sentTime,
+      body = "body-$sentTime"
+    )
+  }
+}
@@ -1,6 +1,7 @@
 package org.thoughtcrime.securesms.database
 
 import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Assert.assertEquals
 import org.junit.Assert.assertFalse
 import org.junit.Assert.assertTrue
 import org.junit.Before
@@ -227,4 +228,55 @@ class SQLiteDatabaseTest {
     assertTrue(hasRun1.get())
     assertTrue(hasRun2.get())
   }
+
+  @Test
+  fun runPostTransaction_runsImmediatelyIfNotInTransaction() {
+    val hasRun = AtomicBoolean(false)
+    db.runPostTransaction { hasRun.set(true) }
+    assertTrue(hasRun.get())
+  }
+
+  @Test
+  fun runPostTransaction_runsAfterSuccessfulTransaction() {
+    val hasRun = AtomicBoolean(false)
+
+    db.beginTransaction()
+
+    db.runPostTransaction { hasRun.set(true) }
+    assertFalse(hasRun.get())
+
+    db.setTransactionSuccessful()
+    db.endTransaction()
+
+    assertTrue(hasRun.get())
+  }
+
+  @Test
+  fun runPostTransaction_runsAfterFailedTransaction() {
+    val hasRun = AtomicBoolean(false)
+
+    db.beginTransaction()
+
+    db.runPostTransaction { hasRun.set(true) }
+    assertFalse(hasRun.get())
+
+    db.endTransaction()
+
+    assertTrue(hasRun.get())
+  }
+
+  @Test
+  fun runPostTransaction_runsBeforePostSuccessfulTasks() {
+    val order = mutableListOf<String>()
+
+    db.beginTransaction()
+
+    db.runPostSuccessfulTransaction { order += "success" }
+    db.runPostTransaction { order += "end" }
+
+    db.setTransactionSuccessful()
+    db.endTransaction()
+
+    assertEquals(listOf("end", "success"), order)
+  }
 }
@@ -21,6 +21,7 @@ import org.thoughtcrime.securesms.database.SignalDatabase
 import org.thoughtcrime.securesms.database.TestDbUtils
 import org.thoughtcrime.securesms.dependencies.AppDependencies
 import org.thoughtcrime.securesms.groups.GroupId
+import org.thoughtcrime.securesms.mediaoverview.MediaOverviewActivity
 import org.thoughtcrime.securesms.recipients.Recipient
 import org.whispersystems.signalservice.internal.push.Envelope
 import org.whispersystems.signalservice.internal.websocket.BenchmarkWebSocketConnection
@@ -64,6 +65,9 @@ class BenchmarkCommandReceiver : BroadcastReceiver() {
           pendingResult.finish()
         }.start()
       }
+      "open-all-media" -> {
+        context.startActivity(MediaOverviewActivity.forAll(context).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK))
+      }
       else -> Log.w(TAG, "Unknown command: $command")
     }
   }
@@ -13,20 +13,27 @@ import kotlinx.coroutines.launch
 import org.signal.benchmark.setup.Harness
 import org.signal.benchmark.setup.TestMessages
 import org.signal.benchmark.setup.TestUsers
+import org.signal.core.models.ServiceId.ACI
 import org.signal.core.util.logging.Log
 import org.thoughtcrime.securesms.BaseActivity
 import org.thoughtcrime.securesms.backup.v2.BackupRepository
+import org.thoughtcrime.securesms.components.settings.app.chats.folders.ChatFolderRecord
 import org.thoughtcrime.securesms.crypto.ProfileKeyUtil
+import org.thoughtcrime.securesms.database.MessageType
 import org.thoughtcrime.securesms.database.SignalDatabase
 import org.thoughtcrime.securesms.database.TestDbUtils
 import org.thoughtcrime.securesms.database.model.databaseprotos.RestoreDecisionState
 import org.thoughtcrime.securesms.keyvalue.SignalStore
 import org.thoughtcrime.securesms.keyvalue.Skipped
+import org.thoughtcrime.securesms.mms.IncomingMessage
 import org.thoughtcrime.securesms.mms.OutgoingMessage
 import org.thoughtcrime.securesms.profiles.ProfileName
 import org.thoughtcrime.securesms.recipients.Recipient
+import org.thoughtcrime.securesms.recipients.RecipientId
 import org.thoughtcrime.securesms.registration.util.RegistrationUtil
 import org.thoughtcrime.securesms.util.TextSecurePreferences
+import org.whispersystems.signalservice.api.push.SignalServiceAddress
+import java.util.UUID
 
 class BenchmarkSetupActivity : BaseActivity() {
 
@@ -67,6 +74,9 @@ class BenchmarkSetupActivity : BaseActivity() {
         "thread-delete" -> setupThreadDelete()
         "thread-delete-group" -> setupThreadDeleteGroup()
         "backup-restore" -> setupBackupRestore()
+        "media-overview" -> setupMediaOverview()
+        "disappearing-messages" -> setupDisappearingMessages()
+        "conversation-list-scroll" -> setupConversationListScroll()
       }
       setupComplete = true
     }
@@ -208,6 +218,94 @@ class BenchmarkSetupActivity : BaseActivity() {
     SignalDatabase.threads.update(threadId, true)
   }
 
+  private fun setupMediaOverview() {
+    TestUsers.setupSelf()
+    TestUsers.setupTestRecipient().let {
+      val recipient: Recipient = Recipient.resolved(it)
+      val messagesToAdd = 2_000
+      val generator = TestMessages.TimestampGenerator(System.currentTimeMillis() - (messagesToAdd * 2000L) - 60_000L)
+
+      for (i in 0 until messagesToAdd) {
+        TestMessages.insertIncomingImageMessage(other = recipient, attachmentCount = 1, timestamp = generator.nextTimestamp())
+      }
+
+      val threadId = SignalDatabase.threads.getOrCreateThreadIdFor(recipient = recipient)
+
+      // 2,000 messages with 50 attachments each
+      TestDbUtils.duplicateAttachmentsForThread(threadId, copies = 49)
+
+      SignalDatabase.messages.setAllMessagesRead()
+      SignalDatabase.threads.update(threadId, true)
+    }
+  }
+
+  private fun setupDisappearingMessages() {
+    TestUsers.setupSelf()
+
+    val recipients = TestUsers.setupTestRecipients(10).map { Recipient.resolved(it) }
+    val messagesPerRecipient = 5_000
+    val expiresIn = 60_000L
+    val generator = TestMessages.TimestampGenerator(System.currentTimeMillis() - (recipients.size * messagesPerRecipient * 2000L) - 60_000L)
+
+    for (recipient in recipients) {
+      val messages = List(messagesPerRecipient) { i ->
+        val timestamp = generator.nextTimestamp()
+        IncomingMessage(
+          type = MessageType.NORMAL,
+          from = recipient.id,
+          body = "Disappearing message $i",
+          sentTimeMillis = timestamp,
+          serverTimeMillis = timestamp,
+          receivedTimeMillis = timestamp,
+          expiresIn = expiresIn
+        )
+      }
+
+      messages.chunked(1_000).forEach { SignalDatabase.messages.insertMessagesInbox(it) }
+    }
+
+    // 50,000 messages whose timers all ran out while the app was closed
+    TestDbUtils.startExpirationTimers(startedAt = System.currentTimeMillis() - expiresIn)
+
+    SignalDatabase.messages.setAllMessagesRead()
+  }
+
+  private fun setupConversationListScroll() {
+    TestUsers.setupSelf()
+
+    val threadCount = 5_000
+    val generator = TestMessages.TimestampGenerator(System.currentTimeMillis() - (threadCount * 2000L) - 60_000L)
+
+    // TestUsers tops out at 1,000 fully set up recipients, and the list only needs a name to show for each chat
+    val recipients = List(threadCount) { i ->
+      val recipientId = RecipientId.from(SignalServiceAddress(ACI.from(UUID.randomUUID()), "+1555552%04d".format(i)))
+      SignalDatabase.recipients.setProfileName(recipientId, ProfileName.fromParts("Buddy", "#$i"))
+      Recipient.resolved(recipientId)
+    }
+
+    for ((i, recipient) in recipients.withIndex()) {
+      TestMessages.insertIncomingTextMessage(other = recipient, body = "Message $i", timestamp = generator.nextTimestamp())
+    }
+
+    SignalDatabase.messages.setAllMessagesRead()
+
+    // Leave every tenth chat unread so the Unread folder has something in it
+    for (i in recipients.indices step 10) {
+      TestMessages.insertIncomingTextMessage(other = recipients[i], body = "Unread message $i", timestamp = generator.nextTimestamp())
+    }
+
+    SignalDatabase.chatFolders.createFolder(
+      ChatFolderRecord(
+        name = "Unread",
+        showUnread = true,
+        showIndividualChats = true,
+        showGroupChats = true,
+        showMutedChats = true,
+        folderType = ChatFolderRecord.FolderType.UNREAD
+      )
+    )
+  }
+
   private fun setupBackupRestore() {
     TestUsers.setupSelf()
 
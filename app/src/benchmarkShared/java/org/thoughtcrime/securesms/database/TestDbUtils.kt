@@ -2,6 +2,9 @@ package org.thoughtcrime.securesms.database
 
 import android.content.ContentValues
 import org.signal.core.util.SqlUtil.buildArgs
+import org.signal.core.util.readToList
+import org.signal.core.util.requireLong
+import org.signal.core.util.select
 import org.thoughtcrime.securesms.recipients.RecipientId
 import org.whispersystems.signalservice.internal.push.Content
 
@@ -31,27 +34,35 @@ object TestDbUtils {
   }
 
   /**
-   * Bulk-inserts group receipt rows for every message in the given thread, one row per member.
+   * Bulk-inserts read receipts for every message in the given thread, one per member.
    */
   fun insertGroupReceiptsForThread(threadId: Long, memberRecipientIds: List<RecipientId>) {
-    val db = SignalDatabase.messages.databaseHelper.signalWritableDatabase
-    db.beginTransaction()
-    try {
-      for (recipientId in memberRecipientIds) {
-        db.execSQL(
-          """
-          INSERT INTO group_receipts (mms_id, address, status, timestamp)
-          SELECT ${MessageTable.ID}, ?, 2, ${MessageTable.DATE_SENT}
-          FROM ${MessageTable.TABLE_NAME}
-          WHERE ${MessageTable.THREAD_ID} = ?
-          """.trimIndent(),
-          arrayOf(recipientId.toLong().toString(), threadId.toString())
+    val messages = SignalDatabase.messages.databaseHelper.signalReadableDatabase
+      .select(MessageTable.ID, MessageTable.DATE_SENT)
+      .from(MessageTable.TABLE_NAME)
+      .where("${MessageTable.THREAD_ID} = ?", threadId)
+      .run()
+      .readToList { cursor ->
+        val dateSent = cursor.requireLong(MessageTable.DATE_SENT)
+        GroupReceiptTable.MessageReceipts(
+          mmsId = cursor.requireLong(MessageTable.ID),
+          threadId = threadId,
+          receipts = memberRecipientIds.map { GroupReceiptTable.GroupReceiptInfo(it, GroupReceiptTable.STATUS_READ, dateSent, isUnidentified = false) }
         )
       }
-      db.setTransactionSuccessful()
-    } finally {
-      db.endTransaction()
-    }
+
+    SignalDatabase.groupReceipts.insertAll(messages)
+  }
+
+  /**
+   * Starts the disappearing-message timer as of [startedAt] on every message that has one.
+   */
+  fun startExpirationTimers(startedAt: Long) {
+    val db = SignalDatabase.messages.databaseHelper.signalWritableDatabase
+    db.execSQL(
+      "UPDATE ${MessageTable.TABLE_NAME} SET ${MessageTable.EXPIRE_STARTED} = ? WHERE ${MessageTable.EXPIRES_IN} > 0",
+      arrayOf(startedAt.toString())
+    )
   }
 
   /**
@@ -70,6 +81,50 @@ object TestDbUtils {
     )
   }
 
+  /**
+   * Bulk-copies every attachment in the given thread [copies] times, so the media overview has a large gallery without inserting a message for each
+   * item. The copies are marked offloaded so they're shown in the gallery despite having no data file.
+   */
+  fun duplicateAttachmentsForThread(threadId: Long, copies: Int) {
+    val db = SignalDatabase.messages.databaseHelper.signalWritableDatabase
+    val columns = mutableListOf<String>()
+
+    db.query("PRAGMA table_info(${AttachmentTable.TABLE_NAME})", arrayOf()).use { cursor ->
+      while (cursor.moveToNext()) {
+        val name = cursor.getString(cursor.getColumnIndexOrThrow("name"))
+        if (name != AttachmentTable.ID) {
+          columns += name
+        }
+      }
+    }
+
+    val columnList = columns.joinToString(", ")
+    val threadAttachments = "${AttachmentTable.MESSAGE_ID} IN (SELECT ${MessageTable.ID} FROM ${MessageTable.TABLE_NAME} WHERE ${MessageTable.THREAD_ID} = ?)"
+
+    db.beginTransaction()
+    try {
+      for (i in 0 until copies) {
+        db.execSQL(
+          """
+          INSERT INTO ${AttachmentTable.TABLE_NAME} ($columnList)
+          SELECT $columnList
+          FROM ${AttachmentTable.TABLE_NAME}
+          WHERE $threadAttachments AND ${AttachmentTable.ID} IN (SELECT MIN(${AttachmentTable.ID}) FROM ${AttachmentTable.TABLE_NAME} GROUP BY ${AttachmentTable.MESSAGE_ID})
+          """.trimIndent(),
+          arrayOf(threadId.toString())
+        )
+      }
+
+      db.execSQL(
+        "UPDATE ${AttachmentTable.TABLE_NAME} SET ${AttachmentTable.TRANSFER_STATE} = ${AttachmentTable.TRANSFER_RESTORE_OFFLOADED} WHERE $threadAttachments",
+        arrayOf(threadId.toString())
+      )
+      db.setTransactionSuccessful()
+    } finally {
+      db.endTransaction()
+    }
+  }
+
   fun getOutgoingMessageTimestamps(threadId: Long, selfRecipientId: Long): List<Long> {
     val timestamps = mutableListOf<Long>()
     SignalDatabase.messages.databaseHelper.signalReadableDatabase.query(
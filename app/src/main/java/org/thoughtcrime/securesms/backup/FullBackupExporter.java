@@ -18,6 +18,8 @@ import org.signal.core.util.CursorUtil;
 import org.signal.core.util.SetUtil;
 import org.signal.core.util.SqlUtil;
 import org.signal.core.util.Stopwatch;
+import org.signal.core.util.ThreadUtil;
+import org.signal.core.util.concurrent.SignalExecutors;
 import org.signal.core.util.logging.Log;
 import org.signal.core.models.database.AttachmentId;
 import org.thoughtcrime.securesms.backup.proto.KeyValue;
@@ -25,9 +27,13 @@ import org.thoughtcrime.securesms.backup.proto.SharedPreference;
 import org.thoughtcrime.securesms.backup.proto.SqlStatement;
 import org.signal.core.util.crypto.AttachmentSecret;
 import org.signal.core.util.crypto.ClassicDecryptingPartInputStream;
+import org.signal.core.util.crypto.ModernDecryptingPartChannel;
 import org.signal.core.util.crypto.ModernDecryptingPartInputStream;
+import org.signal.core.util.crypto.ParallelCtrEncryptor;
 import org.thoughtcrime.securesms.database.AttachmentTable;
 import org.thoughtcrime.securesms.database.BackupMediaSnapshotTable;
+import org.thoughtcrime.securesms.database.CdsContactSnapshotTable;
+import org.thoughtcrime.securesms.database.E164MemoTable;
 import org.thoughtcrime.securesms.database.EmojiSearchTable;
 import org.thoughtcrime.securesms.database.GroupReceiptTable;
 import org.thoughtcrime.securesms.database.KeyValueDatabase;
@@ -69,6 +75,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -85,6 +93,9 @@ public class FullBackupExporter extends FullBackupBase {
   private static final long FINAL_MESSAGE_COUNT              = 1L;
   private static final long EXPIRATION_BACKUP_THRESHOLD      = TimeUnit.DAYS.toMillis(1);
 
+  /** Threads left free during a transfer for reading the database and for sending. */
+  private static final int TRANSFER_RESERVED_THREADS = 2;
+
   /**
    * Tables in list will still have their *schema* exported (so the tables will be created),
    * but we will not export the actual contents.
@@ -97,6 +108,8 @@ public class FullBackupExporter extends FullBackupBase {
       SessionTable.TABLE_NAME,
       SearchTable.FTS_TABLE_NAME,
       EmojiSearchTable.TABLE_NAME,
+      E164MemoTable.TABLE_NAME,
+      CdsContactSnapshotTable.TABLE_NAME,
       SenderKeyTable.TABLE_NAME,
       SenderKeySharedTable.TABLE_NAME,
       PendingRetryReceiptTable.TABLE_NAME,
@@ -116,7 +129,7 @@ public class FullBackupExporter extends FullBackupBase {
       throws IOException
   {
     try (OutputStream outputStream = new FileOutputStream(output)) {
-      return internalExport(context, attachmentSecret, input, outputStream, passphrase, true, cancellationSignal);
+      return internalExport(context, attachmentSecret, input, outputStream, passphrase, true, cancellationSignal, null);
     }
   }
 
@@ -130,10 +143,14 @@ public class FullBackupExporter extends FullBackupBase {
       throws IOException
   {
     try (OutputStream outputStream = Objects.requireNonNull(context.getContentResolver().openOutputStream(output.getUri()))) {
-      return internalExport(context, attachmentSecret, input, outputStream, passphrase, true, cancellationSignal);
+      return internalExport(context, attachmentSecret, input, outputStream, passphrase, true, cancellationSignal, null);
     }
   }
 
+  /**
+   * Streams a backup to another device. Unlike a local backup, this is bound by how fast we can encrypt rather than how fast we can write, so
+   * attachments and stickers are read and encrypted on several threads while this one keeps reading the database.
+   */
   public static void transfer(@NonNull Context context,
                               @NonNull AttachmentSecret attachmentSecret,
                               @NonNull SQLiteDatabase input,
@@ -141,7 +158,14 @@ public class FullBackupExporter extends FullBackupBase {
                               @NonNull String passphrase)
       throws IOException
   {
-    EventBus.getDefault().post(internalExport(context, attachmentSecret, input, outputStream, passphrase, false, () -> false));
+    int             parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() - TRANSFER_RESERVED_THREADS);
+    ExecutorService executor    = Executors.newFixedThreadPool(parallelism, new SignalExecutors.NumberedThreadFactory("transfer-encrypt", ThreadUtil.PRIORITY_IMPORTANT_BACKGROUND_THREAD));
+
+    try {
+      EventBus.getDefault().post(internalExport(context, attachmentSecret, input, outputStream, passphrase, false, () -> false, new ParallelCtrEncryptor(executor, parallelism)));
+    } finally {
+      executor.shutdownNow();
+    }
   }
 
   private static BackupEvent internalExport(@NonNull Context context,
@@ -150,10 +174,11 @@ public class FullBackupExporter extends FullBackupBase {
                                             @NonNull OutputStream fileOutputStream,
                                             @NonNull String passphrase,
                                             boolean closeOutputStream,
-                                            @NonNull BackupCancellationSignal cancellationSignal)
+                                            @NonNull BackupCancellationSignal cancellationSignal,
+                                            @Nullable ParallelCtrEncryptor parallelEncryptor)
       throws IOException
   {
-    BackupFrameOutputStream outputStream          = new BackupFrameOutputStream(fileOutputStream, passphrase);
+    BackupFrameOutputStream outputStream          = new BackupFrameOutputStream(fileOutputStream, passphrase, parallelEncryptor);
     int                     count                 = 0;
     long                    estimatedCountOutside;
 
@@ -481,10 +506,18 @@ public class FullBackupExporter extends FullBackupBase {
 
     EventBus.getDefault().post(new BackupEvent(BackupEvent.Type.PROGRESS, ++count, estimatedCount));
     if (!TextUtils.isEmpty(data) && size > 0) {
-      try (InputStream inputStream = openAttachmentStream(attachmentSecret, random, data)) {
-        outputStream.write(new AttachmentId(rowId), inputStream, size);
-      } catch (FileNotFoundException e) {
-        Log.w(TAG, "Missing attachment", e);
+      if (outputStream.canEncryptInParallel() && random != null && random.length == 32) {
+        try (ModernDecryptingPartChannel channel = ModernDecryptingPartChannel.open(attachmentSecret, random, new File(data))) {
+          outputStream.write(new AttachmentId(rowId), channel, size);
+        } catch (FileNotFoundException e) {
+          Log.w(TAG, "Missing attachment", e);
+        }
+      } else {
+        try (InputStream inputStream = openAttachmentStream(attachmentSecret, random, data)) {
+          outputStream.write(new AttachmentId(rowId), inputStream, size);
+        } catch (FileNotFoundException e) {
+          Log.w(TAG, "Missing attachment", e);
+        }
       }
     }
 
@@ -506,10 +539,18 @@ public class FullBackupExporter extends FullBackupBase {
 
     if (!TextUtils.isEmpty(data) && size > 0) {
       EventBus.getDefault().post(new BackupEvent(BackupEvent.Type.PROGRESS, ++count, estimatedCount));
-      try (InputStream inputStream = ModernDecryptingPartInputStream.createFor(attachmentSecret, random, new File(data), 0)) {
-        outputStream.writeSticker(rowId, inputStream, size);
-      } catch (FileNotFoundException e) {
-        Log.w(TAG, "Missing sticker", e);
+      if (outputStream.canEncryptInParallel()) {
+        try (ModernDecryptingPartChannel channel = ModernDecryptingPartChannel.open(attachmentSecret, random, new File(data))) {
+          outputStream.writeSticker(rowId, channel, size);
+        } catch (FileNotFoundException e) {
+          Log.w(TAG, "Missing sticker", e);
+        }
+      } else {
+        try (InputStream inputStream = ModernDecryptingPartInputStream.createFor(attachmentSecret, random, new File(data), 0)) {
+          outputStream.writeSticker(rowId, inputStream, size);
+        } catch (FileNotFoundException e) {
+          Log.w(TAG, "Missing sticker", e);
+        }
       }
     }
 
@@ -33,6 +33,7 @@ import org.thoughtcrime.securesms.database.KyberPreKeyTable;
 import org.thoughtcrime.securesms.database.LastResortKeyTupleTable;
 import org.thoughtcrime.securesms.database.OneTimePreKeyTable;
 import org.thoughtcrime.securesms.database.SearchTable;
+import org.thoughtcrime.securesms.database.SignalDatabase;
 import org.thoughtcrime.securesms.database.SignedPreKeyTable;
 import org.thoughtcrime.securesms.database.StickerTables;
 import org.thoughtcrime.securesms.dependencies.AppDependencies;
@@ -157,6 +158,7 @@ public class FullBackupImporter extends FullBackupBase {
       db.endTransaction();
       keyValueDatabase.endTransaction();
       db.setForeignKeyConstraintsEnabled(true);
+      SignalDatabase.sessions().clearCache();
     }
 
     EventBus.getDefault().post(new BackupEvent(BackupEvent.Type.FINISHED, count, 0));
@@ -341,4 +341,39 @@ object ArchiveRestoreProgress {
   }
 
   //endregion Attachment Debug
+
+  //region Frame Debug
+
+  private var frameImportStartTime: Long = 0
+  private val framesImported: AtomicLong = AtomicLong(0)
+
+  /**
+   * The rate at which backup frames were imported into the database during the most recent (or current) db restore.
+   */
+  val framesPerSecond: Double
+    get() {
+      val startTime = frameImportStartTime
+      if (startTime <= 0) {
+        return 0.0
+      }
+
+      val seconds: Double = (System.currentTimeMillis() - startTime).milliseconds.toDouble(DurationUnit.SECONDS)
+      return if (seconds > 0) framesImported.get() / seconds else 0.0
+    }
+
+  fun onFrameImportStart() {
+    frameImportStartTime = System.currentTimeMillis()
+    framesImported.set(0)
+  }
+
+  fun onFramesImported(totalFrames: Long) {
+    framesImported.set(totalFrames)
+  }
+
+  fun onFrameImportEnd(totalFrames: Long) {
+    framesImported.set(totalFrames)
+    Log.i(TAG, "Frame import finished! TotalFrames=$totalFrames, Rate=${framesPerSecond.toLong()} frames/sec")
+  }
+
+  //endregion Frame Debug
 }
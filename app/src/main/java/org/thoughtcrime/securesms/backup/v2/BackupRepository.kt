@@ -29,6 +29,7 @@ import org.signal.archive.stream.BackupExportWriter
 import org.signal.archive.stream.BackupImportReader
 import org.signal.archive.stream.EncryptedBackupReader
 import org.signal.archive.stream.EncryptedBackupWriter
+import org.signal.archive.stream.PipelinedBackupImportReader
 import org.signal.archive.stream.PlainTextBackupReader
 import org.signal.archive.stream.PlainTextBackupWriter
 import org.signal.core.models.AccountEntropyPool
@@ -1020,7 +1021,7 @@ object BackupRepository {
       return ImportResult.Failure
     }
 
-    return frameReader.use { reader ->
+    return PipelinedBackupImportReader(frameReader).use { reader ->
       import(reader, selfData, backupMode = BackupMode.LOCAL, cancellationSignal = { false })
     }
   }
@@ -1051,7 +1052,7 @@ object BackupRepository {
         )
       }
 
-      return frameReader.use { reader ->
+      return PipelinedBackupImportReader(frameReader).use { reader ->
         import(reader, selfData, backupMode = BackupMode.REMOTE, cancellationSignal = cancellationSignal)
       }
     } catch (e: IOException) {
@@ -1079,7 +1080,7 @@ object BackupRepository {
       dataStream = inputStreamFactory
     )
 
-    return frameReader.use { reader ->
+    return PipelinedBackupImportReader(frameReader).use { reader ->
       import(reader, selfData, backupMode = BackupMode.LINK_SYNC, cancellationSignal = cancellationSignal)
     }
   }
@@ -1105,7 +1106,7 @@ object BackupRepository {
       )
     }
 
-    return frameReader.use { reader ->
+    return PipelinedBackupImportReader(frameReader).use { reader ->
       import(reader, selfData, backupMode = BackupMode.REMOTE, cancellationSignal = cancellationSignal)
     }
   }
@@ -1121,7 +1122,7 @@ object BackupRepository {
   ): ImportResult {
     val frameReader = PlainTextBackupReader(inputStreamFactory(), length)
 
-    return frameReader.use { reader ->
+    return PipelinedBackupImportReader(frameReader).use { reader ->
       import(reader, selfData, backupMode = BackupMode.PLAINTEXT_EXPORT, cancellationSignal = cancellationSignal)
     }
   }
@@ -1213,6 +1214,7 @@ object BackupRepository {
 
       RecipientId.clearCache()
       SignalDatabase.remappedRecords.clearCache()
+      SignalDatabase.sessions.clearCache()
       AppDependencies.recipientCache.clear()
       AppDependencies.recipientCache.clearSelf()
       SignalDatabase.threads.clearCache()
@@ -1237,6 +1239,7 @@ object BackupRepository {
       Log.d(TAG, "[import] Beginning to read frames.")
       val totalLength = frameReader.getStreamLength()
       var frameCount = 0
+      ArchiveRestoreProgress.onFrameImportStart()
       for (frame in frameReader) {
         val frameAccount = frame.account
         val frameRecipient = frame.recipient
@@ -1298,7 +1301,8 @@ object BackupRepository {
               if (cancellationSignal()) {
                 return ImportResult.Failure
               }
-              Log.d(TAG, "Imported $frameCount frames so far.")
+              ArchiveRestoreProgress.onFramesImported(frameCount.toLong())
+              Log.d(TAG, "Imported $frameCount frames so far. (${ArchiveRestoreProgress.framesPerSecond.toLong()} frames/sec)")
             }
             // TODO if there's stuff in the stream after chatItems, we need to flush the inserter before going to the next phase
           }
@@ -1311,6 +1315,7 @@ object BackupRepository {
       if (chatItemInserter.flush()) {
         eventTimer.emit("chatItem")
       }
+      ArchiveRestoreProgress.onFrameImportEnd(frameCount.toLong())
 
       EventBus.getDefault().post(RestoreV2Event(RestoreV2Event.Type.PROGRESS_FINALIZING, 0.bytes, 0.bytes))
 
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.backup.v2.database
+
+import android.database.Cursor
+import androidx.annotation.VisibleForTesting
+import org.signal.core.util.select
+import org.thoughtcrime.securesms.database.MessageTable
+import org.thoughtcrime.securesms.database.SQLiteDatabase
+
+/**
+ * Reads the rows of a table that hang off of messages (attachments, reactions, etc.) in step with the messages being exported.
+ *
+ * The export reads messages ordered by date received and then id. Child rows are read in that same order, so rather than looking them up by id, we
+ * can walk both forward together: each call to [take] consumes the rows for one message, skipping any that belong to messages the export passed over.
+ *
+ * Rows are read a page at a time, with each page starting just after the last row of the previous one. A single cursor over every row would have to
+ * re-run its query and skip back to where it was each time its window refilled, which gets quadratically slower as the number of rows grows. Each
+ * page is read in full and its cursor closed straight away, so nothing is left open between calls.
+ */
+class ArchiveChildCursor<T> @VisibleForTesting internal constructor(
+  private val pageSize: Int,
+  private val loadPage: (after: Position?, limit: Int) -> Cursor,
+  private val reader: (Cursor) -> T
+) {
+
+  companion object {
+    private const val PAGE_SIZE = 500
+
+    private const val WINDOW = "archive_window"
+    private const val WINDOW_MESSAGE_ID = "archive_message_id"
+    private const val WINDOW_DATE_RECEIVED = "archive_date_received"
+    private const val CHILD_ID = "archive_child_id"
+
+    /**
+     * Reads [projection] from [childTable] for every exportable message received in the inclusive range [startDateReceived, endDateReceived],
+     * ordered the same way as the messages themselves and then by [childIdColumn]. [messageIdColumn] is the column of [childTable] that references
+     * the message.
+     */
+    @JvmStatic
+    fun <T> query(
+      db: SQLiteDatabase,
+      childTable: String,
+      messageIdColumn: String,
+      childIdColumn: String,
+      projection: Array<String>,
+      where: String?,
+      startDateReceived: Long,
+      endDateReceived: Long,
+      reader: (Cursor) -> T
+    ): ArchiveChildCursor<T> {
+      val window = """
+        (
+          SELECT ${MessageTable.ID} AS $WINDOW_MESSAGE_ID, ${MessageTable.DATE_RECEIVED} AS $WINDOW_DATE_RECEIVED
+          FROM ${MessageTable.TABLE_NAME}
+          WHERE
+            ${MessageTable.STORY_TYPE} = 0 AND
+            ${MessageTable.PARENT_STORY_ID} <= 0 AND
+            ${MessageTable.SCHEDULED_DATE} = -1 AND
+            ${MessageTable.DATE_RECEIVED} BETWEEN $startDateReceived AND $endDateReceived
+        ) AS $WINDOW
+      """
+
+      val columns = arrayOf("$WINDOW.$WINDOW_MESSAGE_ID", "$WINDOW.$WINDOW_DATE_RECEIVED", "$childIdColumn AS $CHILD_ID") + projection
+      val from = "$window INNER JOIN $childTable ON $messageIdColumn = $WINDOW.$WINDOW_MESSAGE_ID"
+      val orderBy = "$WINDOW.$WINDOW_DATE_RECEIVED ASC, $WINDOW.$WINDOW_MESSAGE_ID ASC, $childIdColumn ASC"
+
+      return ArchiveChildCursor(PAGE_SIZE, { after, limit ->
+        val conditions = mutableListOf<String>()
+        var args = emptyArray<String>()
+
+        if (where != null) {
+          conditions += where
+        }
+
+        if (after != null) {
+          conditions += """
+            (
+              $WINDOW.$WINDOW_DATE_RECEIVED > ? OR
+              ($WINDOW.$WINDOW_DATE_RECEIVED = ? AND ($WINDOW.$WINDOW_MESSAGE_ID > ? OR ($WINDOW.$WINDOW_MESSAGE_ID = ? AND $childIdColumn > ?)))
+            )
+          """
+          args = arrayOf(after.dateReceived, after.dateReceived, after.messageId, after.messageId, after.childId).map { it.toString() }.toTypedArray()
+        }
+
+        if (conditions.isNotEmpty()) {
+          db.select(*columns).from(from).where(conditions.joinToString(" AND "), args).orderBy(orderBy).limit(limit).run()
+        } else {
+          db.select(*columns).from(from).orderBy(orderBy).limit(limit).run()
+        }
+      }, reader)
+    }
+  }
+
+  private val rows: ArrayDeque<Row<T>> = ArrayDeque()
+  private var last: Position? = null
+  private var exhausted = false
+
+  init {
+    // The first page is read up front, so that it's read on whichever thread created us
+    readNextPage()
+  }
+
+  /**
+   * Returns the rows belonging to the message with the given [dateReceived] and [messageId], or null if there are none. Must be called with
+   * messages in ascending (dateReceived, messageId) order.
+   */
+  fun take(dateReceived: Long, messageId: Long): List<T>? {
+    var result: MutableList<T>? = null
+
+    while (rows.isNotEmpty() || readNextPage()) {
+      val row = rows.first()
+
+      if (row.position.dateReceived > dateReceived || (row.position.dateReceived == dateReceived && row.position.messageId > messageId)) {
+        break
+      }
+
+      if (row.position.messageId == messageId) {
+        if (result == null) {
+          result = mutableListOf()
+        }
+        result += row.value
+      }
+
+      rows.removeFirst()
+    }
+
+    return result
+  }
+
+  /**
+   * @return True if any rows were read.
+   */
+  private fun readNextPage(): Boolean {
+    if (exhausted) {
+      return false
+    }
+
+    loadPage(last, pageSize).use { cursor ->
+      val messageIdIndex = cursor.getColumnIndexOrThrow(WINDOW_MESSAGE_ID)
+      val dateReceivedIndex = cursor.getColumnIndexOrThrow(WINDOW_DATE_RECEIVED)
+      val childIdIndex = cursor.getColumnIndexOrThrow(CHILD_ID)
+      var count = 0
+
+      while (cursor.moveToNext()) {
+        val position = Position(dateReceived = cursor.getLong(dateReceivedIndex), messageId = cursor.getLong(messageIdIndex), childId = cursor.getLong(childIdIndex))
+        rows += Row(position, reader(cursor))
+        last = position
+        count++
+      }
+
+      exhausted = count < pageSize
+      return count > 0
+    }
+  }
+
+  /**
+   * Where a child row falls in the export order.
+   */
+  @VisibleForTesting
+  internal data class Position(val dateReceived: Long, val messageId: Long, val childId: Long)
+
+  private class Row<T>(val position: Position, val value: T)
+}
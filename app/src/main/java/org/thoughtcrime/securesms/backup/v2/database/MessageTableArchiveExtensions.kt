@@ -176,7 +176,7 @@ fun MessageTable.getMessagesForBackup(db: SignalDatabase, backupTime: Long, self
           }
         )
         .limit(count)
-        .orderBy("$DATE_RECEIVED ASC")
+        .orderBy("$DATE_RECEIVED ASC, ${MessageTable.ID} ASC")
         .run()
     }
   )
@@ -75,6 +75,7 @@ import org.thoughtcrime.securesms.backup.v2.BackupMode
 import org.thoughtcrime.securesms.backup.v2.ExportOddities
 import org.thoughtcrime.securesms.backup.v2.ExportSkips
 import org.thoughtcrime.securesms.backup.v2.ExportState
+import org.thoughtcrime.securesms.backup.v2.database.ArchiveChildCursor
 import org.thoughtcrime.securesms.backup.v2.util.clampToValidBackupRange
 import org.thoughtcrime.securesms.backup.v2.util.toRemoteFilePointer
 import org.thoughtcrime.securesms.contactshare.Contact
@@ -131,8 +132,10 @@ private const val MAX_POLL_OPTIONS = 10
 
 /**
  * An iterator for chat items with a clever performance twist: rather than do the extra queries one at a time (for reactions,
- * attachments, etc), this will populate items in batches, doing bulk lookups to improve throughput. We keep these in a buffer
- * and only do more queries when the buffer is empty.
+ * attachments, etc), this will populate items in batches. Messages are read in order of date received and then id, and the extra
+ * data for a batch is read from cursors in that same order, which are walked forward in step with the messages. That way we never
+ * hold more than one message's worth of extra data at a time. We keep the finished items in a buffer and only do more queries
+ * when the buffer is empty.
  *
  * All of this complexity is hidden from the user -- they just get a normal iterator interface.
  */
@@ -200,12 +203,17 @@ class ChatItemArchiveExporter(
       return buffer.remove()
     }
 
-    val extraData = fetchExtraMessageData(db = db, messageIds = records.keys)
+    if (records.isEmpty()) {
+      return null
+    }
+
+    val extraDataCursors = openExtraDataCursors(db = db, startDateReceived = records.values.first().dateReceived, endDateReceived = records.values.last().dateReceived)
     eventTimer.emit("extra-data")
     transformTimer.emit("ignore")
 
-    for ((id, record) in records) {
-      val builder = record.toBasicChatItemBuilder(selfRecipientId, extraData.groupReceiptsById[id], exportState, backupStartTime)
+    for (record in records.values) {
+      val extraData = extraDataCursors.take(record)
+      val builder = record.toBasicChatItemBuilder(selfRecipientId, extraData.groupReceipts, exportState, backupStartTime)
       transformTimer.emit("basic")
 
       if (builder == null || builder.authorId == exportState.releaseNoteRecipientId) {
@@ -407,12 +415,12 @@ class ChatItemArchiveExporter(
         }
 
         !record.sharedContacts.isNullOrEmpty() -> {
-          builder.contactMessage = record.toRemoteContactMessage(reactionRecords = extraData.reactionsById[id], attachments = extraData.attachmentsById[id], exportState = exportState) ?: continue
+          builder.contactMessage = record.toRemoteContactMessage(reactionRecords = extraData.reactions, attachments = extraData.attachments, exportState = exportState) ?: continue
           transformTimer.emit("contact")
         }
 
         record.viewOnce -> {
-          builder.viewOnceMessage = record.toRemoteViewOnceMessage(exportState = exportState, reactionRecords = extraData.reactionsById[id], attachments = extraData.attachmentsById[id])
+          builder.viewOnceMessage = record.toRemoteViewOnceMessage(exportState = exportState, reactionRecords = extraData.reactions, attachments = extraData.attachments)
           transformTimer.emit("voice")
         }
 
@@ -421,7 +429,7 @@ class ChatItemArchiveExporter(
             Log.w(TAG, ExportSkips.directStoryReplyInNoteToSelf(record.dateSent))
             continue
           }
-          builder.directStoryReplyMessage = record.toRemoteDirectStoryReplyMessage(reactionRecords = extraData.reactionsById[id], attachments = extraData.attachmentsById[record.id], exportState = exportState) ?: continue
+          builder.directStoryReplyMessage = record.toRemoteDirectStoryReplyMessage(reactionRecords = extraData.reactions, attachments = extraData.attachments, exportState = exportState) ?: continue
           transformTimer.emit("story")
         }
 
@@ -435,8 +443,8 @@ class ChatItemArchiveExporter(
           transformTimer.emit("poll-terminate")
         }
 
-        extraData.pollsById[record.id] != null -> {
-          val poll = extraData.pollsById[record.id]!!
+        extraData.poll != null -> {
+          val poll = extraData.poll
           if (poll.question.isEmpty() || poll.question.length > MAX_POLL_QUESTION_CHARACTER_LENGTH) {
             Log.w(TAG, ExportSkips.invalidPollQuestion(record.dateSent))
             continue
@@ -445,7 +453,7 @@ class ChatItemArchiveExporter(
             Log.w(TAG, ExportSkips.invalidPollOption(record.dateSent))
             continue
           }
-          builder.poll = poll.toRemotePollMessage(reactionRecords = extraData.reactionsById[record.id], exportState = exportState)
+          builder.poll = poll.toRemotePollMessage(reactionRecords = extraData.reactions, exportState = exportState)
           transformTimer.emit("poll")
         }
 
@@ -460,17 +468,17 @@ class ChatItemArchiveExporter(
         }
 
         else -> {
-          val attachments = extraData.attachmentsById[record.id]
+          val attachments = extraData.attachments
           val sticker = attachments?.firstOrNull { dbAttachment -> dbAttachment.isSticker && !dbAttachment.quote }
 
           if (sticker?.stickerLocator != null) {
-            builder.stickerMessage = sticker.toRemoteStickerMessage(sentTimestamp = record.dateSent, reactions = extraData.reactionsById[id], exportState = exportState)
+            builder.stickerMessage = sticker.toRemoteStickerMessage(sentTimestamp = record.dateSent, reactions = extraData.reactions, exportState = exportState)
           } else {
             val standardMessage = record.toRemoteStandardMessage(
               exportState = exportState,
-              reactionRecords = extraData.reactionsById[id],
-              mentions = extraData.mentionsById[id],
-              attachments = extraData.attachmentsById[record.id]
+              reactionRecords = extraData.reactions,
+              mentions = extraData.mentions,
+              attachments = extraData.attachments
             )
 
             if (standardMessage.text.isNullOrBlank() && standardMessage.attachments.isEmpty()) {
@@ -570,51 +578,50 @@ class ChatItemArchiveExporter(
     }
   }
 
-  private fun fetchExtraMessageData(db: SignalDatabase, messageIds: Set<Long>): ExtraMessageData {
+  /**
+   * Opens a cursor over each kind of extra data for the messages received in the given range. The first page of each is read in parallel, since
+   * that's where most of the work happens. The cursors close each page as soon as it's read, so there's nothing to clean up afterwards, even if one
+   * of the reads fails.
+   */
+  private fun openExtraDataCursors(db: SignalDatabase, startDateReceived: Long, endDateReceived: Long): ExtraDataCursors {
     val executor = SignalExecutors.BOUNDED
 
     val mentionsFuture = executor.submitTyped {
       extraDataTimer.timeEvent("mentions") {
-        db.mentionTable.getMentionsForMessages(messageIds)
+        db.mentionTable.getMentionsForArchiveExport(startDateReceived, endDateReceived)
       }
     }
 
     val reactionsFuture = executor.submitTyped {
       extraDataTimer.timeEvent("reactions") {
-        db.reactionTable.getReactionsForMessages(messageIds)
+        db.reactionTable.getReactionsForArchiveExport(startDateReceived, endDateReceived)
       }
     }
 
     val attachmentsFuture = executor.submitTyped {
       extraDataTimer.timeEvent("attachments") {
-        db.attachmentTable.getAttachmentsForMessagesArchive(messageIds)
+        db.attachmentTable.getAttachmentsForArchiveExport(startDateReceived, endDateReceived)
       }
     }
 
     val groupReceiptsFuture = executor.submitTyped {
       extraDataTimer.timeEvent("group-receipts") {
-        db.groupReceiptTable.getGroupReceiptInfoForMessages(messageIds)
+        db.groupReceiptTable.getGroupReceiptInfoForArchiveExport(startDateReceived, endDateReceived)
       }
     }
 
     val pollsFuture = executor.submitTyped {
       extraDataTimer.timeEvent("polls") {
-        db.pollTable.getPollsForMessages(messageIds = messageIds, includePending = false)
+        db.pollTable.getPollsForArchiveExport(startDateReceived, endDateReceived)
       }
     }
 
-    val mentionsResult = mentionsFuture.get()
-    val reactionsResult = reactionsFuture.get()
-    val attachmentsResult = attachmentsFuture.get()
-    val groupReceiptsResult = groupReceiptsFuture.get()
-    val pollsResult = pollsFuture.get()
-
-    return ExtraMessageData(
-      mentionsById = mentionsResult,
-      reactionsById = reactionsResult,
-      attachmentsById = attachmentsResult,
-      groupReceiptsById = groupReceiptsResult,
-      pollsById = pollsResult
+    return ExtraDataCursors(
+      mentions = mentionsFuture.get(),
+      reactions = reactionsFuture.get(),
+      attachments = attachmentsFuture.get(),
+      groupReceipts = groupReceiptsFuture.get(),
+      polls = pollsFuture.get()
     )
   }
 }
@@ -1981,13 +1988,36 @@ internal class BackupMessageRecord(
 }
 
 private data class ExtraMessageData(
-  val mentionsById: Map<Long, List<Mention>>,
-  val reactionsById: Map<Long, List<ReactionRecord>>,
-  val attachmentsById: Map<Long, List<DatabaseAttachment>>,
-  val groupReceiptsById: Map<Long, List<GroupReceiptTable.GroupReceiptInfo>>,
-  val pollsById: Map<Long, PollRecord>
+  val mentions: List<Mention>?,
+  val reactions: List<ReactionRecord>?,
+  val attachments: List<DatabaseAttachment>?,
+  val groupReceipts: List<GroupReceiptTable.GroupReceiptInfo>?,
+  val poll: PollRecord?
 )
 
+/**
+ * The extra data for a batch of messages, read in step with the messages themselves. See [ArchiveChildCursor].
+ */
+private class ExtraDataCursors(
+  private val mentions: ArchiveChildCursor<Mention>,
+  private val reactions: ArchiveChildCursor<ReactionRecord>,
+  private val attachments: ArchiveChildCursor<DatabaseAttachment>,
+  private val groupReceipts: ArchiveChildCursor<List<GroupReceiptTable.GroupReceiptInfo>>,
+  private val polls: ArchiveChildCursor<PollRecord>
+) {
+
+  /** Must be called for messages in the order they were read. */
+  fun take(record: BackupMessageRecord): ExtraMessageData {
+    return ExtraMessageData(
+      mentions = mentions.take(record.dateReceived, record.id),
+      reactions = reactions.take(record.dateReceived, record.id),
+      attachments = attachments.take(record.dateReceived, record.id),
+      groupReceipts = groupReceipts.take(record.dateReceived, record.id)?.firstOrNull(),
+      poll = polls.take(record.dateReceived, record.id)?.firstOrNull()
+    )
+  }
+}
+
 private enum class Direction {
   OUTGOING, INCOMING, DIRECTIONLESS
 }
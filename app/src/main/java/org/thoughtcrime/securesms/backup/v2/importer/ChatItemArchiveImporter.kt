@@ -47,6 +47,7 @@ import org.thoughtcrime.securesms.contactshare.Contact
 import org.thoughtcrime.securesms.database.AttachmentTable
 import org.thoughtcrime.securesms.database.CallTable
 import org.thoughtcrime.securesms.database.GroupReceiptTable
+import org.thoughtcrime.securesms.database.MentionTable
 import org.thoughtcrime.securesms.database.MessageTable
 import org.thoughtcrime.securesms.database.MessageTypes
 import org.thoughtcrime.securesms.database.ReactionTable
@@ -151,13 +152,7 @@ class ChatItemArchiveImporter(
       ReactionTable.DATE_RECEIVED
     )
 
-    private val GROUP_RECEIPT_COLUMNS = arrayOf(
-      GroupReceiptTable.MMS_ID,
-      GroupReceiptTable.RECIPIENT_ID,
-      GroupReceiptTable.STATUS,
-      GroupReceiptTable.TIMESTAMP,
-      GroupReceiptTable.UNIDENTIFIED
-    )
+    private const val MENTION_INSERT_SQL = "INSERT INTO ${MentionTable.TABLE_NAME} (${MentionTable.THREAD_ID}, ${MentionTable.MESSAGE_ID}, ${MentionTable.RECIPIENT_ID}, ${MentionTable.RANGE_START}, ${MentionTable.RANGE_LENGTH}) VALUES (?, ?, ?, ?, ?)"
   }
 
   private val selfId = Recipient.self().id
@@ -216,16 +211,16 @@ class ChatItemArchiveImporter(
         }
         revision.contentValues.put(MessageTable.LATEST_REVISION_ID, latestRevisionId)
         revision.contentValues.put(MessageTable.REVISION_NUMBER, revisionNumber)
-        buffer.messages += revision
+        buffer.addMessage(revision)
         messageId++
       }
 
       messageInsert.contentValues.put(MessageTable.ORIGINAL_MESSAGE_ID, originalId)
       messageInsert.contentValues.put(MessageTable.REVISION_NUMBER, (messageId - originalId))
     }
-    buffer.messages += messageInsert
+    buffer.addMessage(messageInsert)
     buffer.reactions += chatItem.toReactionContentValues(messageId)
-    buffer.groupReceipts += chatItem.toGroupReceiptContentValues(messageId, chatBackupRecipientId)
+    chatItem.toGroupReceipts(messageId, localThreadId, chatBackupRecipientId)?.let { buffer.groupReceipts += it }
 
     messageId++
 
@@ -258,8 +253,21 @@ class ChatItemArchiveImporter(
       db.execSQL(it.where, it.whereArgs)
     }
 
-    SqlUtil.buildBulkInsert(GroupReceiptTable.TABLE_NAME, GROUP_RECEIPT_COLUMNS, buffer.groupReceipts).forEach {
-      db.execSQL(it.where, it.whereArgs)
+    SignalDatabase.groupReceipts.insertAll(buffer.groupReceipts)
+
+    // Mentions are only known once the final message ids come back, so they're collected by the message follow-ups above
+    if (buffer.mentions.isNotEmpty()) {
+      db.compileStatement(MENTION_INSERT_SQL).use { statement ->
+        for (mention in buffer.mentions) {
+          statement.clearBindings()
+          statement.bindLong(1, mention.threadId)
+          statement.bindLong(2, mention.messageId)
+          statement.bindLong(3, mention.recipientId)
+          statement.bindLong(4, mention.start.toLong())
+          statement.bindLong(5, mention.length.toLong())
+          statement.executeInsert()
+        }
+      }
     }
 
     messageId = SqlUtil.getNextAutoIncrementId(db, MessageTable.TABLE_NAME)
@@ -285,6 +293,7 @@ class ChatItemArchiveImporter(
     val contentValues = this.toMessageContentValues(fromRecipientId, chatRecipientId, threadId)
 
     val followUps: MutableList<(Long) -> Unit> = mutableListOf()
+    var mentionCount = 0
 
     val updateMessage = this.updateMessage
     if (updateMessage != null) {
@@ -484,8 +493,17 @@ class ChatItemArchiveImporter(
     if (standardMessage != null) {
       val mentions = standardMessage.text?.bodyRanges.filterToLocalMentions()
       if (mentions.isNotEmpty()) {
-        followUps += { messageId ->
-          SignalDatabase.mentions.insert(threadId, messageId, mentions)
+        mentionCount = mentions.size
+        followUps += { messageRowId ->
+          mentions.mapTo(buffer.mentions) { mention ->
+            MentionInsert(
+              threadId = threadId,
+              messageId = messageRowId,
+              recipientId = mention.recipientId.toLong(),
+              start = mention.start,
+              length = mention.length
+            )
+          }
         }
       }
       val linkPreviews = standardMessage.linkPreview.map { it.toLocalLinkPreview() }
@@ -587,7 +605,7 @@ class ChatItemArchiveImporter(
       null
     }
 
-    return MessageInsert(contentValues, followUp)
+    return MessageInsert(contentValues, followUp, mentionCount)
   }
 
   /**
@@ -788,30 +806,31 @@ class ChatItemArchiveImporter(
       }
   }
 
-  private fun ChatItem.toGroupReceiptContentValues(messageId: Long, chatBackupRecipientId: Long): List<ContentValues> {
-    val outgoing = this.outgoing ?: return emptyList()
+  private fun ChatItem.toGroupReceipts(messageId: Long, threadId: Long, chatBackupRecipientId: Long): GroupReceiptTable.MessageReceipts? {
+    val outgoing = this.outgoing ?: return null
 
     // TODO [backup] This seems like an indirect/bad way to detect if this is a 1:1 or group convo
     if (outgoing.sendStatus.size == 1 && outgoing.sendStatus[0].recipientId == chatBackupRecipientId) {
-      return emptyList()
+      return null
     }
 
-    return outgoing.sendStatus.mapNotNull { sendStatus ->
+    val receipts = outgoing.sendStatus.mapNotNull { sendStatus ->
       val recipientId = importState.remoteToLocalRecipientId[sendStatus.recipientId]
 
       if (recipientId != null) {
-        contentValuesOf(
-          GroupReceiptTable.MMS_ID to messageId,
-          GroupReceiptTable.RECIPIENT_ID to recipientId.serialize(),
-          GroupReceiptTable.STATUS to sendStatus.toLocalSendStatus(),
-          GroupReceiptTable.TIMESTAMP to sendStatus.timestamp,
-          GroupReceiptTable.UNIDENTIFIED to sendStatus.sealedSender.toInt()
+        GroupReceiptTable.GroupReceiptInfo(
+          recipientId = recipientId,
+          status = sendStatus.toLocalSendStatus(),
+          timestamp = sendStatus.timestamp,
+          isUnidentified = sendStatus.sealedSender
         )
       } else {
         Log.w(TAG, "[GroupReceipts] Could not find a local recipient for backup recipient ID ${sendStatus.recipientId}! Skipping.")
         null
       }
     }
+
+    return if (receipts.isNotEmpty()) GroupReceiptTable.MessageReceipts(messageId, threadId, receipts) else null
   }
 
   private fun ChatItem.getMessageType(): Long {
@@ -1353,21 +1372,41 @@ class ChatItemArchiveImporter(
 
   private class MessageInsert(
     val contentValues: ContentValues,
-    val followUp: ((Long) -> Unit)?
+    val followUp: ((Long) -> Unit)?,
+    val mentionCount: Int = 0
+  )
+
+  private class MentionInsert(
+    val threadId: Long,
+    val messageId: Long,
+    val recipientId: Long,
+    val start: Int,
+    val length: Int
   )
 
   private class Buffer(
     val messages: MutableList<MessageInsert> = mutableListOf(),
     val reactions: MutableList<ContentValues> = mutableListOf(),
-    val groupReceipts: MutableList<ContentValues> = mutableListOf()
+    val groupReceipts: MutableList<GroupReceiptTable.MessageReceipts> = mutableListOf(),
+    val mentions: MutableList<MentionInsert> = mutableListOf()
   ) {
+    /** Mentions of the buffered messages. They aren't added to [mentions] until the messages are inserted, but are written in the same flush. */
+    private var pendingMentionCount = 0
+
     val size: Int
-      get() = listOf(messages.size, reactions.size, groupReceipts.size).max()
+      get() = listOf(messages.size, reactions.size, groupReceipts.size, pendingMentionCount).max()
+
+    fun addMessage(message: MessageInsert) {
+      messages += message
+      pendingMentionCount += message.mentionCount
+    }
 
     fun reset() {
       messages.clear()
       reactions.clear()
       groupReceipts.clear()
+      mentions.clear()
+      pendingMentionCount = 0
     }
   }
 }
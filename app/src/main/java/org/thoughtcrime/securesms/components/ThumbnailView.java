@@ -35,6 +35,7 @@ import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.request.Request;
 import com.bumptech.glide.request.RequestListener;
 import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.request.target.Target;
 
 import org.signal.core.models.media.TransformProperties;
 import org.signal.core.util.concurrent.ListenableFuture;
@@ -50,6 +51,7 @@ import org.thoughtcrime.securesms.attachments.DatabaseAttachment;
 import org.thoughtcrime.securesms.components.transfercontrols.TransferControlView;
 import org.thoughtcrime.securesms.components.transfercontrols.TransferControls;
 import org.thoughtcrime.securesms.database.AttachmentTable;
+import org.thoughtcrime.securesms.glide.AttachmentPreviewLoader;
 import org.thoughtcrime.securesms.glide.targets.GlideBitmapListeningTarget;
 import org.thoughtcrime.securesms.glide.targets.GlideDrawableListeningTarget;
 import org.thoughtcrime.securesms.keyvalue.SignalStore;
@@ -609,7 +611,29 @@ public class ThumbnailView extends FrameLayout {
     return false;
   }
 
-  private RequestBuilder<Drawable> buildThumbnailRequestBuilder(@NonNull RequestManager requestManager, @NonNull Slide slide) {
+  /**
+   * @return The size thumbnails are decoded at in this view, as {width, height}, or null if it hasn't been laid out yet.
+   */
+  public @Nullable int[] getThumbnailTargetSize() {
+    int width  = image.getWidth() - image.getPaddingLeft() - image.getPaddingRight();
+    int height = image.getHeight() - image.getPaddingTop() - image.getPaddingBottom();
+
+    if (width <= 0 || height <= 0) {
+      return null;
+    }
+
+    return new int[] { width, height };
+  }
+
+  /**
+   * Decodes the thumbnail for a slide into Glide's memory cache, so that a later {@link #setImageResource} for it in a view of the given size (see
+   * {@link #getThumbnailTargetSize()}) doesn't have to wait on the decode.
+   */
+  public static @NonNull Target<Drawable> preloadThumbnail(@NonNull RequestManager requestManager, @NonNull Slide slide, int width, int height) {
+    return buildBaseThumbnailRequestBuilder(requestManager, slide).preload(width, height);
+  }
+
+  private static RequestBuilder<Drawable> buildBaseThumbnailRequestBuilder(@NonNull RequestManager requestManager, @NonNull Slide slide) {
     long                videoTrimStartTimeUs = 0;
     TransformProperties transformProperties  = slide.asAttachment().transformProperties;
 
@@ -617,10 +641,14 @@ public class ThumbnailView extends FrameLayout {
       videoTrimStartTimeUs = transformProperties.videoTrimStartTimeUs;
     }
 
-    RequestBuilder<Drawable> requestBuilder = applySizing(requestManager.load(new DecryptableUri(Objects.requireNonNull(slide.getDisplayUri()), videoTrimStartTimeUs))
-                                                              .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
-                                                              .downsample(SignalDownsampleStrategy.CENTER_OUTSIDE_NO_UPSCALE)
-                                                              .transition(withCrossFade()));
+    return requestManager.load(new DecryptableUri(Objects.requireNonNull(slide.getDisplayUri()), videoTrimStartTimeUs))
+                         .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+                         .downsample(SignalDownsampleStrategy.CENTER_OUTSIDE_NO_UPSCALE)
+                         .set(AttachmentPreviewLoader.ALLOW_PREVIEW, true);
+  }
+
+  private RequestBuilder<Drawable> buildThumbnailRequestBuilder(@NonNull RequestManager requestManager, @NonNull Slide slide) {
+    RequestBuilder<Drawable> requestBuilder = applySizing(buildBaseThumbnailRequestBuilder(requestManager, slide).transition(withCrossFade()));
 
     if (slide.isInProgress()) {
       return requestBuilder;
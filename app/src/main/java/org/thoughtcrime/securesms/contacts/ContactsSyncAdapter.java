@@ -17,7 +17,7 @@ import org.thoughtcrime.securesms.jobs.DirectoryRefreshJob;
 import org.thoughtcrime.securesms.keyvalue.SignalStore;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.signal.core.util.SetUtil;
-import org.thoughtcrime.securesms.util.SignalE164Util;
+import org.thoughtcrime.securesms.util.E164Normalizer;
 
 import java.io.IOException;
 import java.util.List;
@@ -48,11 +48,11 @@ public class ContactsSyncAdapter extends AbstractThreadedSyncAdapter {
       return;
     }
 
-    Set<String> allSystemE164s     = SystemContactsRepository.getAllDisplayNumbers(context)
-                                                             .stream()
-                                                             .map(number -> SignalE164Util.formatAsE164(number))
-                                                             .filter(it -> it != null)
-                                                             .collect(Collectors.toSet());
+    Set<String> allSystemE164s     = E164Normalizer.normalize(SystemContactsRepository.getAllDisplayNumbers(context), true)
+                                                   .values()
+                                                   .stream()
+                                                   .filter(it -> it != null)
+                                                   .collect(Collectors.toSet());
     Set<String> knownSystemE164s   = SignalDatabase.recipients().getAllE164s();
     Set<String> unknownSystemE164s = SetUtil.difference(allSystemE164s, knownSystemE164s);
 
@@ -8,6 +8,7 @@ import org.signal.core.util.logging.Log
 import org.signal.network.NetworkResult
 import org.thoughtcrime.securesms.contacts.sync.FuzzyPhoneNumberHelper.InputResult
 import org.thoughtcrime.securesms.contacts.sync.FuzzyPhoneNumberHelper.OutputResult
+import org.thoughtcrime.securesms.database.CdsContactSnapshotTable.RawContact
 import org.thoughtcrime.securesms.database.RecipientTable.CdsV2Result
 import org.thoughtcrime.securesms.database.SignalDatabase
 import org.thoughtcrime.securesms.dependencies.AppDependencies
@@ -16,12 +17,13 @@ import org.thoughtcrime.securesms.net.SignalNetwork
 import org.thoughtcrime.securesms.recipients.Recipient
 import org.thoughtcrime.securesms.recipients.RecipientId
 import org.thoughtcrime.securesms.util.RemoteConfig
-import org.thoughtcrime.securesms.util.SignalE164Util
+import org.thoughtcrime.securesms.util.E164Normalizer
 import org.whispersystems.signalservice.api.cds.CdsiV2Service
 import org.whispersystems.signalservice.api.push.exceptions.CdsiInvalidTokenException
 import org.whispersystems.signalservice.api.push.exceptions.CdsiResourceExhaustedException
 import java.io.IOException
 import java.util.Optional
+import java.util.concurrent.TimeUnit
 import kotlin.math.roundToInt
 import kotlin.time.Duration.Companion.seconds
 
@@ -41,13 +43,18 @@ object ContactDiscoveryRefreshV2 {
    */
   private const val MAXIMUM_ONE_OFF_REQUEST_SIZE = 3
 
+  /**
+   * How often we read every system contact instead of just the ones that changed, in case the snapshot has somehow drifted from the contacts provider.
+   */
+  private val FULL_CONTACT_READ_INTERVAL = TimeUnit.DAYS.toMillis(7)
+
   @Throws(IOException::class)
   @WorkerThread
   @Synchronized
   @JvmStatic
   fun refreshAll(context: Context, timeoutMs: Long? = null): ContactDiscovery.RefreshResult {
     val recipientE164s: Set<String> = SignalDatabase.recipients.getAllE164s().sanitize()
-    val systemE164s: Set<String> = SystemContactsRepository.getAllDisplayNumbers(context).toE164s().sanitize()
+    val systemE164s: Set<String> = getSystemDisplayNumbers(context).toE164s().sanitize()
 
     return refreshInternal(
       recipientE164s = recipientE164s,
@@ -274,8 +281,55 @@ object ContactDiscoveryRefreshV2 {
       .toSet()
   }
 
+  /**
+   * Returns every display number in the system contacts.
+   *
+   * Rather than reading every number from the contacts provider, we keep a snapshot from the previous refresh and only re-read the raw contacts whose
+   * version has changed since then. If there's no snapshot, most of the address book changed, or it's been a while, we read everything instead.
+   */
+  @WorkerThread
+  private fun getSystemDisplayNumbers(context: Context): Set<String> {
+    val stopwatch = Stopwatch("system-numbers")
+
+    val currentVersions: Map<Long, Int> = SystemContactsRepository.getRawContactVersions(context)
+    val snapshotVersions: Map<Long, Int> = SignalDatabase.cdsContactSnapshot.getVersions()
+    stopwatch.split("versions")
+
+    val changed: Set<Long> = currentVersions.filter { (id, version) -> snapshotVersions[id] != version }.keys
+    val removed: Set<Long> = snapshotVersions.keys - currentVersions.keys
+
+    val now = System.currentTimeMillis()
+    val timeSinceFullRead = now - SignalStore.misc.lastCdsFullContactReadTime
+    val needsFullRead = snapshotVersions.isEmpty() || changed.size > currentVersions.size / 2 || timeSinceFullRead !in 0..FULL_CONTACT_READ_INTERVAL
+
+    val numbers: Set<String> = if (needsFullRead) {
+      val numbersByRawContact: Map<Long, Set<String>> = SystemContactsRepository.getDisplayNumbersByRawContact(context, null)
+      stopwatch.split("read-all")
+
+      SignalDatabase.cdsContactSnapshot.replaceAll(currentVersions.mapValues { (id, version) -> RawContact(version, numbersByRawContact[id] ?: emptySet()) })
+      SignalStore.misc.lastCdsFullContactReadTime = now
+      stopwatch.split("write-snapshot")
+
+      Log.i(TAG, "Read all ${currentVersions.size} raw contacts.")
+      numbersByRawContact.values.flatten().toSet()
+    } else {
+      val numbersByRawContact: Map<Long, Set<String>> = SystemContactsRepository.getDisplayNumbersByRawContact(context, changed)
+      stopwatch.split("read-changed")
+
+      SignalDatabase.cdsContactSnapshot.applyChanges(changed.associateWith { RawContact(currentVersions.getValue(it), numbersByRawContact[it] ?: emptySet()) }, removed)
+      val allNumbers = SignalDatabase.cdsContactSnapshot.getAllNumbers()
+      stopwatch.split("snapshot")
+
+      Log.i(TAG, "Read ${changed.size} changed raw contacts out of ${currentVersions.size}. ${removed.size} were removed.")
+      allNumbers
+    }
+
+    stopwatch.stop(TAG)
+    return numbers
+  }
+
   private fun Set<String>.toE164s(): Set<String> {
-    return this.mapNotNull { SignalE164Util.formatAsE164(it) }.toSet()
+    return E164Normalizer.normalize(this, pruneMemo = true).values.filterNotNull().toSet()
   }
 
   private fun Set<String>.sanitize(): Set<String> {
@@ -263,9 +263,15 @@ class ConversationViewModel(
         val messageInsertObserver = DatabaseObserver.MessageObserver {
           controller.onDataItemInserted(ConversationElementKey.forMessage(it.id), 0)
         }
-        val conversationObserver = DatabaseObserver.Observer {
-          controller.onDataInvalidated()
-          getPinnedMessages()
+        val conversationObserver = object : DatabaseObserver.ConversationObserver {
+          override fun onChanged() {
+            controller.onDataInvalidated()
+            getPinnedMessages()
+          }
+
+          override fun onMessagesChanged(messageIds: Set<Long>) {
+            controller.onDataItemsChanged(messageIds.map { ConversationElementKey.forMessage(it) })
+          }
         }
 
         AppDependencies.databaseObserver.registerMessageUpdateObserver(messageUpdateObserver)
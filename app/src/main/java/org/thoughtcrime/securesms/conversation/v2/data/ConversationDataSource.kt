@@ -7,7 +7,10 @@ package org.thoughtcrime.securesms.conversation.v2.data
 
 import android.content.Context
 import org.signal.core.util.Stopwatch
+import org.signal.core.util.concurrent.SignalExecutors
 import org.signal.core.util.logging.Log
+import org.signal.core.util.readToList
+import org.signal.core.util.requireLong
 import org.signal.core.util.toInt
 import org.signal.paging.PagedDataSource
 import org.thoughtcrime.securesms.backup.v2.ArchiveRestoreProgress
@@ -25,6 +28,7 @@ import org.thoughtcrime.securesms.database.model.MmsMessageRecord
 import org.thoughtcrime.securesms.dependencies.AppDependencies
 import org.thoughtcrime.securesms.messagerequests.MessageRequestRepository
 import org.thoughtcrime.securesms.recipients.Recipient
+import org.thoughtcrime.securesms.recipients.RecipientId
 import org.thoughtcrime.securesms.util.adapter.mapping.MappingModel
 
 private typealias ConversationElement = MappingModel<*>
@@ -60,8 +64,19 @@ class ConversationDataSource(
   companion object {
     private val TAG = Log.tag(ConversationDataSource::class.java)
     private const val THREAD_HEADER_COUNT = 1
+
+    private const val FLAG_MESSAGE_REQUEST_HIDDEN = 1
+    private const val FLAG_UNIVERSAL_EXPIRE_TIMER_UPDATE = 1 shl 1
   }
 
+  /** The message count the current [size] was based on, used to validate [ConversationPageCache] hits. */
+  @Volatile
+  private var loadedBaseSize: Int = -1
+
+  private val pageCacheFlags: Int =
+    (if (messageRequestData.isHidden) FLAG_MESSAGE_REQUEST_HIDDEN else 0) or
+      (if (showUniversalExpireTimerUpdate) FLAG_UNIVERSAL_EXPIRE_TIMER_UPDATE else 0)
+
   init {
     check(threadId > 0)
   }
@@ -88,14 +103,29 @@ class ConversationDataSource(
       if (baseSize != -1) {
         val size = baseSize
         baseSize = -1
+        loadedBaseSize = size
         return size
       }
     }
 
-    return SignalDatabase.messages.getMessageCountForThread(threadId)
+    return SignalDatabase.messages.getMessageCountForThread(threadId).also { loadedBaseSize = it }
   }
 
   override fun load(start: Int, length: Int, totalSize: Int, cancellationSignal: PagedDataSource.CancellationSignal): List<ConversationElement> {
+    val cacheable = start == 0 && DeletedMessageTombstoneCache.getForThread(threadId).isEmpty()
+    val baseSizeForPage = loadedBaseSize
+
+    if (cacheable) {
+      val cached = ConversationPageCache.get(threadId, baseSizeForPage, pageCacheFlags)
+      if (cached != null && cached.length == length) {
+        Log.d(TAG, "[load($start, $length), thread $threadId] Served from page cache.")
+        verifyCachedPageInBackground(cached)
+        return cached.elements + loadThreadHeaderIfInRange(start, length, totalSize)
+      }
+    }
+
+    val pageCacheGeneration = if (cacheable) ConversationPageCache.beginLoad(threadId) else -1
+
     val stopwatch = Stopwatch(title = "load($start, $length), thread $threadId", decimalPlaces = 2)
     var records: MutableList<MessageRecord> = ArrayList(length)
 
@@ -147,14 +177,23 @@ class ConversationDataSource(
 
     stopwatch.split("conversion")
 
-    val threadHeaderIndex = totalSize - THREAD_HEADER_COUNT
-
-    val threadHeaders: List<ConversationElement> = if (start + length > threadHeaderIndex) {
-      listOf(loadThreadHeader())
-    } else {
-      emptyList()
+    if (cacheable && !cancellationSignal.isCanceled && baseSizeForPage >= 0) {
+      ConversationPageCache.put(
+        threadId,
+        pageCacheGeneration,
+        ConversationPageCache.Entry(
+          baseSize = baseSizeForPage,
+          flags = pageCacheFlags,
+          length = length,
+          elements = messages,
+          messageIds = records.map { it.id }.toSet(),
+          recipients = records.renderedRecipients(extraData)
+        )
+      )
     }
 
+    val threadHeaders: List<ConversationElement> = loadThreadHeaderIfInRange(start, length, totalSize)
+
     stopwatch.split("header")
     val log = stopwatch.stopAndGetLogString()
     Log.d(TAG, "$log || ${extraData.timeLog}")
@@ -227,6 +266,57 @@ class ConversationDataSource(
     }
   }
 
+  private fun loadThreadHeaderIfInRange(start: Int, length: Int, totalSize: Int): List<ConversationElement> {
+    val threadHeaderIndex = totalSize - THREAD_HEADER_COUNT
+
+    return if (start + length > threadHeaderIndex) {
+      listOf(loadThreadHeader())
+    } else {
+      emptyList()
+    }
+  }
+
+  /**
+   * The page cache is kept up to date by [org.thoughtcrime.securesms.database.DatabaseObserver] events, but as a safety net we re-check the thread size
+   * and the messages on the first page after serving a hit, and force a reload if either no longer matches.
+   */
+  private fun verifyCachedPageInBackground(cached: ConversationPageCache.Entry) {
+    SignalExecutors.BOUNDED.execute {
+      val actualBaseSize = SignalDatabase.messages.getMessageCountForThread(threadId)
+      val actualMessageIds = SignalDatabase.messages.getConversation(threadId, 0, cached.length.toLong(), filterCollapsed = true).readToList { it.requireLong(MessageTable.ID) }
+
+      if (actualBaseSize != cached.baseSize || !cached.messageIds.containsAll(actualMessageIds)) {
+        Log.w(TAG, "[verify, thread $threadId] Cached page was stale! Expected ${cached.baseSize} messages, found $actualBaseSize.")
+        ConversationPageCache.remove(threadId)
+        AppDependencies.databaseObserver.notifyConversationListeners(threadId)
+      }
+    }
+  }
+
+  /**
+   * The recipients whose names the page shows: incoming authors, quoted authors and mentions.
+   */
+  private fun List<MessageRecord>.renderedRecipients(extraData: MessageDataFetcher.ExtraMessageData): Map<RecipientId, Recipient> {
+    val recipients: MutableMap<RecipientId, Recipient> = HashMap()
+
+    for (record in this) {
+      if (!record.isOutgoing) {
+        recipients[record.fromRecipient.id] = record.fromRecipient
+      }
+
+      if (record is MmsMessageRecord && record.quote != null) {
+        val author = record.quote!!.author
+        recipients.getOrPut(author) { Recipient.live(author).get() }
+      }
+
+      extraData.mentionsById[record.id]?.forEach { mention ->
+        recipients.getOrPut(mention.recipientId) { Recipient.live(mention.recipientId).get() }
+      }
+    }
+
+    return recipients
+  }
+
   private fun loadThreadHeader(): ThreadHeader {
     return ThreadHeader(messageRequestRepository.getRecipientInfo(threadRecipient.id, threadId), AvatarDownloadStateCache.getDownloadState(threadRecipient))
   }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.conversation.v2.data
+
+import android.content.ComponentCallbacks2
+import android.content.res.Configuration
+import io.reactivex.rxjava3.disposables.CompositeDisposable
+import io.reactivex.rxjava3.kotlin.plusAssign
+import org.signal.core.util.LRUCache
+import org.signal.core.util.Util
+import org.signal.core.util.logging.Log
+import org.thoughtcrime.securesms.database.DatabaseObserver
+import org.thoughtcrime.securesms.database.model.MessageId
+import org.thoughtcrime.securesms.dependencies.AppDependencies
+import org.thoughtcrime.securesms.recipients.Recipient
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.thoughtcrime.securesms.util.adapter.mapping.MappingModel
+
+/**
+ * Keeps the fully-hydrated first page of the most recently viewed conversations in memory, so that re-entering a chat can render immediately instead of
+ * waiting on the page query and [MessageDataFetcher].
+ *
+ * Entries are dropped as soon as the [DatabaseObserver] reports any change to the thread or to one of the cached messages, or when a recipient the page
+ * renders (an author, a quoted author or a mention) changes, so a hit is always safe to show. Loads call [beginLoad] before querying, which starts observing
+ * the thread and hands out a generation; [put] rejects the page if the thread changed since. [ConversationDataSource] still verifies the first page in the
+ * background after serving a hit, as a guard against changes that bypass the observer.
+ */
+object ConversationPageCache {
+
+  private val TAG = Log.tag(ConversationPageCache::class.java)
+
+  private const val MAX_THREADS = 8
+  private const val MAX_THREADS_LOW_MEMORY = 2
+
+  private val entries: LRUCache<Long, Entry> by lazy {
+    LRUCache(if (Util.isLowMemory(AppDependencies.application)) MAX_THREADS_LOW_MEMORY else MAX_THREADS)
+  }
+
+  private val threadObservers: MutableMap<Long, ThreadObservers> = HashMap()
+
+  /** Per-thread generation, dropped whenever the thread is invalidated so that a load that started before can tell. */
+  private val generations: MutableMap<Long, Long> = HashMap()
+  private var nextGeneration: Long = 0
+
+  private var observersRegistered = false
+
+  private val messageObserver = DatabaseObserver.MessageObserver { messageId -> invalidateMessage(messageId) }
+
+  private val memoryCallbacks = object : ComponentCallbacks2 {
+    override fun onTrimMemory(level: Int) {
+      if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+        clear()
+      }
+    }
+
+    override fun onConfigurationChanged(newConfig: Configuration) = Unit
+
+    @Deprecated("Deprecated in Java")
+    override fun onLowMemory() {
+      clear()
+    }
+  }
+
+  /**
+   * Returns the cached first page for the thread if it was cached with the same [baseSize] and display flags, otherwise null.
+   */
+  @JvmStatic
+  @Synchronized
+  fun get(threadId: Long, baseSize: Int, flags: Int): Entry? {
+    val entry = entries[threadId] ?: return null
+
+    return if (entry.baseSize == baseSize && entry.flags == flags) {
+      entry
+    } else {
+      remove(threadId)
+      null
+    }
+  }
+
+  /**
+   * Must be called before querying a page that may be passed to [put]. Starts observing the thread, so that changes made while the page is loading are
+   * not missed, and returns the generation to pass to [put].
+   */
+  @JvmStatic
+  @Synchronized
+  fun beginLoad(threadId: Long): Long {
+    registerObserversIfNecessary()
+
+    if (!threadObservers.containsKey(threadId)) {
+      val observers = ThreadObservers(
+        conversation = object : DatabaseObserver.ConversationObserver {
+          override fun onChanged() = remove(threadId)
+          override fun onMessagesChanged(messageIds: Set<Long>) = remove(threadId)
+        },
+        insert = DatabaseObserver.MessageObserver { remove(threadId) }
+      )
+      threadObservers[threadId] = observers
+      AppDependencies.databaseObserver.registerConversationObserver(threadId, observers.conversation)
+      AppDependencies.databaseObserver.registerMessageInsertObserver(threadId, observers.insert)
+    }
+
+    return generations.getOrPut(threadId) { nextGeneration++ }
+  }
+
+  /**
+   * Caches the page, unless the thread was invalidated since [beginLoad] returned [generation].
+   */
+  @JvmStatic
+  @Synchronized
+  fun put(threadId: Long, generation: Long, entry: Entry) {
+    val observers = threadObservers[threadId]
+    if (observers == null || generations[threadId] != generation) {
+      Log.d(TAG, "[put, thread $threadId] Thread changed while the page was loading, not caching.")
+      return
+    }
+
+    observers.recipients.clear()
+    for ((recipientId, snapshot) in entry.recipients) {
+      observers.recipients += Recipient.live(recipientId)
+        .observable()
+        .filter { !it.hasSameContent(snapshot) }
+        .firstElement()
+        .subscribe { remove(threadId) }
+    }
+
+    if (generations[threadId] == generation) {
+      entries[threadId] = entry
+    }
+    trimObservers()
+  }
+
+  @JvmStatic
+  @Synchronized
+  fun remove(threadId: Long) {
+    entries.remove(threadId)
+    generations.remove(threadId)
+    threadObservers.remove(threadId)?.unregister()
+  }
+
+  @JvmStatic
+  @Synchronized
+  fun clear() {
+    if (entries.isNotEmpty()) {
+      Log.d(TAG, "Clearing ${entries.size} cached pages.")
+    }
+
+    entries.clear()
+    generations.clear()
+    threadObservers.values.forEach { it.unregister() }
+    threadObservers.clear()
+  }
+
+  @Synchronized
+  private fun invalidateMessage(messageId: MessageId) {
+    val threadId = entries.entries.firstOrNull { (_, entry) -> messageId.id in entry.messageIds }?.key ?: return
+    remove(threadId)
+  }
+
+  /**
+   * Threads that fell out of the LRU (or whose load never finished) still have observers registered -- clean those up. Their generation goes with them,
+   * so a load still in flight for one of them won't be cached.
+   */
+  private fun trimObservers() {
+    val evicted = threadObservers.keys.filterNot { entries.containsKey(it) }
+    for (threadId in evicted) {
+      generations.remove(threadId)
+      threadObservers.remove(threadId)?.unregister()
+    }
+  }
+
+  private fun registerObserversIfNecessary() {
+    if (!observersRegistered) {
+      AppDependencies.databaseObserver.registerMessageUpdateObserver(messageObserver)
+      AppDependencies.application.registerComponentCallbacks(memoryCallbacks)
+      observersRegistered = true
+    }
+  }
+
+  private class ThreadObservers(
+    val conversation: DatabaseObserver.ConversationObserver,
+    val insert: DatabaseObserver.MessageObserver,
+    val recipients: CompositeDisposable = CompositeDisposable()
+  ) {
+    fun unregister() {
+      AppDependencies.databaseObserver.unregisterObserver(conversation)
+      AppDependencies.databaseObserver.unregisterObserver(insert)
+      recipients.dispose()
+    }
+  }
+
+  /**
+   * @param baseSize The number of messages in the thread at the time the page was loaded, as reported by [ConversationDataSource.size].
+   * @param flags Display flags that change the composition of the page (e.g. hidden message request placeholder).
+   * @param length The number of rows that were requested when the page was loaded.
+   * @param elements The message elements of the page, not including the thread header.
+   * @param recipients The recipients whose names the page renders, as they were when it was loaded.
+   */
+  class Entry(
+    val baseSize: Int,
+    val flags: Int,
+    val length: Int,
+    val elements: List<MappingModel<*>>,
+    val messageIds: Set<Long>,
+    val recipients: Map<RecipientId, Recipient>
+  )
+}
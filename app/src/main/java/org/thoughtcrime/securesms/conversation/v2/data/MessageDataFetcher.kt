@@ -59,7 +59,7 @@ object MessageDataFetcher {
     val startTimeNanos = System.nanoTime()
     val context = AppDependencies.application
 
-    val messageIds: List<Long> = messageRecords.map { it.id }
+    val messageIds = LongArray(messageRecords.size) { messageRecords[it].id }
     val executor = SignalExecutors.BOUNDED
 
     val mentionsFuture = executor.submitTimed {
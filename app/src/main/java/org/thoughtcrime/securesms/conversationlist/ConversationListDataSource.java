@@ -58,6 +58,7 @@ abstract class ConversationListDataSource implements PagedDataSource<Long, Conve
 
   @Override
   public int size() {
+    SignalTrace.beginSection("ConversationListDataSource#size");
     long startTime = System.currentTimeMillis();
     int  count     = getTotalCount();
 
@@ -66,6 +67,7 @@ abstract class ConversationListDataSource implements PagedDataSource<Long, Conve
     }
 
     Log.d(TAG, "[size(), " + getClass().getSimpleName() + ", " + conversationFilter + "] " + (System.currentTimeMillis() - startTime) + " ms");
+    SignalTrace.endSection();
     return Math.max(1, count);
   }
 
@@ -178,12 +180,17 @@ abstract class ConversationListDataSource implements PagedDataSource<Long, Conve
     private int archivedCount;
     private int unpinnedCount;
 
+    /** Where the last page of unpinned chats ended, so the page after it can be found by key rather than by offset. */
+    private UnpinnedPageEnd lastUnpinnedPage;
+
     UnarchivedConversationListDataSource(@NonNull ChatFolderRecord chatFolder, @NonNull ConversationFilter conversationFilter, boolean showConversationFooterTip) {
       super(chatFolder, conversationFilter, showConversationFooterTip);
     }
 
     @Override
     protected int getTotalCount() {
+      lastUnpinnedPage = null;
+
       int unarchivedCount = threadTable.getUnarchivedConversationListCount(conversationFilter, chatFolder);
 
       pinnedCount   = threadTable.getPinnedConversationListCount(conversationFilter, chatFolder);
@@ -230,7 +237,18 @@ abstract class ConversationListDataSource implements PagedDataSource<Long, Conve
       }
 
       long   unpinnedOffset = Math.max(0, offset - pinnedCount - getHeaderOffset());
-      Cursor unpinnedCursor = threadTable.getUnarchivedConversationList(conversationFilter, false, unpinnedOffset, limit, chatFolder);
+      Cursor unpinnedCursor;
+
+      if (lastUnpinnedPage != null && lastUnpinnedPage.end == unpinnedOffset) {
+        unpinnedCursor = threadTable.getUnarchivedConversationListAfter(conversationFilter, lastUnpinnedPage.key, limit, chatFolder);
+      } else {
+        unpinnedCursor = threadTable.getUnarchivedConversationList(conversationFilter, false, unpinnedOffset, limit, chatFolder);
+      }
+
+      if (unpinnedCursor.moveToLast()) {
+        lastUnpinnedPage = new UnpinnedPageEnd(unpinnedOffset + unpinnedCursor.getCount(), ThreadTable.ConversationListKey.fromCursor(unpinnedCursor));
+      }
+      unpinnedCursor.moveToPosition(-1);
       cursors.add(unpinnedCursor);
 
       boolean shouldInsertConversationFilterFooter = offset + originalLimit >= totalCount && hasConversationFilterFooter();
@@ -277,5 +295,15 @@ abstract class ConversationListDataSource implements PagedDataSource<Long, Conve
     boolean hasConversationFilterFooter() {
       return totalCount >= 1 && conversationFilter != ConversationFilter.OFF;
     }
+
+    private static final class UnpinnedPageEnd {
+      private final long                            end;
+      private final ThreadTable.ConversationListKey key;
+
+      private UnpinnedPageEnd(long end, @NonNull ThreadTable.ConversationListKey key) {
+        this.end = end;
+        this.key = key;
+      }
+    }
   }
 }
@@ -42,6 +42,7 @@ import org.signal.core.util.copyTo
 import org.signal.core.util.count
 import org.signal.core.util.crypto.AttachmentSecret
 import org.signal.core.util.crypto.ClassicDecryptingPartInputStream
+import org.signal.core.util.crypto.ModernDecryptingPartChannel
 import org.signal.core.util.crypto.ModernDecryptingPartInputStream
 import org.signal.core.util.crypto.ModernEncryptingPartOutputStream
 import org.signal.core.util.delete
@@ -83,6 +84,7 @@ import org.thoughtcrime.securesms.attachments.LocalStickerAttachment
 import org.thoughtcrime.securesms.attachments.WallpaperAttachment
 import org.thoughtcrime.securesms.audio.AudioHash
 import org.thoughtcrime.securesms.backup.v2.ArchivedMediaObject
+import org.thoughtcrime.securesms.backup.v2.database.ArchiveChildCursor
 import org.thoughtcrime.securesms.backup.v2.exporters.ChatItemArchiveExporter
 import org.thoughtcrime.securesms.database.AttachmentTable.Companion.DATA_FILE
 import org.thoughtcrime.securesms.database.AttachmentTable.Companion.DATA_HASH_END
@@ -97,6 +99,7 @@ import org.thoughtcrime.securesms.database.model.MessageRecord
 import org.thoughtcrime.securesms.database.model.databaseprotos.AudioWaveFormData
 import org.thoughtcrime.securesms.dependencies.AppDependencies
 import org.thoughtcrime.securesms.jobs.AttachmentDownloadJob
+import org.thoughtcrime.securesms.jobs.AttachmentPreviewJob
 import org.thoughtcrime.securesms.jobs.AttachmentUploadJob
 import org.thoughtcrime.securesms.jobs.GenerateAudioWaveFormJob
 import org.thoughtcrime.securesms.keyvalue.SignalStore
@@ -114,8 +117,10 @@ import org.whispersystems.signalservice.internal.crypto.PaddingInputStream
 import java.io.ByteArrayInputStream
 import java.io.File
 import java.io.FileNotFoundException
+import java.io.FilterOutputStream
 import java.io.IOException
 import java.io.InputStream
+import java.io.OutputStream
 import java.security.DigestInputStream
 import java.security.MessageDigest
 import java.security.NoSuchAlgorithmException
@@ -178,6 +183,18 @@ class AttachmentTable(
     const val OFFLOAD_RESTORED_AT = "offload_restored_at"
     const val QUOTE_TARGET_CONTENT_TYPE = "quote_target_content_type"
     const val METADATA_ID = "metadata_id"
+    const val PREVIEW_FILE = "preview_file"
+    const val PREVIEW_RANDOM = "preview_random"
+    const val PREVIEW_WIDTH = "preview_width"
+    const val PREVIEW_HEIGHT = "preview_height"
+
+    /** Clears a row's preview, for when it lets go of the data file the preview was made from. */
+    private val CLEARED_PREVIEW_VALUES: Array<Pair<String, Any?>> = arrayOf(
+      PREVIEW_FILE to null,
+      PREVIEW_RANDOM to null,
+      PREVIEW_WIDTH to 0,
+      PREVIEW_HEIGHT to 0
+    )
 
     private const val DIRECTORY = "parts"
 
@@ -282,7 +299,11 @@ class AttachmentTable(
         $OFFLOAD_RESTORED_AT INTEGER DEFAULT 0,
         $QUOTE_TARGET_CONTENT_TYPE TEXT DEFAULT NULL,
         $ARCHIVE_THUMBNAIL_TRANSFER_STATE INTEGER DEFAULT ${ArchiveTransferState.NONE.value},
-        $METADATA_ID INTEGER DEFAULT NULL REFERENCES ${AttachmentMetadataTable.TABLE_NAME} (${AttachmentMetadataTable.ID})
+        $METADATA_ID INTEGER DEFAULT NULL REFERENCES ${AttachmentMetadataTable.TABLE_NAME} (${AttachmentMetadataTable.ID}),
+        $PREVIEW_FILE TEXT DEFAULT NULL,
+        $PREVIEW_RANDOM BLOB DEFAULT NULL,
+        $PREVIEW_WIDTH INTEGER DEFAULT 0,
+        $PREVIEW_HEIGHT INTEGER DEFAULT 0
       )
       """
 
@@ -337,6 +358,20 @@ class AttachmentTable(
     return getDataStream(attachmentId, offset) ?: throw FileNotFoundException("No stream for: $attachmentId")
   }
 
+  /**
+   * Opens an attachment's data for random access, or returns null if it has no data or is in the classic format, which can only be read as a stream.
+   */
+  @Throws(IOException::class)
+  fun openAttachmentChannel(attachmentId: AttachmentId): ModernDecryptingPartChannel? {
+    val dataInfo = getDataFileInfo(attachmentId) ?: return null
+
+    return if (dataInfo.random.size == 32) {
+      ModernDecryptingPartChannel.open(attachmentSecret, dataInfo.random, dataInfo.file)
+    } else {
+      null
+    }
+  }
+
   @Throws(IOException::class)
   fun getAttachmentStream(localArchivableAttachment: LocalArchivableAttachment): InputStream {
     return try {
@@ -531,27 +566,27 @@ class AttachmentTable(
     }
   }
 
-  fun getAttachmentsForMessagesArchive(mmsIds: Collection<Long>): Map<Long, List<DatabaseAttachment>> {
-    if (mmsIds.isEmpty()) {
-      return emptyMap()
-    }
-
-    val query = SqlUtil.buildFastCollectionQuery(MESSAGE_ID, mmsIds)
-    val where = "(${query.where}) AND $QUOTE != $QUOTE_PENDING_TRANSCODE"
-
-    return readableDatabase
-      .select(*PROJECTION_WITH_METADATA)
-      .from(TABLE_NAME_WITH_METADTA)
-      .where(where, query.whereArgs)
-      .orderBy("$TABLE_NAME.$ID ASC")
-      .run()
-      .groupBy { cursor ->
-        val attachment = cursor.readAttachment()
-        attachment.mmsId to attachment
-      }
+  /**
+   * Reads the attachments of the messages being exported that were received in the given range, in export order. See [ArchiveChildCursor].
+   */
+  fun getAttachmentsForArchiveExport(startDateReceived: Long, endDateReceived: Long): ArchiveChildCursor<DatabaseAttachment> {
+    return ArchiveChildCursor.query(
+      db = readableDatabase,
+      childTable = TABLE_NAME_WITH_METADTA,
+      messageIdColumn = "$TABLE_NAME.$MESSAGE_ID",
+      childIdColumn = "$TABLE_NAME.$ID",
+      projection = PROJECTION_WITH_METADATA,
+      where = "$TABLE_NAME.$QUOTE != $QUOTE_PENDING_TRANSCODE",
+      startDateReceived = startDateReceived,
+      endDateReceived = endDateReceived
+    ) { it.readAttachment() }
   }
 
   fun getAttachmentsForMessages(mmsIds: Collection<Long?>): Map<Long, List<DatabaseAttachment>> {
+    return getAttachmentsForMessages(mmsIds.filterNotNull().toLongArray())
+  }
+
+  fun getAttachmentsForMessages(mmsIds: LongArray): Map<Long, List<DatabaseAttachment>> {
     if (mmsIds.isEmpty()) {
       return emptyMap()
     }
@@ -1158,19 +1193,32 @@ class AttachmentTable(
    * specific attachment can be put into the offloaded state on demand.
    */
   fun debugOffloadAttachment(attachmentId: AttachmentId): Int {
-    return writableDatabase
-      .update(TABLE_NAME)
-      .values(
-        TRANSFER_STATE to TRANSFER_RESTORE_OFFLOADED,
-        DATA_FILE to null,
-        DATA_RANDOM to null,
-        TRANSFORM_PROPERTIES to null,
-        DATA_HASH_START to null,
-        OFFLOAD_RESTORED_AT to 0
-      )
-      .where("$ID = ?", attachmentId.id)
-      .run()
-      .also { AppDependencies.databaseObserver.notifyAttachmentUpdatedObservers() }
+    val where = "$ID = ?"
+    val whereArgs = SqlUtil.buildArgs(attachmentId.id)
+    var orphanedPreviews: Set<String> = emptySet()
+
+    val updateCount = writableDatabase.withinTransaction { db ->
+      val previews = getPreviewFiles(db, where, whereArgs)
+
+      db.update(TABLE_NAME)
+        .values(
+          TRANSFER_STATE to TRANSFER_RESTORE_OFFLOADED,
+          DATA_FILE to null,
+          DATA_RANDOM to null,
+          TRANSFORM_PROPERTIES to null,
+          DATA_HASH_START to null,
+          OFFLOAD_RESTORED_AT to 0,
+          *CLEARED_PREVIEW_VALUES
+        )
+        .where(where, whereArgs)
+        .run()
+        .also { orphanedPreviews = getOrphanedPreviewFiles(db, previews) }
+    }
+
+    deleteDataFiles(orphanedPreviews, emptySet())
+    AppDependencies.databaseObserver.notifyAttachmentUpdatedObservers()
+
+    return updateCount
   }
 
   /**
@@ -1453,32 +1501,40 @@ class AttachmentTable(
       if (idsToOffload.isNotEmpty()) {
         // Eligibility is re-checked at write time, since anything could have changed while we were deriving mediaIds outside of a transaction.
         val idQuery = SqlUtil.buildFastCollectionQuery(ID, idsToOffload)
+        var orphanedPreviews: Set<String> = emptySet()
 
-        offloadedCount += writableDatabase
-          .update(TABLE_NAME)
-          .values(
-            TRANSFER_STATE to TRANSFER_RESTORE_OFFLOADED,
-            DATA_FILE to null,
-            DATA_RANDOM to null,
-            TRANSFORM_PROPERTIES to null,
-            DATA_HASH_START to null,
-            OFFLOAD_RESTORED_AT to 0
-          )
-          .where(
-            """
-            ${idQuery.where} AND
-            ${eligibilityClause("")} AND
-            EXISTS (
-              SELECT 1
-              FROM ${MessageTable.TABLE_NAME}
-              WHERE
-                ${MessageTable.TABLE_NAME}.${MessageTable.ID} = $TABLE_NAME.$MESSAGE_ID AND
-                ${MessageTable.TABLE_NAME}.${MessageTable.DATE_RECEIVED} < $oldestAllowedDateReceived
+        offloadedCount += writableDatabase.withinTransaction { db ->
+          val previews = getPreviewFiles(db, idQuery.where, idQuery.whereArgs)
+
+          db.update(TABLE_NAME)
+            .values(
+              TRANSFER_STATE to TRANSFER_RESTORE_OFFLOADED,
+              DATA_FILE to null,
+              DATA_RANDOM to null,
+              TRANSFORM_PROPERTIES to null,
+              DATA_HASH_START to null,
+              OFFLOAD_RESTORED_AT to 0,
+              *CLEARED_PREVIEW_VALUES
             )
-            """,
-            idQuery.whereArgs
-          )
-          .run()
+            .where(
+              """
+              ${idQuery.where} AND
+              ${eligibilityClause("")} AND
+              EXISTS (
+                SELECT 1
+                FROM ${MessageTable.TABLE_NAME}
+                WHERE
+                  ${MessageTable.TABLE_NAME}.${MessageTable.ID} = $TABLE_NAME.$MESSAGE_ID AND
+                  ${MessageTable.TABLE_NAME}.${MessageTable.DATE_RECEIVED} < $oldestAllowedDateReceived
+              )
+              """,
+              idQuery.whereArgs
+            )
+            .run()
+            .also { orphanedPreviews = getOrphanedPreviewFiles(db, previews) }
+        }
+
+        deleteDataFiles(orphanedPreviews, emptySet())
       }
     }
 
@@ -1546,7 +1602,7 @@ class AttachmentTable(
     val deleteCount = writableDatabase.withinTransaction { db ->
       val metadataIdsToCleanup: MutableSet<Long> = mutableSetOf()
 
-      db.select(DATA_FILE, CONTENT_TYPE, ID, METADATA_ID)
+      db.select(DATA_FILE, CONTENT_TYPE, ID, METADATA_ID, PREVIEW_FILE)
         .from(TABLE_NAME)
         .where("$MESSAGE_ID = ?", mmsId)
         .run()
@@ -1562,6 +1618,7 @@ class AttachmentTable(
 
           if (filePath != null && isSafeToDeleteDataFile(filePath, attachmentId)) {
             filePathsToDelete += filePath
+            cursor.requireString(PREVIEW_FILE)?.let { filePathsToDelete += it }
             contentType?.let { contentTypesToDelete += it }
           }
         }
@@ -1571,6 +1628,7 @@ class AttachmentTable(
         .run()
 
       SignalDatabase.attachmentMetadata.cleanupById(metadataIdsToCleanup)
+      SignalDatabase.messageLog.onAttachmentsDeletedForMessage(mmsId)
 
       AppDependencies.databaseObserver.notifyAttachmentDeletedObservers()
 
@@ -1616,7 +1674,7 @@ class AttachmentTable(
     writableDatabase.withinTransaction { db ->
       val metadataIdsToCleanup: MutableSet<Long> = mutableSetOf()
 
-      db.select(DATA_FILE, CONTENT_TYPE, ID, METADATA_ID)
+      db.select(DATA_FILE, CONTENT_TYPE, ID, METADATA_ID, PREVIEW_FILE)
         .from(TABLE_NAME)
         .where("$MESSAGE_ID = ?", messageId)
         .run()
@@ -1628,6 +1686,7 @@ class AttachmentTable(
 
           if (filePath != null && isSafeToDeleteDataFile(filePath, id)) {
             filePathsToDelete += filePath
+            cursor.requireString(PREVIEW_FILE)?.let { filePathsToDelete += it }
             contentType?.let { contentTypesToDelete += it }
           }
         }
@@ -1644,6 +1703,10 @@ class AttachmentTable(
           REMOTE_INCREMENTAL_DIGEST_CHUNK_SIZE to 0,
           THUMBNAIL_FILE to null,
           THUMBNAIL_RANDOM to null,
+          PREVIEW_FILE to null,
+          PREVIEW_RANDOM to null,
+          PREVIEW_WIDTH to 0,
+          PREVIEW_HEIGHT to 0,
           FILE_NAME to null,
           CAPTION to null,
           DATA_SIZE to 0,
@@ -1683,7 +1746,7 @@ class AttachmentTable(
     var deletedMessageId: Long? = null
 
     writableDatabase.withinTransaction { db ->
-      db.select(DATA_FILE, CONTENT_TYPE, MESSAGE_ID, METADATA_ID)
+      db.select(DATA_FILE, CONTENT_TYPE, MESSAGE_ID, METADATA_ID, PREVIEW_FILE)
         .from(TABLE_NAME)
         .where("$ID = ?", id.id)
         .run()
@@ -1697,6 +1760,7 @@ class AttachmentTable(
           val contentType = cursor.requireString(CONTENT_TYPE)
           deletedMessageId = cursor.requireLong(MESSAGE_ID)
           val metadataId = cursor.requireLongOrNull(METADATA_ID)
+          val previewPath = cursor.requireString(PREVIEW_FILE)
 
           db.delete(TABLE_NAME)
             .where("$ID = ?", id.id)
@@ -1706,6 +1770,7 @@ class AttachmentTable(
 
           if (filePath != null && isSafeToDeleteDataFile(filePath, id)) {
             filePathsToDelete += filePath
+            previewPath?.let { filePathsToDelete += it }
             contentType?.let { contentTypesToDelete += it }
           }
 
@@ -1783,12 +1848,13 @@ class AttachmentTable(
     val filesInDb: MutableSet<String> = HashSet(filesOnDisk.size)
 
     readableDatabase.withinTransaction { db ->
-      db.select(DATA_FILE, THUMBNAIL_FILE)
+      db.select(DATA_FILE, THUMBNAIL_FILE, PREVIEW_FILE)
         .from(TABLE_NAME)
         .run()
         .forEach { cursor ->
           cursor.requireString(DATA_FILE)?.let { filesInDb += it }
           cursor.requireString(THUMBNAIL_FILE)?.let { filesInDb += it }
+          cursor.requireString(PREVIEW_FILE)?.let { filesInDb += it }
         }
     }
 
@@ -1811,11 +1877,21 @@ class AttachmentTable(
    * Only do this if the file is known to not exist or has some other critical problem!
    */
   fun clearUsagesOfDataFile(file: File) {
-    val updateCount = writableDatabase
-      .update(TABLE_NAME)
-      .values(DATA_FILE to null)
-      .where("$DATA_FILE = ?", file.absolutePath)
-      .run()
+    val where = "$DATA_FILE = ?"
+    val whereArgs = SqlUtil.buildArgs(file.absolutePath)
+    var orphanedPreviews: Set<String> = emptySet()
+
+    val updateCount = writableDatabase.withinTransaction { db ->
+      val previews = getPreviewFiles(db, where, whereArgs)
+
+      db.update(TABLE_NAME)
+        .values(DATA_FILE to null, *CLEARED_PREVIEW_VALUES)
+        .where(where, whereArgs)
+        .run()
+        .also { orphanedPreviews = getOrphanedPreviewFiles(db, previews) }
+    }
+
+    deleteDataFiles(orphanedPreviews, emptySet())
 
     Log.i(TAG, "[clearUsagesOfFile] Cleared $updateCount usages of $file", true)
   }
@@ -2181,6 +2257,10 @@ class AttachmentTable(
     if (MediaUtil.isAudio(existingPlaceholder)) {
       GenerateAudioWaveFormJob.enqueue(existingPlaceholder.attachmentId)
     }
+
+    if (!archiveRestore && AttachmentPreviewJob.isEligible(existingPlaceholder)) {
+      AttachmentPreviewJob.enqueue(existingPlaceholder.attachmentId)
+    }
   }
 
   @Throws(IOException::class)
@@ -2544,26 +2624,85 @@ class AttachmentTable(
 
     // TODO We don't dedupe here because we're assuming that we should have caught any dupe scenarios on first insert. We could consider doing dupe checks here though.
 
+    updateAttachmentDataFile(attachmentId, existingDataFileInfo.file, newDataFileInfo.length, newDataFileInfo.random, mediaStream.mimeType, mediaStream.width, mediaStream.height)
+  }
+
+  /**
+   * Like [updateAttachmentData], but takes a [PendingDataFile] that has already been written and closed rather than a stream to copy from. The
+   * pending file replaces the attachment's data file, or is deleted if it can't.
+   */
+  @Throws(MmsException::class)
+  fun updateAttachmentData(
+    databaseAttachment: DatabaseAttachment,
+    dataFile: PendingDataFile,
+    mimeType: String,
+    width: Int,
+    height: Int
+  ) {
+    val attachmentId = databaseAttachment.attachmentId
+    val existingDataFileInfo: DataFileInfo? = getDataFileInfo(attachmentId)
+
+    if (existingDataFileInfo == null) {
+      dataFile.delete()
+      throw MmsException("No attachment data found!")
+    }
+
+    if (!dataFile.file.renameTo(existingDataFileInfo.file)) {
+      Log.w(TAG, "[updateAttachmentData] Couldn't rename ${dataFile.file.path} to ${existingDataFileInfo.file.path}")
+      dataFile.delete()
+      throw MmsException("Couldn't rename ${dataFile.file.path} to ${existingDataFileInfo.file.path}")
+    }
+
+    updateAttachmentDataFile(attachmentId, existingDataFileInfo.file, dataFile.length, dataFile.random, mimeType, width, height)
+  }
+
+  /**
+   * Creates an empty data file that can be written to directly, for producers that would otherwise have to buffer everything to hand
+   * [updateAttachmentData] a stream. Once written and closed, pass it to [updateAttachmentData], or [PendingDataFile.delete] it.
+   */
+  @Throws(IOException::class)
+  fun newPendingDataFile(): PendingDataFile {
+    val file = newDataFile(context)
+    val encryptingStreamData = ModernEncryptingPartOutputStream.createFor(attachmentSecret, file, false)
+
+    return PendingDataFile(file, encryptingStreamData.first, encryptingStreamData.second)
+  }
+
+  private fun updateAttachmentDataFile(attachmentId: AttachmentId, file: File, length: Long, random: ByteArray, mimeType: String, width: Int, height: Int) {
+    val stalePreviews: MutableSet<String> = mutableSetOf()
+
     writableDatabase.withinTransaction { db ->
+      db.select(PREVIEW_FILE)
+        .from(TABLE_NAME)
+        .where("($ID = ? OR $DATA_FILE = ?) AND $PREVIEW_FILE NOT NULL", attachmentId.id, file.absolutePath)
+        .run()
+        .forEach { stalePreviews += it.requireNonNullString(PREVIEW_FILE) }
+
       val contentValues = contentValuesOf(
-        DATA_SIZE to newDataFileInfo.length,
-        CONTENT_TYPE to mediaStream.mimeType,
-        DATA_FILE to newDataFileInfo.file.absolutePath,
-        DATA_RANDOM to newDataFileInfo.random
+        DATA_SIZE to length,
+        CONTENT_TYPE to mimeType,
+        DATA_FILE to file.absolutePath,
+        DATA_RANDOM to random,
+        PREVIEW_FILE to null,
+        PREVIEW_RANDOM to null,
+        PREVIEW_WIDTH to 0,
+        PREVIEW_HEIGHT to 0
       )
 
-      if (mediaStream.width > 0 && mediaStream.height > 0) {
-        contentValues.put(WIDTH, mediaStream.width)
-        contentValues.put(HEIGHT, mediaStream.height)
+      if (width > 0 && height > 0) {
+        contentValues.put(WIDTH, width)
+        contentValues.put(HEIGHT, height)
       }
 
       val updateCount = db.update(TABLE_NAME)
         .values(contentValues)
-        .where("$ID = ? OR $DATA_FILE = ?", attachmentId.id, existingDataFileInfo.file.absolutePath)
+        .where("$ID = ? OR $DATA_FILE = ?", attachmentId.id, file.absolutePath)
         .run()
 
       Log.i(TAG, "[updateAttachmentData] Updated $updateCount rows.")
     }
+
+    deleteDataFiles(stalePreviews, emptySet())
   }
 
   fun duplicateAttachmentsForMessage(destinationMessageId: Long, sourceMessageId: Long, excludedIds: Collection<Long>) {
@@ -2627,6 +2766,118 @@ class AttachmentTable(
       }
   }
 
+  /**
+   * Returns the preview of the attachment's data file, if one has been generated. Previews belong to the data file rather than to a row, so an
+   * attachment that was deduped onto another's file shares its preview.
+   */
+  fun getPreviewFileInfo(attachmentId: AttachmentId): PreviewFileInfo? {
+    return readableDatabase
+      .select(PREVIEW_FILE, PREVIEW_RANDOM, PREVIEW_WIDTH, PREVIEW_HEIGHT)
+      .from(TABLE_NAME)
+      .where("$DATA_FILE = (SELECT $DATA_FILE FROM $TABLE_NAME WHERE $ID = ?) AND $PREVIEW_FILE NOT NULL", attachmentId.id)
+      .limit(1)
+      .run()
+      .readToSingleObject { cursor ->
+        PreviewFileInfo(
+          file = File(cursor.requireNonNullString(PREVIEW_FILE)),
+          random = cursor.requireNonNullBlob(PREVIEW_RANDOM),
+          width = cursor.requireInt(PREVIEW_WIDTH),
+          height = cursor.requireInt(PREVIEW_HEIGHT)
+        )
+      }
+  }
+
+  @Throws(IOException::class)
+  fun getAttachmentPreviewStream(preview: PreviewFileInfo): InputStream {
+    return ModernDecryptingPartInputStream.createFor(attachmentSecret, preview.random, preview.file, 0)
+  }
+
+  /**
+   * Stores a written and closed [PendingDataFile] as the preview of [source], for every attachment that shares its data file. The pending file is
+   * deleted instead if the attachment's data has been replaced since [source] was read, or if another preview beat this one to it.
+   *
+   * @return True if the preview was stored.
+   */
+  fun setPreview(source: DataFileInfo, preview: PendingDataFile, width: Int, height: Int): Boolean {
+    val stored = writableDatabase.withinTransaction { db ->
+      val currentRandom: ByteArray? = db
+        .select(DATA_RANDOM)
+        .from(TABLE_NAME)
+        .where("$ID = ? AND $DATA_FILE = ?", source.id.id, source.file.absolutePath)
+        .run()
+        .readToSingleObject { it.requireBlob(DATA_RANDOM) }
+
+      if (currentRandom == null || !currentRandom.contentEquals(source.random)) {
+        Log.i(TAG, "[setPreview] Data for ${source.id} changed while its preview was generated. Discarding.")
+        return@withinTransaction false
+      }
+
+      val hasPreview = db
+        .exists(TABLE_NAME)
+        .where("$DATA_FILE = ? AND $PREVIEW_FILE NOT NULL", source.file.absolutePath)
+        .run()
+
+      if (hasPreview) {
+        return@withinTransaction false
+      }
+
+      db.update(TABLE_NAME)
+        .values(
+          PREVIEW_FILE to preview.file.absolutePath,
+          PREVIEW_RANDOM to preview.random,
+          PREVIEW_WIDTH to width,
+          PREVIEW_HEIGHT to height
+        )
+        .where("$DATA_FILE = ?", source.file.absolutePath)
+        .run() > 0
+    }
+
+    if (!stored) {
+      preview.delete()
+    }
+
+    return stored
+  }
+
+  /**
+   * Finds images without a preview in the [threadLimit] most recently active threads, taking up to [perThreadLimit] of the newest from each,
+   * newest threads first.
+   */
+  fun getRecentImagesWithoutPreview(threadLimit: Int, perThreadLimit: Int): List<AttachmentId> {
+    val threadIds: List<Long> = readableDatabase
+      .select(ThreadTable.ID)
+      .from(ThreadTable.TABLE_NAME)
+      .where("${ThreadTable.ACTIVE} = 1")
+      .orderBy("${ThreadTable.DATE} DESC")
+      .limit(threadLimit)
+      .run()
+      .readToList { it.requireLong(ThreadTable.ID) }
+
+    return threadIds.flatMap { threadId ->
+      readableDatabase
+        .select("$TABLE_NAME.$ID")
+        .from("$TABLE_NAME INNER JOIN ${MessageTable.TABLE_NAME} ON $TABLE_NAME.$MESSAGE_ID = ${MessageTable.TABLE_NAME}.${MessageTable.ID}")
+        .where(
+          """
+          ${MessageTable.TABLE_NAME}.${MessageTable.THREAD_ID} = ? AND
+          ${MessageTable.TABLE_NAME}.${MessageTable.VIEW_ONCE} = 0 AND
+          $CONTENT_TYPE LIKE 'image/%' AND
+          $CONTENT_TYPE != '${MediaUtil.IMAGE_GIF}' AND
+          $QUOTE = 0 AND
+          $STICKER_PACK_ID IS NULL AND
+          $TRANSFER_STATE = $TRANSFER_PROGRESS_DONE AND
+          $DATA_FILE NOT NULL AND
+          NOT EXISTS (SELECT 1 FROM $TABLE_NAME AS preview WHERE preview.$DATA_FILE = $TABLE_NAME.$DATA_FILE AND preview.$PREVIEW_FILE NOT NULL)
+          """,
+          threadId
+        )
+        .orderBy("${MessageTable.TABLE_NAME}.${MessageTable.DATE_RECEIVED} DESC")
+        .limit(perThreadLimit)
+        .run()
+        .readToList { AttachmentId(it.requireLong(ID)) }
+    }
+  }
+
   fun getDataFilePath(attachmentId: AttachmentId): String? {
     return readableDatabase
       .select(DATA_FILE)
@@ -2982,6 +3233,26 @@ class AttachmentTable(
       .run()
   }
 
+  /**
+   * Returns the preview files of the rows matching [where]. Read these before the rows let go of their data file, and then pass them to
+   * [getOrphanedPreviewFiles] in the same transaction to find the ones that can be deleted.
+   */
+  private fun getPreviewFiles(db: SQLiteDatabase, where: String, whereArgs: Array<String>): Set<String> {
+    return db
+      .select(PREVIEW_FILE)
+      .from(TABLE_NAME)
+      .where("($where) AND $PREVIEW_FILE NOT NULL", whereArgs)
+      .run()
+      .readToSet { it.requireNonNullString(PREVIEW_FILE) }
+  }
+
+  /**
+   * Of the given [previewFiles], returns the ones that no attachment refers to anymore.
+   */
+  private fun getOrphanedPreviewFiles(db: SQLiteDatabase, previewFiles: Set<String>): Set<String> {
+    return previewFiles.filterNot { db.exists(TABLE_NAME).where("$PREVIEW_FILE = ?", it).run() }.toSet()
+  }
+
   private fun deleteDataFiles(filePaths: Set<String>, contentTypes: Set<String>) {
     for (path in filePaths) {
       if (File(path).delete()) {
@@ -4354,6 +4625,44 @@ class AttachmentTable(
     return newDataFileInfo.file.absolutePath
   }
 
+  /**
+   * A new data file being written to directly. See [newPendingDataFile].
+   */
+  class PendingDataFile(
+    val file: File,
+    val random: ByteArray,
+    output: OutputStream
+  ) : FilterOutputStream(output) {
+
+    var length: Long = 0
+      private set
+
+    override fun write(b: Int) {
+      out.write(b)
+      length++
+    }
+
+    override fun write(b: ByteArray, off: Int, len: Int) {
+      out.write(b, off, len)
+      length += len
+    }
+
+    /**
+     * Closes and deletes the file, for when it won't be used.
+     */
+    fun delete() {
+      try {
+        close()
+      } catch (e: IOException) {
+        Log.w(TAG, "Failed to close pending data file.", e)
+      }
+
+      if (!file.delete()) {
+        Log.w(TAG, "Failed to delete pending data file ${file.path}")
+      }
+    }
+  }
+
   class DataFileWriteResult(
     val file: File,
     val length: Long,
@@ -4387,6 +4696,16 @@ class AttachmentTable(
     val random: ByteArray
   )
 
+  /**
+   * A downscaled copy of an image attachment, stored encrypted alongside its data file. [width] and [height] are as displayed, after orientation.
+   */
+  class PreviewFileInfo(
+    val file: File,
+    val random: ByteArray,
+    val width: Int,
+    val height: Int
+  )
+
   enum class ThumbnailRestoreState(val value: Int) {
     /** No thumbnail downloaded. */
     NONE(0),
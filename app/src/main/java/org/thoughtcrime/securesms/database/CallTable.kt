@@ -273,18 +273,18 @@ class CallTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTabl
       .readToSingleObject(Call.Deserializer)
   }
 
-  fun getCallsForCache(messageIds: Collection<Long>): Map<Long, Call> {
-    val queries = SqlUtil.buildCollectionQuery(MESSAGE_ID, messageIds)
-    val maps = queries.map { query ->
-      readableDatabase
-        .select()
-        .from(TABLE_NAME)
-        .where("$EVENT != ${Event.serialize(Event.DELETE)} AND ${query.where}", query.whereArgs)
-        .run()
-        .readToMap { c -> c.requireLong(MESSAGE_ID) to Call.deserialize(c) }
+  fun getCallsForCache(messageIds: LongArray): Map<Long, Call> {
+    if (messageIds.isEmpty()) {
+      return emptyMap()
     }
 
-    return maps.flatten()
+    val query = SqlUtil.buildFastCollectionQuery(MESSAGE_ID, messageIds)
+    return readableDatabase
+      .select()
+      .from(TABLE_NAME)
+      .where("$EVENT != ${Event.serialize(Event.DELETE)} AND ${query.where}", query.whereArgs)
+      .run()
+      .readToMap { c -> c.requireLong(MESSAGE_ID) to Call.deserialize(c) }
   }
 
   /**
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.content.ContentValues
+import android.content.Context
+import androidx.core.content.contentValuesOf
+import org.signal.core.util.SqlUtil
+import org.signal.core.util.deleteAll
+import org.signal.core.util.requireInt
+import org.signal.core.util.requireLong
+import org.signal.core.util.requireNonNullString
+import org.signal.core.util.select
+import org.signal.core.util.withinTransaction
+
+/**
+ * A snapshot of the phone numbers in the system contacts as of the last CDS refresh, along with the version of each raw contact they came from.
+ *
+ * Comparing the stored versions against the current ones tells us which raw contacts changed, so a refresh only needs to re-read those from the contacts
+ * provider rather than every number in the address book.
+ *
+ * Raw contacts without any numbers are stored with a null [NUMBER], so that we remember we've already seen them.
+ */
+class CdsContactSnapshotTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTable(context, databaseHelper) {
+  companion object {
+    const val TABLE_NAME = "cds_contact_snapshot"
+
+    private const val ID = "_id"
+    private const val RAW_CONTACT_ID = "raw_contact_id"
+    private const val VERSION = "version"
+    private const val NUMBER = "number"
+
+    const val CREATE_TABLE = """
+      CREATE TABLE $TABLE_NAME (
+        $ID INTEGER PRIMARY KEY,
+        $RAW_CONTACT_ID INTEGER NOT NULL,
+        $VERSION INTEGER NOT NULL,
+        $NUMBER TEXT DEFAULT NULL
+      )
+    """
+
+    val CREATE_INDEXES = arrayOf(
+      "CREATE INDEX cds_contact_snapshot_raw_contact_id_index ON $TABLE_NAME ($RAW_CONTACT_ID)"
+    )
+  }
+
+  /**
+   * @return The version of every raw contact in the snapshot, keyed by raw contact ID.
+   */
+  fun getVersions(): Map<Long, Int> {
+    val versions: MutableMap<Long, Int> = HashMap()
+
+    readableDatabase
+      .select(RAW_CONTACT_ID, VERSION)
+      .from(TABLE_NAME)
+      .run()
+      .use { cursor ->
+        while (cursor.moveToNext()) {
+          versions[cursor.requireLong(RAW_CONTACT_ID)] = cursor.requireInt(VERSION)
+        }
+      }
+
+    return versions
+  }
+
+  /**
+   * @return Every distinct display number in the snapshot.
+   */
+  fun getAllNumbers(): Set<String> {
+    val numbers: MutableSet<String> = HashSet()
+
+    readableDatabase
+      .select("DISTINCT $NUMBER")
+      .from(TABLE_NAME)
+      .where("$NUMBER NOT NULL")
+      .run()
+      .use { cursor ->
+        while (cursor.moveToNext()) {
+          numbers += cursor.requireNonNullString(NUMBER)
+        }
+      }
+
+    return numbers
+  }
+
+  /**
+   * Replaces the snapshot entries for every raw contact in [updated], and removes the ones in [removed].
+   *
+   * @param updated The new version and display numbers of each changed raw contact.
+   */
+  fun applyChanges(updated: Map<Long, RawContact>, removed: Collection<Long>) {
+    if (updated.isEmpty() && removed.isEmpty()) {
+      return
+    }
+
+    writableDatabase.withinTransaction { db ->
+      SqlUtil.buildCollectionQuery(RAW_CONTACT_ID, updated.keys + removed)
+        .forEach { db.delete(TABLE_NAME, it.where, it.whereArgs) }
+
+      insert(db, updated)
+    }
+  }
+
+  /**
+   * Replaces the entire snapshot.
+   */
+  fun replaceAll(contacts: Map<Long, RawContact>) {
+    writableDatabase.withinTransaction { db ->
+      db.deleteAll(TABLE_NAME)
+      insert(db, contacts)
+    }
+  }
+
+  fun clearAll() {
+    writableDatabase.deleteAll(TABLE_NAME)
+  }
+
+  private fun insert(db: SQLiteDatabase, contacts: Map<Long, RawContact>) {
+    val values: List<ContentValues> = contacts.flatMap { (rawContactId, contact) ->
+      if (contact.numbers.isEmpty()) {
+        listOf(contentValuesOf(RAW_CONTACT_ID to rawContactId, VERSION to contact.version, NUMBER to null))
+      } else {
+        contact.numbers.map { contentValuesOf(RAW_CONTACT_ID to rawContactId, VERSION to contact.version, NUMBER to it) }
+      }
+    }
+
+    SqlUtil.buildBulkInsert(TABLE_NAME, arrayOf(RAW_CONTACT_ID, VERSION, NUMBER), values)
+      .forEach { db.execSQL(it.where, it.whereArgs) }
+  }
+
+  data class RawContact(val version: Int, val numbers: Set<String>)
+}
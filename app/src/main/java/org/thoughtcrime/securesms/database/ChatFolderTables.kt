@@ -237,12 +237,12 @@ class ChatFolderTables(context: Context?, databaseHelper: SignalDatabase?) : Dat
    * Given a list of folders, maps a folder id to the folder's unread count and whether all the chats in the folder are muted
    */
   fun getUnreadCountAndEmptyAndMutedStatusForFolders(folders: List<ChatFolderRecord>): HashMap<Long, Triple<Int, Boolean, Boolean>> {
+    SignalDatabase.threads.retainChatFolderStatuses(folders)
+
     val map: HashMap<Long, Triple<Int, Boolean, Boolean>> = hashMapOf()
     folders.map { folder ->
-      val unreadCount = SignalDatabase.threads.getUnreadCountByChatFolder(folder)
-      val isEmpty = !SignalDatabase.threads.hasChatInFolder(folder)
-      val isMuted = !SignalDatabase.threads.hasUnmutedChatsInFolder(folder)
-      map[folder.id] = Triple(unreadCount, isEmpty, isMuted)
+      val status = SignalDatabase.threads.getChatFolderStatus(folder)
+      map[folder.id] = Triple(status.unreadCount, status.isEmpty, status.isMuted)
     }
     return map
   }
@@ -1,9 +1,12 @@
 package org.thoughtcrime.securesms.database;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import org.jetbrains.annotations.NotNull;
+import org.signal.core.util.collections.LongObjectMap;
+import org.signal.core.util.collections.LongSet;
 import org.signal.core.util.concurrent.SignalExecutors;
 import org.thoughtcrime.securesms.database.model.MessageId;
 import org.thoughtcrime.securesms.recipients.Recipient;
@@ -11,14 +14,19 @@ import org.thoughtcrime.securesms.recipients.RecipientId;
 import org.thoughtcrime.securesms.service.webrtc.links.CallLinkRoomId;
 import org.signal.core.util.concurrent.SerialExecutor;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Allows listening to database changes to varying degrees of specificity.
@@ -30,6 +38,7 @@ public class DatabaseObserver {
   private static final String KEY_CONVERSATION          = "Conversation:";
   private static final String KEY_VERBOSE_CONVERSATION  = "VerboseConversation:";
   private static final String KEY_CONVERSATION_LIST     = "ConversationList";
+  private static final String KEY_THREAD_UPDATE         = "ThreadUpdate";
   private static final String KEY_PAYMENT               = "Payment:";
   private static final String KEY_ALL_PAYMENTS          = "AllPayments";
   private static final String KEY_CHAT_COLORS           = "ChatColors";
@@ -52,34 +61,48 @@ public class DatabaseObserver {
 
   private final Executor    executor;
 
-  private final Set<Observer>                      conversationListObservers;
-  private final Map<Long, Set<Observer>>           conversationObservers;
-  private final Map<Long, Set<Observer>>           verboseConversationObservers;
-  private final Map<Long, Set<Observer>>           conversationDeleteObservers;
-  private final Map<UUID, Set<Observer>>           paymentObservers;
-  private final Map<Long, Set<Observer>>           scheduledMessageObservers;
-  private final Set<Observer>                      allPaymentsObservers;
-  private final Set<Observer>                      chatColorsObservers;
-  private final Set<Observer>                      stickerObservers;
-  private final Set<Observer>                      stickerPackObservers;
-  private final Set<Observer>                      attachmentUpdatedObservers;
-  private final Set<Observer>                      attachmentDeletedObservers;
-  private final Set<MessageObserver>               messageUpdateObservers;
-  private final Map<Long, Set<MessageObserver>>    messageInsertObservers;
-  private final Set<Observer>                      notificationProfileObservers;
-  private final Map<RecipientId, Set<Observer>>    storyObservers;
-  private final Set<Observer>                      callUpdateObservers;
-  private final Map<CallLinkRoomId, Set<Observer>> callLinkObservers;
-  private final Set<InAppPaymentObserver>          inAppPaymentObservers;
-  private final Set<Observer>                      chatFolderObservers;
-  private final Set<Observer>                      starredMessageObservers;
+  private final Set<Observer>                       conversationListObservers;
+  private final LongObjectMap<Set<Observer>>        conversationObservers;
+  private final LongObjectMap<Set<Observer>>        verboseConversationObservers;
+  private final LongObjectMap<Set<Observer>>        conversationDeleteObservers;
+  private final Map<UUID, Set<Observer>>            paymentObservers;
+  private final LongObjectMap<Set<Observer>>        scheduledMessageObservers;
+  private final Set<Observer>                       allPaymentsObservers;
+  private final Set<Observer>                       chatColorsObservers;
+  private final Set<Observer>                       stickerObservers;
+  private final Set<Observer>                       stickerPackObservers;
+  private final Set<Observer>                       attachmentUpdatedObservers;
+  private final Set<Observer>                       attachmentDeletedObservers;
+  private final Set<MessageObserver>                messageUpdateObservers;
+  private final LongObjectMap<Set<MessageObserver>> messageInsertObservers;
+  private final Set<Observer>                       notificationProfileObservers;
+  private final Map<RecipientId, Set<Observer>>     storyObservers;
+  private final Set<Observer>                       callUpdateObservers;
+  private final Map<CallLinkRoomId, Set<Observer>>  callLinkObservers;
+  private final Set<InAppPaymentObserver>           inAppPaymentObservers;
+  private final Set<Observer>                       chatFolderObservers;
+  private final Set<Observer>                       starredMessageObservers;
+
+  private final Object                        coalesceLock;
+  private final LongSet                       dirtyConversations;
+  private final LongSet                       dirtyVerboseConversations;
+  private final LongSet                       dirtyConversationMessages;
+  private final Set<MessageId>                dirtyMessageUpdates;
+  private final LongObjectMap<Set<MessageId>> dirtyMessageInserts;
+  private final LongObjectMap<LongSet>        pendingChangedMessages;
+  private       boolean                       dirtyConversationList;
+  private       boolean                       coalescedFlushScheduled;
+
+  private final NotificationStats stats;
+
+  private final AtomicLong conversationListVersion;
 
   public DatabaseObserver() {
     this.executor                     = new SerialExecutor(SignalExecutors.BOUNDED);
     this.conversationListObservers    = new HashSet<>();
-    this.conversationObservers        = new HashMap<>();
-    this.verboseConversationObservers = new HashMap<>();
-    this.conversationDeleteObservers  = new HashMap<>();
+    this.conversationObservers        = new LongObjectMap<>();
+    this.verboseConversationObservers = new LongObjectMap<>();
+    this.conversationDeleteObservers  = new LongObjectMap<>();
     this.paymentObservers             = new HashMap<>();
     this.allPaymentsObservers         = new HashSet<>();
     this.chatColorsObservers          = new HashSet<>();
@@ -88,15 +111,24 @@ public class DatabaseObserver {
     this.attachmentUpdatedObservers   = new HashSet<>();
     this.attachmentDeletedObservers   = new HashSet<>();
     this.messageUpdateObservers       = new HashSet<>();
-    this.messageInsertObservers       = new HashMap<>();
+    this.messageInsertObservers       = new LongObjectMap<>();
     this.notificationProfileObservers = new HashSet<>();
     this.storyObservers               = new HashMap<>();
-    this.scheduledMessageObservers    = new HashMap<>();
+    this.scheduledMessageObservers    = new LongObjectMap<>();
     this.callUpdateObservers          = new HashSet<>();
     this.callLinkObservers            = new HashMap<>();
     this.inAppPaymentObservers        = new HashSet<>();
     this.chatFolderObservers          = new HashSet<>();
     this.starredMessageObservers      = new HashSet<>();
+    this.coalesceLock                 = new Object();
+    this.dirtyConversations           = new LongSet();
+    this.dirtyVerboseConversations    = new LongSet();
+    this.dirtyConversationMessages    = new LongSet();
+    this.dirtyMessageUpdates          = new LinkedHashSet<>();
+    this.dirtyMessageInserts          = new LongObjectMap<>();
+    this.pendingChangedMessages       = new LongObjectMap<>();
+    this.stats                        = new NotificationStats();
+    this.conversationListVersion      = new AtomicLong();
   }
 
   public void registerConversationListObserver(@NonNull Observer listener) {
@@ -262,17 +294,45 @@ public class DatabaseObserver {
   }
 
   public void notifyConversationListeners(long threadId) {
-    runPostSuccessfulTransaction(KEY_CONVERSATION + threadId, () -> {
-      notifyMapped(conversationObservers, threadId);
-      notifyMapped(verboseConversationObservers, threadId);
+    stats.conversationRequested.incrementAndGet();
+    runPostSuccessfulTransactionCoalesced(KEY_CONVERSATION + threadId, () -> dirtyConversations.add(threadId));
+  }
+
+  /**
+   * Notifies conversation listeners that only the specified messages within the thread have changed. Nothing was inserted or removed, and no message moved
+   * position. Observers that implement {@link ConversationObserver} can use this to refresh just those rows, while plain {@link Observer}s are
+   * invalidated as usual.
+   * <p>
+   * Message ids only become pending once their transaction commits, and are accumulated until the next flush, so each observer receives a single callback
+   * with every changed message.
+   */
+  public void notifyConversationListeners(long threadId, @NonNull Collection<Long> messageIds) {
+    if (messageIds.isEmpty()) {
+      return;
+    }
+
+    LongSet changed = new LongSet(messageIds.size());
+    for (long messageId : messageIds) {
+      changed.add(messageId);
+    }
+
+    stats.conversationRequested.incrementAndGet();
+    runPostSuccessfulTransactionCoalesced(null, () -> {
+      dirtyConversationMessages.add(threadId);
+
+      LongSet pending = pendingChangedMessages.get(threadId);
+      if (pending == null) {
+        pendingChangedMessages.put(threadId, changed);
+      } else {
+        pending.addAll(changed);
+      }
     });
   }
 
   public void notifyVerboseConversationListeners(Set<Long> threadIds) {
     for (long threadId : threadIds) {
-      runPostSuccessfulTransaction(KEY_VERBOSE_CONVERSATION + threadId, () -> {
-        notifyMapped(verboseConversationObservers, threadId);
-      });
+      stats.conversationRequested.incrementAndGet();
+      runPostSuccessfulTransactionCoalesced(KEY_VERBOSE_CONVERSATION + threadId, () -> dirtyVerboseConversations.add(threadId));
     }
   }
 
@@ -289,13 +349,30 @@ public class DatabaseObserver {
   }
 
   public void notifyConversationListListeners() {
-    runPostSuccessfulTransaction(KEY_CONVERSATION_LIST, () -> {
-      for (Observer listener : conversationListObservers) {
-        listener.onChanged();
-      }
+    stats.conversationListRequested.incrementAndGet();
+    runPostSuccessfulTransactionCoalesced(KEY_CONVERSATION_LIST, () -> {
+      conversationListVersion.incrementAndGet();
+      dirtyConversationList = true;
     });
   }
 
+  /**
+   * Like {@link #notifyConversationListListeners()}, but for a change that only touched threads that the caller has already reported to the
+   * {@link ThreadTable}'s list counts. Doesn't bump {@link #getConversationListVersion()}, so those counts can be patched rather than recomputed.
+   */
+  public void notifyConversationListListenersOfThreadUpdate() {
+    stats.conversationListRequested.incrementAndGet();
+    runPostSuccessfulTransactionCoalesced(KEY_THREAD_UPDATE, () -> dirtyConversationList = true);
+  }
+
+  /**
+   * Bumped after every committed change that was reported via {@link #notifyConversationListListeners()}. Anything derived from the conversation
+   * list that was computed at an older version should be considered stale.
+   */
+  public long getConversationListVersion() {
+    return conversationListVersion.get();
+  }
+
   public void notifyPaymentListeners(@NonNull UUID paymentId) {
     runPostSuccessfulTransaction(KEY_PAYMENT + paymentId.toString(), () -> {
       notifyMapped(paymentObservers, paymentId);
@@ -342,18 +419,19 @@ public class DatabaseObserver {
   }
 
   public void notifyMessageUpdateObservers(@NonNull MessageId messageId) {
-    runPostSuccessfulTransaction(KEY_MESSAGE_UPDATE + messageId.toString(), () -> {
-      messageUpdateObservers.stream().forEach(l -> l.onMessageChanged(messageId));
-    });
+    stats.messageUpdateRequested.incrementAndGet();
+    runPostSuccessfulTransactionCoalesced(KEY_MESSAGE_UPDATE + messageId.toString(), () -> dirtyMessageUpdates.add(messageId));
   }
 
   public void notifyMessageInsertObservers(long threadId, @NonNull MessageId messageId) {
-    runPostSuccessfulTransaction(KEY_MESSAGE_INSERT + messageId, () -> {
-      Set<MessageObserver> listeners = messageInsertObservers.get(threadId);
-
-      if (listeners != null) {
-        listeners.stream().forEach(l -> l.onMessageChanged(messageId));
+    stats.messageInsertRequested.incrementAndGet();
+    runPostSuccessfulTransactionCoalesced(KEY_MESSAGE_INSERT + messageId, () -> {
+      Set<MessageId> inserts = dirtyMessageInserts.get(threadId);
+      if (inserts == null) {
+        inserts = new LinkedHashSet<>();
+        dirtyMessageInserts.put(threadId, inserts);
       }
+      inserts.add(messageId);
     });
   }
 
@@ -417,6 +495,135 @@ public class DatabaseObserver {
     });
   }
 
+  /**
+   * Rather than enqueueing a task per notification, this marks the relevant key as dirty and makes sure a single flush is scheduled on the executor.
+   * Anything that becomes dirty before that flush runs is delivered with it, so a burst of notifications for the same thread or message (e.g. processing a
+   * batch of envelopes) results in one callback per observer.
+   * <p>
+   * {@code markDirty} is run while holding {@link #coalesceLock}. Pass a null {@code dedupeKey} when every call carries its own data, so that none of them
+   * are dropped.
+   */
+  private void runPostSuccessfulTransactionCoalesced(@Nullable String dedupeKey, @NonNull Runnable markDirty) {
+    Runnable task = () -> {
+      boolean scheduleFlush;
+
+      synchronized (coalesceLock) {
+        markDirty.run();
+        scheduleFlush           = !coalescedFlushScheduled;
+        coalescedFlushScheduled = true;
+      }
+
+      if (scheduleFlush) {
+        executor.execute(this::flushCoalesced);
+      }
+    };
+
+    if (dedupeKey != null) {
+      SignalDatabase.runPostSuccessfulTransaction(dedupeKey, task);
+    } else {
+      SignalDatabase.runPostSuccessfulTransaction(task);
+    }
+  }
+
+  private void flushCoalesced() {
+    long[]               conversations;
+    long[]               verboseConversations;
+    long[]               conversationMessages;
+    List<LongSet>        changedMessages;
+    Set<MessageId>       messageUpdates;
+    long[]               messageInsertThreadIds;
+    List<Set<MessageId>> messageInserts;
+    boolean              conversationList;
+
+    synchronized (coalesceLock) {
+      conversations          = dirtyConversations.toLongArray();
+      verboseConversations   = dirtyVerboseConversations.toLongArray();
+      conversationMessages   = dirtyConversationMessages.toLongArray();
+      messageUpdates         = new LinkedHashSet<>(dirtyMessageUpdates);
+      messageInsertThreadIds = dirtyMessageInserts.keysToArray();
+      messageInserts         = new ArrayList<>(messageInsertThreadIds.length);
+      changedMessages        = new ArrayList<>(conversationMessages.length);
+      conversationList       = dirtyConversationList;
+
+      for (long threadId : messageInsertThreadIds) {
+        messageInserts.add(dirtyMessageInserts.get(threadId));
+      }
+
+      for (long threadId : conversationMessages) {
+        changedMessages.add(pendingChangedMessages.remove(threadId));
+      }
+
+      dirtyConversations.clear();
+      dirtyVerboseConversations.clear();
+      dirtyConversationMessages.clear();
+      dirtyMessageUpdates.clear();
+      dirtyMessageInserts.clear();
+      dirtyConversationList   = false;
+      coalescedFlushScheduled = false;
+    }
+
+    for (int i = 0; i < messageInsertThreadIds.length; i++) {
+      Set<MessageObserver> listeners = messageInsertObservers.get(messageInsertThreadIds[i]);
+
+      for (MessageId messageId : messageInserts.get(i)) {
+        stats.messageInsertDelivered.incrementAndGet();
+        if (listeners != null) {
+          listeners.forEach(l -> l.onMessageChanged(messageId));
+        }
+      }
+    }
+
+    for (MessageId messageId : messageUpdates) {
+      stats.messageUpdateDelivered.incrementAndGet();
+      messageUpdateObservers.forEach(l -> l.onMessageChanged(messageId));
+    }
+
+    LongSet fullyInvalidated = LongSet.of(conversations);
+
+    for (long threadId : conversations) {
+      stats.conversationDelivered.incrementAndGet();
+      notifyMapped(conversationObservers, threadId);
+      notifyMapped(verboseConversationObservers, threadId);
+    }
+
+    for (int i = 0; i < conversationMessages.length; i++) {
+      long    threadId = conversationMessages[i];
+      LongSet changed  = changedMessages.get(i);
+
+      // A full invalidation of the thread in the same flush already covers these messages
+      if (changed == null || changed.isEmpty() || fullyInvalidated.contains(threadId)) {
+        continue;
+      }
+
+      stats.conversationDelivered.incrementAndGet();
+
+      Set<Long> unmodifiableChanged = Collections.unmodifiableSet(changed.toSet());
+      notifyMappedMessages(conversationObservers, threadId, unmodifiableChanged);
+      notifyMappedMessages(verboseConversationObservers, threadId, unmodifiableChanged);
+    }
+
+    for (long threadId : verboseConversations) {
+      if (fullyInvalidated.contains(threadId)) {
+        continue;
+      }
+
+      stats.conversationDelivered.incrementAndGet();
+      notifyMapped(verboseConversationObservers, threadId);
+    }
+
+    if (conversationList) {
+      stats.conversationListDelivered.incrementAndGet();
+      notifySet(conversationListObservers);
+    }
+  }
+
+  /**
+   * @return Counts of notifications requested by the database layer versus the number actually delivered after coalescing, since process start.
+   */
+  public @NonNull NotificationStats getNotificationStats() {
+    return stats;
+  }
+
   private <K, V> void registerMapped(@NonNull Map<K, Set<V>> map, @NonNull K key, @NonNull V listener) {
     Set<V> listeners = map.get(key);
 
@@ -434,6 +641,27 @@ public class DatabaseObserver {
     }
   }
 
+  private <V> void registerMapped(@NonNull LongObjectMap<Set<V>> map, long key, @NonNull V listener) {
+    Set<V> listeners = map.get(key);
+
+    if (listeners == null) {
+      listeners = new HashSet<>();
+      map.put(key, listeners);
+    }
+
+    listeners.add(listener);
+  }
+
+  private <V> void unregisterMapped(@NonNull LongObjectMap<Set<V>> map, @NonNull V listener) {
+    for (int slot = 0; slot < map.getCapacity(); slot++) {
+      Set<V> listeners = map.valueAt(slot);
+
+      if (listeners != null) {
+        listeners.remove(listener);
+      }
+    }
+  }
+
   private static <K> void notifyMapped(@NonNull Map<K, Set<Observer>> map, @NonNull K key) {
     Set<Observer> listeners = map.get(key);
 
@@ -444,6 +672,30 @@ public class DatabaseObserver {
     }
   }
 
+  private static void notifyMapped(@NonNull LongObjectMap<Set<Observer>> map, long key) {
+    Set<Observer> listeners = map.get(key);
+
+    if (listeners != null) {
+      for (Observer listener : listeners) {
+        listener.onChanged();
+      }
+    }
+  }
+
+  private static void notifyMappedMessages(@NonNull LongObjectMap<Set<Observer>> map, long threadId, @NonNull Set<Long> messageIds) {
+    Set<Observer> listeners = map.get(threadId);
+
+    if (listeners != null) {
+      for (Observer listener : listeners) {
+        if (listener instanceof ConversationObserver) {
+          ((ConversationObserver) listener).onMessagesChanged(messageIds);
+        } else {
+          listener.onChanged();
+        }
+      }
+    }
+  }
+
   private static void notifySet(@NonNull Set<Observer> set) {
     for (final Observer observer : set) {
       observer.onChanged();
@@ -473,6 +725,41 @@ public class DatabaseObserver {
     void onChanged();
   }
 
+  /**
+   * An {@link Observer} for a conversation that can be told exactly which messages changed, when that is known. Any change that isn't limited to a
+   * known set of existing messages still comes through {@link #onChanged()}.
+   */
+  public interface ConversationObserver extends Observer {
+    /**
+     * Called when only the specified messages changed in place. Executed on a serial executor, so don't do any long-running tasks!
+     */
+    void onMessagesChanged(@NonNull Set<Long> messageIds);
+  }
+
+  /**
+   * Running totals of notifications that went through coalescing. "Requested" counts every notify call, "delivered" counts the dispatches that actually
+   * reached observers.
+   */
+  public static final class NotificationStats {
+    private final AtomicLong conversationRequested     = new AtomicLong();
+    private final AtomicLong conversationDelivered     = new AtomicLong();
+    private final AtomicLong conversationListRequested = new AtomicLong();
+    private final AtomicLong conversationListDelivered = new AtomicLong();
+    private final AtomicLong messageUpdateRequested    = new AtomicLong();
+    private final AtomicLong messageUpdateDelivered    = new AtomicLong();
+    private final AtomicLong messageInsertRequested    = new AtomicLong();
+    private final AtomicLong messageInsertDelivered    = new AtomicLong();
+
+    public long getConversationRequested()     { return conversationRequested.get(); }
+    public long getConversationDelivered()     { return conversationDelivered.get(); }
+    public long getConversationListRequested() { return conversationListRequested.get(); }
+    public long getConversationListDelivered() { return conversationListDelivered.get(); }
+    public long getMessageUpdateRequested()    { return messageUpdateRequested.get(); }
+    public long getMessageUpdateDelivered()    { return messageUpdateDelivered.get(); }
+    public long getMessageInsertRequested()    { return messageInsertRequested.get(); }
+    public long getMessageInsertDelivered()    { return messageInsertDelivered.get(); }
+  }
+
   public interface MessageObserver {
     void onMessageChanged(@NonNull MessageId messageId);
   }
@@ -22,6 +22,7 @@ import androidx.annotation.VisibleForTesting;
 
 import org.thoughtcrime.securesms.dependencies.AppDependencies;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -65,6 +66,10 @@ public abstract class DatabaseTable {
     AppDependencies.getDatabaseObserver().notifyConversationListeners(threadId);
   }
 
+  protected void notifyConversationListeners(long threadId, Collection<Long> messageIds) {
+    AppDependencies.getDatabaseObserver().notifyConversationListeners(threadId, messageIds);
+  }
+
   protected void notifyVerboseConversationListeners(Set<Long> threadIds) {
     AppDependencies.getDatabaseObserver().notifyVerboseConversationListeners(threadIds);
   }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.content.Context
+import androidx.core.content.contentValuesOf
+import org.signal.core.util.SqlUtil
+import org.signal.core.util.delete
+import org.signal.core.util.logging.Log
+import org.signal.core.util.readToSingleInt
+import org.signal.core.util.requireNonNullString
+import org.signal.core.util.requireString
+import org.signal.core.util.select
+import org.signal.core.util.withinTransaction
+
+/**
+ * Remembers how raw phone number strings (usually from system contacts) were formatted as E164s, so that they don't have to go through libphonenumber
+ * again on every contact refresh.
+ *
+ * Formatting depends on our own number (e.g. for filling in a missing area code), so every entry is stored alongside the [FORMATTER_KEY] it was
+ * formatted with, and entries for any other key are ignored and eventually pruned.
+ */
+class E164MemoTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTable(context, databaseHelper) {
+  companion object {
+    private val TAG = Log.tag(E164MemoTable::class.java)
+
+    const val TABLE_NAME = "e164_memo"
+
+    private const val ID = "_id"
+    private const val INPUT = "input"
+    private const val E164 = "e164"
+    private const val FORMATTER_KEY = "formatter_key"
+
+    const val CREATE_TABLE = """
+      CREATE TABLE $TABLE_NAME (
+        $ID INTEGER PRIMARY KEY,
+        $INPUT TEXT NOT NULL UNIQUE ON CONFLICT REPLACE,
+        $E164 TEXT DEFAULT NULL,
+        $FORMATTER_KEY TEXT NOT NULL
+      )
+    """
+  }
+
+  /**
+   * Returns every memoized result for the given formatter key. A null value means the input could not be interpreted as a phone number.
+   */
+  fun getAll(formatterKey: String): Map<String, String?> {
+    val memo: MutableMap<String, String?> = HashMap()
+
+    readableDatabase
+      .select(INPUT, E164)
+      .from(TABLE_NAME)
+      .where("$FORMATTER_KEY = ?", formatterKey)
+      .run()
+      .use { cursor ->
+        while (cursor.moveToNext()) {
+          memo[cursor.requireNonNullString(INPUT)] = cursor.requireString(E164)
+        }
+      }
+
+    return memo
+  }
+
+  fun putAll(formatterKey: String, entries: Map<String, String?>) {
+    if (entries.isEmpty()) {
+      return
+    }
+
+    writableDatabase.withinTransaction { db ->
+      val values = entries.map { (input, e164) -> contentValuesOf(INPUT to input, E164 to e164, FORMATTER_KEY to formatterKey) }
+
+      SqlUtil.buildBulkInsert(TABLE_NAME, arrayOf(INPUT, E164, FORMATTER_KEY), values)
+        .forEach { db.execSQL(it.where, it.whereArgs) }
+    }
+  }
+
+  /**
+   * Deletes everything that wasn't formatted with [formatterKey], along with any input not in [inputs].
+   */
+  fun retainOnly(formatterKey: String, inputs: Set<String>) {
+    writableDatabase.withinTransaction { db ->
+      val staleKeys = db.delete(TABLE_NAME)
+        .where("$FORMATTER_KEY != ?", formatterKey)
+        .run()
+
+      val existing: Set<String> = getAll(formatterKey).keys
+      val removed: Set<String> = existing - inputs
+
+      if (removed.isNotEmpty()) {
+        SqlUtil.buildCollectionQuery(INPUT, removed)
+          .forEach { db.delete(TABLE_NAME, it.where, it.whereArgs) }
+      }
+
+      if (staleKeys > 0 || removed.isNotEmpty()) {
+        Log.d(TAG, "Pruned $staleKeys entries for other formatters and ${removed.size} entries for inputs we no longer have.")
+      }
+    }
+  }
+
+  fun getCount(): Int {
+    return readableDatabase
+      .select("COUNT(*)")
+      .from(TABLE_NAME)
+      .run()
+      .readToSingleInt()
+  }
+}
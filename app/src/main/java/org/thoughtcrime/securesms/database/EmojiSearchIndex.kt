@@ -0,0 +1,246 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+/**
+ * An in-memory index over the rows of the [EmojiSearchTable], built so that a query doesn't need to scan every label.
+ *
+ * Search semantics match the original SQL query (`label LIKE '%query%' OR emoji = query`, ordered by rank and limited). The only exception is that
+ * `%` and `_` in a query are matched literally rather than being treated as wildcards.
+ *
+ * - Entries are kept sorted by (rank, label, emoji), the same order the SQL index returned them in, so "the first N matches by rank" is just the first N
+ *   matching entry positions.
+ * - Queries of [TRIGRAM_LENGTH] or more characters are answered by intersecting the posting lists of their trigrams over the distinct labels, and then
+ *   confirming the candidates with a substring check.
+ * - Shorter queries match a large fraction of labels anyway, so they walk the entries in rank order and stop as soon as they have enough.
+ * - As the user types, each query usually extends the last one. Every label that matches the longer query also matches the shorter one, so the previous
+ *   query's matching labels are filtered rather than starting over.
+ */
+class EmojiSearchIndex private constructor(
+  /** Distinct labels, ASCII-lowercased to match SQLite's case-insensitive LIKE. */
+  private val labels: Array<String>,
+  /** For each label, the positions of the entries that have it, in ascending (i.e. rank) order. */
+  private val labelEntries: Array<IntArray>,
+  private val trigramPostings: Map<Long, IntArray>,
+  private val emojiEntries: Map<String, IntArray>,
+  private val entryLabels: Array<String>,
+  private val entryEmoji: Array<String>,
+  private val entryRanks: IntArray,
+  private val entryLabelIds: IntArray,
+  val maxRank: Int
+) {
+
+  companion object {
+    private const val TRIGRAM_LENGTH = 3
+
+    @JvmStatic
+    fun build(rows: List<Row>): EmojiSearchIndex {
+      val sorted = rows.sortedWith(compareBy<Row> { it.rank }.thenBy { it.label }.thenBy { it.emoji })
+
+      val labelIds: MutableMap<String, Int> = HashMap()
+      val labels: MutableList<String> = ArrayList()
+      val labelEntries: MutableList<MutableList<Int>> = ArrayList()
+      val emojiEntries: MutableMap<String, MutableList<Int>> = HashMap()
+      val entryLabelIds = IntArray(sorted.size)
+
+      sorted.forEachIndexed { position, row ->
+        val normalized = row.label.asciiLowercase()
+        val labelId = labelIds.getOrPut(normalized) {
+          labels += normalized
+          labelEntries += ArrayList<Int>()
+          labels.size - 1
+        }
+
+        labelEntries[labelId] += position
+        entryLabelIds[position] = labelId
+        emojiEntries.getOrPut(row.emoji) { ArrayList() } += position
+      }
+
+      val trigramPostings: MutableMap<Long, MutableList<Int>> = HashMap()
+      labels.forEachIndexed { labelId, label ->
+        val seen: MutableSet<Long> = HashSet()
+        for (i in 0..label.length - TRIGRAM_LENGTH) {
+          val trigram = label.trigramAt(i)
+          if (seen.add(trigram)) {
+            trigramPostings.getOrPut(trigram) { ArrayList() } += labelId
+          }
+        }
+      }
+
+      return EmojiSearchIndex(
+        labels = labels.toTypedArray(),
+        labelEntries = labelEntries.map { it.toIntArray() }.toTypedArray(),
+        trigramPostings = trigramPostings.mapValues { it.value.toIntArray() },
+        emojiEntries = emojiEntries.mapValues { it.value.toIntArray() },
+        entryLabels = sorted.map { it.label }.toTypedArray(),
+        entryEmoji = sorted.map { it.emoji }.toTypedArray(),
+        entryRanks = sorted.map { it.rank }.toIntArray(),
+        entryLabelIds = entryLabelIds,
+        maxRank = sorted.asSequence().map { it.rank }.filter { it != Int.MAX_VALUE }.maxOrNull() ?: 0
+      )
+    }
+
+    /**
+     * SQLite's LIKE is only case-insensitive for ASCII characters, so that's all we fold.
+     */
+    private fun String.asciiLowercase(): String {
+      if (none { it in 'A'..'Z' }) {
+        return this
+      }
+
+      return String(CharArray(length) { i -> this[i].let { c -> if (c in 'A'..'Z') c + ('a' - 'A') else c } })
+    }
+
+    private fun String.trigramAt(index: Int): Long {
+      return (this[index].code.toLong() shl 32) or (this[index + 1].code.toLong() shl 16) or this[index + 2].code.toLong()
+    }
+  }
+
+  val size: Int
+    get() = entryEmoji.size
+
+  private var lastQuery: String? = null
+  private var lastMatchingLabels: IntArray? = null
+
+  /**
+   * Returns up to [limit] entries whose label contains [query] (ignoring ASCII case) or whose emoji is exactly [query], in rank order.
+   */
+  fun search(query: String, limit: Int): List<Entry> {
+    if (query.isEmpty() || limit <= 0) {
+      return emptyList()
+    }
+
+    val normalized = query.asciiLowercase()
+
+    val positions: IntArray = if (normalized.length >= TRIGRAM_LENGTH) {
+      val matchingLabels = findMatchingLabels(normalized)
+      mergeEntryPositions(matchingLabels, emojiEntries[query], limit)
+    } else {
+      scanEntries(normalized, query, limit)
+    }
+
+    return positions.map { Entry(label = entryLabels[it], emoji = entryEmoji[it], rank = entryRanks[it]) }
+  }
+
+  private fun findMatchingLabels(normalized: String): IntArray {
+    synchronized(this) {
+      val previousQuery = lastQuery
+      val previousMatches = lastMatchingLabels
+
+      if (previousQuery != null && previousMatches != null && normalized.startsWith(previousQuery)) {
+        return previousMatches.filter { labels[it].contains(normalized) }.toIntArray().also { remember(normalized, it) }
+      }
+    }
+
+    val postings: List<IntArray> = (0..normalized.length - TRIGRAM_LENGTH)
+      .map { trigramPostings[normalized.trigramAt(it)] ?: return IntArray(0).also { empty -> remember(normalized, empty) } }
+      .sortedBy { it.size }
+
+    var candidates: IntArray = postings.first()
+    for (i in 1 until postings.size) {
+      candidates = intersect(candidates, postings[i])
+      if (candidates.isEmpty()) {
+        break
+      }
+    }
+
+    val matches = if (normalized.length == TRIGRAM_LENGTH) candidates else candidates.filter { labels[it].contains(normalized) }.toIntArray()
+    remember(normalized, matches)
+    return matches
+  }
+
+  @Synchronized
+  private fun remember(query: String, matchingLabels: IntArray) {
+    lastQuery = query
+    lastMatchingLabels = matchingLabels
+  }
+
+  /**
+   * Gathers the entry positions for the matching labels and emoji, keeping only the [limit] lowest (i.e. best ranked).
+   */
+  private fun mergeEntryPositions(matchingLabels: IntArray, emojiPositions: IntArray?, limit: Int): IntArray {
+    var total = emojiPositions?.size ?: 0
+    for (labelId in matchingLabels) {
+      total += labelEntries[labelId].size
+    }
+
+    val positions = IntArray(total)
+    var count = 0
+    for (labelId in matchingLabels) {
+      val entries = labelEntries[labelId]
+      System.arraycopy(entries, 0, positions, count, entries.size)
+      count += entries.size
+    }
+
+    if (emojiPositions != null) {
+      System.arraycopy(emojiPositions, 0, positions, count, emojiPositions.size)
+      count += emojiPositions.size
+    }
+
+    positions.sort()
+
+    val distinct = ArrayList<Int>(minOf(limit, count))
+    var previous = -1
+    for (position in positions) {
+      if (position != previous) {
+        distinct += position
+        previous = position
+        if (distinct.size >= limit) {
+          break
+        }
+      }
+    }
+
+    return distinct.toIntArray()
+  }
+
+  private fun scanEntries(normalized: String, query: String, limit: Int): IntArray {
+    // Labels are shared by many entries, so remember each label's result. 0 = not checked yet, 1 = match, 2 = no match.
+    val labelMatches = ByteArray(labels.size)
+    val positions = ArrayList<Int>(limit)
+
+    for (position in entryEmoji.indices) {
+      val labelId = entryLabelIds[position]
+      if (labelMatches[labelId] == 0.toByte()) {
+        labelMatches[labelId] = if (labels[labelId].contains(normalized)) 1 else 2
+      }
+
+      if (labelMatches[labelId] == 1.toByte() || entryEmoji[position] == query) {
+        positions += position
+        if (positions.size >= limit) {
+          break
+        }
+      }
+    }
+
+    return positions.toIntArray()
+  }
+
+  private fun intersect(a: IntArray, b: IntArray): IntArray {
+    val result = IntArray(minOf(a.size, b.size))
+    var i = 0
+    var j = 0
+    var count = 0
+
+    while (i < a.size && j < b.size) {
+      when {
+        a[i] < b[j] -> i++
+        a[i] > b[j] -> j++
+        else -> {
+          result[count++] = a[i]
+          i++
+          j++
+        }
+      }
+    }
+
+    return result.copyOf(count)
+  }
+
+  class Row(val label: String, val emoji: String, val rank: Int)
+
+  data class Entry(val label: String, val emoji: String, val rank: Int)
+}
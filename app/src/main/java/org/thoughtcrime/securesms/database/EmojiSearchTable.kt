@@ -4,7 +4,7 @@ import android.content.Context
 import android.text.TextUtils
 import androidx.core.content.contentValuesOf
 import org.signal.core.util.exists
-import org.signal.core.util.readToSingleInt
+import org.signal.core.util.logging.Log
 import org.signal.core.util.requireInt
 import org.signal.core.util.requireNonNullString
 import org.signal.core.util.select
@@ -18,6 +18,8 @@ import kotlin.math.max
 class EmojiSearchTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTable(context, databaseHelper) {
 
   companion object {
+    private val TAG = Log.tag(EmojiSearchTable::class.java)
+
     const val TABLE_NAME = "emoji_search"
     const val ID = "_id"
     const val LABEL = "label"
@@ -39,6 +41,9 @@ class EmojiSearchTable(context: Context, databaseHelper: SignalDatabase) : Datab
     )
   }
 
+  @Volatile
+  private var index: EmojiSearchIndex? = null
+
   /**
    * @param query A search query. Doesn't need any special formatted -- it'll be sanitized.
    * @return A list of emoji that are related to the search term, ordered by relevance.
@@ -51,33 +56,10 @@ class EmojiSearchTable(context: Context, databaseHelper: SignalDatabase) : Datab
     }
 
     val limit: Int = max(originalLimit, 200)
-    val entries = mutableListOf<Entry>()
-
-    val maxRank = readableDatabase
-      .select("MAX($RANK) AS max")
-      .from(TABLE_NAME)
-      .where("$RANK != ${Int.MAX_VALUE}")
-      .run()
-      .readToSingleInt()
-
-    readableDatabase
-      .select(LABEL, EMOJI, RANK)
-      .from(TABLE_NAME)
-      .where("$LABEL LIKE ? OR $EMOJI = ?", "%$query%", query)
-      .orderBy("$RANK ASC")
-      .limit(limit)
-      .run()
-      .use { cursor ->
-        while (cursor.moveToNext()) {
-          entries += Entry(
-            label = cursor.requireNonNullString(LABEL),
-            emoji = cursor.requireNonNullString(EMOJI),
-            rank = cursor.requireInt(RANK)
-          )
-        }
-      }
+    val index: EmojiSearchIndex = getIndex()
+    val maxRank = index.maxRank
 
-    return entries
+    return index.search(query, limit)
       .sortedWith { lhs, rhs ->
         val result = similarityScore(query, lhs, maxRank) - similarityScore(query, rhs, maxRank)
         when {
@@ -98,10 +80,15 @@ class EmojiSearchTable(context: Context, databaseHelper: SignalDatabase) : Datab
     localizedSearchIndex: List<EmojiSearchData>,
     englishSearchIndex: List<EmojiSearchData>
   ) {
-    databaseHelper.signalReadableDatabase.withinTransaction { db ->
-      db.delete(TABLE_NAME, null, null)
-      db.insert(localizedSearchIndex)
-      db.insert(englishSearchIndex)
+    val rows: List<EmojiSearchIndex.Row> = localizedSearchIndex.toRows() + englishSearchIndex.toRows()
+
+    synchronized(this) {
+      databaseHelper.signalReadableDatabase.withinTransaction { db ->
+        db.delete(TABLE_NAME, null, null)
+        db.insert(rows)
+      }
+
+      index = EmojiSearchIndex.build(rows)
     }
   }
 
@@ -109,19 +96,60 @@ class EmojiSearchTable(context: Context, databaseHelper: SignalDatabase) : Datab
     return readableDatabase.exists(TABLE_NAME).run()
   }
 
-  private fun SQLiteDatabase.insert(searchIndex: List<EmojiSearchData>) {
-    for (searchData in searchIndex) {
-      for (label in searchData.tags) {
-        val values = contentValuesOf(
-          LABEL to label,
-          EMOJI to searchData.emoji,
-          RANK to if (searchData.rank == 0) Int.MAX_VALUE else searchData.rank
+  /**
+   * The SQLite table is only persistent storage for the search index -- queries are served from memory, which is loaded the first time it's needed.
+   */
+  private fun getIndex(): EmojiSearchIndex {
+    index?.let { return it }
+
+    synchronized(this) {
+      index?.let { return it }
+
+      val rows: MutableList<EmojiSearchIndex.Row> = ArrayList()
+      readableDatabase
+        .select(LABEL, EMOJI, RANK)
+        .from(TABLE_NAME)
+        .run()
+        .use { cursor ->
+          while (cursor.moveToNext()) {
+            rows += EmojiSearchIndex.Row(
+              label = cursor.requireNonNullString(LABEL),
+              emoji = cursor.requireNonNullString(EMOJI),
+              rank = cursor.requireInt(RANK)
+            )
+          }
+        }
+
+      return EmojiSearchIndex.build(rows).also {
+        Log.d(TAG, "Loaded emoji search index with ${it.size} entries.")
+        index = it
+      }
+    }
+  }
+
+  private fun List<EmojiSearchData>.toRows(): List<EmojiSearchIndex.Row> {
+    return this.flatMap { searchData ->
+      searchData.tags.map { label ->
+        EmojiSearchIndex.Row(
+          label = label,
+          emoji = searchData.emoji,
+          rank = if (searchData.rank == 0) Int.MAX_VALUE else searchData.rank
         )
-        insert(TABLE_NAME, null, values)
       }
     }
   }
 
+  private fun SQLiteDatabase.insert(rows: List<EmojiSearchIndex.Row>) {
+    for (row in rows) {
+      val values = contentValuesOf(
+        LABEL to row.label,
+        EMOJI to row.emoji,
+        RANK to row.rank
+      )
+      insert(TABLE_NAME, null, values)
+    }
+  }
+
   /**
    * Ranks how "similar" a match is to the original search term.
    * A lower score means more similar, with 0 being a perfect match.
@@ -130,7 +158,7 @@ class EmojiSearchTable(context: Context, databaseHelper: SignalDatabase) : Datab
    * We determine similarity by how many letters appear before or after the `searchTerm` in the `match`.
    * We give letters that come before the term a bigger weight than those that come after as a way to prefer matches that are prefixed by the `searchTerm`.
    */
-  private fun similarityScore(searchTerm: String, entry: Entry, maxRank: Int): Float {
+  private fun similarityScore(searchTerm: String, entry: EmojiSearchIndex.Entry, maxRank: Int): Float {
     val match: String = entry.label
 
     if (searchTerm == entry.emoji || searchTerm == match) {
@@ -152,15 +180,13 @@ class EmojiSearchTable(context: Context, databaseHelper: SignalDatabase) : Datab
       entry.scaledRank(maxRank)
   }
 
-  private data class Entry(val label: String, val emoji: String, val rank: Int) {
-    fun scaledRank(maxRank: Int): Float {
-      val unranked = 2f
-      val scaleFactor: Float = unranked / maxRank
-      return if (rank == Int.MAX_VALUE) {
-        unranked
-      } else {
-        rank * scaleFactor
-      }
+  private fun EmojiSearchIndex.Entry.scaledRank(maxRank: Int): Float {
+    val unranked = 2f
+    val scaleFactor: Float = unranked / maxRank
+    return if (rank == Int.MAX_VALUE) {
+      unranked
+    } else {
+      rank * scaleFactor
     }
   }
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import okio.ByteString.Companion.toByteString
+import org.thoughtcrime.securesms.database.model.databaseprotos.GroupReceiptBitmaps
+import java.util.BitSet
+
+/**
+ * The receipts for a single outgoing group or story message, as stored in [GroupReceiptTable]. Recipients are referred to by their ordinal in the
+ * message's member namespace, and each status is a bitmap over those ordinals, so changing a recipient's status is a matter of moving one bit.
+ */
+class GroupReceiptSet private constructor(
+  private val recipients: BitSet,
+  private val statuses: Array<BitSet>,
+  private val unidentified: BitSet,
+  private var timestamps: LongArray
+) {
+
+  companion object {
+    /** Every status other than [GroupReceiptTable.STATUS_UNKNOWN] has a bitmap, at the index of its value. Unknown is the absence of all of them. */
+    private const val STATUS_COUNT = GroupReceiptTable.STATUS_FAILED + 1
+
+    @JvmStatic
+    fun empty(): GroupReceiptSet {
+      return GroupReceiptSet(BitSet(), Array(STATUS_COUNT) { BitSet() }, BitSet(), LongArray(0))
+    }
+
+    @JvmStatic
+    fun decode(bytes: ByteArray): GroupReceiptSet {
+      val proto = GroupReceiptBitmaps.ADAPTER.decode(bytes)
+      val recipients = BitSet.valueOf(proto.recipients.toByteArray())
+      val statuses = arrayOf(proto.undelivered, proto.delivered, proto.read, proto.viewed, proto.skipped, proto.failed).map { BitSet.valueOf(it.toByteArray()) }
+      val timestamps = LongArray(recipients.length())
+
+      var previous = 0L
+      var index = 0
+      var ordinal = recipients.nextSetBit(0)
+      while (ordinal >= 0) {
+        previous += proto.timestamps.getOrElse(index++) { 0L }
+        timestamps[ordinal] = previous
+        ordinal = recipients.nextSetBit(ordinal + 1)
+      }
+
+      return GroupReceiptSet(recipients, statuses.toTypedArray(), BitSet.valueOf(proto.unidentified.toByteArray()), timestamps)
+    }
+  }
+
+  val size: Int
+    get() = recipients.cardinality()
+
+  fun isEmpty(): Boolean = recipients.isEmpty
+
+  operator fun contains(ordinal: Int): Boolean = recipients[ordinal]
+
+  /** The recipient ordinals, in ascending order. */
+  fun ordinals(): IntArray = recipients.stream().toArray()
+
+  fun getStatus(ordinal: Int): Int {
+    for (status in 0 until STATUS_COUNT) {
+      if (statuses[status][ordinal]) {
+        return status
+      }
+    }
+    return GroupReceiptTable.STATUS_UNKNOWN
+  }
+
+  fun getTimestamp(ordinal: Int): Long {
+    return if (ordinal < timestamps.size) timestamps[ordinal] else 0L
+  }
+
+  fun isUnidentified(ordinal: Int): Boolean = unidentified[ordinal]
+
+  /**
+   * Adds a recipient with the given status, replacing anything already stored for it.
+   */
+  fun add(ordinal: Int, status: Int, timestamp: Long) {
+    recipients.set(ordinal)
+    unidentified.clear(ordinal)
+    setStatus(ordinal, status)
+    setTimestamp(ordinal, timestamp)
+  }
+
+  /**
+   * Moves a recipient to [status] if it's further along than the one it has, the same way receipts only ever move a message forward.
+   *
+   * @return True if the recipient was changed, otherwise false.
+   */
+  fun update(ordinal: Int, status: Int, timestamp: Long): Boolean {
+    if (ordinal !in this || getStatus(ordinal) >= status) {
+      return false
+    }
+
+    setStatus(ordinal, status)
+    setTimestamp(ordinal, timestamp)
+    return true
+  }
+
+  /**
+   * Sets a recipient's status regardless of the one it has, leaving its timestamp alone.
+   *
+   * @return True if the recipient exists, otherwise false.
+   */
+  fun overrideStatus(ordinal: Int, status: Int): Boolean {
+    if (ordinal !in this) {
+      return false
+    }
+
+    setStatus(ordinal, status)
+    return true
+  }
+
+  /**
+   * @return True if the recipient exists, otherwise false.
+   */
+  fun setUnidentified(ordinal: Int, isUnidentified: Boolean): Boolean {
+    if (ordinal !in this) {
+      return false
+    }
+
+    unidentified.set(ordinal, isUnidentified)
+    return true
+  }
+
+  fun encode(): ByteArray {
+    val deltas = ArrayList<Long>(size)
+    var previous = 0L
+    var ordinal = recipients.nextSetBit(0)
+    while (ordinal >= 0) {
+      deltas += timestamps[ordinal] - previous
+      previous = timestamps[ordinal]
+      ordinal = recipients.nextSetBit(ordinal + 1)
+    }
+
+    return GroupReceiptBitmaps(
+      recipients = recipients.toByteArray().toByteString(),
+      undelivered = statuses[GroupReceiptTable.STATUS_UNDELIVERED].toByteArray().toByteString(),
+      delivered = statuses[GroupReceiptTable.STATUS_DELIVERED].toByteArray().toByteString(),
+      read = statuses[GroupReceiptTable.STATUS_READ].toByteArray().toByteString(),
+      viewed = statuses[GroupReceiptTable.STATUS_VIEWED].toByteArray().toByteString(),
+      skipped = statuses[GroupReceiptTable.STATUS_SKIPPED].toByteArray().toByteString(),
+      failed = statuses[GroupReceiptTable.STATUS_FAILED].toByteArray().toByteString(),
+      unidentified = unidentified.toByteArray().toByteString(),
+      timestamps = deltas
+    ).encode()
+  }
+
+  private fun setStatus(ordinal: Int, status: Int) {
+    for (bitmap in statuses) {
+      bitmap.clear(ordinal)
+    }
+
+    if (status != GroupReceiptTable.STATUS_UNKNOWN) {
+      statuses[status].set(ordinal)
+    }
+  }
+
+  private fun setTimestamp(ordinal: Int, timestamp: Long) {
+    if (ordinal >= timestamps.size) {
+      timestamps = timestamps.copyOf(maxOf(ordinal + 1, timestamps.size * 2))
+    }
+    timestamps[ordinal] = timestamp
+  }
+}
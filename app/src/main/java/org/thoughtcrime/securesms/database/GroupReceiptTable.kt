@@ -7,18 +7,28 @@ import androidx.core.content.contentValuesOf
 import org.signal.core.util.SqlUtil
 import org.signal.core.util.delete
 import org.signal.core.util.deleteAll
-import org.signal.core.util.exists
-import org.signal.core.util.forEach
 import org.signal.core.util.logging.Log
 import org.signal.core.util.readToList
-import org.signal.core.util.requireBoolean
+import org.signal.core.util.readToMap
+import org.signal.core.util.readToSingleInt
+import org.signal.core.util.readToSingleLongOrNull
 import org.signal.core.util.requireInt
 import org.signal.core.util.requireLong
+import org.signal.core.util.requireNonNullBlob
 import org.signal.core.util.select
 import org.signal.core.util.update
 import org.signal.core.util.withinTransaction
+import org.thoughtcrime.securesms.backup.v2.database.ArchiveChildCursor
 import org.thoughtcrime.securesms.recipients.RecipientId
+import org.thoughtcrime.securesms.util.SignalTrace
 
+/**
+ * Stores the per-recipient receipts of outgoing group and story messages.
+ *
+ * Each message has a single row holding a [GroupReceiptSet], where recipients are referred to by a small ordinal rather than their id. Ordinals are
+ * handed out per thread by [MEMBER_TABLE_NAME], so every message in a thread shares them, and a large group costs a few bits per member per message
+ * rather than a row. Ordinals are never reused, even once their recipient is deleted, so existing receipts can't be attributed to someone else.
+ */
 class GroupReceiptTable(context: Context?, databaseHelper: SignalDatabase?) : DatabaseTable(context, databaseHelper), RecipientIdDatabaseReference {
   companion object {
     private val TAG = Log.tag(GroupReceiptTable::class)
@@ -26,10 +36,8 @@ class GroupReceiptTable(context: Context?, databaseHelper: SignalDatabase?) : Da
     const val TABLE_NAME = "group_receipts"
     private const val ID = "_id"
     const val MMS_ID = "mms_id"
-    const val RECIPIENT_ID = "address"
-    const val STATUS = "status"
-    const val TIMESTAMP = "timestamp"
-    const val UNIDENTIFIED = "unidentified"
+    const val THREAD_ID = "thread_id"
+    const val RECEIPTS = "receipts"
     const val STATUS_UNKNOWN = -1
     const val STATUS_UNDELIVERED = 0
     const val STATUS_DELIVERED = 1
@@ -38,132 +46,209 @@ class GroupReceiptTable(context: Context?, databaseHelper: SignalDatabase?) : Da
     const val STATUS_SKIPPED = 4
     const val STATUS_FAILED = 5
 
+    const val MEMBER_TABLE_NAME = "group_receipt_member"
+    private const val MEMBER_ID = "_id"
+    const val MEMBER_THREAD_ID = "thread_id"
+    const val MEMBER_ORDINAL = "ordinal"
+    const val MEMBER_RECIPIENT_ID = "recipient_id"
+
     const val CREATE_TABLE = """
       CREATE TABLE $TABLE_NAME (
-        $ID INTEGER PRIMARY KEY, 
-        $MMS_ID INTEGER, 
-        $RECIPIENT_ID INTEGER, 
-        $STATUS INTEGER, 
-        $TIMESTAMP INTEGER, 
-        $UNIDENTIFIED INTEGER DEFAULT 0
+        $ID INTEGER PRIMARY KEY,
+        $MMS_ID INTEGER UNIQUE,
+        $THREAD_ID INTEGER NOT NULL,
+        $RECEIPTS BLOB NOT NULL
+      )
+    """
+
+    const val CREATE_MEMBER_TABLE = """
+      CREATE TABLE $MEMBER_TABLE_NAME (
+        $MEMBER_ID INTEGER PRIMARY KEY,
+        $MEMBER_THREAD_ID INTEGER NOT NULL,
+        $MEMBER_ORDINAL INTEGER NOT NULL,
+        $MEMBER_RECIPIENT_ID INTEGER DEFAULT NULL,
+        UNIQUE($MEMBER_THREAD_ID, $MEMBER_ORDINAL)
       )
     """
 
     @JvmField
     val CREATE_INDEXES = arrayOf(
-      "CREATE INDEX IF NOT EXISTS group_receipt_mms_id_index ON $TABLE_NAME ($MMS_ID);"
+      "CREATE INDEX IF NOT EXISTS group_receipt_thread_id_index ON $TABLE_NAME ($THREAD_ID)",
+      "CREATE INDEX IF NOT EXISTS group_receipt_member_thread_recipient_index ON $MEMBER_TABLE_NAME ($MEMBER_THREAD_ID, $MEMBER_RECIPIENT_ID)",
+      "CREATE INDEX IF NOT EXISTS group_receipt_member_recipient_id_index ON $MEMBER_TABLE_NAME ($MEMBER_RECIPIENT_ID)"
     )
   }
 
   fun insert(recipientIds: Collection<RecipientId>, mmsId: Long, status: Int, timestamp: Long) {
-    val contentValues: List<ContentValues> = recipientIds.map { recipientId ->
-      contentValuesOf(
-        MMS_ID to mmsId,
-        RECIPIENT_ID to recipientId.serialize(),
-        STATUS to status,
-        TIMESTAMP to timestamp
-      )
+    if (recipientIds.isEmpty()) {
+      return
     }
 
-    val statements = SqlUtil.buildBulkInsert(TABLE_NAME, arrayOf(MMS_ID, RECIPIENT_ID, STATUS, TIMESTAMP), contentValues)
+    SignalTrace.beginSection("GroupReceiptTable#insert")
     writableDatabase.withinTransaction { db ->
-      statements.forEach { db.execSQL(it.where, it.whereArgs) }
+      val existing = db.getReceiptRow(mmsId)
+      val threadId = existing?.threadId ?: db.getMessageThreadId(mmsId)
+
+      if (threadId != null) {
+        val row = existing ?: ReceiptRow(mmsId, threadId, GroupReceiptSet.empty())
+        for (ordinal in db.getOrCreateOrdinals(threadId, recipientIds).values) {
+          row.receipts.add(ordinal, status, timestamp)
+        }
+        db.writeReceiptRow(row, isNew = existing == null)
+      } else {
+        Log.w(TAG, "Message $mmsId does not exist! Skipping.")
+      }
     }
+    SignalTrace.endSection()
   }
 
-  fun update(recipientId: RecipientId, mmsId: Long, status: Int, timestamp: Long) {
-    writableDatabase
-      .update(TABLE_NAME)
-      .values(
-        STATUS to status,
-        TIMESTAMP to timestamp
-      )
-      .where("$MMS_ID = ? AND $RECIPIENT_ID = ? AND $STATUS < ?", mmsId.toString(), recipientId.serialize(), status.toString())
-      .run()
-  }
+  /**
+   * Inserts the receipts for many messages that don't have any yet, as when restoring a backup.
+   */
+  fun insertAll(messages: Collection<MessageReceipts>) {
+    if (messages.isEmpty()) {
+      return
+    }
 
-  fun setUnidentified(results: Collection<Pair<RecipientId, Boolean>>, mmsId: Long) {
-    val mmsMatchPrefix = "$MMS_ID = $mmsId AND"
-    val unidentifiedQueries = SqlUtil.buildCollectionQuery(
-      column = RECIPIENT_ID,
-      values = results.filter { it.second }.map { it.first.serialize() },
-      prefix = mmsMatchPrefix
-    )
-    val identifiedQueries = SqlUtil.buildCollectionQuery(
-      column = RECIPIENT_ID,
-      values = results.filterNot { it.second }.map { it.first.serialize() },
-      prefix = mmsMatchPrefix
-    )
     writableDatabase.withinTransaction { db ->
-      unidentifiedQueries.forEach {
-        db.update(TABLE_NAME)
-          .values(UNIDENTIFIED to 1)
-          .where(it.where, it.whereArgs)
-          .run()
+      val contentValues: MutableList<ContentValues> = mutableListOf()
+
+      for ((threadId, threadMessages) in messages.groupBy { it.threadId }) {
+        val ordinals = db.getOrCreateOrdinals(threadId, threadMessages.flatMap { message -> message.receipts.map { it.recipientId } }.toSet())
+
+        for (message in threadMessages) {
+          val receipts = GroupReceiptSet.empty()
+          for (info in message.receipts) {
+            val ordinal = ordinals.getValue(info.recipientId)
+            receipts.add(ordinal, info.status, info.timestamp)
+            receipts.setUnidentified(ordinal, info.isUnidentified)
+          }
+
+          contentValues += contentValuesOf(
+            MMS_ID to message.mmsId,
+            THREAD_ID to threadId,
+            RECEIPTS to receipts.encode()
+          )
+        }
       }
 
-      identifiedQueries.forEach {
-        db.update(TABLE_NAME)
-          .values(UNIDENTIFIED to 0)
-          .where(it.where, it.whereArgs)
-          .run()
+      SqlUtil.buildBulkInsert(TABLE_NAME, arrayOf(MMS_ID, THREAD_ID, RECEIPTS), contentValues).forEach {
+        db.execSQL(it.where, it.whereArgs)
       }
     }
   }
 
-  fun setSkipped(recipients: Collection<RecipientId>, mmsId: Long) {
-    val mmsMatchPrefix = "$MMS_ID = $mmsId AND"
-    val queries = SqlUtil.buildCollectionQuery(
-      column = RECIPIENT_ID,
-      values = recipients.map { it.serialize() },
-      prefix = mmsMatchPrefix
-    )
+  fun update(recipientId: RecipientId, mmsId: Long, status: Int, timestamp: Long) {
+    update(listOf(ReceiptUpdate(recipientId, mmsId, status, timestamp)))
+  }
+
+  /**
+   * Applies many receipts at once. Each affected message is read and written a single time, however many of its recipients are updated, and a
+   * recipient's status is only ever moved forward.
+   */
+  fun update(updates: Collection<ReceiptUpdate>) {
+    if (updates.isEmpty()) {
+      return
+    }
+
+    SignalTrace.beginSection("GroupReceiptTable#update")
     writableDatabase.withinTransaction { db ->
-      queries.forEach {
-        db.update(TABLE_NAME)
-          .values(STATUS to STATUS_SKIPPED)
-          .where(it.where, it.whereArgs)
-          .run()
+      val updatesByMessage: Map<Long, List<ReceiptUpdate>> = updates.groupBy { it.mmsId }
+
+      for ((threadId, rows) in db.getReceiptRows(updatesByMessage.keys).groupBy { it.threadId }) {
+        val recipientIds = rows.flatMap { row -> updatesByMessage.getValue(row.mmsId).map { it.recipientId } }.toSet()
+        val ordinals = db.getOrdinals(threadId, recipientIds)
+
+        for (row in rows) {
+          var changed = false
+          for (update in updatesByMessage.getValue(row.mmsId)) {
+            ordinals[update.recipientId]?.forEach { ordinal ->
+              changed = row.receipts.update(ordinal, update.status, update.timestamp) || changed
+            }
+          }
+
+          if (changed) {
+            db.writeReceiptRow(row, isNew = false)
+          }
+        }
       }
     }
+    SignalTrace.endSection()
   }
 
-  fun hasReceipt(mmsId: Long, recipientId: RecipientId): Boolean {
-    return readableDatabase
-      .exists(TABLE_NAME)
-      .where("$MMS_ID = ? AND $RECIPIENT_ID = ?", mmsId, recipientId)
-      .run()
+  fun setUnidentified(results: Collection<Pair<RecipientId, Boolean>>, mmsId: Long) {
+    val unidentified: Map<RecipientId, Boolean> = results.toMap()
+    modify(mmsId, unidentified.keys) { receipts, recipientId, ordinal -> receipts.setUnidentified(ordinal, unidentified.getValue(recipientId)) }
   }
 
-  fun getGroupReceiptInfo(mmsId: Long): List<GroupReceiptInfo> {
-    return readableDatabase
-      .select()
-      .from(TABLE_NAME)
-      .where("$MMS_ID = ?", mmsId)
-      .run()
-      .readToList { it.toGroupReceiptInfo() }
+  fun setSkipped(recipients: Collection<RecipientId>, mmsId: Long) {
+    modify(mmsId, recipients) { receipts, _, ordinal -> receipts.overrideStatus(ordinal, STATUS_SKIPPED) }
   }
 
-  fun getGroupReceiptInfoForMessages(ids: Collection<Long>): Map<Long, List<GroupReceiptInfo>> {
-    if (ids.isEmpty()) {
-      return emptyMap()
+  fun hasReceipt(mmsId: Long, recipientId: RecipientId): Boolean {
+    val db = readableDatabase
+    val row = db.getReceiptRow(mmsId) ?: return false
+
+    return db.getOrdinals(row.threadId, setOf(recipientId))[recipientId]?.any { it in row.receipts } ?: false
+  }
+
+  /**
+   * The same as [hasReceipt], but for many (message, recipient) pairs at once.
+   *
+   * @return The pairs that have a receipt.
+   */
+  fun filterExisting(receipts: Collection<Pair<Long, RecipientId>>): Set<Pair<Long, RecipientId>> {
+    if (receipts.isEmpty()) {
+      return emptySet()
     }
 
-    val messageIdsToGroupReceipts: MutableMap<Long, MutableList<GroupReceiptInfo>> = mutableMapOf()
+    val db = readableDatabase
+    val recipientsByMessage: Map<Long, List<RecipientId>> = receipts.groupBy({ it.first }, { it.second })
+    val existing: MutableSet<Pair<Long, RecipientId>> = HashSet()
 
-    val query = SqlUtil.buildFastCollectionQuery(MMS_ID, ids)
-    readableDatabase
-      .select()
-      .from(TABLE_NAME)
-      .where(query.where, query.whereArgs)
-      .run()
-      .forEach { cursor ->
-        val messageId = cursor.requireLong(MMS_ID)
-        val receipts = messageIdsToGroupReceipts.getOrPut(messageId) { mutableListOf() }
-        receipts += cursor.toGroupReceiptInfo()
+    for ((threadId, rows) in db.getReceiptRows(recipientsByMessage.keys).groupBy { it.threadId }) {
+      val ordinals = db.getOrdinals(threadId, rows.flatMap { recipientsByMessage.getValue(it.mmsId) }.toSet())
+
+      for (row in rows) {
+        for (recipientId in recipientsByMessage.getValue(row.mmsId)) {
+          if (ordinals[recipientId]?.any { it in row.receipts } == true) {
+            existing += row.mmsId to recipientId
+          }
+        }
       }
+    }
+
+    return existing
+  }
+
+  fun getGroupReceiptInfo(mmsId: Long): List<GroupReceiptInfo> {
+    val db = readableDatabase
+    val row = db.getReceiptRow(mmsId) ?: return emptyList()
+
+    return row.receipts.toGroupReceiptInfo(db.getMembers(row.threadId))
+  }
+
+  /**
+   * Reads the receipts of the messages being exported that were received in the given range, in export order, one list per message. See
+   * [ArchiveChildCursor].
+   */
+  fun getGroupReceiptInfoForArchiveExport(startDateReceived: Long, endDateReceived: Long): ArchiveChildCursor<List<GroupReceiptInfo>> {
+    val db = readableDatabase
+    val membersByThread: MutableMap<Long, Map<Int, RecipientId>> = mutableMapOf()
 
-    return messageIdsToGroupReceipts
+    return ArchiveChildCursor.query(
+      db = db,
+      childTable = TABLE_NAME,
+      messageIdColumn = "$TABLE_NAME.$MMS_ID",
+      childIdColumn = "$TABLE_NAME.$ID",
+      projection = arrayOf("$TABLE_NAME.$THREAD_ID", "$TABLE_NAME.$RECEIPTS"),
+      where = null,
+      startDateReceived = startDateReceived,
+      endDateReceived = endDateReceived
+    ) {
+      val members = membersByThread.getOrPut(it.requireLong(THREAD_ID)) { db.getMembers(it.requireLong(THREAD_ID)) }
+      GroupReceiptSet.decode(it.requireNonNullBlob(RECEIPTS)).toGroupReceiptInfo(members)
+    }
   }
 
   fun deleteRowsForMessage(mmsId: Long) {
@@ -174,48 +259,222 @@ class GroupReceiptTable(context: Context?, databaseHelper: SignalDatabase?) : Da
   }
 
   fun deleteAbandonedRows() {
-    writableDatabase
-      .delete(TABLE_NAME)
-      .where("$MMS_ID NOT IN (SELECT ${MessageTable.ID} FROM ${MessageTable.TABLE_NAME})")
-      .run()
+    writableDatabase.withinTransaction { db ->
+      db.delete(TABLE_NAME)
+        .where("$MMS_ID NOT IN (SELECT ${MessageTable.ID} FROM ${MessageTable.TABLE_NAME})")
+        .run()
+
+      db.delete(MEMBER_TABLE_NAME)
+        .where("$MEMBER_THREAD_ID NOT IN (SELECT $THREAD_ID FROM $TABLE_NAME)")
+        .run()
+    }
   }
 
   fun deleteAllRows() {
-    writableDatabase.deleteAll(TABLE_NAME)
+    writableDatabase.withinTransaction { db ->
+      db.deleteAll(TABLE_NAME)
+      db.deleteAll(MEMBER_TABLE_NAME)
+    }
   }
 
   override fun remapRecipient(fromId: RecipientId, toId: RecipientId) {
     val count = writableDatabase
-      .update(TABLE_NAME)
-      .values(RECIPIENT_ID to toId.serialize())
-      .where("$RECIPIENT_ID = ?", fromId)
+      .update(MEMBER_TABLE_NAME)
+      .values(MEMBER_RECIPIENT_ID to toId.serialize())
+      .where("$MEMBER_RECIPIENT_ID = ?", fromId)
       .run()
 
     Log.d(TAG, "Remapped $fromId to $toId. count: $count")
   }
 
+  /**
+   * The recipient's ordinals are left in place, just unassigned, so that they aren't handed to anyone else.
+   */
   override fun onDeletedRecipient(recipientId: RecipientId) {
     val deleted = writableDatabase
-      .delete(TABLE_NAME)
-      .where("$RECIPIENT_ID = ?", recipientId)
+      .update(MEMBER_TABLE_NAME)
+      .values(MEMBER_RECIPIENT_ID to null)
+      .where("$MEMBER_RECIPIENT_ID = ?", recipientId)
       .run()
 
     Log.d(TAG, "Deleted recipient: $deleted")
   }
 
-  private fun Cursor.toGroupReceiptInfo(): GroupReceiptInfo {
-    return GroupReceiptInfo(
-      recipientId = RecipientId.from(this.requireLong(RECIPIENT_ID)),
-      status = this.requireInt(STATUS),
-      timestamp = this.requireLong(TIMESTAMP),
-      isUnidentified = this.requireBoolean(UNIDENTIFIED)
+  /**
+   * Reads, changes, and writes back the receipts of a single message for each of the given recipients, so long as the message has them.
+   */
+  private fun modify(mmsId: Long, recipientIds: Collection<RecipientId>, change: (GroupReceiptSet, RecipientId, Int) -> Boolean) {
+    if (recipientIds.isEmpty()) {
+      return
+    }
+
+    writableDatabase.withinTransaction { db ->
+      val row = db.getReceiptRow(mmsId)
+
+      if (row != null) {
+        var changed = false
+        for ((recipientId, ordinals) in db.getOrdinals(row.threadId, recipientIds)) {
+          for (ordinal in ordinals) {
+            changed = change(row.receipts, recipientId, ordinal) || changed
+          }
+        }
+
+        if (changed) {
+          db.writeReceiptRow(row, isNew = false)
+        }
+      }
+    }
+  }
+
+  private fun SQLiteDatabase.getReceiptRow(mmsId: Long): ReceiptRow? {
+    return this
+      .select(MMS_ID, THREAD_ID, RECEIPTS)
+      .from(TABLE_NAME)
+      .where("$MMS_ID = ?", mmsId)
+      .run()
+      .readToList { it.toReceiptRow() }
+      .firstOrNull()
+  }
+
+  private fun SQLiteDatabase.getReceiptRows(mmsIds: Collection<Long>): List<ReceiptRow> {
+    return SqlUtil.buildCollectionQuery(MMS_ID, mmsIds).flatMap { query ->
+      this
+        .select(MMS_ID, THREAD_ID, RECEIPTS)
+        .from(TABLE_NAME)
+        .where(query.where, query.whereArgs)
+        .run()
+        .readToList { it.toReceiptRow() }
+    }
+  }
+
+  private fun SQLiteDatabase.writeReceiptRow(row: ReceiptRow, isNew: Boolean) {
+    if (isNew) {
+      this.insert(TABLE_NAME, null, contentValuesOf(MMS_ID to row.mmsId, THREAD_ID to row.threadId, RECEIPTS to row.receipts.encode()))
+    } else {
+      this
+        .update(TABLE_NAME)
+        .values(RECEIPTS to row.receipts.encode())
+        .where("$MMS_ID = ?", row.mmsId)
+        .run()
+    }
+  }
+
+  private fun SQLiteDatabase.getMessageThreadId(mmsId: Long): Long? {
+    return this
+      .select(MessageTable.THREAD_ID)
+      .from(MessageTable.TABLE_NAME)
+      .where("${MessageTable.ID} = ?", mmsId)
+      .run()
+      .readToSingleLongOrNull()
+  }
+
+  /**
+   * Every ordinal in the thread that still has a recipient.
+   */
+  private fun SQLiteDatabase.getMembers(threadId: Long): Map<Int, RecipientId> {
+    return this
+      .select(MEMBER_ORDINAL, MEMBER_RECIPIENT_ID)
+      .from(MEMBER_TABLE_NAME)
+      .where("$MEMBER_THREAD_ID = ? AND $MEMBER_RECIPIENT_ID IS NOT NULL", threadId)
+      .run()
+      .readToMap { it.requireInt(MEMBER_ORDINAL) to RecipientId.from(it.requireLong(MEMBER_RECIPIENT_ID)) }
+  }
+
+  /**
+   * The ordinals the given recipients have in the thread, lowest first. A recipient can have more than one if it was merged with another.
+   */
+  private fun SQLiteDatabase.getOrdinals(threadId: Long, recipientIds: Collection<RecipientId>): Map<RecipientId, List<Int>> {
+    val ordinals: MutableMap<RecipientId, MutableList<Int>> = mutableMapOf()
+
+    for (query in SqlUtil.buildCollectionQuery(MEMBER_RECIPIENT_ID, recipientIds.map { it.serialize() }, prefix = "$MEMBER_THREAD_ID = $threadId AND")) {
+      this
+        .select(MEMBER_ORDINAL, MEMBER_RECIPIENT_ID)
+        .from(MEMBER_TABLE_NAME)
+        .where(query.where, query.whereArgs)
+        .orderBy("$MEMBER_ORDINAL ASC")
+        .run()
+        .readToList { RecipientId.from(it.requireLong(MEMBER_RECIPIENT_ID)) to it.requireInt(MEMBER_ORDINAL) }
+        .forEach { (recipientId, ordinal) -> ordinals.getOrPut(recipientId) { mutableListOf() } += ordinal }
+    }
+
+    return ordinals
+  }
+
+  /**
+   * The ordinal to use for each of the given recipients in the thread, handing out new ones to any that don't have one yet.
+   */
+  private fun SQLiteDatabase.getOrCreateOrdinals(threadId: Long, recipientIds: Collection<RecipientId>): Map<RecipientId, Int> {
+    val ordinals: MutableMap<RecipientId, Int> = getOrdinals(threadId, recipientIds).mapValuesTo(mutableMapOf()) { it.value.first() }
+    val missing = recipientIds.filterNot { it in ordinals }
+
+    if (missing.isNotEmpty()) {
+      var next = this
+        .select("IFNULL(MAX($MEMBER_ORDINAL), -1) + 1")
+        .from(MEMBER_TABLE_NAME)
+        .where("$MEMBER_THREAD_ID = ?", threadId)
+        .run()
+        .readToSingleInt()
+
+      val contentValues = missing.map { recipientId ->
+        ordinals[recipientId] = next
+        contentValuesOf(
+          MEMBER_THREAD_ID to threadId,
+          MEMBER_ORDINAL to next++,
+          MEMBER_RECIPIENT_ID to recipientId.serialize()
+        )
+      }
+
+      SqlUtil.buildBulkInsert(MEMBER_TABLE_NAME, arrayOf(MEMBER_THREAD_ID, MEMBER_ORDINAL, MEMBER_RECIPIENT_ID), contentValues).forEach {
+        this.execSQL(it.where, it.whereArgs)
+      }
+    }
+
+    return ordinals
+  }
+
+  private fun Cursor.toReceiptRow(): ReceiptRow {
+    return ReceiptRow(
+      mmsId = this.requireLong(MMS_ID),
+      threadId = this.requireLong(THREAD_ID),
+      receipts = GroupReceiptSet.decode(this.requireNonNullBlob(RECEIPTS))
     )
   }
 
+  private fun GroupReceiptSet.toGroupReceiptInfo(members: Map<Int, RecipientId>): List<GroupReceiptInfo> {
+    return this.ordinals().mapNotNull { ordinal ->
+      members[ordinal]?.let { recipientId ->
+        GroupReceiptInfo(
+          recipientId = recipientId,
+          status = this.getStatus(ordinal),
+          timestamp = this.getTimestamp(ordinal),
+          isUnidentified = this.isUnidentified(ordinal)
+        )
+      }
+    }
+  }
+
+  private class ReceiptRow(val mmsId: Long, val threadId: Long, val receipts: GroupReceiptSet)
+
   data class GroupReceiptInfo(
     val recipientId: RecipientId,
     val status: Int,
     val timestamp: Long,
     val isUnidentified: Boolean
   )
+
+  data class ReceiptUpdate(
+    val recipientId: RecipientId,
+    val mmsId: Long,
+    val status: Int,
+    val timestamp: Long
+  )
+
+  /**
+   * The receipts of one message, for [insertAll].
+   */
+  data class MessageReceipts(
+    val mmsId: Long,
+    val threadId: Long,
+    val receipts: List<GroupReceiptInfo>
+  )
 }
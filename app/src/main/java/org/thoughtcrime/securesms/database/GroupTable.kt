@@ -892,13 +892,16 @@ class GroupTable(context: Context?, databaseHelper: SignalDatabase?) :
         }
       }
 
-      change.promotePendingPniAciMembers.forEach { member ->
-        recipients.getAndPossiblyMergePnpVerified(
-          aci = ACI.parseOrNull(member.aciBytes),
-          pni = PNI.parseOrNull(member.pniBytes),
-          e164 = null
-        )
-      }
+      recipients.bulkGetAndPossiblyMerge(
+        change.promotePendingPniAciMembers.map { member ->
+          RecipientTable.PnpTuple(
+            aci = ACI.parseOrNull(member.aciBytes),
+            pni = PNI.parseOrNull(member.pniBytes),
+            e164 = null,
+            pniVerified = true
+          )
+        }
+      )
 
       if (receivedGroupSendEndorsements == null && (removed.isNotEmpty() || change.newMembers.isNotEmpty())) {
         Log.v(TAG, "Members were removed or added, and no new endorsements, clearing endorsements and GSE expiration")
@@ -5,8 +5,10 @@ import android.content.Context
 import android.database.Cursor
 import androidx.compose.runtime.Immutable
 import org.signal.core.util.logging.Log
+import org.signal.core.util.readToSingleInt
 import org.signal.core.util.requireInt
 import org.signal.core.util.requireLong
+import org.signal.core.util.requireLongOrNull
 import org.signal.core.util.requireString
 import org.thoughtcrime.securesms.attachments.DatabaseAttachment
 import org.thoughtcrime.securesms.recipients.RecipientId
@@ -208,6 +210,20 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
         )"""
     )
 
+    private val TABLE_SORT_COLUMNS = SortColumns(
+      messageId = "${AttachmentTable.TABLE_NAME}.${AttachmentTable.MESSAGE_ID}",
+      size = "${AttachmentTable.TABLE_NAME}.${AttachmentTable.DATA_SIZE}",
+      displayOrder = "${AttachmentTable.TABLE_NAME}.${AttachmentTable.DISPLAY_ORDER}",
+      id = "${AttachmentTable.TABLE_NAME}.${AttachmentTable.ID}"
+    )
+
+    private val RESULT_SORT_COLUMNS = SortColumns(
+      messageId = MEDIA_MESSAGE_ID,
+      size = AttachmentTable.DATA_SIZE,
+      displayOrder = AttachmentTable.DISPLAY_ORDER,
+      id = AttachmentTable.ID
+    )
+
     private fun applyEqualityOperator(threadId: Long, query: String): String {
       val isAllThreads = threadId == ALL_THREADS.toLong()
       return query
@@ -229,39 +245,18 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
   }
 
   @JvmOverloads
-  fun getGalleryMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0): Cursor {
-    var query = sorting.applyToQuery(applyEqualityOperator(threadId, GALLERY_MEDIA_QUERY_INCLUDING_TEMP_VIDEOS))
-    val args = arrayOf(threadId.toString() + "")
-
-    if (limit > 0) {
-      query = "$query LIMIT $limit"
-    }
-
-    return readableDatabase.rawQuery(query, args)
+  fun getGalleryMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0, offset: Int = 0, after: PageKey? = null): Cursor {
+    return queryAttachments(applyEqualityOperator(threadId, GALLERY_MEDIA_QUERY_INCLUDING_TEMP_VIDEOS), arrayOf(threadId.toString()), sorting, limit, offset, after)
   }
 
   @JvmOverloads
-  fun getDocumentMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0): Cursor {
-    var query = sorting.applyToQuery(applyEqualityOperator(threadId, DOCUMENT_MEDIA_QUERY))
-    val args = arrayOf(threadId.toString() + "")
-
-    if (limit > 0) {
-      query = "$query LIMIT $limit"
-    }
-
-    return readableDatabase.rawQuery(query, args)
+  fun getDocumentMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0, offset: Int = 0, after: PageKey? = null): Cursor {
+    return queryAttachments(applyEqualityOperator(threadId, DOCUMENT_MEDIA_QUERY), arrayOf(threadId.toString()), sorting, limit, offset, after)
   }
 
   @JvmOverloads
-  fun getAudioMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0): Cursor {
-    var query = sorting.applyToQuery(applyEqualityOperator(threadId, AUDIO_MEDIA_QUERY))
-    val args = arrayOf(threadId.toString() + "")
-
-    if (limit > 0) {
-      query = "$query LIMIT $limit"
-    }
-
-    return readableDatabase.rawQuery(query, args)
+  fun getAudioMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0, offset: Int = 0, after: PageKey? = null): Cursor {
+    return queryAttachments(applyEqualityOperator(threadId, AUDIO_MEDIA_QUERY), arrayOf(threadId.toString()), sorting, limit, offset, after)
   }
 
   fun getLinkMediaForThread(threadId: Long, sorting: Sorting): Cursor {
@@ -275,25 +270,80 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
     return readableDatabase.rawQuery(query, args)
   }
 
+  /**
+   * Like [getLinkMediaForThread], but ordered by message rather than by date sent, so that it can be paged with a [PageKey].
+   */
+  fun getLinkMediaPageForThread(threadId: Long, sorting: Sorting, limit: Int, offset: Int, after: PageKey?): Cursor {
+    return queryResults(applyEqualityOperator(threadId, LINK_MEDIA_QUERY), arrayOf(threadId.toString()), sorting, limit, offset, after)
+  }
+
   @JvmOverloads
-  fun getAllMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0): Cursor {
+  fun getAllMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0, offset: Int = 0, after: PageKey? = null): Cursor {
     val allMediaSubquery = applyEqualityOperator(threadId, applyIndexHint(ALL_MEDIA_QUERY, threadId, sorting))
     val linkSubquery = applyEqualityOperator(threadId, LINK_MEDIA_QUERY)
 
-    val orderBy = when (sorting) {
-      Sorting.Newest -> " ORDER BY $MEDIA_MESSAGE_ID DESC"
-      Sorting.Oldest -> " ORDER BY $MEDIA_MESSAGE_ID ASC"
-      Sorting.Largest -> " ORDER BY ${AttachmentTable.DATA_SIZE} DESC"
+    return queryResults("$allMediaSubquery UNION ALL $linkSubquery", arrayOf(threadId.toString(), threadId.toString()), sorting, limit, offset, after)
+  }
+
+  fun getGalleryMediaCountForThread(threadId: Long): Int {
+    return count(applyEqualityOperator(threadId, GALLERY_MEDIA_QUERY_INCLUDING_TEMP_VIDEOS), arrayOf(threadId.toString()))
+  }
+
+  fun getDocumentMediaCountForThread(threadId: Long): Int {
+    return count(applyEqualityOperator(threadId, DOCUMENT_MEDIA_QUERY), arrayOf(threadId.toString()))
+  }
+
+  fun getAudioMediaCountForThread(threadId: Long): Int {
+    return count(applyEqualityOperator(threadId, AUDIO_MEDIA_QUERY), arrayOf(threadId.toString()))
+  }
+
+  fun getLinkMediaCountForThread(threadId: Long): Int {
+    return count(applyEqualityOperator(threadId, LINK_MEDIA_QUERY), arrayOf(threadId.toString()))
+  }
+
+  fun getAllMediaCountForThread(threadId: Long): Int {
+    val allMediaSubquery = applyEqualityOperator(threadId, ALL_MEDIA_QUERY)
+    val linkSubquery = applyEqualityOperator(threadId, LINK_MEDIA_QUERY)
+
+    return count("$allMediaSubquery UNION ALL $linkSubquery", arrayOf(threadId.toString(), threadId.toString()))
+  }
+
+  /**
+   * Runs one of the attachment-driven media queries. The keyset and ordering are applied to the attachment columns directly, so that SQLite can seek
+   * to the start of the page through the attachment indexes.
+   */
+  private fun queryAttachments(query: String, args: Array<String>, sorting: Sorting, limit: Int, offset: Int, after: PageKey?): Cursor {
+    return if (after != null) {
+      val (where, whereArgs) = sorting.keysetWhere(TABLE_SORT_COLUMNS, after)
+      readableDatabase.rawQuery(sorting.applyToQuery("$query AND $where") + limitClause(limit, offset), args + whereArgs)
+    } else {
+      readableDatabase.rawQuery(sorting.applyToQuery(query) + limitClause(limit, offset), args)
     }
+  }
 
-    var query = "$allMediaSubquery UNION ALL $linkSubquery$orderBy"
-    val args = arrayOf(threadId.toString(), threadId.toString())
+  /**
+   * Runs a media query whose rows may not have an attachment (the link queries, and anything unioned with them). These are wrapped in a subquery so that
+   * the keyset and ordering can be applied to the result columns.
+   */
+  private fun queryResults(query: String, args: Array<String>, sorting: Sorting, limit: Int, offset: Int, after: PageKey?): Cursor {
+    return if (after != null) {
+      val (where, whereArgs) = sorting.keysetWhere(RESULT_SORT_COLUMNS, after)
+      readableDatabase.rawQuery("SELECT * FROM ($query) WHERE $where ORDER BY ${sorting.orderBy(RESULT_SORT_COLUMNS)}" + limitClause(limit, offset), args + whereArgs)
+    } else {
+      readableDatabase.rawQuery("SELECT * FROM ($query) ORDER BY ${sorting.orderBy(RESULT_SORT_COLUMNS)}" + limitClause(limit, offset), args)
+    }
+  }
 
-    if (limit > 0) {
-      query = "$query LIMIT $limit"
+  private fun limitClause(limit: Int, offset: Int): String {
+    return when {
+      limit > 0 && offset > 0 -> " LIMIT $limit OFFSET $offset"
+      limit > 0 -> " LIMIT $limit"
+      else -> ""
     }
+  }
 
-    return readableDatabase.rawQuery(query, args)
+  private fun count(query: String, args: Array<String>): Int {
+    return readableDatabase.rawQuery("SELECT COUNT(*) FROM ($query)", args).readToSingleInt()
   }
 
   fun getStorageBreakdown(): StorageBreakdown {
@@ -378,36 +428,74 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
     }
   }
 
-  enum class Sorting(order: String) {
-    Newest(
-      """
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.MESSAGE_ID} DESC, 
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.DISPLAY_ORDER} DESC, 
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.ID} DESC
-      """
-    ),
-    Oldest(
-      """
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.MESSAGE_ID} ASC, 
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.DISPLAY_ORDER} DESC, 
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.ID} ASC
-      """
-    ),
-    Largest(
-      """
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.DATA_SIZE} DESC, 
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.DISPLAY_ORDER} DESC
-      """
-    );
+  /**
+   * The position of a row in a [Sorting], taken from the last row of one page so that the next page can be found by seeking to it rather than by
+   * skipping over every earlier row with an OFFSET. Nullable sort columns are stored as -1, which orders the same way SQLite orders nulls.
+   */
+  data class PageKey(val primary: Long, val displayOrder: Long, val id: Long) {
+    companion object {
+      @JvmStatic
+      fun from(cursor: Cursor, sorting: Sorting): PageKey {
+        return PageKey(
+          primary = if (sorting.isRelatedToFileSize) cursor.requireLongOrNull(AttachmentTable.DATA_SIZE) ?: -1 else cursor.requireLong(MEDIA_MESSAGE_ID),
+          displayOrder = cursor.requireLongOrNull(AttachmentTable.DISPLAY_ORDER) ?: -1,
+          id = cursor.requireLongOrNull(AttachmentTable.ID) ?: -1
+        )
+      }
+    }
+  }
 
-    private val postFix: String
+  /**
+   * The columns a [Sorting] orders by, either as attachment table columns or as the names they're given in the result set.
+   */
+  internal class SortColumns(val messageId: String, val size: String, val displayOrder: String, val id: String)
 
-    init {
-      postFix = " ORDER BY $order"
-    }
+  enum class Sorting(private val bySize: Boolean, private val ascending: Boolean) {
+    Newest(bySize = false, ascending = false),
+    Oldest(bySize = false, ascending = true),
+    Largest(bySize = true, ascending = false);
 
     fun applyToQuery(query: String): String {
-      return query + postFix
+      return "$query ORDER BY ${orderBy(TABLE_SORT_COLUMNS)}"
+    }
+
+    /**
+     * Ties are broken by display order and then by ID, so that every row has a unique position and can be used as a [PageKey].
+     */
+    internal fun orderBy(columns: SortColumns): String {
+      val direction = if (ascending) "ASC" else "DESC"
+      val primary = if (bySize) columns.size else columns.messageId
+
+      return "$primary $direction, ${columns.displayOrder} DESC, ${columns.id} $direction"
+    }
+
+    /**
+     * @return A condition matching the rows that come after [key] in this ordering, and its arguments.
+     */
+    internal fun keysetWhere(columns: SortColumns, key: PageKey): Pair<String, Array<String>> {
+      val comparison = if (ascending) ">" else "<"
+      val displayOrder = "IFNULL(${columns.displayOrder}, -1)"
+      val id = "IFNULL(${columns.id}, -1)"
+
+      val primary: String
+      val bound: String
+      val boundArgs: Array<String>
+
+      if (bySize) {
+        primary = "IFNULL(${columns.size}, -1)"
+        bound = ""
+        boundArgs = emptyArray()
+      } else {
+        // Repeating the message ID as a plain range lets SQLite seek on it instead of evaluating the whole expression for every row
+        primary = columns.messageId
+        bound = "$primary $comparison= ? AND "
+        boundArgs = arrayOf(key.primary.toString())
+      }
+
+      val where = "($bound($primary $comparison ? OR ($primary = ? AND ($displayOrder < ? OR ($displayOrder = ? AND $id $comparison ?)))))"
+      val args = boundArgs + arrayOf(key.primary.toString(), key.primary.toString(), key.displayOrder.toString(), key.displayOrder.toString(), key.id.toString())
+
+      return where to args
     }
 
     val isRelatedToFileSize: Boolean
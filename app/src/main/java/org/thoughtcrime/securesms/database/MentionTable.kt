@@ -13,6 +13,7 @@ import org.signal.core.util.requireLong
 import org.signal.core.util.select
 import org.signal.core.util.update
 import org.signal.core.util.withinTransaction
+import org.thoughtcrime.securesms.backup.v2.database.ArchiveChildCursor
 import org.thoughtcrime.securesms.database.model.Mention
 import org.thoughtcrime.securesms.recipients.RecipientId
 
@@ -81,6 +82,10 @@ class MentionTable(context: Context, databaseHelper: SignalDatabase) : DatabaseT
   }
 
   fun getMentionsForMessages(messageIds: Collection<Long>): Map<Long, List<Mention>> {
+    return getMentionsForMessages(messageIds.toLongArray())
+  }
+
+  fun getMentionsForMessages(messageIds: LongArray): Map<Long, List<Mention>> {
     if (messageIds.isEmpty()) {
       return emptyMap()
     }
@@ -95,6 +100,22 @@ class MentionTable(context: Context, databaseHelper: SignalDatabase) : DatabaseT
       .use { cursor -> readMentions(cursor) }
   }
 
+  /**
+   * Reads the mentions in the messages being exported that were received in the given range, in export order. See [ArchiveChildCursor].
+   */
+  fun getMentionsForArchiveExport(startDateReceived: Long, endDateReceived: Long): ArchiveChildCursor<Mention> {
+    return ArchiveChildCursor.query(
+      db = readableDatabase,
+      childTable = TABLE_NAME,
+      messageIdColumn = "$TABLE_NAME.$MESSAGE_ID",
+      childIdColumn = "$TABLE_NAME.$ID",
+      projection = arrayOf("$TABLE_NAME.*"),
+      where = null,
+      startDateReceived = startDateReceived,
+      endDateReceived = endDateReceived
+    ) { it.toMention() }
+  }
+
   fun getMentionsContainingRecipients(recipientIds: Collection<RecipientId>, limit: Long): Map<Long, List<Mention>> {
     return getMentionsContainingRecipients(recipientIds, -1, limit)
   }
@@ -156,17 +177,18 @@ class MentionTable(context: Context, databaseHelper: SignalDatabase) : DatabaseT
 
   private fun readMentions(cursor: Cursor): Map<Long, List<Mention>> {
     return cursor.readToList {
-      val messageId = it.requireLong(MESSAGE_ID)
-      val mention = Mention(
-        RecipientId.from(it.requireLong(RECIPIENT_ID)),
-        it.requireInt(RANGE_START),
-        it.requireInt(RANGE_LENGTH)
-      )
-
-      messageId to mention
+      it.requireLong(MESSAGE_ID) to it.toMention()
     }.groupBy({ it.first }, { it.second })
   }
 
+  private fun Cursor.toMention(): Mention {
+    return Mention(
+      RecipientId.from(requireLong(RECIPIENT_ID)),
+      requireInt(RANGE_START),
+      requireInt(RANGE_LENGTH)
+    )
+  }
+
   override fun remapRecipient(fromId: RecipientId, toId: RecipientId) {
     val count = writableDatabase
       .update("$TABLE_NAME INDEXED BY $RECIPIENT_ID_INDEX")
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import org.thoughtcrime.securesms.database.model.MessageId
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.whispersystems.signalservice.api.crypto.ContentHint
+import org.whispersystems.signalservice.internal.push.Content
+
+/**
+ * Message send log writes that haven't made it to disk yet. [MessageSendLogTables] fills this up as messages are sent and delivery receipts come in,
+ * and periodically drains it into a single transaction.
+ *
+ * While a flush is being written, its entries are kept aside rather than dropped, so that they're still found by readers until the transaction commits
+ * and can be put back if it doesn't. Changes made in the meantime are applied to them too. See [startFlush] and [finishFlush].
+ *
+ * Most entries get a delivery receipt for every device within moments of being sent. When that happens while the entry is still in here, it's dropped
+ * without ever being written.
+ *
+ * This class is not thread safe. [MessageSendLogTables] synchronizes on it, and never touches the database while holding that lock.
+ */
+class MessageSendLogBuffer {
+
+  private val payloads: LinkedHashMap<Long, PendingPayload> = LinkedHashMap()
+  private val deletes: MutableMap<Destination, MutableSet<Long>> = HashMap()
+
+  /** The entries taken by the flush in progress, if any. */
+  private var flushing: MessageSendLogBuffer? = null
+
+  /** The number of pending payloads and recipient deletes, not counting a flush in progress. Used to decide when to flush early. */
+  val size: Int
+    get() = payloads.size + deletes.size
+
+  fun isEmpty(): Boolean = payloads.isEmpty() && deletes.isEmpty()
+
+  fun add(payload: PendingPayload) {
+    payloads[payload.id] = payload
+  }
+
+  /**
+   * Adds devices to a payload that's still pending.
+   *
+   * @return False if the payload isn't in the buffer, in which case the caller has to go to disk. This includes payloads that are being flushed.
+   */
+  fun addRecipient(payloadId: Long, recipientId: RecipientId, devices: List<Int>, dateSent: Long): Boolean {
+    val payload = payloads[payloadId] ?: return false
+
+    devices.forEach { device ->
+      payload.destinations += Destination(recipientId, device)
+      cancelDelete(recipientId, device, dateSent)
+    }
+
+    return true
+  }
+
+  /**
+   * Finds the pending payload that was sent to the given device at [dateSent], if any.
+   */
+  fun find(recipientId: RecipientId, device: Int, dateSent: Long): PendingPayload? {
+    val destination = Destination(recipientId, device)
+    return payloads.values.firstOrNull { it.dateSent == dateSent && destination in it.destinations } ?: flushing?.find(recipientId, device, dateSent)
+  }
+
+  /**
+   * @return True if there's a delete waiting to be written for the given device at [dateSent], meaning anything on disk for it is stale.
+   */
+  fun isDeletePending(recipientId: RecipientId, device: Int, dateSent: Long): Boolean {
+    return deletes[Destination(recipientId, device)]?.contains(dateSent) == true || flushing?.isDeletePending(recipientId, device, dateSent) == true
+  }
+
+  /**
+   * Undoes a pending delete, for when we write a new entry for the same device and timestamp directly to disk.
+   */
+  fun cancelDelete(recipientId: RecipientId, device: Int, dateSent: Long) {
+    flushing?.cancelDelete(recipientId, device, dateSent)
+
+    val destination = Destination(recipientId, device)
+    val dates = deletes[destination] ?: return
+
+    dates -= dateSent
+    if (dates.isEmpty()) {
+      deletes -= destination
+    }
+  }
+
+  /**
+   * Removes the device from any pending payload sent at one of [dateSent], dropping payloads that no longer have anyone to resend to, and remembers
+   * to do the same for anything that's already on disk.
+   */
+  fun deleteForRecipient(dateSent: Collection<Long>, recipientId: RecipientId, device: Int) {
+    flushing?.deleteForRecipient(dateSent, recipientId, device)
+
+    val destination = Destination(recipientId, device)
+
+    removeIf { it.dateSent in dateSent && it.destinations.remove(destination) && it.destinations.isEmpty() }
+
+    deletes.getOrPut(destination) { HashSet() } += dateSent
+  }
+
+  /**
+   * Drops every pending payload related to the given message. The caller is responsible for anything on disk.
+   */
+  fun deleteRelatedToMessage(messageId: Long) {
+    flushing?.deleteRelatedToMessage(messageId)
+    removeIf { payload -> payload.messageIds.any { it.id == messageId } }
+  }
+
+  /**
+   * Removes the recipient from all pending payloads and deletes. The caller is responsible for anything on disk.
+   */
+  fun deleteAllForRecipient(recipientId: RecipientId) {
+    flushing?.deleteAllForRecipient(recipientId)
+    removeIf { payload -> payload.destinations.removeAll { it.recipientId == recipientId } && payload.destinations.isEmpty() }
+    deletes.keys.removeAll { it.recipientId == recipientId }
+  }
+
+  fun remapRecipient(fromId: RecipientId, toId: RecipientId) {
+    flushing?.remapRecipient(fromId, toId)
+
+    payloads.values.forEach { payload ->
+      val remapped = payload.destinations.filter { it.recipientId == fromId }
+      if (remapped.isNotEmpty()) {
+        payload.destinations -= remapped.toSet()
+        payload.destinations += remapped.map { it.copy(recipientId = toId) }
+      }
+    }
+
+    deletes.keys.filter { it.recipientId == fromId }.forEach { from ->
+      val dates = deletes.remove(from)!!
+      deletes.getOrPut(from.copy(recipientId = toId)) { HashSet() } += dates
+    }
+  }
+
+  /**
+   * Drops pending payloads sent before [cutoff]. Deletes are kept, since they may still apply to rows on disk.
+   */
+  fun deleteOlderThan(cutoff: Long) {
+    flushing?.deleteOlderThan(cutoff)
+    removeIf { it.dateSent < cutoff }
+  }
+
+  fun clear() {
+    flushing?.clear()
+    payloads.clear()
+    deletes.clear()
+  }
+
+  /**
+   * Moves everything pending aside for a flush, returning a copy of what needs to be written. Deletes must be applied before payloads are inserted: any
+   * delete that matched a pending payload was already applied to it in memory, so a payload that still matches one was sent again afterwards and
+   * should survive.
+   *
+   * The entries stay visible to [find] and [isDeletePending] until [finishFlush] is called.
+   */
+  fun startFlush(): Drained {
+    check(flushing == null) { "A flush is already in progress!" }
+
+    val drained = Drained(
+      payloads = payloads.values.map { it.copy() },
+      deletes = deletes.mapValues { it.value.toSet() }
+    )
+
+    flushing = MessageSendLogBuffer().also {
+      it.payloads.putAll(payloads)
+      it.deletes.putAll(deletes)
+    }
+
+    payloads.clear()
+    deletes.clear()
+    return drained
+  }
+
+  /**
+   * Ends the flush started by [startFlush]. If it wasn't [committed], its entries are put back ahead of anything added since, to be written by the next one.
+   */
+  fun finishFlush(committed: Boolean) {
+    val inFlight = flushing ?: return
+    flushing = null
+
+    if (committed) {
+      return
+    }
+
+    val newer = LinkedHashMap(payloads)
+    payloads.clear()
+    payloads.putAll(inFlight.payloads)
+    payloads.putAll(newer)
+
+    inFlight.deletes.forEach { (destination, dates) ->
+      deletes.getOrPut(destination) { HashSet() } += dates
+    }
+  }
+
+  private inline fun removeIf(predicate: (PendingPayload) -> Boolean) {
+    val iterator = payloads.values.iterator()
+    while (iterator.hasNext()) {
+      if (predicate(iterator.next())) {
+        iterator.remove()
+      }
+    }
+  }
+
+  class PendingPayload(
+    val id: Long,
+    val dateSent: Long,
+    val content: Content,
+    val contentHint: ContentHint,
+    val urgent: Boolean,
+    val messageIds: List<MessageId>,
+    val destinations: MutableSet<Destination>
+  ) {
+    fun copy(): PendingPayload {
+      return PendingPayload(id, dateSent, content, contentHint, urgent, messageIds, destinations.toMutableSet())
+    }
+  }
+
+  data class Destination(val recipientId: RecipientId, val device: Int)
+
+  class Drained(val payloads: List<PendingPayload>, val deletes: Map<Destination, Set<Long>>) {
+    fun isEmpty(): Boolean = payloads.isEmpty() && deletes.isEmpty()
+  }
+}
@@ -3,15 +3,26 @@ package org.thoughtcrime.securesms.database
 import android.content.ContentValues
 import android.content.Context
 import android.database.sqlite.SQLiteConstraintException
+import android.os.Handler
+import androidx.annotation.VisibleForTesting
+import androidx.core.content.contentValuesOf
 import org.signal.core.util.CursorUtil
 import org.signal.core.util.SqlUtil
+import org.signal.core.util.ThreadUtil
+import org.signal.core.util.concurrent.SignalExecutors
 import org.signal.core.util.delete
 import org.signal.core.util.logging.Log
 import org.signal.core.util.readToList
+import org.signal.core.util.readToSingleLong
+import org.signal.core.util.readToSingleLongOrNull
 import org.signal.core.util.requireBoolean
 import org.signal.core.util.requireLong
+import org.signal.core.util.select
 import org.signal.core.util.toInt
 import org.signal.core.util.update
+import org.signal.core.util.withinTransaction
+import org.thoughtcrime.securesms.database.MessageSendLogBuffer.Destination
+import org.thoughtcrime.securesms.database.MessageSendLogBuffer.PendingPayload
 import org.thoughtcrime.securesms.database.model.MessageId
 import org.thoughtcrime.securesms.database.model.MessageLogEntry
 import org.thoughtcrime.securesms.recipients.Recipient
@@ -21,6 +32,8 @@ import org.thoughtcrime.securesms.util.RemoteConfig
 import org.whispersystems.signalservice.api.crypto.ContentHint
 import org.whispersystems.signalservice.api.messages.SendMessageResult
 import org.whispersystems.signalservice.internal.push.Content
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
 
 /**
  * Stores a rolling buffer of all outgoing messages. Used for the retry logic required for sender key.
@@ -36,7 +49,7 @@ import org.whispersystems.signalservice.internal.push.Content
  * - Whenever you get a delivery receipt, delete the entries in the 'recipient table'
  * - Whenever there's no more records in the 'recipient table' for a given message, delete the entry in the 'message table'
  * - Whenever you delete a message, delete the relevant entries from the 'payload table'
- * - Whenever you read an entry from the table, first trim off all the entries that are too old
+ * - Periodically trim off all the entries that are too old, and ignore them when reading
  *
  * Because of all of this, you can be sure that if an entry is in this store, it's safe to resend to someone upon request
  *
@@ -50,12 +63,24 @@ import org.whispersystems.signalservice.internal.push.Content
  * - We should also optimize for when we delete messages from the sms/mms tables, since you can delete a bunch at once
  * - We *don't* really need to optimize for retrieval, since that happens very infrequently. In particular, we don't want to slow down inserts in order to
  *   improve retrieval time. That means we shouldn't be adding indexes that optimize for retrieval.
+ *
+ * Because of that, inserts and receipt-driven deletes don't go to disk right away. They're held in a [MessageSendLogBuffer] and written together
+ * in a single transaction every [FLUSH_WINDOW_MS] (or sooner if a lot pile up). Entries that get all of their delivery receipts within that window
+ * never get written at all. Reads consult the buffer before going to disk, so this is invisible to callers, with the caveat that if the process dies
+ * we lose at most one window's worth of entries, which only means we can't resend those if asked.
+ *
+ * Payload IDs are handed out before the payload is written, so every insert needs to go through the buffer.
  */
 class MessageSendLogTables constructor(context: Context?, databaseHelper: SignalDatabase?) : DatabaseTable(context, databaseHelper), RecipientIdDatabaseReference {
 
   companion object {
     private val TAG = Log.tag(MessageSendLogTables::class.java)
 
+    private const val FLUSH_WINDOW_MS = 250L
+    private const val FLUSH_THRESHOLD = 100
+    private const val TRIM_BATCH_SIZE = 500
+    private val TRIM_INTERVAL = TimeUnit.MINUTES.toMillis(5)
+
     @JvmField
     val CREATE_TABLE: Array<String> = arrayOf(MslPayloadTable.CREATE_TABLE, MslRecipientTable.CREATE_TABLE, MslMessageTable.CREATE_TABLE)
 
@@ -85,7 +110,7 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
       )
     """
 
-    /** Created for [deleteEntriesForRecipient] */
+    /** Created for [deleteEntriesForRecipient] and [trimOldMessages] */
     val CREATE_INDEXES = arrayOf(
       "CREATE INDEX msl_payload_date_sent_index ON $TABLE_NAME ($DATE_SENT)"
     )
@@ -148,13 +173,24 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
       )
     """
 
-    /** Created for [MslPayloadTable.CREATE_TRIGGERS] and [deleteAllRelatedToMessage] */
+    /** Created for [MslPayloadTable.CREATE_TRIGGERS], [deleteAllRelatedToMessage], and [flush] */
     val CREATE_INDEXES = arrayOf(
       "CREATE INDEX msl_message_message_index ON $TABLE_NAME ($MESSAGE_ID, $PAYLOAD_ID)",
       "CREATE INDEX msl_message_payload_index ON $TABLE_NAME ($PAYLOAD_ID)"
     )
   }
 
+  private val buffer = MessageSendLogBuffer()
+  private val lastPayloadId = AtomicLong(-1)
+  private val flushHandler: Handler by lazy { Handler(SignalExecutors.getAndStartHandlerThread("signal-msl", ThreadUtil.PRIORITY_BACKGROUND_THREAD).looper) }
+  private val flushRunnable = Runnable { flushAndMaybeTrim() }
+
+  /** Guarded by [buffer]. */
+  private var flushScheduled = false
+
+  @Volatile
+  private var lastTrimTime = 0L
+
   /** @return The ID of the inserted entry, or -1 if none was inserted. Can be used with [addRecipientToExistingEntryIfPossible] */
   fun insertIfPossible(recipientId: RecipientId, sentTimestamp: Long, sendMessageResult: SendMessageResult, contentHint: ContentHint, messageId: MessageId, urgent: Boolean): Long {
     if (!RemoteConfig.retryReceipts) return -1
@@ -205,6 +241,21 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
     if (!RemoteConfig.retryReceipts) return payloadId
 
     if (sendMessageResult.isSuccess && sendMessageResult.success.content.isPresent) {
+      val devices = sendMessageResult.success.devices
+
+      val buffered = synchronized(buffer) {
+        buffer.addRecipient(payloadId, recipientId, devices, sentTimestamp).also { added ->
+          if (!added) {
+            devices.forEach { buffer.cancelDelete(recipientId, it, sentTimestamp) }
+          }
+        }
+      }
+
+      if (buffered) {
+        return payloadId
+      }
+
+      // The payload has already been flushed (or is being flushed, in which case this waits on that transaction), so append to it on disk
       val db = databaseHelper.signalWritableDatabase
 
       db.beginTransaction()
@@ -234,55 +285,58 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
   }
 
   private fun insert(recipients: List<RecipientDevice>, dateSent: Long, content: Content, contentHint: ContentHint, messageIds: List<MessageId>, urgent: Boolean): Long {
-    val db = databaseHelper.signalWritableDatabase
+    val payload = PendingPayload(
+      id = nextPayloadId(),
+      dateSent = dateSent,
+      content = content,
+      contentHint = contentHint,
+      urgent = urgent,
+      messageIds = messageIds,
+      destinations = recipients.flatMap { recipientDevice -> recipientDevice.devices.map { Destination(recipientDevice.recipientId, it) } }.toMutableSet()
+    )
 
-    db.beginTransaction()
-    try {
-      val payloadValues = ContentValues().apply {
-        put(MslPayloadTable.DATE_SENT, dateSent)
-        put(MslPayloadTable.CONTENT, content.encode())
-        put(MslPayloadTable.CONTENT_HINT, contentHint.type)
-        put(MslPayloadTable.URGENT, urgent.toInt())
-      }
+    synchronized(buffer) {
+      buffer.add(payload)
+      scheduleFlush()
+    }
 
-      val payloadId: Long = db.insert(MslPayloadTable.TABLE_NAME, null, payloadValues)
+    return payload.id
+  }
 
-      val recipientValues: MutableList<ContentValues> = mutableListOf()
-      recipients.forEach { recipientDevice ->
-        recipientDevice.devices.forEach { device ->
-          recipientValues += ContentValues().apply {
-            put(MslRecipientTable.PAYLOAD_ID, payloadId)
-            put(MslRecipientTable.RECIPIENT_ID, recipientDevice.recipientId.serialize())
-            put(MslRecipientTable.DEVICE, device)
-          }
-        }
-      }
-      SqlUtil.buildBulkInsert(MslRecipientTable.TABLE_NAME, arrayOf(MslRecipientTable.PAYLOAD_ID, MslRecipientTable.RECIPIENT_ID, MslRecipientTable.DEVICE), recipientValues)
-        .forEach { query -> db.execSQL(query.where, query.whereArgs) }
-
-      val messageValues: MutableList<ContentValues> = mutableListOf()
-      messageIds.forEach { messageId ->
-        messageValues += ContentValues().apply {
-          put(MslMessageTable.PAYLOAD_ID, payloadId)
-          put(MslMessageTable.MESSAGE_ID, messageId.id)
-        }
-      }
-      SqlUtil.buildBulkInsert(MslMessageTable.TABLE_NAME, arrayOf(MslMessageTable.PAYLOAD_ID, MslMessageTable.MESSAGE_ID), messageValues)
-        .forEach { query -> db.execSQL(query.where, query.whereArgs) }
+  private fun nextPayloadId(): Long {
+    if (lastPayloadId.get() < 0) {
+      val maxId = readableDatabase
+        .select("MAX(${MslPayloadTable.ID})")
+        .from(MslPayloadTable.TABLE_NAME)
+        .run()
+        .readToSingleLong(0)
 
-      db.setTransactionSuccessful()
-      return payloadId
-    } finally {
-      db.endTransaction()
+      lastPayloadId.compareAndSet(-1, maxId)
     }
+
+    return lastPayloadId.incrementAndGet()
   }
 
   fun getLogEntry(recipientId: RecipientId, device: Int, dateSent: Long): MessageLogEntry? {
     if (!RemoteConfig.retryReceipts) return null
 
-    trimOldMessages(System.currentTimeMillis(), RemoteConfig.retryRespondMaxAge)
+    if (dateSent < System.currentTimeMillis() - RemoteConfig.retryRespondMaxAge) {
+      return null
+    }
+
+    // Entries being flushed stay in the buffer until their transaction commits, so anything that isn't found here is already on disk
+    val (pending, deletePending) = synchronized(buffer) {
+      buffer.find(recipientId, device, dateSent) to buffer.isDeletePending(recipientId, device, dateSent)
+    }
 
-    val db = databaseHelper.signalReadableDatabase
+    return when {
+      pending != null -> pending.toLogEntry(recipientId)
+      deletePending -> null
+      else -> readLogEntry(readableDatabase, recipientId, device, dateSent)
+    }
+  }
+
+  private fun readLogEntry(db: SQLiteDatabase, recipientId: RecipientId, device: Int, dateSent: Long): MessageLogEntry? {
     val table = "${MslPayloadTable.TABLE_NAME} LEFT JOIN ${MslRecipientTable.TABLE_NAME} ON ${MslPayloadTable.TABLE_NAME}.${MslPayloadTable.ID} = ${MslRecipientTable.TABLE_NAME}.${MslRecipientTable.PAYLOAD_ID}"
     val query = "${MslPayloadTable.DATE_SENT} = ? AND ${MslRecipientTable.RECIPIENT_ID} = ? AND ${MslRecipientTable.DEVICE} = ?"
     val args = SqlUtil.buildArgs(dateSent, recipientId, device)
@@ -318,6 +372,10 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
   }
 
   fun deleteAllRelatedToMessage(messageId: Long) {
+    synchronized(buffer) {
+      buffer.deleteRelatedToMessage(messageId)
+    }
+
     val db = databaseHelper.signalWritableDatabase
     val query = "${MslPayloadTable.ID} IN (SELECT ${MslMessageTable.PAYLOAD_ID} FROM ${MslMessageTable.TABLE_NAME} WHERE ${MslMessageTable.MESSAGE_ID} = ?)"
     val args = SqlUtil.buildArgs(messageId)
@@ -329,39 +387,34 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
     deleteEntriesForRecipient(listOf(dateSent), recipientId, device)
   }
 
+  /**
+   * Queues up the deletes to be written with the next flush, so that receipts arriving in quick succession share a single transaction.
+   */
   fun deleteEntriesForRecipient(dateSent: List<Long>, recipientId: RecipientId, device: Int) {
-    val db = databaseHelper.signalWritableDatabase
-    db.beginTransaction()
-    try {
-      val query = """
-        DELETE FROM ${MslRecipientTable.TABLE_NAME} WHERE
-        ${MslRecipientTable.RECIPIENT_ID} = ? AND
-        ${MslRecipientTable.DEVICE} = ? AND
-        ${MslRecipientTable.PAYLOAD_ID} IN (
-          SELECT ${MslPayloadTable.ID} 
-          FROM ${MslPayloadTable.TABLE_NAME} 
-          WHERE ${MslPayloadTable.DATE_SENT} IN (${dateSent.joinToString(",")}) 
-        )
-        RETURNING ${MslRecipientTable.PAYLOAD_ID}"""
-      val args = SqlUtil.buildArgs(recipientId, device)
+    if (dateSent.isEmpty()) return
 
-      val payloadIds = db.rawQuery(query, args).readToList {
-        it.requireLong(MslRecipientTable.PAYLOAD_ID)
-      }
+    synchronized(buffer) {
+      buffer.deleteForRecipient(dateSent, recipientId, device)
+      scheduleFlush()
+    }
+  }
 
-      val queries = SqlUtil.buildCollectionQuery(MslPayloadTable.ID, payloadIds)
-      queries.forEach {
-        db.delete(MslPayloadTable.TABLE_NAME, "${it.where} AND ${MslPayloadTable.ID} NOT IN (SELECT ${MslRecipientTable.PAYLOAD_ID} FROM ${MslRecipientTable.TABLE_NAME})", it.whereArgs)
-      }
-      db.setTransactionSuccessful()
-    } finally {
-      db.endTransaction()
+  /**
+   * Drops any buffered entries for the message. Anything already on disk is handled by the attachment delete trigger.
+   */
+  fun onAttachmentsDeletedForMessage(messageId: Long) {
+    synchronized(buffer) {
+      buffer.deleteRelatedToMessage(messageId)
     }
   }
 
   fun deleteAllForRecipient(recipientId: RecipientId) {
     if (!RemoteConfig.retryReceipts) return
 
+    synchronized(buffer) {
+      buffer.deleteAllForRecipient(recipientId)
+    }
+
     writableDatabase
       .delete(MslRecipientTable.TABLE_NAME)
       .where("${MslRecipientTable.RECIPIENT_ID} = ?", recipientId)
@@ -374,15 +427,207 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
   }
 
   fun deleteAll() {
+    synchronized(buffer) {
+      buffer.clear()
+    }
+
     databaseHelper.signalWritableDatabase.delete(MslPayloadTable.TABLE_NAME, null, null)
+    lastPayloadId.set(-1)
   }
 
+  /**
+   * Forgets everything held in memory about the old database after it's been replaced, like when restoring a backup. Payload IDs are handed out from
+   * memory, so they'd otherwise collide with whatever the new database already has.
+   */
+  fun onDatabaseReplaced() {
+    synchronized(buffer) {
+      buffer.clear()
+    }
+
+    lastPayloadId.set(-1)
+  }
+
+  /**
+   * Deletes everything sent more than [maxAge] ago. Expired rows are deleted oldest-first in [TRIM_BATCH_SIZE] ranges of [MslPayloadTable.DATE_SENT],
+   * each in its own transaction, so that a large backlog doesn't hold the write lock for long.
+   */
   fun trimOldMessages(currentTime: Long, maxAge: Long) {
+    val cutoff = currentTime - maxAge
+    lastTrimTime = currentTime
+
+    synchronized(buffer) {
+      buffer.deleteOlderThan(cutoff)
+    }
+
     val db = databaseHelper.signalWritableDatabase
-    val query = "${MslPayloadTable.DATE_SENT} < ?"
-    val args = SqlUtil.buildArgs(currentTime - maxAge)
+    var deleted = 0
+
+    do {
+      val count = db.withinTransaction {
+        val rangeEnd: Long = db
+          .select(MslPayloadTable.DATE_SENT)
+          .from(MslPayloadTable.TABLE_NAME)
+          .where("${MslPayloadTable.DATE_SENT} < ?", cutoff)
+          .orderBy("${MslPayloadTable.DATE_SENT} ASC")
+          .limit(1, TRIM_BATCH_SIZE - 1)
+          .run()
+          .readToSingleLongOrNull()
+          ?.let { it + 1 }
+          ?: cutoff
+
+        db.delete(MslPayloadTable.TABLE_NAME)
+          .where("${MslPayloadTable.DATE_SENT} < ?", rangeEnd)
+          .run()
+      }
 
-    db.delete(MslPayloadTable.TABLE_NAME, query, args)
+      deleted += count
+    } while (count >= TRIM_BATCH_SIZE)
+
+    if (deleted > 0) {
+      Log.d(TAG, "Trimmed $deleted expired entries.")
+    }
+  }
+
+  /**
+   * Writes everything in the buffer to disk in a single transaction. The entries stay in the buffer until it commits, and are kept for the next flush
+   * if it doesn't.
+   */
+  @VisibleForTesting
+  @Synchronized
+  fun flush() {
+    val db = databaseHelper.signalWritableDatabase
+    var committed = false
+
+    try {
+      // The entries are taken inside the transaction so that anyone changing them on disk waits for us to finish
+      db.withinTransaction {
+        val drained = synchronized(buffer) {
+          flushScheduled = false
+          buffer.startFlush()
+        }
+
+        if (!drained.isEmpty()) {
+          writeDeletes(db, drained.deletes)
+          writeInserts(db, drained.payloads)
+        }
+      }
+      committed = true
+    } finally {
+      synchronized(buffer) {
+        buffer.finishFlush(committed)
+      }
+    }
+  }
+
+  private fun flushAndMaybeTrim() {
+    try {
+      flush()
+
+      val now = System.currentTimeMillis()
+      if (now - lastTrimTime > TRIM_INTERVAL) {
+        trimOldMessages(now, RemoteConfig.retryRespondMaxAge)
+      }
+    } catch (e: Exception) {
+      Log.w(TAG, "Failed to flush the message send log. The entries are kept for the next flush.", e)
+    }
+  }
+
+  /** Must be called while holding the lock on [buffer]. */
+  private fun scheduleFlush() {
+    if (buffer.size >= FLUSH_THRESHOLD) {
+      flushHandler.removeCallbacks(flushRunnable)
+      flushHandler.post(flushRunnable)
+      flushScheduled = true
+    } else if (!flushScheduled) {
+      flushHandler.postDelayed(flushRunnable, FLUSH_WINDOW_MS)
+      flushScheduled = true
+    }
+  }
+
+  private fun writeDeletes(db: SQLiteDatabase, deletes: Map<Destination, Set<Long>>) {
+    if (deletes.isEmpty()) return
+
+    val payloadIds: MutableSet<Long> = HashSet()
+    deletes.forEach { (destination, dateSent) ->
+      val query = """
+        DELETE FROM ${MslRecipientTable.TABLE_NAME} WHERE
+        ${MslRecipientTable.RECIPIENT_ID} = ? AND
+        ${MslRecipientTable.DEVICE} = ? AND
+        ${MslRecipientTable.PAYLOAD_ID} IN (
+          SELECT ${MslPayloadTable.ID} 
+          FROM ${MslPayloadTable.TABLE_NAME} 
+          WHERE ${MslPayloadTable.DATE_SENT} IN (${dateSent.joinToString(",")}) 
+        )
+        RETURNING ${MslRecipientTable.PAYLOAD_ID}"""
+      val args = SqlUtil.buildArgs(destination.recipientId, destination.device)
+
+      payloadIds += db.rawQuery(query, args).readToList {
+        it.requireLong(MslRecipientTable.PAYLOAD_ID)
+      }
+    }
+
+    SqlUtil.buildCollectionQuery(MslPayloadTable.ID, payloadIds).forEach {
+      db.delete(MslPayloadTable.TABLE_NAME, "${it.where} AND ${MslPayloadTable.ID} NOT IN (SELECT ${MslRecipientTable.PAYLOAD_ID} FROM ${MslRecipientTable.TABLE_NAME})", it.whereArgs)
+    }
+  }
+
+  private fun writeInserts(db: SQLiteDatabase, payloads: List<PendingPayload>) {
+    if (payloads.isEmpty()) return
+
+    val recipientValues: MutableList<ContentValues> = mutableListOf()
+    val messageValues: MutableList<ContentValues> = mutableListOf()
+
+    payloads.forEach { payload ->
+      db.insert(
+        MslPayloadTable.TABLE_NAME,
+        null,
+        contentValuesOf(
+          MslPayloadTable.ID to payload.id,
+          MslPayloadTable.DATE_SENT to payload.dateSent,
+          MslPayloadTable.CONTENT to payload.content.encode(),
+          MslPayloadTable.CONTENT_HINT to payload.contentHint.type,
+          MslPayloadTable.URGENT to payload.urgent.toInt()
+        )
+      )
+
+      payload.destinations.forEach { destination ->
+        recipientValues += contentValuesOf(
+          MslRecipientTable.PAYLOAD_ID to payload.id,
+          MslRecipientTable.RECIPIENT_ID to destination.recipientId.serialize(),
+          MslRecipientTable.DEVICE to destination.device
+        )
+      }
+
+      payload.messageIds.forEach { messageId ->
+        messageValues += contentValuesOf(
+          MslMessageTable.PAYLOAD_ID to payload.id,
+          MslMessageTable.MESSAGE_ID to messageId.id
+        )
+      }
+    }
+
+    SqlUtil.buildBulkInsert(MslRecipientTable.TABLE_NAME, arrayOf(MslRecipientTable.PAYLOAD_ID, MslRecipientTable.RECIPIENT_ID, MslRecipientTable.DEVICE), recipientValues)
+      .forEach { query -> db.execSQL(query.where, query.whereArgs) }
+
+    SqlUtil.buildBulkInsert(MslMessageTable.TABLE_NAME, arrayOf(MslMessageTable.PAYLOAD_ID, MslMessageTable.MESSAGE_ID), messageValues)
+      .forEach { query -> db.execSQL(query.where, query.whereArgs) }
+
+    // The message delete trigger couldn't see these while they were buffered, so catch up on any messages that were deleted in the meantime
+    SqlUtil.buildCollectionQuery("${MslMessageTable.TABLE_NAME}.${MslMessageTable.PAYLOAD_ID}", payloads.map { it.id }).forEach { query ->
+      db.execSQL(
+        """
+          DELETE FROM ${MslPayloadTable.TABLE_NAME}
+          WHERE ${MslPayloadTable.ID} IN (
+            SELECT ${MslMessageTable.TABLE_NAME}.${MslMessageTable.PAYLOAD_ID}
+            FROM ${MslMessageTable.TABLE_NAME}
+            WHERE ${query.where} AND NOT EXISTS (
+              SELECT 1 FROM ${MessageTable.TABLE_NAME} WHERE ${MessageTable.TABLE_NAME}.${MessageTable.ID} = ${MslMessageTable.TABLE_NAME}.${MslMessageTable.MESSAGE_ID}
+            )
+          )
+        """,
+        query.whereArgs
+      )
+    }
   }
 
   /**
@@ -421,6 +666,10 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
   }
 
   override fun remapRecipient(fromId: RecipientId, toId: RecipientId) {
+    synchronized(buffer) {
+      buffer.remapRecipient(fromId, toId)
+    }
+
     val count = writableDatabase
       .update(MslRecipientTable.TABLE_NAME)
       .values(MslRecipientTable.RECIPIENT_ID to toId.serialize())
@@ -431,6 +680,10 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
   }
 
   override fun onDeletedRecipient(recipientId: RecipientId) {
+    synchronized(buffer) {
+      buffer.deleteAllForRecipient(recipientId)
+    }
+
     val deleted = writableDatabase
       .delete(MslRecipientTable.TABLE_NAME)
       .where("${MslRecipientTable.RECIPIENT_ID} = ?", recipientId)
@@ -439,5 +692,16 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
     Log.d(TAG, "Deleted recipient: $deleted")
   }
 
+  private fun PendingPayload.toLogEntry(recipientId: RecipientId): MessageLogEntry {
+    return MessageLogEntry(
+      recipientId = recipientId,
+      dateSent = dateSent,
+      content = content,
+      contentHint = contentHint,
+      urgent = urgent,
+      relatedMessages = messageIds
+    )
+  }
+
   private data class RecipientDevice(val recipientId: RecipientId, val devices: List<Int>)
 }
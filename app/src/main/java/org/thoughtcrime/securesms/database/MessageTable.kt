@@ -24,6 +24,7 @@ import android.text.SpannableString
 import android.text.TextUtils
 import androidx.annotation.VisibleForTesting
 import androidx.core.content.contentValuesOf
+import net.zetetic.database.sqlcipher.SQLiteStatement
 import org.json.JSONArray
 import org.json.JSONException
 import org.json.JSONObject
@@ -140,6 +141,7 @@ import org.thoughtcrime.securesms.polls.PollRecord
 import org.thoughtcrime.securesms.recipients.Recipient
 import org.thoughtcrime.securesms.recipients.RecipientId
 import org.thoughtcrime.securesms.revealable.ViewOnceExpirationInfo
+import org.thoughtcrime.securesms.service.ExpirationQueue
 import org.thoughtcrime.securesms.sms.GroupV2UpdateMessageUtil
 import org.thoughtcrime.securesms.stories.Stories.isFeatureEnabled
 import org.thoughtcrime.securesms.util.DateUtils
@@ -324,6 +326,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     private const val INDEX_RATE_LIMITED = "message_rate_limited_index"
     private const val INDEX_SCHEDULED_NON_STORY = "message_scheduled_non_story_index"
     private const val INDEX_MESSAGE_PINNED_UNTIL = "message_pinned_until_index"
+    private const val INDEX_EXPIRATION = "message_expiration_index"
 
     @JvmField
     val CREATE_INDEXS = arrayOf(
@@ -358,7 +361,8 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
       "CREATE INDEX IF NOT EXISTS message_collapsed_state_index ON $TABLE_NAME ($COLLAPSED_STATE)",
       "CREATE INDEX IF NOT EXISTS message_collapsed_head_id_index ON $TABLE_NAME ($COLLAPSED_HEAD_ID)",
       "CREATE INDEX IF NOT EXISTS $INDEX_NOTIFICATION_STATE ON $TABLE_NAME ($DATE_RECEIVED) WHERE $NOTIFIED = 0 AND $STORY_TYPE = 0 AND $LATEST_REVISION_ID IS NULL",
-      "CREATE INDEX IF NOT EXISTS message_expire_started_index ON $TABLE_NAME ($EXPIRE_STARTED) WHERE $EXPIRE_STARTED > 0",
+      // Covers the columns the expiration engine loads at startup, so it never has to touch the message rows themselves
+      "CREATE INDEX IF NOT EXISTS $INDEX_EXPIRATION ON $TABLE_NAME ($EXPIRE_STARTED, $EXPIRES_IN) WHERE $EXPIRE_STARTED > 0",
       "CREATE INDEX IF NOT EXISTS message_view_once_index ON $TABLE_NAME ($VIEW_ONCE) WHERE $VIEW_ONCE > 0",
       "CREATE INDEX IF NOT EXISTS $INDEX_RATE_LIMITED ON $TABLE_NAME ($ID) WHERE ($TYPE & ${MessageTypes.MESSAGE_RATE_LIMITED_BIT}) != 0",
       "CREATE INDEX IF NOT EXISTS $INDEX_SCHEDULED_NON_STORY ON $TABLE_NAME ($SCHEDULED_DATE) WHERE $STORY_TYPE = 0 AND $PARENT_STORY_ID <= 0 AND $SCHEDULED_DATE != -1"
@@ -518,6 +522,32 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
       $PARENT_STORY_ID <= 0
     """
 
+    private val INSERT_TEXT_SQL = """
+      INSERT OR IGNORE INTO $TABLE_NAME (
+        $DATE_SENT, $DATE_SERVER, $FROM_RECIPIENT_ID, $TO_RECIPIENT_ID, $TYPE, $THREAD_ID, $MMS_STATUS, $DATE_RECEIVED, $SMS_SUBSCRIPTION_ID, $EXPIRES_IN,
+        $UNIDENTIFIED, $SERVER_GUID, $BODY, $MESSAGE_RANGES, $QUOTE_ID, $QUOTE_AUTHOR
+      ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0, 0)
+    """.toSingleLine()
+
+    /**
+     * True if the message is a plain incoming text message, with nothing (attachments, quotes, mentions, etc.) that would require more than a single row insert.
+     */
+    @JvmStatic
+    fun isPlainText(message: IncomingMessage): Boolean {
+      return message.type == MessageType.NORMAL &&
+        message.storyType == StoryType.NONE &&
+        message.parentStoryId == null &&
+        message.quote == null &&
+        message.giftBadge == null &&
+        message.messageExtras == null &&
+        message.poll == null &&
+        !message.isViewOnce &&
+        message.attachments.isEmpty() &&
+        message.sharedContacts.isEmpty() &&
+        message.linkPreviews.isEmpty() &&
+        message.mentions.isEmpty()
+    }
+
     @JvmStatic
     fun mmsReaderFor(cursor: Cursor): MmsReader {
       return MmsReader(cursor)
@@ -658,9 +688,28 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
       .readToSingleObject { RecipientId.from(it.requireLong(FROM_RECIPIENT_ID)) }
   }
 
-  fun getExpirationStartedMessages(): Cursor {
-    val where = "$EXPIRE_STARTED > 0"
-    return queryMessages(where, null)
+  /**
+   * Loads the id and expiration time of every message whose timer has started, without loading the messages themselves. Served entirely from
+   * [INDEX_EXPIRATION], so it stays cheap even with a large number of expiring messages.
+   */
+  fun getExpirationStartedMessages(): ExpirationQueue {
+    return readableDatabase
+      .select(ID, EXPIRE_STARTED, EXPIRES_IN)
+      .from(TABLE_NAME)
+      .where("$EXPIRE_STARTED > 0")
+      .run()
+      .use { cursor ->
+        val queue = ExpirationQueue(cursor.count)
+        val idColumn = cursor.getColumnIndexOrThrow(ID)
+        val expireStartedColumn = cursor.getColumnIndexOrThrow(EXPIRE_STARTED)
+        val expiresInColumn = cursor.getColumnIndexOrThrow(EXPIRES_IN)
+
+        while (cursor.moveToNext()) {
+          queue.add(cursor.getLong(idColumn), cursor.getLong(expireStartedColumn) + cursor.getLong(expiresInColumn))
+        }
+
+        queue
+      }
   }
 
   /**
@@ -761,7 +810,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
 
     val threadId = getThreadIdForMessage(id)
     threads.update(threadId, false)
-    notifyConversationListeners(threadId)
+    notifyConversationListeners(threadId, listOf(id))
   }
 
   private fun updateTypeBitmask(id: Long, maskOff: Long, maskOn: Long) {
@@ -864,16 +913,14 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
           .run()
       }
 
-    val threadsUpdated: Set<Long> = results
-      .map { it.threadId }
-      .toSet()
-
     val storyRecipientsUpdated: Set<RecipientId> = results
       .filter { it.storyType.isStory }
       .mapNotNull { threads.getRecipientIdForThreadId(it.threadId) }
       .toSet()
 
-    notifyConversationListeners(threadsUpdated)
+    results
+      .groupBy({ it.threadId }, { it.messageId.id })
+      .forEach { (threadId, updatedMessageIds) -> notifyConversationListeners(threadId, updatedMessageIds) }
     notifyConversationListListeners()
     AppDependencies.databaseObserver.notifyStoryObservers(storyRecipientsUpdated)
 
@@ -902,11 +949,10 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
           .run()
       }
 
-    val threadsUpdated = results
-      .map { it.threadId }
-      .toSet()
+    results
+      .groupBy({ it.threadId }, { it.messageId.id })
+      .forEach { (threadId, updatedMessageIds) -> notifyConversationListeners(threadId, updatedMessageIds) }
 
-    notifyConversationListeners(threadsUpdated)
     return results
   }
 
@@ -2050,13 +2096,13 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
   }
 
   /**
-   * Returns the receipt status of the most recent meaningful message in the thread if it matches the provided message ID.
-   * If the ID doesn't match or otherwise can't be found, it will return null.
+   * Returns the receipt status of the most recent meaningful message in the thread if it's one of the provided message IDs.
+   * If none of the IDs match or otherwise can't be found, it will return null.
    *
    * This is a very specific method for use with [ThreadTable.updateReceiptStatus] to improve the perfomance of
    * processing receipts.
    */
-  fun getReceiptStatusIfItsTheMostRecentMeaningfulMessage(messageId: Long, threadId: Long): MessageReceiptStatus? {
+  fun getReceiptStatusIfItsTheMostRecentMeaningfulMessage(messageIds: Set<Long>, threadId: Long): MessageReceiptStatus? {
     val query = buildMeaningfulMessagesQuery(threadId)
 
     return readableDatabase
@@ -2068,7 +2114,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
       .run()
       .use { cursor ->
         if (cursor.moveToFirst()) {
-          if (cursor.requireLong(ID) != messageId) {
+          if (cursor.requireLong(ID) !in messageIds) {
             return null
           }
 
@@ -2223,10 +2269,9 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
       }
     }
 
-    val threadIds = messageIds.map { getThreadIdForMessage(it) }.toSet()
-    for (threadId in threadIds) {
-      notifyConversationListeners(threadId)
-    }
+    messageIds
+      .groupBy { getThreadIdForMessage(it) }
+      .forEach { (threadId, updatedMessageIds) -> notifyConversationListeners(threadId, updatedMessageIds) }
     for (messageId in messageIds) {
       AppDependencies.databaseObserver.notifyMessageUpdateObservers(MessageId(messageId))
     }
@@ -3237,6 +3282,85 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     )
   }
 
+  /**
+   * Inserts a batch of incoming messages, returning a result for each message in the same order as [messages]. An empty result means the message was a
+   * duplicate.
+   *
+   * The duplicate check for every (timestamp, author, thread) in the batch is done with a single query, and plain text messages (see [isPlainText]) are
+   * written with one reused compiled statement rather than going through [insertMessageInbox]. Everything else falls back to [insertMessageInbox], in order.
+   * Thread updates and observer notifications are done once per thread at the end of the batch.
+   */
+  @Throws(MmsException::class)
+  fun insertMessagesInbox(messages: List<IncomingMessage>, skipThreadUpdate: Boolean = false): List<Optional<InsertResult>> {
+    if (messages.isEmpty()) {
+      return emptyList()
+    }
+
+    val updatedThreads: MutableSet<Long> = LinkedHashSet()
+
+    val results: List<Optional<InsertResult>> = writableDatabase.withinTransaction {
+      val threadIdResults: MutableMap<Any, ThreadTable.ThreadIdResult> = HashMap()
+      val messageThreads: List<ThreadTable.ThreadIdResult> = messages.map { message ->
+        threadIdResults.getOrPut(message.groupId ?: message.from) { getThreadIdFor(message) }
+      }
+
+      val existing: MutableSet<DuplicateKey> = getExistingIncomingKeys(messages.map { it.sentTimeMillis })
+
+      IncomingTextInserter().use { inserter ->
+        messages.mapIndexed { i, message ->
+          val threadIdResult = messageThreads[i]
+
+          if (!existing.add(DuplicateKey(message.sentTimeMillis, message.from.toLong(), threadIdResult.threadId))) {
+            Log.w(TAG, "[insertMessagesInbox] Skipping duplicate (${message.sentTimeMillis}, ${message.from}, ThreadId::${threadIdResult.threadId})")
+            return@mapIndexed Optional.empty()
+          }
+
+          val result = if (isPlainText(message)) {
+            inserter.insert(message, threadIdResult, skipThreadUpdate = true, notifyObservers = false)
+          } else {
+            insertMessageInbox(message, candidateThreadId = threadIdResult.threadId, notifyObservers = false, skipThreadUpdate = true)
+              .map { it.copy(threadWasNewlyCreated = threadIdResult.newlyCreated) }
+          }
+
+          result.ifPresent { updatedThreads += it.threadId }
+          result.map { if (skipThreadUpdate) it else it.copy(needsThreadUpdate = false) }
+        }
+      }
+    }
+
+    if (!skipThreadUpdate) {
+      updatedThreads.forEach { threads.updateForMessageInsert(it, unarchive = true) }
+    }
+
+    updatedThreads.forEach { notifyConversationListeners(it) }
+
+    return results
+  }
+
+  /**
+   * Creates an [IncomingTextInserter]. Callers must close it once they are done with the batch.
+   */
+  fun newIncomingTextInserter(): IncomingTextInserter {
+    return IncomingTextInserter()
+  }
+
+  private fun getExistingIncomingKeys(timestamps: List<Long>): MutableSet<DuplicateKey> {
+    val keys: MutableSet<DuplicateKey> = HashSet()
+
+    for (query in SqlUtil.buildCollectionQuery(DATE_SENT, timestamps.toSet())) {
+      readableDatabase
+        .select(DATE_SENT, FROM_RECIPIENT_ID, THREAD_ID)
+        .from(TABLE_NAME)
+        .where(query.where, query.whereArgs)
+        .run()
+        .forEach { cursor ->
+          keys += DuplicateKey(cursor.requireLong(DATE_SENT), cursor.requireLong(FROM_RECIPIENT_ID), cursor.requireLong(THREAD_ID))
+        }
+    }
+
+    return keys
+  }
+
   fun insertChatSessionRefreshedMessage(recipientId: RecipientId, senderDeviceId: Long, sentTimestamp: Long): InsertResult {
     val recipient = Recipient.resolved(recipientId)
     val threadIdResult = threads.getOrCreateThreadIdResultFor(recipient.id, recipient.isGroup)
@@ -3335,7 +3459,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
 
     if (updated) {
       AppDependencies.databaseObserver.notifyMessageUpdateObservers(MessageId(messageId))
-      notifyConversationListeners(threadId)
+      notifyConversationListeners(threadId, listOf(messageId))
     }
   }
 
@@ -4048,12 +4172,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
   fun deleteMessage(messageId: Long, threadId: Long, notify: Boolean = true, updateThread: Boolean = true, skipSecureDelete: Boolean = false): Boolean {
     Log.d(TAG, "deleteMessage($messageId)")
 
-    attachments.deleteAttachmentsForMessage(messageId)
-    groupReceipts.deleteRowsForMessage(messageId)
-    mentions.deleteMentionsForMessage(messageId)
-    disassociatePollFromPollTerminate(polls.getPollTerminateMessageId(messageId))
-    disassociatePinnedMessage(messageId)
-    reassignCollapsedHead(messageId)
+    deleteMessageDependents(messageId)
 
     val deletionOperation = {
       writableDatabase
@@ -4092,6 +4211,83 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     return threadDeleted
   }
 
+  /**
+   * Deletes a batch of expired messages in a single transaction. Unlike calling [deleteMessage] for each one, every affected thread is only updated
+   * and notified once, and the message rows themselves are removed with one statement per batch of ids.
+   *
+   * Ids that no longer exist are ignored, so it's safe to pass in messages that may have already been deleted some other way.
+   *
+   * @return The number of messages that were deleted.
+   */
+  fun deleteExpiredMessages(messageIds: Collection<Long>): Int {
+    if (messageIds.isEmpty()) {
+      return 0
+    }
+
+    val threadIds: MutableSet<Long> = mutableSetOf()
+
+    SignalTrace.beginSection("MessageTable#deleteExpiredMessages")
+    val deleted = writableDatabase.withFtsSecureDelete(SearchTable.FTS_TABLE_NAME) {
+      val existing: List<Long> = SqlUtil.buildCollectionQuery(ID, messageIds).flatMap { query ->
+        readableDatabase
+          .select(ID, THREAD_ID)
+          .from(TABLE_NAME)
+          .where(query.where, query.whereArgs)
+          .run()
+          .readToList { cursor ->
+            threadIds += cursor.requireLong(THREAD_ID)
+            cursor.requireLong(ID)
+          }
+      }
+
+      if (existing.isEmpty()) {
+        return@withFtsSecureDelete 0
+      }
+
+      existing.forEach { deleteMessageDependents(it) }
+
+      val count = SqlUtil.buildCollectionQuery(ID, existing).sumOf { query ->
+        writableDatabase
+          .delete(TABLE_NAME)
+          .where(query.where, query.whereArgs)
+          .run()
+      }
+
+      calls.updateCallEventDeletionTimestamps()
+
+      for (threadId in threadIds) {
+        threads.setLastScrolled(threadId, 0)
+        threads.update(threadId, unarchive = false, syncThreadDelete = false)
+      }
+
+      count
+    }
+    SignalTrace.endSection()
+
+    Log.d(TAG, "deleteExpiredMessages() Deleted $deleted of ${messageIds.size} messages across ${threadIds.size} threads")
+
+    if (deleted > 0) {
+      notifyConversationListeners(threadIds)
+      notifyConversationListListeners()
+      notifyStickerListeners()
+      notifyStickerPackListeners()
+    }
+
+    return deleted
+  }
+
+  /**
+   * Cleans up everything that references a message and isn't removed by a cascade. Must be called before the message row itself is deleted.
+   */
+  private fun deleteMessageDependents(messageId: Long) {
+    attachments.deleteAttachmentsForMessage(messageId)
+    groupReceipts.deleteRowsForMessage(messageId)
+    mentions.deleteMentionsForMessage(messageId)
+    disassociatePollFromPollTerminate(polls.getPollTerminateMessageId(messageId))
+    disassociatePinnedMessage(messageId)
+    reassignCollapsedHead(messageId)
+  }
+
   fun deleteScheduledMessage(messageId: Long) {
     Log.d(TAG, "deleteScheduledMessage($messageId)")
 
@@ -5439,124 +5635,116 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
       .run()
   }
 
-  fun incrementDeliveryReceiptCounts(targetTimestamps: List<Long>, receiptAuthor: RecipientId, receiptSentTimestamp: Long, stopwatch: Stopwatch? = null, receiptDataCache: MutableMap<Long, ReceiptData>? = null): Set<Long> {
-    return incrementReceiptCounts(targetTimestamps, receiptAuthor, receiptSentTimestamp, ReceiptType.DELIVERY, stopwatch = stopwatch, receiptDataCache = receiptDataCache)
-  }
-
   fun incrementDeliveryReceiptCount(targetTimestamps: Long, receiptAuthor: RecipientId, receiptSentTimestamp: Long): Boolean {
     return incrementReceiptCount(targetTimestamps, receiptAuthor, receiptSentTimestamp, ReceiptType.DELIVERY)
   }
 
-  /**
-   * @return A list of ID's that were not updated.
-   */
-  fun incrementReadReceiptCounts(targetTimestamps: List<Long>, receiptAuthor: RecipientId, receiptSentTimestamp: Long, receiptDataCache: MutableMap<Long, ReceiptData>? = null): Set<Long> {
-    return incrementReceiptCounts(targetTimestamps, receiptAuthor, receiptSentTimestamp, ReceiptType.READ, receiptDataCache = receiptDataCache)
-  }
-
   fun incrementReadReceiptCount(targetTimestamps: Long, receiptAuthor: RecipientId, receiptSentTimestamp: Long): Boolean {
     return incrementReceiptCount(targetTimestamps, receiptAuthor, receiptSentTimestamp, ReceiptType.READ)
   }
 
-  /**
-   * @return A list of ID's that were not updated.
-   */
-  fun incrementViewedReceiptCounts(targetTimestamps: List<Long>, receiptAuthor: RecipientId, receiptSentTimestamp: Long): Set<Long> {
-    return incrementReceiptCounts(targetTimestamps, receiptAuthor, receiptSentTimestamp, ReceiptType.VIEWED)
-  }
-
-  fun incrementViewedNonStoryReceiptCounts(targetTimestamps: List<Long>, receiptAuthor: RecipientId, receiptSentTimestamp: Long): Set<Long> {
-    return incrementReceiptCounts(targetTimestamps, receiptAuthor, receiptSentTimestamp, ReceiptType.VIEWED, MessageQualifier.NORMAL)
-  }
-
   fun incrementViewedReceiptCount(targetTimestamp: Long, receiptAuthor: RecipientId, receiptSentTimestamp: Long): Boolean {
     return incrementReceiptCount(targetTimestamp, receiptAuthor, receiptSentTimestamp, ReceiptType.VIEWED)
   }
 
-  fun incrementViewedStoryReceiptCounts(targetTimestamps: List<Long>, receiptAuthor: RecipientId, receiptSentTimestamp: Long): Set<Long> {
-    val messageUpdates: MutableSet<MessageReceiptUpdate> = HashSet()
-    val unhandled: MutableSet<Long> = HashSet()
-
-    writableDatabase.withinTransaction {
-      for (targetTimestamp in targetTimestamps) {
-        val updates = incrementReceiptCountInternal(targetTimestamp, receiptAuthor, receiptSentTimestamp, ReceiptType.VIEWED, MessageQualifier.STORY)
+  /**
+   * @return Whether or not a message was updated.
+   */
+  private fun incrementReceiptCount(targetTimestamp: Long, receiptAuthor: RecipientId, receiptSentTimestamp: Long, receiptType: ReceiptType): Boolean {
+    return incrementReceiptCounts(listOf(IncomingReceipt(targetTimestamp, receiptAuthor, receiptSentTimestamp, receiptType))).isEmpty()
+  }
 
-        if (updates.isNotEmpty()) {
-          messageUpdates += updates
-        } else {
-          unhandled += targetTimestamp
-        }
-      }
+  /**
+   * Applies a batch of receipts, which may be of any type and from any number of authors. Rather than working through them one at a time, the
+   * target messages for the entire batch are found with a single query, marked with a single statement per receipt type, and each affected thread
+   * has its receipt status updated once.
+   *
+   * @return The receipts whose target message couldn't be found.
+   */
+  fun incrementReceiptCounts(receipts: Collection<IncomingReceipt>, stopwatch: Stopwatch? = null): Set<IncomingReceipt> {
+    if (receipts.isEmpty()) {
+      return emptySet()
     }
 
-    for (update in messageUpdates) {
-      AppDependencies.databaseObserver.notifyMessageUpdateObservers(update.messageId)
-      AppDependencies.databaseObserver.notifyVerboseConversationListeners(setOf(update.threadId))
-    }
+    val batch: List<IncomingReceipt> = receipts.toList()
+    val messageUpdates: MutableSet<MessageReceiptUpdate> = HashSet()
+    val missing: MutableSet<IncomingReceipt> = HashSet()
 
-    if (messageUpdates.isNotEmpty()) {
-      notifyConversationListListeners()
-    }
+    writableDatabase.withinTransaction { db ->
+      val targets: Map<Int, ReceiptTarget> = db.findReceiptTargets(batch)
+      stopwatch?.split("receipt-query")
+
+      // Only allow updating receipts for a group message if the sender is actually a member (stories are excluded because a single story timestamp can map to multiple messages)
+      val memberReceipts: Set<Pair<Long, RecipientId>> = groupReceipts.filterExisting(
+        targets
+          .filter { (_, target) -> !target.forIndividualChat && target.storyType == StoryType.NONE }
+          .map { (index, target) -> target.messageId to batch[index].author }
+      )
+      stopwatch?.split("group-membership")
 
-    return unhandled
-  }
+      val marks: MutableMap<ReceiptType, MutableMap<Long, Long>> = mutableMapOf()
+      val groupReceiptUpdates: MutableList<GroupReceiptTable.ReceiptUpdate> = mutableListOf()
 
-  /**
-   * Wraps a single receipt update in a transaction and triggers the proper updates.
-   *
-   * @return Whether or not some thread was updated.
-   */
-  private fun incrementReceiptCount(targetTimestamp: Long, receiptAuthor: RecipientId, receiptSentTimestamp: Long, receiptType: ReceiptType, messageQualifier: MessageQualifier = MessageQualifier.ALL): Boolean {
-    var messageUpdates: Set<MessageReceiptUpdate> = HashSet()
+      for ((index, receipt) in batch.withIndex()) {
+        val target = targets[index]
 
-    writableDatabase.withinTransaction {
-      messageUpdates = incrementReceiptCountInternal(targetTimestamp, receiptAuthor, receiptSentTimestamp, receiptType, messageQualifier)
+        if (target == null) {
+          if (receipt.type == ReceiptType.DELIVERY) {
+            earlyDeliveryReceiptCache.increment(receipt.targetTimestamp, receipt.author, receipt.receiptSentTimestamp)
+          }
+          missing += receipt
+          continue
+        }
 
-      for (messageUpdate in messageUpdates) {
-        threads.updateReceiptStatus(messageUpdate.messageId.id, messageUpdate.threadId)
-      }
-    }
+        if (!target.forIndividualChat && target.storyType == StoryType.NONE && (target.messageId to receipt.author) !in memberReceipts) {
+          missing += receipt
+          continue
+        }
 
-    for (threadUpdate in messageUpdates) {
-      AppDependencies.databaseObserver.notifyMessageUpdateObservers(threadUpdate.messageId)
-    }
+        val marked = target.isMarked(receipt.type)
+        if (!marked) {
+          // We set the receipt_timestamp to the max of the receipts because that single column represents the timestamp of the last receipt of any type.
+          marks.getOrPut(receipt.type) { mutableMapOf() }.merge(target.messageId, receipt.receiptSentTimestamp, ::maxOf)
+        }
 
-    return messageUpdates.isNotEmpty()
-  }
+        if (!target.forIndividualChat) {
+          groupReceiptUpdates += GroupReceiptTable.ReceiptUpdate(receipt.author, target.messageId, receipt.type.groupStatus, receipt.receiptSentTimestamp)
+        }
 
-  /**
-   * Wraps multiple receipt updates in a transaction and triggers the proper updates.
-   *
-   * @return All of the target timestamps that couldn't be found in the table.
-   */
-  private fun incrementReceiptCounts(targetTimestamps: List<Long>, receiptAuthor: RecipientId, receiptSentTimestamp: Long, receiptType: ReceiptType, messageQualifier: MessageQualifier = MessageQualifier.ALL, stopwatch: Stopwatch? = null, receiptDataCache: MutableMap<Long, ReceiptData>? = null): Set<Long> {
-    val messageUpdates: MutableSet<MessageReceiptUpdate> = HashSet()
-    val missingTargetTimestamps: MutableSet<Long> = HashSet()
+        if (target.storyType != StoryType.NONE) {
+          val storyMessageIds = storySends.getStoryMessagesFor(receipt.author, receipt.targetTimestamp)
+          if (storyMessageIds.isEmpty()) {
+            missing += receipt
+          }
 
-    writableDatabase.withinTransaction {
-      for (targetTimestamp in targetTimestamps) {
-        val updates: Set<MessageReceiptUpdate> = incrementReceiptCountInternal(targetTimestamp, receiptAuthor, receiptSentTimestamp, receiptType, messageQualifier, stopwatch, receiptDataCache)
-        if (updates.isNotEmpty()) {
-          messageUpdates += updates
+          storyMessageIds.mapTo(groupReceiptUpdates) { GroupReceiptTable.ReceiptUpdate(receipt.author, it.id, receipt.type.groupStatus, receipt.receiptSentTimestamp) }
+          storyMessageIds.mapTo(messageUpdates) { MessageReceiptUpdate(-1, it, shouldUpdateSnippet = false) }
         } else {
-          missingTargetTimestamps += targetTimestamp
+          messageUpdates += MessageReceiptUpdate(target.threadId, MessageId(target.messageId), shouldUpdateSnippet = receipt.type != ReceiptType.VIEWED && !marked)
         }
       }
 
-      for (update in messageUpdates) {
-        if (update.shouldUpdateSnippet) {
-          threads.updateReceiptStatus(update.messageId.id, update.threadId, stopwatch)
-        }
+      for ((receiptType, receiptTimestamps) in marks) {
+        db.markReceipts(receiptType, receiptTimestamps)
       }
+      stopwatch?.split("receipt-update")
+
+      groupReceipts.update(groupReceiptUpdates)
+      stopwatch?.split("group-receipt")
+
+      messageUpdates
+        .filter { it.shouldUpdateSnippet }
+        .groupBy { it.threadId }
+        .forEach { (threadId, updates) -> threads.updateReceiptStatus(updates.map { it.messageId.id }.toSet(), threadId, stopwatch) }
     }
 
     for (update in messageUpdates) {
       AppDependencies.databaseObserver.notifyMessageUpdateObservers(update.messageId)
-      AppDependencies.databaseObserver.notifyVerboseConversationListeners(setOf(update.threadId))
+    }
 
-      if (messageQualifier == MessageQualifier.STORY) {
-        AppDependencies.databaseObserver.notifyStoryObservers(threads.getRecipientIdForThreadId(update.threadId)!!)
-      }
+    val updatedThreadIds = messageUpdates.mapNotNullTo(HashSet()) { update -> update.threadId.takeIf { it > 0 } }
+    if (updatedThreadIds.isNotEmpty()) {
+      AppDependencies.databaseObserver.notifyVerboseConversationListeners(updatedThreadIds)
     }
 
     if (messageUpdates.isNotEmpty()) {
@@ -5565,27 +5753,44 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
 
     stopwatch?.split("observers")
 
-    return missingTargetTimestamps
+    return missing
   }
 
-  private fun incrementReceiptCountInternal(targetTimestamp: Long, receiptAuthor: RecipientId, receiptSentTimestamp: Long, receiptType: ReceiptType, messageQualifier: MessageQualifier, stopwatch: Stopwatch? = null, receiptDataCache: MutableMap<Long, ReceiptData>? = null): Set<MessageReceiptUpdate> {
-    val qualifierWhere: String = when (messageQualifier) {
-      MessageQualifier.NORMAL -> " AND NOT ($IS_STORY_CLAUSE)"
-      MessageQualifier.STORY -> " AND $IS_STORY_CLAUSE"
-      MessageQualifier.ALL -> ""
+  /**
+   * Finds the message each receipt in the batch is for, keyed by the receipt's index in the batch. Receipts whose message couldn't be found are absent.
+   */
+  private fun SQLiteDatabase.findReceiptTargets(receipts: List<IncomingReceipt>): Map<Int, ReceiptTarget> {
+    val lookupTable = "tmp_receipt_target"
+
+    this.execSQL("CREATE TEMP TABLE IF NOT EXISTS $lookupTable (receipt_index INTEGER PRIMARY KEY, target_timestamp INTEGER NOT NULL, author_id INTEGER NOT NULL, qualifier INTEGER NOT NULL)")
+    this.execSQL("DELETE FROM $lookupTable")
+
+    val lookups = receipts.mapIndexed { index, receipt ->
+      contentValuesOf(
+        "receipt_index" to index,
+        "target_timestamp" to receipt.targetTimestamp,
+        "author_id" to receipt.author.toLong(),
+        "qualifier" to receipt.qualifier.ordinal
+      )
     }
 
-    // Note: While it is true that multiple messages can have the same (sent, author) pair, this should only happen for stories, which are handled below.
-    val receiptData: ReceiptData? = receiptDataCache?.get(targetTimestamp)
-      ?: readableDatabase
-        .select(ID, THREAD_ID, STORY_TYPE, receiptType.columnName, TO_RECIPIENT_ID)
-        .from(TABLE_NAME)
-        .where(
-          """
-          $DATE_SENT = $targetTimestamp AND
+    SqlUtil.buildBulkInsert(lookupTable, arrayOf("receipt_index", "target_timestamp", "author_id", "qualifier"), lookups).forEach {
+      this.execSQL(it.where, it.whereArgs)
+    }
+
+    // Note: While it is true that multiple messages can have the same (sent, author) pair, this should only happen for stories, which are handled separately.
+    val targets: MutableMap<Int, ReceiptTarget> = HashMap(receipts.size)
+
+    this
+      .rawQuery(
+        """
+        SELECT $lookupTable.receipt_index, $lookupTable.author_id, $TABLE_NAME.$ID, $THREAD_ID, $STORY_TYPE, $HAS_DELIVERY_RECEIPT, $HAS_READ_RECEIPT, $VIEWED_COLUMN, $TO_RECIPIENT_ID
+        FROM $lookupTable
+        INNER JOIN $TABLE_NAME ON
+          $DATE_SENT = $lookupTable.target_timestamp AND
           $FROM_RECIPIENT_ID = ? AND
           (
-            $TO_RECIPIENT_ID = ? OR
+            $TO_RECIPIENT_ID = $lookupTable.author_id OR
             EXISTS (
               SELECT 1
               FROM ${RecipientTable.TABLE_NAME}
@@ -5593,79 +5798,57 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
                 ${RecipientTable.TABLE_NAME}.${RecipientTable.ID} = $TO_RECIPIENT_ID AND
                 ${RecipientTable.TABLE_NAME}.${RecipientTable.TYPE} != ${RecipientTable.RecipientType.INDIVIDUAL.id}
             )
+          ) AND
+          (
+            $lookupTable.qualifier = ${MessageQualifier.ALL.ordinal} OR
+            ($lookupTable.qualifier = ${MessageQualifier.NORMAL.ordinal} AND NOT ($IS_STORY_CLAUSE)) OR
+            ($lookupTable.qualifier = ${MessageQualifier.STORY.ordinal} AND $IS_STORY_CLAUSE)
           )
-          $qualifierWhere
-          """,
-          Recipient.self().id,
-          receiptAuthor
-        )
-        .limit(1)
-        .run()
-        .readToSingleObject { cursor ->
-          ReceiptData(
+        """,
+        buildArgs(Recipient.self().id)
+      )
+      .forEach { cursor ->
+        val index = cursor.requireInt("receipt_index")
+        if (index !in targets) {
+          targets[index] = ReceiptTarget(
             messageId = cursor.requireLong(ID),
             threadId = cursor.requireLong(THREAD_ID),
             storyType = StoryType.fromCode(cursor.requireInt(STORY_TYPE)),
-            marked = cursor.requireBoolean(receiptType.columnName),
-            forIndividualChat = cursor.requireLong(TO_RECIPIENT_ID) == receiptAuthor.toLong()
+            hasDeliveryReceipt = cursor.requireBoolean(HAS_DELIVERY_RECEIPT),
+            hasReadReceipt = cursor.requireBoolean(HAS_READ_RECEIPT),
+            viewed = cursor.requireBoolean(VIEWED_COLUMN),
+            forIndividualChat = cursor.requireLong(TO_RECIPIENT_ID) == cursor.requireLong("author_id")
           )
         }
-        .also { result ->
-          if (result != null && !result.forIndividualChat) {
-            receiptDataCache?.put(targetTimestamp, result)
-          }
-        }
-
-    stopwatch?.split("receipt-query")
-
-    if (receiptData == null) {
-      if (receiptType == ReceiptType.DELIVERY) {
-        earlyDeliveryReceiptCache.increment(targetTimestamp, receiptAuthor, receiptSentTimestamp)
       }
 
-      return emptySet()
-    }
-
-    // Only allow updating receipts for a group message if the sender is actually a member (stories are excluded because a single story timestamp can map to multiple messages)
-    if (!receiptData.forIndividualChat && receiptData.storyType == StoryType.NONE && !groupReceipts.hasReceipt(receiptData.messageId, receiptAuthor)) {
-      return emptySet()
-    }
+    return targets
+  }
 
-    if (!receiptData.marked) {
-      // We set the receipt_timestamp to the max of the two values because that single column represents the timestamp of the last receipt of any type.
-      // That means we want to update it for each new receipt type, but we never want the time to go backwards.
-      writableDatabase.execSQL(
-        """
-        UPDATE $TABLE_NAME
-        SET
-          ${receiptType.columnName} = 1,
-          $RECEIPT_TIMESTAMP = MAX($RECEIPT_TIMESTAMP, $receiptSentTimestamp)
-        WHERE
-          $ID = ${receiptData.messageId}
-        """
-      )
+  /**
+   * Sets the [receiptType] column on each of the messages, moving its receipt timestamp up to the one given for it if that's later.
+   */
+  private fun SQLiteDatabase.markReceipts(receiptType: ReceiptType, receiptTimestamps: Map<Long, Long>) {
+    val markTable = "tmp_receipt_mark"
 
-      if (receiptDataCache?.containsKey(targetTimestamp) == true) {
-        receiptDataCache[targetTimestamp] = receiptData.copy(marked = true)
-      }
-    }
-    stopwatch?.split("receipt-update")
+    this.execSQL("CREATE TEMP TABLE IF NOT EXISTS $markTable (message_id INTEGER PRIMARY KEY, receipt_timestamp INTEGER NOT NULL)")
+    this.execSQL("DELETE FROM $markTable")
 
-    if (!receiptData.forIndividualChat) {
-      groupReceipts.update(receiptAuthor, receiptData.messageId, receiptType.groupStatus, receiptSentTimestamp)
+    val marks = receiptTimestamps.map { (messageId, timestamp) -> contentValuesOf("message_id" to messageId, "receipt_timestamp" to timestamp) }
+    SqlUtil.buildBulkInsert(markTable, arrayOf("message_id", "receipt_timestamp"), marks).forEach {
+      this.execSQL(it.where, it.whereArgs)
     }
 
-    stopwatch?.split("group-receipt")
-
-    return if (receiptData.storyType != StoryType.NONE) {
-      val storyMessageIds = storySends.getStoryMessagesFor(receiptAuthor, targetTimestamp)
-      storyMessageIds.forEach { messageId -> groupReceipts.update(receiptAuthor, messageId.id, receiptType.groupStatus, receiptSentTimestamp) }
-      storyMessageIds.map { messageId -> MessageReceiptUpdate(-1, messageId, false) }.toSet()
-    } else {
-      setOf(MessageReceiptUpdate(receiptData.threadId, MessageId(receiptData.messageId), shouldUpdateSnippet = receiptType != ReceiptType.VIEWED && !receiptData.marked))
-    }.also {
-      stopwatch?.split("stories")
-    }
+    this.execSQL(
+      """
+      UPDATE $TABLE_NAME
+      SET
+        ${receiptType.columnName} = 1,
+        $RECEIPT_TIMESTAMP = MAX($RECEIPT_TIMESTAMP, (SELECT $markTable.receipt_timestamp FROM $markTable WHERE $markTable.message_id = $TABLE_NAME.$ID))
+      WHERE
+        $ID IN (SELECT message_id FROM $markTable)
+      """
+    )
   }
 
   /**
@@ -6737,19 +6920,40 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     val type: Long
   )
 
-  protected enum class ReceiptType(val columnName: String, val groupStatus: Int) {
+  enum class ReceiptType(val columnName: String, val groupStatus: Int) {
     READ(HAS_READ_RECEIPT, GroupReceiptTable.STATUS_READ),
     DELIVERY(HAS_DELIVERY_RECEIPT, GroupReceiptTable.STATUS_DELIVERED),
     VIEWED(VIEWED_COLUMN, GroupReceiptTable.STATUS_VIEWED)
   }
 
-  data class ReceiptData(
+  /**
+   * A receipt from [author] for the message we sent at [targetTimestamp].
+   */
+  data class IncomingReceipt(
+    val targetTimestamp: Long,
+    val author: RecipientId,
+    val receiptSentTimestamp: Long,
+    val type: ReceiptType,
+    val qualifier: MessageQualifier = MessageQualifier.ALL
+  )
+
+  private class ReceiptTarget(
     val messageId: Long,
     val threadId: Long,
     val storyType: StoryType,
-    val marked: Boolean,
+    val hasDeliveryReceipt: Boolean,
+    val hasReadReceipt: Boolean,
+    val viewed: Boolean,
     val forIndividualChat: Boolean
-  )
+  ) {
+    fun isMarked(receiptType: ReceiptType): Boolean {
+      return when (receiptType) {
+        ReceiptType.DELIVERY -> hasDeliveryReceipt
+        ReceiptType.READ -> hasReadReceipt
+        ReceiptType.VIEWED -> viewed
+      }
+    }
+  }
 
   data class MessageReceiptStatus(
     val hasReadReceipt: Boolean,
@@ -6799,6 +7003,81 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     val dateReceived: Long
   )
 
+  private data class DuplicateKey(
+    val dateSent: Long,
+    val fromRecipientId: Long,
+    val threadId: Long
+  )
+
+  /**
+   * Writes plain text incoming messages (see [isPlainText]) with a single compiled statement, skipping the general-purpose bookkeeping in [insertMessageInbox]
+   * that doesn't apply to them. Intended to be held for the length of a single batch of inserts and then closed.
+   */
+  inner class IncomingTextInserter internal constructor() : Closeable {
+
+    private var statement: SQLiteStatement? = null
+    private val activeThreads: MutableSet<Long> = HashSet()
+
+    /**
+     * Inserts the message, returning an empty result if it's a duplicate. Does not notify observers when [notifyObservers] is false, leaving it to the caller.
+     */
+    fun insert(retrieved: IncomingMessage, threadIdResult: ThreadTable.ThreadIdResult = getThreadIdFor(retrieved), skipThreadUpdate: Boolean = false, notifyObservers: Boolean = true): Optional<InsertResult> {
+      check(isPlainText(retrieved)) { "Not a plain text message!" }
+
+      val threadId = threadIdResult.threadId
+      val statement = statement ?: writableDatabase.compileStatement(INSERT_TEXT_SQL).also { statement = it }
+
+      statement.clearBindings()
+      statement.bindLong(1, retrieved.sentTimeMillis)
+      statement.bindLong(2, retrieved.serverTimeMillis)
+      statement.bindLong(3, retrieved.from.toLong())
+      statement.bindLong(4, Recipient.self().id.toLong())
+      statement.bindLong(5, retrieved.toMessageType())
+      statement.bindLong(6, threadId)
+      statement.bindLong(7, MmsStatus.DOWNLOAD_INITIALIZED.toLong())
+      statement.bindLong(8, retrieved.receivedTimeMillis)
+      statement.bindLong(9, retrieved.subscriptionId.toLong())
+      statement.bindLong(10, retrieved.expiresIn)
+      statement.bindLong(11, retrieved.isUnidentified.toInt().toLong())
+      if (retrieved.serverGuid != null) statement.bindString(12, retrieved.serverGuid) else statement.bindNull(12)
+      if (retrieved.body != null) statement.bindString(13, retrieved.body) else statement.bindNull(13)
+      if (retrieved.messageRanges != null) statement.bindBlob(14, retrieved.messageRanges.encode()) else statement.bindNull(14)
+
+      val messageId = statement.executeInsert()
+      if (messageId < 0) {
+        Log.w(TAG, "Failed to insert text message (${retrieved.sentTimeMillis}, ${retrieved.from}, ThreadId::$threadId})! Likely a duplicate.")
+        return Optional.empty()
+      }
+
+      if (activeThreads.add(threadId)) {
+        threads.markAsActiveEarly(threadId)
+      }
+
+      if (!skipThreadUpdate) {
+        threads.updateForMessageInsert(threadId, unarchive = true)
+      }
+
+      if (notifyObservers) {
+        notifyConversationListeners(threadId)
+      }
+
+      return Optional.of(
+        InsertResult(
+          messageId = messageId,
+          threadId = threadId,
+          threadWasNewlyCreated = threadIdResult.newlyCreated,
+          needsThreadUpdate = skipThreadUpdate
+        )
+      )
+    }
+
+    override fun close() {
+      statement?.close()
+      statement = null
+      activeThreads.clear()
+    }
+  }
+
   private data class QuoteDescriptor(
     private val timestamp: Long,
     private val author: RecipientId
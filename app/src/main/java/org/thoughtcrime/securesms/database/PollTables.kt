@@ -2,6 +2,7 @@ package org.thoughtcrime.securesms.database
 
 import android.content.ContentValues
 import android.content.Context
+import android.database.Cursor
 import androidx.core.content.contentValuesOf
 import org.signal.core.util.SqlUtil
 import org.signal.core.util.delete
@@ -25,6 +26,7 @@ import org.signal.core.util.requireString
 import org.signal.core.util.select
 import org.signal.core.util.update
 import org.signal.core.util.withinTransaction
+import org.thoughtcrime.securesms.backup.v2.database.ArchiveChildCursor
 import org.thoughtcrime.securesms.database.model.MessageId
 import org.thoughtcrime.securesms.dependencies.AppDependencies
 import org.thoughtcrime.securesms.polls.Poll
@@ -622,6 +624,13 @@ class PollTables(context: Context?, databaseHelper: SignalDatabase?) : DatabaseT
    * Maps message ids to its associated poll (if it exists)
    */
   fun getPollsForMessages(messageIds: Collection<Long>, includePending: Boolean = true): Map<Long, PollRecord> {
+    return getPollsForMessages(messageIds.toLongArray(), includePending)
+  }
+
+  /**
+   * Maps message ids to its associated poll (if it exists)
+   */
+  fun getPollsForMessages(messageIds: LongArray, includePending: Boolean = true): Map<Long, PollRecord> {
     if (messageIds.isEmpty() || !Recipient.isSelfSet) {
       return emptyMap()
     }
@@ -634,35 +643,58 @@ class PollTables(context: Context?, databaseHelper: SignalDatabase?) : DatabaseT
       .where(query.where, query.whereArgs)
       .run()
       .readToMap { cursor ->
-        val pollId = cursor.requireLong(PollTable.ID)
-        val pollVotes = getPollVotes(pollId)
-        val (pendingAdds, pendingRemoves) = getPendingVotes(pollId)
-        val pollOptions = getPollOptions(pollId).map { option ->
-          val voters = pollVotes[option.key] ?: emptyList()
-          val voteState = if (includePending && pendingAdds.contains(option.key)) {
-            VoteState.PENDING_ADD
-          } else if (includePending && pendingRemoves.contains(option.key)) {
-            VoteState.PENDING_REMOVE
-          } else if (voters.any { it.id == self }) {
-            VoteState.ADDED
-          } else {
-            VoteState.NONE
-          }
-          PollOption(id = option.key, text = option.value, voters = voters, voteState = voteState)
-        }
-        val poll = PollRecord(
-          id = pollId,
-          question = cursor.requireNonNullString(PollTable.QUESTION),
-          pollOptions = pollOptions,
-          allowMultipleVotes = cursor.requireBoolean(PollTable.ALLOW_MULTIPLE_VOTES),
-          hasEnded = cursor.requireBoolean(PollTable.END_MESSAGE_ID),
-          authorId = cursor.requireLong(PollTable.AUTHOR_ID),
-          messageId = cursor.requireLong(PollTable.MESSAGE_ID)
-        )
-        cursor.requireLong(PollTable.MESSAGE_ID) to poll
+        cursor.requireLong(PollTable.MESSAGE_ID) to cursor.toPollRecord(self, includePending)
       }
   }
 
+  /**
+   * Reads the polls in the messages being exported that were received in the given range, in export order. Pending votes are not included.
+   * See [ArchiveChildCursor].
+   */
+  fun getPollsForArchiveExport(startDateReceived: Long, endDateReceived: Long): ArchiveChildCursor<PollRecord> {
+    val self = Recipient.self().id.toLong()
+
+    return ArchiveChildCursor.query(
+      db = readableDatabase,
+      childTable = PollTable.TABLE_NAME,
+      messageIdColumn = "${PollTable.TABLE_NAME}.${PollTable.MESSAGE_ID}",
+      childIdColumn = "${PollTable.TABLE_NAME}.${PollTable.ID}",
+      projection = arrayOf("${PollTable.TABLE_NAME}.*"),
+      where = null,
+      startDateReceived = startDateReceived,
+      endDateReceived = endDateReceived
+    ) { it.toPollRecord(self, includePending = false) }
+  }
+
+  private fun Cursor.toPollRecord(self: Long, includePending: Boolean): PollRecord {
+    val pollId = requireLong(PollTable.ID)
+    val pollVotes = getPollVotes(pollId)
+    val (pendingAdds, pendingRemoves) = getPendingVotes(pollId)
+    val pollOptions = getPollOptions(pollId).map { option ->
+      val voters = pollVotes[option.key] ?: emptyList()
+      val voteState = if (includePending && pendingAdds.contains(option.key)) {
+        VoteState.PENDING_ADD
+      } else if (includePending && pendingRemoves.contains(option.key)) {
+        VoteState.PENDING_REMOVE
+      } else if (voters.any { it.id == self }) {
+        VoteState.ADDED
+      } else {
+        VoteState.NONE
+      }
+      PollOption(id = option.key, text = option.value, voters = voters, voteState = voteState)
+    }
+
+    return PollRecord(
+      id = pollId,
+      question = requireNonNullString(PollTable.QUESTION),
+      pollOptions = pollOptions,
+      allowMultipleVotes = requireBoolean(PollTable.ALLOW_MULTIPLE_VOTES),
+      hasEnded = requireBoolean(PollTable.END_MESSAGE_ID),
+      authorId = requireLong(PollTable.AUTHOR_ID),
+      messageId = requireLong(PollTable.MESSAGE_ID)
+    )
+  }
+
   /**
    * Given a poll id, returns a list of all of the ids of its options
    */
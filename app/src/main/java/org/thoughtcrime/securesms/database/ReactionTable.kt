@@ -10,6 +10,7 @@ import org.signal.core.util.forEach
 import org.signal.core.util.logging.Log
 import org.signal.core.util.select
 import org.signal.core.util.update
+import org.thoughtcrime.securesms.backup.v2.database.ArchiveChildCursor
 import org.thoughtcrime.securesms.database.model.MessageId
 import org.thoughtcrime.securesms.database.model.ReactionRecord
 import org.thoughtcrime.securesms.dependencies.AppDependencies
@@ -76,6 +77,10 @@ class ReactionTable(context: Context, databaseHelper: SignalDatabase) : Database
   }
 
   fun getReactionsForMessages(messageIds: Collection<Long>): Map<Long, List<ReactionRecord>> {
+    return getReactionsForMessages(messageIds.toLongArray())
+  }
+
+  fun getReactionsForMessages(messageIds: LongArray): Map<Long, List<ReactionRecord>> {
     if (messageIds.isEmpty()) {
       return emptyMap()
     }
@@ -105,6 +110,22 @@ class ReactionTable(context: Context, databaseHelper: SignalDatabase) : Database
     return messageIdToReactions
   }
 
+  /**
+   * Reads the reactions to the messages being exported that were received in the given range, in export order. See [ArchiveChildCursor].
+   */
+  fun getReactionsForArchiveExport(startDateReceived: Long, endDateReceived: Long): ArchiveChildCursor<ReactionRecord> {
+    return ArchiveChildCursor.query(
+      db = readableDatabase,
+      childTable = TABLE_NAME,
+      messageIdColumn = "$TABLE_NAME.$MESSAGE_ID",
+      childIdColumn = "$TABLE_NAME.$ID",
+      projection = arrayOf("$TABLE_NAME.*"),
+      where = null,
+      startDateReceived = startDateReceived,
+      endDateReceived = endDateReceived
+    ) { readReaction(it) }
+  }
+
   fun addReaction(messageId: MessageId, reaction: ReactionRecord) {
     writableDatabase.beginTransaction()
     try {
@@ -526,26 +526,95 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
       }
 
       db.runPostSuccessfulTransaction {
-        if (result.affectedIds.isNotEmpty()) {
-          result.affectedIds.forEach { AppDependencies.databaseObserver.notifyRecipientChanged(it) }
-          RetrieveProfileJob.enqueue(result.affectedIds, skipDebounce = true)
-        }
+        notifyPnpChanges(result.affectedIds, result.oldIds.map { it to result.finalId })
+      }
+    }
 
-        if (result.oldIds.isNotEmpty()) {
-          result.oldIds.forEach { oldId ->
-            Recipient.live(oldId).refresh(result.finalId)
-            AppDependencies.recipientCache.remap(oldId, result.finalId)
-          }
+    return result.finalId
+  }
+
+  /**
+   * A batched version of [getAndPossiblyMerge] for callers that have many tuples at once, like CDS refreshes and group updates. Gives back the
+   * same [RecipientId]s, in the same order, and leaves the database in the same state as calling [getAndPossiblyMerge] on each tuple in turn.
+   *
+   * Every recipient that matches any of the tuples is read up front with a few `IN` queries, and each tuple is then resolved against that in-memory
+   * view rather than with its own set of lookups. Tuples that already match a single recipient cost nothing more. The rest are applied in order in a
+   * single transaction, and the view is refreshed for any recipient they change so that later tuples see the result. If any tuple is invalid, nothing
+   * is applied.
+   */
+  fun bulkGetAndPossiblyMerge(tuples: List<PnpTuple>, changeSelf: Boolean = false): List<RecipientId> {
+    if (tuples.isEmpty()) {
+      return emptyList()
+    }
+
+    val db = writableDatabase
+    val ids: MutableList<RecipientId> = ArrayList(tuples.size)
+    val affectedIds: MutableSet<RecipientId> = LinkedHashSet()
+    val remaps: MutableList<Pair<RecipientId, RecipientId>> = mutableListOf()
+    var unchanged = 0
+
+    db.withinTransaction {
+      val index = PnpIndex()
+      index.load(E164, tuples.flatMap { listOfNotNull(it.e164, it.e164?.let { e164 -> SignalE164Util.formatAsE164(e164) }) })
+      index.load(ACI_COLUMN, tuples.mapNotNull { it.aci?.toString() })
+      index.load(PNI_COLUMN, tuples.mapNotNull { it.pni?.toString() })
+
+      for (tuple in tuples) {
+        require(tuple.aci != null || tuple.pni != null || tuple.e164 != null) { "Must provide an ACI, PNI, or E164!" }
+
+        val singleMatch: RecipientId? = index.getIfAllFieldsMatch(tuple.aci, tuple.pni, tuple.e164)
+        if (singleMatch != null) {
+          ids += singleMatch
+          unchanged++
+          continue
         }
 
-        if (result.affectedIds.isNotEmpty() || result.oldIds.isNotEmpty()) {
-          StorageSyncHelper.scheduleSyncForDataChange()
-          RecipientId.clearCache()
+        val e164 = tuple.e164?.let { SignalE164Util.formatAsE164(it) }
+        require(tuple.aci != null || tuple.pni != null || e164 != null) { "E164 was improperly formatted!" }
+
+        val result = processPnpTuple(e164 = e164, pni = tuple.pni, aci = tuple.aci, pniVerified = tuple.pniVerified, changeSelf = changeSelf, index = index)
+
+        if (result.operations.isNotEmpty() || result.requiredInsert) {
+          Log.i(TAG, "[bulkGetAndPossiblyMerge] (${tuple.aci}, ${tuple.pni}, $e164) BreadCrumbs: ${result.breadCrumbs}, Operations: ${result.operations}, RequiredInsert: ${result.requiredInsert}, FinalId: ${result.finalId}")
         }
+
+        index.refresh(result.affectedIds + result.oldIds + result.finalId)
+
+        ids += result.finalId
+        affectedIds += result.affectedIds
+        result.oldIds.forEach { remaps += it to result.finalId }
+      }
+
+      db.runPostSuccessfulTransaction {
+        notifyPnpChanges(affectedIds, remaps)
       }
     }
 
-    return result.finalId
+    Log.d(TAG, "[bulkGetAndPossiblyMerge] $unchanged of ${tuples.size} tuples were already up to date.")
+
+    return ids
+  }
+
+  /**
+   * Lets everything that caches recipients know about the changes made by resolving PNP tuples. Must be called after the changes are committed.
+   *
+   * @param remaps Pairs of (old, new) recipients, in the order the merges happened.
+   */
+  private fun notifyPnpChanges(affectedIds: Set<RecipientId>, remaps: List<Pair<RecipientId, RecipientId>>) {
+    if (affectedIds.isNotEmpty()) {
+      affectedIds.forEach { AppDependencies.databaseObserver.notifyRecipientChanged(it) }
+      RetrieveProfileJob.enqueue(affectedIds, skipDebounce = true)
+    }
+
+    for ((oldId, finalId) in remaps) {
+      Recipient.live(oldId).refresh(finalId)
+      AppDependencies.recipientCache.remap(oldId, finalId)
+    }
+
+    if (affectedIds.isNotEmpty() || remaps.isNotEmpty()) {
+      StorageSyncHelper.scheduleSyncForDataChange()
+      RecipientId.clearCache()
+    }
   }
 
   fun getAllServiceIdProfileKeyPairs(): Map<ServiceId, ProfileKey> {
@@ -1543,6 +1612,7 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
     if (update(id, values)) {
       rotateStorageId(id)
       AppDependencies.databaseObserver.notifyRecipientChanged(id)
+      AppDependencies.databaseObserver.notifyConversationListListeners()
     }
 
     StorageSyncHelper.scheduleSyncForDataChange()
@@ -2663,21 +2733,8 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
    * @return A set of [RecipientId]s that were updated/inserted.
    */
   fun bulkProcessCdsResult(mapping: Map<String, CdsV2Result>): Set<RecipientId> {
-    val ids: MutableSet<RecipientId> = mutableSetOf()
-    val db = writableDatabase
-
-    db.beginTransaction()
-    try {
-      for ((e164, result) in mapping) {
-        ids += getAndPossiblyMerge(aci = result.aci, pni = result.pni, e164 = e164, pniVerified = false, changeSelf = false)
-      }
-
-      db.setTransactionSuccessful()
-    } finally {
-      db.endTransaction()
-    }
-
-    return ids
+    val tuples: List<PnpTuple> = mapping.map { (e164, result) -> PnpTuple(aci = result.aci, pni = result.pni, e164 = e164) }
+    return bulkGetAndPossiblyMerge(tuples).toSet()
   }
 
   fun bulkUpdatedRegisteredStatus(registered: Set<RecipientId>, unregistered: Collection<RecipientId>) {
@@ -2732,7 +2789,14 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
    */
   @VisibleForTesting
   fun processPnpTuple(e164: String?, pni: PNI?, aci: ACI?, pniVerified: Boolean, changeSelf: Boolean = false): ProcessPnpTupleResult {
-    val changeSet: PnpChangeSet = processPnpTupleToChangeSet(e164, pni, aci, pniVerified, changeSelf)
+    return processPnpTuple(e164, pni, aci, pniVerified, changeSelf, index = null)
+  }
+
+  /**
+   * @param index If set, recipients are looked up in it rather than in the database. See [bulkGetAndPossiblyMerge].
+   */
+  private fun processPnpTuple(e164: String?, pni: PNI?, aci: ACI?, pniVerified: Boolean, changeSelf: Boolean, index: PnpIndex?): ProcessPnpTupleResult {
+    val changeSet: PnpChangeSet = processPnpTupleToChangeSet(e164, pni, aci, pniVerified, changeSelf, index)
 
     val affectedIds: MutableSet<RecipientId> = mutableSetOf()
     val oldIds: MutableSet<RecipientId> = mutableSetOf()
@@ -2924,6 +2988,10 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
    */
   @VisibleForTesting
   fun processPnpTupleToChangeSet(e164: String?, pni: PNI?, aci: ACI?, pniVerified: Boolean, changeSelf: Boolean = false): PnpChangeSet {
+    return processPnpTupleToChangeSet(e164, pni, aci, pniVerified, changeSelf, index = null)
+  }
+
+  private fun processPnpTupleToChangeSet(e164: String?, pni: PNI?, aci: ACI?, pniVerified: Boolean, changeSelf: Boolean, index: PnpIndex?): PnpChangeSet {
     check(e164 != null || pni != null || aci != null) { "Must provide at least one field!" }
 
     val breadCrumbs: MutableList<String> = mutableListOf()
@@ -2932,9 +3000,9 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
       e164 = e164,
       pni = pni,
       aci = aci,
-      byE164 = e164?.let { getByE164(it).orElse(null) },
-      byPni = pni?.let { getByPni(it).orElse(null) },
-      byAci = aci?.let { getByAci(it).orElse(null) }
+      byE164 = e164?.let { if (index != null) index.byE164[it] else getByE164(it).orElse(null) },
+      byPni = pni?.let { if (index != null) index.byPni[it] else getByPni(it).orElse(null) },
+      byAci = aci?.let { if (index != null) index.byAci[it] else getByAci(it).orElse(null) }
     )
 
     val allRequiredDbFields: MutableList<RecipientId?> = mutableListOf()
@@ -4897,6 +4965,74 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
 
   private class GetOrInsertResult(val recipientId: RecipientId, val neededInsert: Boolean)
 
+  /**
+   * An in-memory view of the E164, ACI and PNI of the recipients a batch of PNP tuples could touch, so that [bulkGetAndPossiblyMerge] can resolve
+   * each tuple without querying for it. Only recipients that were loaded are known about, so anything a tuple changes has to be refreshed.
+   */
+  private inner class PnpIndex {
+    private val rows: MutableMap<RecipientId, PnpRow> = HashMap()
+
+    val byE164: MutableMap<String, RecipientId> = HashMap()
+    val byAci: MutableMap<ACI, RecipientId> = HashMap()
+    val byPni: MutableMap<PNI, RecipientId> = HashMap()
+
+    fun load(column: String, values: Collection<String>) {
+      SqlUtil.buildCollectionQuery(column, values.toSet()).forEach { read(it) }
+    }
+
+    /**
+     * Re-reads the given recipients, dropping any that no longer exist.
+     */
+    fun refresh(ids: Collection<RecipientId>) {
+      for (id in ids) {
+        val row = rows.remove(id) ?: continue
+        row.e164?.let { byE164.remove(it, id) }
+        row.aci?.let { byAci.remove(it, id) }
+        row.pni?.let { byPni.remove(it, id) }
+      }
+
+      SqlUtil.buildCollectionQuery(ID, ids.toSet()).forEach { read(it) }
+    }
+
+    /**
+     * Equivalent to [getRecipientIdIfAllFieldsMatch].
+     */
+    fun getIfAllFieldsMatch(aci: ACI?, pni: PNI?, e164: String?): RecipientId? {
+      val matches: List<RecipientId> = listOfNotNull(
+        aci?.let { byAci[it] ?: return null },
+        pni?.let { byPni[it] ?: return null },
+        e164?.let { byE164[it] ?: return null }
+      )
+
+      return matches.distinct().singleOrNull()
+    }
+
+    private fun read(query: SqlUtil.Query) {
+      readableDatabase
+        .select(ID, E164, ACI_COLUMN, PNI_COLUMN)
+        .from(TABLE_NAME)
+        .where(query.where, query.whereArgs)
+        .run()
+        .use { cursor ->
+          while (cursor.moveToNext()) {
+            val id = RecipientId.from(cursor.requireLong(ID))
+            val row = PnpRow(
+              e164 = cursor.requireString(E164),
+              aci = ACI.parseOrNull(cursor.requireString(ACI_COLUMN)),
+              pni = PNI.parseOrNull(cursor.requireString(PNI_COLUMN))
+            )
+
+            rows[id] = row
+            row.e164?.let { byE164[it] = id }
+            row.aci?.let { byAci[it] = id }
+            row.pni?.let { byPni[it] = id }
+          }
+        }
+    }
+  }
+
+  private data class PnpRow(val e164: String?, val aci: ACI?, val pni: PNI?)
+
   data class ContactSearchQuery(
     val query: String,
     val includeSelfMode: IncludeSelfMode,
@@ -5237,6 +5373,16 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
     val aci: ACI?
   )
 
+  /**
+   * A single (aci, pni, e164) tuple to resolve with [bulkGetAndPossiblyMerge]. See [getAndPossiblyMerge] for what each field means.
+   */
+  data class PnpTuple(
+    val aci: ACI?,
+    val pni: PNI?,
+    val e164: String?,
+    val pniVerified: Boolean = false
+  )
+
   data class ProcessPnpTupleResult(
     val finalId: RecipientId,
     val requiredInsert: Boolean,
@@ -19,6 +19,7 @@ import org.signal.core.util.logging.Log;
 import org.signal.core.util.tracing.Tracer;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -55,10 +56,14 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
   private static final ThreadLocal<Long>          TRANSACTION_HOLD_START_NS = new ThreadLocal<>();
   private static final ThreadLocal<Set<Runnable>> PENDING_POST_SUCCESSFUL_TRANSACTION_TASKS;
   private static final ThreadLocal<Set<Runnable>> POST_SUCCESSFUL_TRANSACTION_TASKS;
+  private static final ThreadLocal<Set<Runnable>> PENDING_POST_TRANSACTION_TASKS;
+  private static final ThreadLocal<Set<Runnable>> POST_TRANSACTION_TASKS;
 
   static {
     PENDING_POST_SUCCESSFUL_TRANSACTION_TASKS = new ThreadLocal<>();
     POST_SUCCESSFUL_TRANSACTION_TASKS         = new ThreadLocal<>();
+    PENDING_POST_TRANSACTION_TASKS            = new ThreadLocal<>();
+    POST_TRANSACTION_TASKS                    = new ThreadLocal<>();
 
     PENDING_POST_SUCCESSFUL_TRANSACTION_TASKS.set(new LinkedHashSet<>());
   }
@@ -167,6 +172,19 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
     }
   }
 
+  /**
+   * Allows you to enqueue a task to be run after the active transaction ends, whether it committed or rolled back.
+   * These tasks run before any tasks enqueued via {@link #runPostSuccessfulTransaction(Runnable)}.
+   * If there is no current transaction open, the task is run immediately.
+   */
+  public void runPostTransaction(@NonNull Runnable task) {
+    if (wrapped.inTransaction()) {
+      getPendingPostTransactionTasks().add(task);
+    } else {
+      task.run();
+    }
+  }
+
   private @NonNull Set<Runnable> getPendingPostSuccessfulTransactionTasks() {
     Set<Runnable> tasks = PENDING_POST_SUCCESSFUL_TRANSACTION_TASKS.get();
 
@@ -189,6 +207,28 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
     return tasks;
   }
 
+  private @NonNull Set<Runnable> getPendingPostTransactionTasks() {
+    Set<Runnable> tasks = PENDING_POST_TRANSACTION_TASKS.get();
+
+    if (tasks == null) {
+      tasks = new LinkedHashSet<>();
+      PENDING_POST_TRANSACTION_TASKS.set(tasks);
+    }
+
+    return tasks;
+  }
+
+  private @NonNull Set<Runnable> getPostTransactionTasks() {
+    Set<Runnable> tasks = POST_TRANSACTION_TASKS.get();
+
+    if (tasks == null) {
+      tasks = new LinkedHashSet<>();
+      POST_TRANSACTION_TASKS.set(tasks);
+    }
+
+    return tasks;
+  }
+
   private interface Returnable<E> {
     E run();
   }
@@ -319,11 +359,13 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
             tasks.clear();
             tasks.addAll(pendingTasks);
             pendingTasks.clear();
+            movePendingPostTransactionTasks();
           }
 
           @Override
           public void onRollback() {
             getPendingPostSuccessfulTransactionTasks().clear();
+            movePendingPostTransactionTasks();
           }
         });
         long waitMs = (System.nanoTime() - waitStartNs) / 1_000_000L;
@@ -350,6 +392,12 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
         IssueReporter.noteSlowDatabaseWrite("transaction hold", holdMs, throwable);
       }
     }
+    Set<Runnable> endTasks = getPostTransactionTasks();
+    for (Runnable r : new ArrayList<>(endTasks)) {
+      r.run();
+    }
+    endTasks.clear();
+
     Set<Runnable> tasks = getPostSuccessfulTransactionTasks();
     for (Runnable r : new HashSet<>(tasks)) {
       r.run();
@@ -357,6 +405,14 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
     tasks.clear();
   }
 
+  private void movePendingPostTransactionTasks() {
+    Set<Runnable> pendingTasks = getPendingPostTransactionTasks();
+    Set<Runnable> tasks        = getPostTransactionTasks();
+    tasks.clear();
+    tasks.addAll(pendingTasks);
+    pendingTasks.clear();
+  }
+
   public void setTransactionSuccessful() {
     trace("setTransactionSuccessful()", wrapped::setTransactionSuccessful);
   }
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import androidx.annotation.VisibleForTesting
+import org.signal.core.models.ServiceId
+import org.signal.core.util.LRUCache
+import org.signal.libsignal.protocol.SignalProtocolAddress
+import org.signal.libsignal.protocol.state.SessionRecord
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A bounded, write-through cache of serialized [SessionRecord]s that sits in front of [SessionTable], so that every protocol store reading through the table
+ * (the persistent store used for sending and the buffered store used while decrypting) shares it. Records are kept serialized because callers mutate the
+ * records they load, so each caller needs its own copy.
+ *
+ * Records written inside of an open transaction are only published to the cache once that transaction commits. Until that transaction ends the key is marked
+ * dirty, which keeps reads inside the transaction from caching a value that may yet be rolled back. Reads that raced with a write are likewise discarded via
+ * [generation].
+ */
+class SessionRecordCache(maxSize: Int) {
+
+  private val cache: MutableMap<Key, ByteArray> = LRUCache(maxSize)
+  private val dirty: MutableMap<Key, Int> = HashMap()
+
+  private val hits = AtomicLong()
+  private val misses = AtomicLong()
+
+  /** Incremented on every write, so that a read can tell if it raced with one. */
+  @get:Synchronized
+  var generation: Long = 0
+    private set
+
+  @Synchronized
+  fun get(key: Key): ByteArray? {
+    val record = cache[key]
+
+    if (record != null) {
+      hits.incrementAndGet()
+    } else {
+      misses.incrementAndGet()
+    }
+
+    return record
+  }
+
+  /**
+   * Caches a record that was read from disk, as long as nothing was written since [readGeneration] and the key isn't part of an uncommitted write.
+   */
+  @Synchronized
+  fun putFromRead(key: Key, record: ByteArray, readGeneration: Long) {
+    if (generation == readGeneration && key !in dirty) {
+      cache[key] = record
+    }
+  }
+
+  /**
+   * Caches a record that has been committed to disk. If another transaction has since marked the key dirty, the record is dropped instead.
+   */
+  @Synchronized
+  fun put(key: Key, record: ByteArray) {
+    generation++
+    if (key in dirty) {
+      cache.remove(key)
+    } else {
+      cache[key] = record
+    }
+  }
+
+  /**
+   * Drops the key and keeps it out of the cache until a matching [clearDirty], which must be called once the transaction that wrote it ends, whether it
+   * committed or rolled back.
+   */
+  @Synchronized
+  fun markDirty(key: Key) {
+    generation++
+    dirty[key] = (dirty[key] ?: 0) + 1
+    cache.remove(key)
+  }
+
+  @Synchronized
+  fun clearDirty(key: Key) {
+    val count = dirty[key] ?: return
+    if (count > 1) {
+      dirty[key] = count - 1
+    } else {
+      dirty.remove(key)
+    }
+  }
+
+  @Synchronized
+  fun remove(key: Key) {
+    generation++
+    cache.remove(key)
+  }
+
+  @Synchronized
+  fun removeAll(accountId: ServiceId, addressName: String) {
+    generation++
+    cache.keys.removeAll { it.accountId == accountId && it.address.name == addressName }
+  }
+
+  @Synchronized
+  fun clear() {
+    generation++
+    cache.clear()
+  }
+
+  fun getStats(): Stats {
+    val size = synchronized(this) { cache.size }
+    return Stats(hits = hits.get(), misses = misses.get(), size = size)
+  }
+
+  @VisibleForTesting
+  @Synchronized
+  fun dirtyCount(): Int = dirty.size
+
+  data class Key(val accountId: ServiceId, val address: SignalProtocolAddress)
+
+  data class Stats(val hits: Long, val misses: Long, val size: Int) {
+    val hitRate: Float
+      get() = if (hits + misses == 0L) 0f else hits.toFloat() / (hits + misses)
+  }
+}
@@ -5,6 +5,7 @@ import org.signal.core.models.ServiceId
 import org.signal.core.models.ServiceId.PNI
 import org.signal.core.util.CursorUtil
 import org.signal.core.util.SqlUtil
+import org.signal.core.util.Util
 import org.signal.core.util.logging.Log
 import org.signal.core.util.readToSet
 import org.signal.core.util.requireInt
@@ -23,6 +24,9 @@ class SessionTable(context: Context, databaseHelper: SignalDatabase) : DatabaseT
   companion object {
     private val TAG = Log.tag(SessionTable::class.java)
 
+    private const val CACHE_SIZE = 1000
+    private const val CACHE_SIZE_LOW_MEMORY = 250
+
     const val TABLE_NAME = "sessions"
     const val ID = "_id"
     const val ACCOUNT_ID = "account_id"
@@ -41,40 +45,74 @@ class SessionTable(context: Context, databaseHelper: SignalDatabase) : DatabaseT
     """
   }
 
+  private val cache = SessionRecordCache(if (Util.isLowMemory(context)) CACHE_SIZE_LOW_MEMORY else CACHE_SIZE)
+
+  val cacheStats: SessionRecordCache.Stats
+    get() = cache.getStats()
+
   fun store(serviceId: ServiceId, address: SignalProtocolAddress, record: SessionRecord) {
     require(address.name[0] != '+') { "Cannot insert an e164 into this table!" }
 
+    val serialized = record.serialize()
+
     writableDatabase.compileStatement("INSERT INTO $TABLE_NAME ($ACCOUNT_ID, $ADDRESS, $DEVICE, $RECORD) VALUES (?, ?, ?, ?) ON CONFLICT ($ACCOUNT_ID, $ADDRESS, $DEVICE) DO UPDATE SET $RECORD = excluded.$RECORD").use { statement ->
       statement.apply {
         bindString(1, serviceId.toString())
         bindString(2, address.name)
         bindLong(3, address.deviceId.toLong())
-        bindBlob(4, record.serialize())
+        bindBlob(4, serialized)
         execute()
       }
     }
+
+    val key = SessionRecordCache.Key(serviceId, address)
+    if (writableDatabase.inTransaction()) {
+      cache.markDirty(key)
+      writableDatabase.runPostTransaction { cache.clearDirty(key) }
+      writableDatabase.runPostSuccessfulTransaction { cache.put(key, serialized) }
+    } else {
+      cache.put(key, serialized)
+    }
   }
 
+  /**
+   * Every call returns a new [SessionRecord], so callers are free to mutate it.
+   */
   fun load(serviceId: ServiceId, address: SignalProtocolAddress): SessionRecord? {
+    val key = SessionRecordCache.Key(serviceId, address)
+    cache.get(key)?.let { return SessionRecord(it) }
+
+    val generation = cache.generation
+    val serialized = loadFromDisk(serviceId, address) ?: return null
+
+    return try {
+      SessionRecord(serialized).also { cache.putFromRead(key, serialized, generation) }
+    } catch (e: IOException) {
+      Log.w(TAG, e)
+      null
+    } catch (e: InvalidSessionException) {
+      Log.w(TAG, e)
+      null
+    }
+  }
+
+  private fun loadFromDisk(serviceId: ServiceId, address: SignalProtocolAddress): ByteArray? {
     val projection = arrayOf(RECORD)
     val selection = "$ACCOUNT_ID = ? AND $ADDRESS = ? AND $DEVICE = ?"
     val args = SqlUtil.buildArgs(serviceId, address.name, address.deviceId)
 
     readableDatabase.query(TABLE_NAME, projection, selection, args, null, null, null).use { cursor ->
       if (cursor.moveToFirst()) {
-        try {
-          return SessionRecord(cursor.requireNonNullBlob(RECORD))
-        } catch (e: IOException) {
-          Log.w(TAG, e)
-        } catch (e: InvalidSessionException) {
-          Log.w(TAG, e)
-        }
+        return cursor.requireNonNullBlob(RECORD)
       }
     }
 
     return null
   }
 
+  /**
+   * Every call returns new [SessionRecord]s, so callers are free to mutate them.
+   */
   fun load(serviceId: ServiceId, addresses: List<SignalProtocolAddress>): List<SessionRecord?> {
     val projection = arrayOf(ADDRESS, DEVICE, RECORD)
     val query = "$ACCOUNT_ID = ? AND $ADDRESS = ? AND $DEVICE = ?"
@@ -82,18 +120,30 @@ class SessionTable(context: Context, databaseHelper: SignalDatabase) : DatabaseT
     val sessions: HashMap<SignalProtocolAddress, SessionRecord?> = LinkedHashMap(addresses.size)
 
     for (address in addresses) {
-      args.add(SqlUtil.buildArgs(serviceId, address.name, address.deviceId))
-      sessions[address] = null
+      val cached = cache.get(SessionRecordCache.Key(serviceId, address))?.let { SessionRecord(it) }
+      sessions[address] = cached
+
+      if (cached == null) {
+        args.add(SqlUtil.buildArgs(serviceId, address.name, address.deviceId))
+      }
     }
 
+    if (args.isEmpty()) {
+      return sessions.values.toList()
+    }
+
+    val generation = cache.generation
+
     for (combinedQuery in SqlUtil.buildCustomCollectionQuery(query, args)) {
       readableDatabase.query(TABLE_NAME, projection, combinedQuery.where, combinedQuery.whereArgs, null, null, null).use { cursor ->
         while (cursor.moveToNext()) {
           val address = cursor.requireNonNullString(ADDRESS)
           val device = cursor.requireInt(DEVICE)
           try {
-            val record = SessionRecord(cursor.requireNonNullBlob(RECORD))
-            sessions[SignalProtocolAddress(address, device)] = record
+            val serialized = cursor.requireNonNullBlob(RECORD)
+            val protocolAddress = SignalProtocolAddress(address, device)
+            sessions[protocolAddress] = SessionRecord(serialized)
+            cache.putFromRead(SessionRecordCache.Key(serviceId, protocolAddress), serialized, generation)
           } catch (e: IOException) {
             Log.w(TAG, e)
           }
@@ -188,10 +238,23 @@ class SessionTable(context: Context, databaseHelper: SignalDatabase) : DatabaseT
 
   fun delete(serviceId: ServiceId, address: SignalProtocolAddress) {
     writableDatabase.delete(TABLE_NAME, "$ACCOUNT_ID = ? AND $ADDRESS = ? AND $DEVICE = ?", SqlUtil.buildArgs(serviceId, address.name, address.deviceId))
+    // Dropped again after commit, in case a concurrent reader re-cached the record before the delete was visible to it
+    val key = SessionRecordCache.Key(serviceId, address)
+    cache.remove(key)
+    writableDatabase.runPostSuccessfulTransaction { cache.remove(key) }
   }
 
   fun deleteAllFor(serviceId: ServiceId, addressName: String) {
     writableDatabase.delete(TABLE_NAME, "$ACCOUNT_ID = ? AND $ADDRESS = ?", SqlUtil.buildArgs(serviceId, addressName))
+    cache.removeAll(serviceId, addressName)
+    writableDatabase.runPostSuccessfulTransaction { cache.removeAll(serviceId, addressName) }
+  }
+
+  /**
+   * Drops all cached records. Needed whenever the table is modified outside of this class, e.g. after a backup restore.
+   */
+  fun clearCache() {
+    cache.clear()
   }
 
   fun hasSessionFor(serviceId: ServiceId, addressName: String): Boolean {
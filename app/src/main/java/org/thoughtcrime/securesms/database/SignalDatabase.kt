@@ -63,6 +63,8 @@ open class SignalDatabase(private val context: Application, databaseSecret: Data
   val distributionListTables: DistributionListTables = DistributionListTables(context, this)
   val storySendTable: StorySendTable = StorySendTable(context, this)
   val cdsTable: CdsTable = CdsTable(context, this)
+  val cdsContactSnapshotTable: CdsContactSnapshotTable = CdsContactSnapshotTable(context, this)
+  val e164MemoTable: E164MemoTable = E164MemoTable(context, this)
   val remoteMegaphoneTable: RemoteMegaphoneTable = RemoteMegaphoneTable(context, this)
   val pendingPniSignatureMessageTable: PendingPniSignatureMessageTable = PendingPniSignatureMessageTable(context, this)
   val callTable: CallTable = CallTable(context, this)
@@ -100,6 +102,7 @@ open class SignalDatabase(private val context: Application, databaseSecret: Data
     executeStatements(db, GroupTable.CREATE_TABLES)
     db.execSQL(RecipientTable.CREATE_TABLE)
     db.execSQL(GroupReceiptTable.CREATE_TABLE)
+    db.execSQL(GroupReceiptTable.CREATE_MEMBER_TABLE)
     db.execSQL(OneTimePreKeyTable.CREATE_TABLE)
     db.execSQL(SignedPreKeyTable.CREATE_TABLE)
     db.execSQL(SessionTable.CREATE_TABLE)
@@ -117,6 +120,8 @@ open class SignalDatabase(private val context: Application, databaseSecret: Data
     db.execSQL(DonationReceiptTable.CREATE_TABLE)
     db.execSQL(StorySendTable.CREATE_TABLE)
     db.execSQL(CdsTable.CREATE_TABLE)
+    db.execSQL(CdsContactSnapshotTable.CREATE_TABLE)
+    db.execSQL(E164MemoTable.CREATE_TABLE)
     db.execSQL(RemoteMegaphoneTable.CREATE_TABLE)
     db.execSQL(PendingPniSignatureMessageTable.CREATE_TABLE)
     db.execSQL(CallLinkTable.CREATE_TABLE)
@@ -159,6 +164,7 @@ open class SignalDatabase(private val context: Application, databaseSecret: Data
     executeStatements(db, NameCollisionTables.CREATE_INDEXES)
     executeStatements(db, BackupMediaSnapshotTable.CREATE_INDEXES)
     executeStatements(db, PollTables.CREATE_INDEXES)
+    executeStatements(db, CdsContactSnapshotTable.CREATE_INDEXES)
 
     executeStatements(db, MessageSendLogTables.CREATE_TRIGGERS)
 
@@ -314,6 +320,8 @@ open class SignalDatabase(private val context: Application, databaseSecret: Data
           database.setForeignKeyConstraintsEnabled(true)
         }
 
+        instance!!.messageSendLogTables.onDatabaseReplaced()
+
         instance!!.rawWritableDatabase.close()
         triggerDatabaseAccess()
       }
@@ -367,6 +375,16 @@ open class SignalDatabase(private val context: Application, databaseSecret: Data
     val cds: CdsTable
       get() = instance!!.cdsTable
 
+    @get:JvmStatic
+    @get:JvmName("cdsContactSnapshot")
+    val cdsContactSnapshot: CdsContactSnapshotTable
+      get() = instance!!.cdsContactSnapshotTable
+
+    @get:JvmStatic
+    @get:JvmName("e164Memo")
+    val e164Memo: E164MemoTable
+      get() = instance!!.e164MemoTable
+
     @get:JvmStatic
     @get:JvmName("chatColors")
     val chatColors: ChatColorsTable
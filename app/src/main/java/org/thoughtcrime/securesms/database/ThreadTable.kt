@@ -17,15 +17,17 @@ import org.signal.core.util.JsonUtils.SaneJSONObject
 import org.signal.core.util.LRUCache
 import org.signal.core.util.SqlUtil
 import org.signal.core.util.Stopwatch
+import org.signal.core.util.collections.LongIntMap
+import org.signal.core.util.collections.LongSet
 import org.signal.core.util.delete
 import org.signal.core.util.exists
 import org.signal.core.util.logging.Log
 import org.signal.core.util.or
 import org.signal.core.util.readToList
-import org.signal.core.util.readToSingleBoolean
 import org.signal.core.util.readToSingleInt
 import org.signal.core.util.readToSingleIntOrNull
 import org.signal.core.util.readToSingleLong
+import org.signal.core.util.readToSingleLongOrNull
 import org.signal.core.util.readToSingleObject
 import org.signal.core.util.requireBlob
 import org.signal.core.util.requireBoolean
@@ -90,6 +92,7 @@ import java.io.IOException
 import java.util.Collections
 import java.util.LinkedList
 import java.util.Optional
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.math.max
 import kotlin.math.min
 
@@ -167,7 +170,8 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
       "CREATE INDEX IF NOT EXISTS archived_count_index ON $TABLE_NAME ($ACTIVE, $ARCHIVED, $MEANINGFUL_MESSAGES, $PINNED_ORDER);",
       "CREATE INDEX IF NOT EXISTS thread_pinned_index ON $TABLE_NAME ($PINNED_ORDER);",
       "CREATE INDEX IF NOT EXISTS thread_read ON $TABLE_NAME ($READ);",
-      "CREATE INDEX IF NOT EXISTS thread_active ON $TABLE_NAME ($ACTIVE);"
+      "CREATE INDEX IF NOT EXISTS thread_active ON $TABLE_NAME ($ACTIVE);",
+      "CREATE INDEX IF NOT EXISTS thread_unpinned_date_index ON $TABLE_NAME ($DATE, $ID) WHERE $ACTIVE = 1 AND $ARCHIVED = 0 AND $PINNED_ORDER IS NULL AND $MEANINGFUL_MESSAGES != 0;"
     )
 
     private val THREAD_PROJECTION = arrayOf(
@@ -208,6 +212,10 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
 
   private val threadIdCache = LRUCache<RecipientId, Long>(MAX_CACHE_SIZE)
 
+  private val conversationListCounts = ConversationListCounts()
+
+  private val chatFolderTallies = ChatFolderTallies()
+
   private fun createThreadForRecipient(recipientId: RecipientId, group: Boolean, distributionType: Int): Long {
     if (recipientId.isUnknown) {
       throw AssertionError("Cannot create a thread for an unknown recipient!")
@@ -283,6 +291,8 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
       .where("$ID = ?", threadId)
       .run()
 
+    markThreadChanged(threadId)
+
     if (unarchive && allowedToUnarchive(threadId)) {
       val archiveValues = contentValuesOf(ARCHIVED to 0)
       val query = SqlUtil.buildTrueUpdateQuery(ID_WHERE, SqlUtil.buildArgs(threadId), archiveValues)
@@ -292,6 +302,17 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
     }
   }
 
+  /**
+   * Once the current transaction commits, has the cached list counts and folder tallies check [threadId] again rather than being recomputed. Callers
+   * should notify with [DatabaseObserver.notifyConversationListListenersOfThreadUpdate] if this is the only kind of change they made.
+   */
+  private fun markThreadChanged(threadId: Long) {
+    writableDatabase.runPostSuccessfulTransaction("ThreadChanged:$threadId") {
+      conversationListCounts.markDirty(threadId)
+      chatFolderTallies.markDirty(threadId)
+    }
+  }
+
   private fun allowedToUnarchive(threadId: Long): Boolean {
     if (!SignalStore.settings.shouldKeepMutedChatsArchived()) {
       return true
@@ -594,6 +615,8 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
           .where("$ID = ?", threadId)
           .run()
 
+        markThreadChanged(threadId)
+
         if (previous != null && previous.read == ReadStatus.ForcedUnread) {
           recipients.markNeedsSync(previous.recipientId)
           needsSync = true
@@ -602,7 +625,7 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
     }
 
     notifyVerboseConversationListeners(threadIdToSinceTimestamp.keys)
-    notifyConversationListListeners()
+    AppDependencies.databaseObserver.notifyConversationListListenersOfThreadUpdate()
 
     if (needsSync) {
       StorageSyncHelper.scheduleSyncForDataChange()
@@ -676,78 +699,49 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
   }
 
   /**
-   * Returns whether or not there are chats in a chat folder
+   * Returns the number of unread messages across the unarchived chats in a chat folder, along with whether the folder has no chats and whether every
+   * chat in it is muted. Threads that are forced-unread count as 1.
+   *
+   * Served from a tally that is kept up to date as threads change, rather than by querying the folder each time.
    */
-  fun hasChatInFolder(folder: ChatFolderRecord): Boolean {
-    val chatFolderQuery = folder.toQuery()
-
-    val hasChats =
-      """
-      SELECT EXISTS(
-        SELECT 1
-        FROM $TABLE_NAME
-          LEFT OUTER JOIN ${RecipientTable.TABLE_NAME} ON $TABLE_NAME.$RECIPIENT_ID = ${RecipientTable.TABLE_NAME}.${RecipientTable.ID}
-        WHERE 
-          $ARCHIVED = 0
-          $chatFolderQuery 
-        LIMIT 1
-      )
-      """
-
-    return readableDatabase.rawQuery(hasChats, null).readToSingleBoolean()
+  fun getChatFolderStatus(folder: ChatFolderRecord): ChatFolderStatus {
+    return chatFolderTallies.get(folder)
   }
 
   /**
-   * Returns whether or not there are any unmuted chats in a chat folder
+   * Drops the tallies for any folder not in [folders], such as folders that have since been edited or deleted.
    */
-  fun hasUnmutedChatsInFolder(folder: ChatFolderRecord): Boolean {
-    val chatFolderQuery = folder.toQuery()
-
-    val unmutedChats =
-      """
-      SELECT COUNT(${RecipientTable.MUTE_UNTIL})
-      FROM $TABLE_NAME
-        LEFT OUTER JOIN ${RecipientTable.TABLE_NAME} ON $TABLE_NAME.$RECIPIENT_ID = ${RecipientTable.TABLE_NAME}.${RecipientTable.ID}
-      WHERE
-        $ARCHIVED = 0 AND
-        ${RecipientTable.MUTE_UNTIL} < ${System.currentTimeMillis()}
-        $chatFolderQuery
-      """
-
-    return readableDatabase.rawQuery(unmutedChats, null).readToSingleBoolean()
+  fun retainChatFolderStatuses(folders: List<ChatFolderRecord>) {
+    chatFolderTallies.retain(folders)
   }
 
   /**
-   * Returns the number of unread messages across all threads within a chat folder
-   * Threads that are forced-unread count as 1.
+   * Reads each unarchived thread in [folder], optionally limited to [threadIds], along with how much it adds to the folder's unread count and whether
+   * it's muted.
    */
-  fun getUnreadCountByChatFolder(folder: ChatFolderRecord): Int {
+  private fun readChatFolderThreads(folder: ChatFolderRecord, threadIds: LongArray?, now: Long, consumer: (threadId: Long, unreadCount: Int, muted: Boolean) -> Unit) {
     val chatFolderQuery = folder.toQuery()
+    val threadIdQuery = if (threadIds != null) "AND $TABLE_NAME.$ID IN (${threadIds.joinToString(",")})" else ""
 
-    val allCountQuery =
+    val query =
       """
-      SELECT SUM($UNREAD_COUNT)
+      SELECT
+        $TABLE_NAME.$ID,
+        $TABLE_NAME.$UNREAD_COUNT + ($TABLE_NAME.$READ = ${ReadStatus.ForcedUnread.serialize()}),
+        IFNULL(${RecipientTable.TABLE_NAME}.${RecipientTable.MUTE_UNTIL} < $now, 0)
       FROM $TABLE_NAME
         LEFT OUTER JOIN ${RecipientTable.TABLE_NAME} ON $TABLE_NAME.$RECIPIENT_ID = ${RecipientTable.TABLE_NAME}.${RecipientTable.ID}
-      WHERE 
+      WHERE
         $ARCHIVED = 0
         $chatFolderQuery
+        $threadIdQuery
       """
-    val allCount = readableDatabase.rawQuery(allCountQuery, null).readToSingleInt(0)
-
-    val forcedUnreadCountQuery =
-      """
-      SELECT COUNT(*)
-      FROM $TABLE_NAME
-        LEFT OUTER JOIN ${RecipientTable.TABLE_NAME} ON $TABLE_NAME.$RECIPIENT_ID = ${RecipientTable.TABLE_NAME}.${RecipientTable.ID}
-      WHERE 
-        $ARCHIVED = 0 AND
-        $READ = ${ThreadTable.ReadStatus.ForcedUnread.serialize()}  
-        $chatFolderQuery
-      """
-    val forcedUnreadCount = readableDatabase.rawQuery(forcedUnreadCountQuery, null).readToSingleInt(0)
 
-    return allCount + forcedUnreadCount
+    readableDatabase.rawQuery(query, null).use { cursor ->
+      while (cursor.moveToNext()) {
+        consumer(cursor.getLong(0), cursor.getInt(1), cursor.getInt(2) == 0)
+      }
+    }
   }
 
   /**
@@ -799,6 +793,8 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
       """,
       SqlUtil.buildArgs(unreadAmount, unreadSelfMentionAmount, 0, threadId)
     )
+
+    markThreadChanged(threadId)
   }
 
   fun setDistributionType(threadId: Long, distributionType: Int) {
@@ -1065,79 +1061,84 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
     return readableDatabase.rawQuery(query, null)
   }
 
-  fun getArchivedConversationListCount(conversationFilter: ConversationFilter): Int {
+  /**
+   * Returns the page of unpinned, unarchived conversations that comes right after [after], which should be the key of the last row of the previous
+   * page. Unlike [getUnarchivedConversationList], this seeks straight to the page rather than reading and discarding every row before it, so loading
+   * deep into a long list costs the same as loading the top of it.
+   */
+  fun getUnarchivedConversationListAfter(conversationFilter: ConversationFilter, after: ConversationListKey, limit: Long, chatFolder: ChatFolderRecord): Cursor {
+    val folderQuery = chatFolder.toQuery()
     val filterQuery = conversationFilter.toQuery()
-    return readableDatabase
-      .select("COUNT(*)")
-      .from(TABLE_NAME)
-      .where("$ACTIVE = 1 AND $ARCHIVED = 1 AND $MEANINGFUL_MESSAGES != 0 $filterQuery")
-      .run()
-      .use { cursor ->
-        if (cursor.moveToFirst()) {
-          cursor.getInt(0)
-        } else {
-          0
-        }
-      }
+    val where = "$ARCHIVED = 0 AND $PINNED_ORDER IS NULL AND $MEANINGFUL_MESSAGES != 0 AND ($TABLE_NAME.$DATE, $TABLE_NAME.$ID) < (${after.date}, ${after.threadId}) $filterQuery $folderQuery"
+
+    return readableDatabase.rawQuery(createQuery(where, 0, limit, preferPinned = false), null)
   }
 
-  fun getPinnedConversationListCount(conversationFilter: ConversationFilter, chatFolder: ChatFolderRecord? = null): Int {
-    val filterQuery = conversationFilter.toQuery()
+  fun getArchivedConversationListCount(conversationFilter: ConversationFilter): Int {
+    return conversationListCounts.get(ConversationListCountType.ARCHIVED, conversationFilter, null)
+  }
 
-    return if (chatFolder == null || chatFolder.folderType == ChatFolderRecord.FolderType.ALL) {
-      readableDatabase
-        .select("COUNT(*)")
-        .from(TABLE_NAME)
-        .where("$ACTIVE = 1 AND $ARCHIVED = 0 AND $PINNED_ORDER NOT NULL $filterQuery")
-        .run()
-        .readToSingleInt(0)
-    } else {
-      val folderQuery = chatFolder.toQuery()
-      val query =
-        """
-        SELECT COUNT(*)
-        FROM $TABLE_NAME
-          LEFT OUTER JOIN ${RecipientTable.TABLE_NAME} ON $TABLE_NAME.$RECIPIENT_ID = ${RecipientTable.TABLE_NAME}.${RecipientTable.ID}
-        WHERE 
-          $ACTIVE = 1 AND 
-          $ARCHIVED = 0 AND 
-          $PINNED_ORDER NOT NULL
-          $filterQuery 
-          $folderQuery
-        """
-      readableDatabase.rawQuery(query, null).readToSingleInt(0)
-    }
+  fun getPinnedConversationListCount(conversationFilter: ConversationFilter, chatFolder: ChatFolderRecord? = null): Int {
+    return conversationListCounts.get(ConversationListCountType.PINNED, conversationFilter, chatFolder)
   }
 
   fun getUnarchivedConversationListCount(conversationFilter: ConversationFilter, chatFolder: ChatFolderRecord? = null): Int {
-    val filterQuery = conversationFilter.toQuery()
+    return conversationListCounts.get(ConversationListCountType.UNARCHIVED, conversationFilter, chatFolder)
+  }
 
-    return if (chatFolder == null || chatFolder.folderType == ChatFolderRecord.FolderType.ALL) {
-      readableDatabase
-        .select("COUNT(*)")
-        .from(TABLE_NAME)
-        .where("$ACTIVE = 1 AND $ARCHIVED = 0 AND ($MEANINGFUL_MESSAGES != 0 OR $PINNED_ORDER NOT NULL) $filterQuery")
-        .run()
-        .readToSingleInt(0)
+  /**
+   * The ids of the threads counted by the given conversation list count, optionally limited to [threadIds].
+   */
+  private fun getConversationListThreadIds(type: ConversationListCountType, conversationFilter: ConversationFilter, chatFolder: ChatFolderRecord?, threadIds: LongArray? = null): LongSet {
+    val filterQuery = conversationFilter.toQuery()
+    val folderQuery = chatFolder?.toQuery() ?: ""
+    val recipientJoin = if (folderQuery.isNotEmpty()) {
+      "LEFT OUTER JOIN ${RecipientTable.TABLE_NAME} ON $TABLE_NAME.$RECIPIENT_ID = ${RecipientTable.TABLE_NAME}.${RecipientTable.ID}"
     } else {
-      val folderQuery = chatFolder.toQuery()
+      ""
+    }
+    val threadIdQuery = if (threadIds != null) "AND $TABLE_NAME.$ID IN (${threadIds.joinToString(",")})" else ""
 
-      val query =
-        """
-        SELECT COUNT(*)
-        FROM $TABLE_NAME
-          LEFT OUTER JOIN ${RecipientTable.TABLE_NAME} ON $TABLE_NAME.$RECIPIENT_ID = ${RecipientTable.TABLE_NAME}.${RecipientTable.ID}
-        WHERE 
-          $ACTIVE = 1 AND 
-          $ARCHIVED = 0 AND 
-          ($MEANINGFUL_MESSAGES != 0 OR $PINNED_ORDER NOT NULL)
-          $filterQuery
-          $folderQuery
-        """
-      readableDatabase.rawQuery(query, null).readToSingleInt(0)
+    val where = when (type) {
+      ConversationListCountType.UNARCHIVED -> "$ACTIVE = 1 AND $ARCHIVED = 0 AND ($MEANINGFUL_MESSAGES != 0 OR $PINNED_ORDER NOT NULL)"
+      ConversationListCountType.PINNED -> "$ACTIVE = 1 AND $ARCHIVED = 0 AND $PINNED_ORDER NOT NULL"
+      ConversationListCountType.ARCHIVED -> "$ACTIVE = 1 AND $ARCHIVED = 1 AND $MEANINGFUL_MESSAGES != 0"
+    }
+
+    val query =
+      """
+      SELECT $TABLE_NAME.$ID
+      FROM $TABLE_NAME
+        $recipientJoin
+      WHERE
+        $where
+        $filterQuery
+        $folderQuery
+        $threadIdQuery
+      """
+
+    return readableDatabase.rawQuery(query, null).use { cursor ->
+      LongSet(cursor.count).apply {
+        while (cursor.moveToNext()) {
+          add(cursor.getLong(0))
+        }
+      }
     }
   }
 
+  /**
+   * When the next muted chat will be unmuted, or [Long.MAX_VALUE] if there's nothing muted.
+   */
+  private fun getNextUnmuteTime(now: Long): Long {
+    return readableDatabase
+      .select("MIN(${RecipientTable.MUTE_UNTIL})")
+      .from(RecipientTable.TABLE_NAME)
+      .where("${RecipientTable.MUTE_UNTIL} > ?", now)
+      .run()
+      .readToSingleLongOrNull() ?: Long.MAX_VALUE
+  }
+
+
   fun getThreadIdsByChatFolder(chatFolder: ChatFolderRecord): List<Long> {
     val folderQuery = chatFolder.toQuery()
     val query =
@@ -1746,12 +1747,12 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
   }
 
   /**
-   * Updates the thread with the receipt status of the message provided, but only if that message is the most recent meaningful message.
+   * Updates the thread with the receipt status of its most recent meaningful message, but only if that message is one of the ones provided.
    * The idea here is that if it _is_ the most meaningful message, we can set the new status. If it's not, there's no need to update
    * the thread at all.
    */
-  fun updateReceiptStatus(messageId: Long, threadId: Long, stopwatch: Stopwatch? = null) {
-    val status = messages.getReceiptStatusIfItsTheMostRecentMeaningfulMessage(messageId, threadId)
+  fun updateReceiptStatus(messageIds: Set<Long>, threadId: Long, stopwatch: Stopwatch? = null) {
+    val status = messages.getReceiptStatusIfItsTheMostRecentMeaningfulMessage(messageIds, threadId)
     stopwatch?.split("thread-query")
 
     if (status != null) {
@@ -1866,7 +1867,7 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
       )
 
       if (notifyListeners) {
-        notifyConversationListListeners()
+        AppDependencies.databaseObserver.notifyConversationListListenersOfThreadUpdate()
       }
       return@withinTransaction false
     }
@@ -2241,9 +2242,9 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
 
   private fun createQuery(where: String, offset: Long, limit: Long, preferPinned: Boolean): String {
     val orderBy = if (preferPinned) {
-      "CASE WHEN $TABLE_NAME.$PINNED_ORDER IS NULL THEN 1 ELSE 0 END, $TABLE_NAME.$PINNED_ORDER ASC, $TABLE_NAME.$DATE DESC"
+      "CASE WHEN $TABLE_NAME.$PINNED_ORDER IS NULL THEN 1 ELSE 0 END, $TABLE_NAME.$PINNED_ORDER ASC, $TABLE_NAME.$DATE DESC, $TABLE_NAME.$ID DESC"
     } else {
-      "$TABLE_NAME.$DATE DESC"
+      "$TABLE_NAME.$DATE DESC, $TABLE_NAME.$ID DESC"
     }
 
     return createQuery(
@@ -2381,6 +2382,215 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
     }
   }
 
+  /**
+   * Where a row sits in the date-ordered conversation list. See [getUnarchivedConversationListAfter].
+   */
+  data class ConversationListKey(val date: Long, val threadId: Long) {
+    companion object {
+      @JvmStatic
+      fun fromCursor(cursor: Cursor): ConversationListKey {
+        return ConversationListKey(
+          date = cursor.requireLong(DATE),
+          threadId = cursor.requireLong(ID)
+        )
+      }
+    }
+  }
+
+  private enum class ConversationListCountType {
+    UNARCHIVED,
+    PINNED,
+    ARCHIVED
+  }
+
+  /**
+   * The parts of a [ChatFolderRecord] that decide which chats are in it. The record itself is a poor map key, as it also carries a storage proto.
+   */
+  private data class ChatFolderKey(
+    val id: Long,
+    val folderType: ChatFolderRecord.FolderType,
+    val includedChats: List<Long>,
+    val excludedChats: List<Long>,
+    val showUnread: Boolean,
+    val showMutedChats: Boolean,
+    val showIndividualChats: Boolean,
+    val showGroupChats: Boolean
+  ) {
+    constructor(folder: ChatFolderRecord) : this(
+      id = folder.id,
+      folderType = folder.folderType,
+      includedChats = folder.includedChats,
+      excludedChats = folder.excludedChats,
+      showUnread = folder.showUnread,
+      showMutedChats = folder.showMutedChats,
+      showIndividualChats = folder.showIndividualChats,
+      showGroupChats = folder.showGroupChats
+    )
+  }
+
+  /**
+   * Caches the conversation list counts, which are read every time the list is invalidated but usually haven't changed in a way that needs a full
+   * recount.
+   *
+   * Each entry keeps the ids of the threads it counts rather than just the count. When a thread changes through [markThreadChanged], only that thread
+   * is checked against each entry again. Any other change to the list bumps [DatabaseObserver.getConversationListVersion], which drops every entry. Entries for
+   * folders that hide muted chats also drop once the next mute runs out.
+   */
+  private inner class ConversationListCounts {
+    private val entries: MutableMap<Key, Entry> = HashMap()
+    private val dirtyThreadIds: MutableSet<Long> = ConcurrentHashMap.newKeySet()
+
+    fun markDirty(threadId: Long) {
+      dirtyThreadIds += threadId
+    }
+
+    @Synchronized
+    fun get(type: ConversationListCountType, conversationFilter: ConversationFilter, chatFolder: ChatFolderRecord?): Int {
+      val folder = chatFolder?.takeUnless { it.id == -1L || it.folderType == ChatFolderRecord.FolderType.ALL }
+      val version = AppDependencies.databaseObserver.conversationListVersion
+      val now = System.currentTimeMillis()
+
+      entries.values.removeAll { it.version != version || it.validUntil <= now }
+      applyDirtyThreads()
+
+      val entry = entries.getOrPut(Key(type, conversationFilter, folder?.let { ChatFolderKey(it) })) {
+        SignalTrace.beginSection("ThreadTable#countConversationList")
+        try {
+          Entry(
+            folder = folder,
+            threadIds = getConversationListThreadIds(type, conversationFilter, folder),
+            version = version,
+            validUntil = if (folder != null && !folder.showMutedChats) getNextUnmuteTime(now) else Long.MAX_VALUE
+          )
+        } finally {
+          SignalTrace.endSection()
+        }
+      }
+
+      return entry.threadIds.size
+    }
+
+    private fun applyDirtyThreads() {
+      if (dirtyThreadIds.isEmpty()) {
+        return
+      }
+
+      val threadIds = dirtyThreadIds.toLongArray()
+      dirtyThreadIds.removeAll(threadIds.asList())
+
+      for ((key, entry) in entries) {
+        val matching = getConversationListThreadIds(key.type, key.conversationFilter, entry.folder, threadIds)
+
+        for (threadId in threadIds) {
+          if (threadId in matching) {
+            entry.threadIds += threadId
+          } else {
+            entry.threadIds -= threadId
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Keeps the unread count of each chat folder and whether it's empty or entirely muted, for the folder tabs.
+   *
+   * Each tally remembers what every chat in the folder contributes, so when a chat changes through [markThreadChanged] only that chat is read again
+   * and the totals are adjusted by the difference. Like [ConversationListCounts], any other change to the list drops every tally, as does the next
+   * mute running out.
+   */
+  private inner class ChatFolderTallies {
+    private val tallies: MutableMap<ChatFolderKey, ChatFolderTally> = HashMap()
+    private val dirtyThreadIds: MutableSet<Long> = ConcurrentHashMap.newKeySet()
+
+    fun markDirty(threadId: Long) {
+      dirtyThreadIds += threadId
+    }
+
+    @Synchronized
+    fun get(folder: ChatFolderRecord): ChatFolderStatus {
+      val version = AppDependencies.databaseObserver.conversationListVersion
+      val now = System.currentTimeMillis()
+
+      tallies.values.removeAll { it.version != version || it.validUntil <= now }
+      applyDirtyThreads(now)
+
+      val tally = tallies.getOrPut(ChatFolderKey(folder)) {
+        SignalTrace.beginSection("ThreadTable#tallyChatFolder")
+        try {
+          ChatFolderTally(folder, version, getNextUnmuteTime(now)).also { tally ->
+            readChatFolderThreads(folder, null, now, tally::put)
+          }
+        } finally {
+          SignalTrace.endSection()
+        }
+      }
+
+      return ChatFolderStatus(
+        unreadCount = tally.unreadCount,
+        isEmpty = tally.isEmpty,
+        isMuted = tally.isMuted
+      )
+    }
+
+    @Synchronized
+    fun retain(folders: List<ChatFolderRecord>) {
+      val keys = folders.map { ChatFolderKey(it) }.toSet()
+      tallies.keys.retainAll(keys)
+    }
+
+    private fun applyDirtyThreads(now: Long) {
+      if (dirtyThreadIds.isEmpty()) {
+        return
+      }
+
+      val threadIds = dirtyThreadIds.toLongArray()
+      dirtyThreadIds.removeAll(threadIds.asList())
+
+      for (tally in tallies.values) {
+        threadIds.forEach(tally::remove)
+        readChatFolderThreads(tally.folder, threadIds, now, tally::put)
+      }
+    }
+  }
+
+  private class ChatFolderTally(val folder: ChatFolderRecord, val version: Long, val validUntil: Long) {
+    private val unreadCounts = LongIntMap()
+    private val mutedThreadIds = LongSet()
+
+    var unreadCount: Int = 0
+      private set
+
+    val isEmpty: Boolean
+      get() = unreadCounts.isEmpty()
+
+    val isMuted: Boolean
+      get() = mutedThreadIds.size == unreadCounts.size
+
+    fun put(threadId: Long, threadUnreadCount: Int, muted: Boolean) {
+      remove(threadId)
+
+      unreadCounts[threadId] = threadUnreadCount
+      unreadCount += threadUnreadCount
+
+      if (muted) {
+        mutedThreadIds += threadId
+      }
+    }
+
+    fun remove(threadId: Long) {
+      unreadCount -= unreadCounts.getOrDefault(threadId, 0)
+      unreadCounts.remove(threadId)
+      mutedThreadIds -= threadId
+    }
+  }
+
+  data class ChatFolderStatus(val unreadCount: Int, val isEmpty: Boolean, val isMuted: Boolean)
+
+  private data class Key(val type: ConversationListCountType, val conversationFilter: ConversationFilter, val folder: ChatFolderKey?)
+
+  private class Entry(val folder: ChatFolderRecord?, val threadIds: LongSet, val version: Long, val validUntil: Long)
+
   object DistributionTypes {
     const val DEFAULT = 2
     const val BROADCAST = 1
@@ -178,6 +178,12 @@ import org.thoughtcrime.securesms.database.helpers.migration.V322_NormalizeStick
 import org.thoughtcrime.securesms.database.helpers.migration.V323_AddStickerPackStorageSync
 import org.thoughtcrime.securesms.database.helpers.migration.V324_MoveGroupV1StorageIdsToUnknownIds
 import org.thoughtcrime.securesms.database.helpers.migration.V325_AddBlockedAtToRecipientTable
+import org.thoughtcrime.securesms.database.helpers.migration.V326_AddE164MemoTable
+import org.thoughtcrime.securesms.database.helpers.migration.V327_AddCdsContactSnapshotTable
+import org.thoughtcrime.securesms.database.helpers.migration.V328_AddMessageExpirationIndex
+import org.thoughtcrime.securesms.database.helpers.migration.V329_AddThreadListIndex
+import org.thoughtcrime.securesms.database.helpers.migration.V330_AddAttachmentPreviewColumns
+import org.thoughtcrime.securesms.database.helpers.migration.V331_CompactGroupReceipts
 import org.thoughtcrime.securesms.database.SQLiteDatabase as SignalSqliteDatabase
 
 /**
@@ -363,10 +369,16 @@ object SignalDatabaseMigrations {
     322 to V322_NormalizeStickerTable,
     323 to V323_AddStickerPackStorageSync,
     324 to V324_MoveGroupV1StorageIdsToUnknownIds,
-    325 to V325_AddBlockedAtToRecipientTable
+    325 to V325_AddBlockedAtToRecipientTable,
+    326 to V326_AddE164MemoTable,
+    327 to V327_AddCdsContactSnapshotTable,
+    328 to V328_AddMessageExpirationIndex,
+    329 to V329_AddThreadListIndex,
+    330 to V330_AddAttachmentPreviewColumns,
+    331 to V331_CompactGroupReceipts
   )
 
-  const val DATABASE_VERSION = 325
+  const val DATABASE_VERSION = 331
 
   @JvmStatic
   fun migrate(context: Application, db: SignalSqliteDatabase, oldVersion: Int, newVersion: Int) {
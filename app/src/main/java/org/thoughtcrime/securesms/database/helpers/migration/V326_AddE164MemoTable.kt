@@ -0,0 +1,24 @@
+package org.thoughtcrime.securesms.database.helpers.migration
+
+import android.app.Application
+import org.thoughtcrime.securesms.database.SQLiteDatabase
+
+/**
+ * Adds a table to remember how raw system contact numbers were formatted as E164s, so that contact refreshes don't have to format them all again.
+ */
+@Suppress("ClassName")
+object V326_AddE164MemoTable : SignalDatabaseMigration {
+
+  override fun migrate(context: Application, db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+    db.execSQL(
+      """
+      CREATE TABLE e164_memo (
+        _id INTEGER PRIMARY KEY,
+        input TEXT NOT NULL UNIQUE ON CONFLICT REPLACE,
+        e164 TEXT DEFAULT NULL,
+        formatter_key TEXT NOT NULL
+      )
+      """
+    )
+  }
+}
@@ -0,0 +1,26 @@
+package org.thoughtcrime.securesms.database.helpers.migration
+
+import android.app.Application
+import org.thoughtcrime.securesms.database.SQLiteDatabase
+
+/**
+ * Adds a table to snapshot the system contact numbers seen by the last CDS refresh, so that later refreshes only have to re-read contacts that changed.
+ */
+@Suppress("ClassName")
+object V327_AddCdsContactSnapshotTable : SignalDatabaseMigration {
+
+  override fun migrate(context: Application, db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+    db.execSQL(
+      """
+      CREATE TABLE cds_contact_snapshot (
+        _id INTEGER PRIMARY KEY,
+        raw_contact_id INTEGER NOT NULL,
+        version INTEGER NOT NULL,
+        number TEXT DEFAULT NULL
+      )
+      """
+    )
+
+    db.execSQL("CREATE INDEX cds_contact_snapshot_raw_contact_id_index ON cds_contact_snapshot (raw_contact_id)")
+  }
+}
@@ -0,0 +1,21 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database.helpers.migration
+
+import android.app.Application
+import org.thoughtcrime.securesms.database.SQLiteDatabase
+
+/**
+ * Replaces the index on expire_started with one that also covers expires_in, so the expiration times of every expiring message can be loaded without
+ * reading the message rows.
+ */
+@Suppress("ClassName")
+object V328_AddMessageExpirationIndex : SignalDatabaseMigration {
+  override fun migrate(context: Application, db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+    db.execSQL("DROP INDEX IF EXISTS message_expire_started_index")
+    db.execSQL("CREATE INDEX IF NOT EXISTS message_expiration_index ON message (expire_started, expires_in) WHERE expire_started > 0")
+  }
+}
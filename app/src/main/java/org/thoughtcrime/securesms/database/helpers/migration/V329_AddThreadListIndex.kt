@@ -0,0 +1,20 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database.helpers.migration
+
+import android.app.Application
+import org.thoughtcrime.securesms.database.SQLiteDatabase
+
+/**
+ * Adds an index over just the threads that show up in the unpinned part of the chat list, in list order, so a page of the list can be found by
+ * seeking to it rather than by scanning and sorting every thread.
+ */
+@Suppress("ClassName")
+object V329_AddThreadListIndex : SignalDatabaseMigration {
+  override fun migrate(context: Application, db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+    db.execSQL("CREATE INDEX IF NOT EXISTS thread_unpinned_date_index ON thread (date, _id) WHERE active = 1 AND archived = 0 AND pinned_order IS NULL AND meaningful_messages != 0")
+  }
+}
@@ -0,0 +1,22 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database.helpers.migration
+
+import android.app.Application
+import org.thoughtcrime.securesms.database.SQLiteDatabase
+
+/**
+ * Adds a downscaled, encrypted preview for image attachments, so thumbnails can be drawn without decoding the full-size file.
+ */
+@Suppress("ClassName")
+object V330_AddAttachmentPreviewColumns : SignalDatabaseMigration {
+  override fun migrate(context: Application, db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+    db.execSQL("ALTER TABLE attachment ADD COLUMN preview_file TEXT DEFAULT NULL")
+    db.execSQL("ALTER TABLE attachment ADD COLUMN preview_random BLOB DEFAULT NULL")
+    db.execSQL("ALTER TABLE attachment ADD COLUMN preview_width INTEGER DEFAULT 0")
+    db.execSQL("ALTER TABLE attachment ADD COLUMN preview_height INTEGER DEFAULT 0")
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database.helpers.migration
+
+import android.app.Application
+import androidx.core.content.contentValuesOf
+import org.signal.core.util.forEach
+import org.signal.core.util.requireBoolean
+import org.signal.core.util.requireInt
+import org.signal.core.util.requireLong
+import org.thoughtcrime.securesms.database.GroupReceiptSet
+import org.thoughtcrime.securesms.database.SQLiteDatabase
+
+/**
+ * Replaces the row-per-recipient group receipts with a row per message, where each status is a bitmap over the ordinals recipients are given in the
+ * message's thread. Receipts for messages or recipients that no longer exist are dropped along the way.
+ */
+@Suppress("ClassName")
+object V331_CompactGroupReceipts : SignalDatabaseMigration {
+  override fun migrate(context: Application, db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+    db.execSQL(
+      """
+      CREATE TABLE group_receipt_member (
+        _id INTEGER PRIMARY KEY,
+        thread_id INTEGER NOT NULL,
+        ordinal INTEGER NOT NULL,
+        recipient_id INTEGER DEFAULT NULL,
+        UNIQUE(thread_id, ordinal)
+      )
+      """
+    )
+
+    // Give each recipient an ordinal in every thread they have receipts in, counting up from zero per thread
+    var currentThreadId = -1L
+    var nextOrdinal = 0
+    db.rawQuery(
+      """
+      SELECT DISTINCT message.thread_id, group_receipts.address
+      FROM group_receipts
+      INNER JOIN message ON message._id = group_receipts.mms_id
+      INNER JOIN recipient ON recipient._id = group_receipts.address
+      ORDER BY message.thread_id, group_receipts.address
+      """,
+      null
+    ).forEach { cursor ->
+      val threadId = cursor.requireLong("thread_id")
+      if (threadId != currentThreadId) {
+        currentThreadId = threadId
+        nextOrdinal = 0
+      }
+
+      db.insert("group_receipt_member", null, contentValuesOf("thread_id" to threadId, "ordinal" to nextOrdinal++, "recipient_id" to cursor.requireLong("address")))
+    }
+
+    db.execSQL(
+      """
+      CREATE TABLE group_receipts_tmp (
+        _id INTEGER PRIMARY KEY,
+        mms_id INTEGER UNIQUE,
+        thread_id INTEGER NOT NULL,
+        receipts BLOB NOT NULL
+      )
+      """
+    )
+
+    // Rows come grouped by message, so each message's receipts can be written as soon as the next message's start
+    var currentMessageId = -1L
+    var currentMessageThreadId = -1L
+    var receipts = GroupReceiptSet.empty()
+
+    db.rawQuery(
+      """
+      SELECT group_receipts.mms_id, message.thread_id, group_receipt_member.ordinal, group_receipts.status, group_receipts.timestamp, group_receipts.unidentified
+      FROM group_receipts
+      INNER JOIN message ON message._id = group_receipts.mms_id
+      INNER JOIN group_receipt_member ON group_receipt_member.thread_id = message.thread_id AND group_receipt_member.recipient_id = group_receipts.address
+      ORDER BY group_receipts.mms_id, group_receipts._id
+      """,
+      null
+    ).forEach { cursor ->
+      val messageId = cursor.requireLong("mms_id")
+      if (messageId != currentMessageId) {
+        if (!receipts.isEmpty()) {
+          db.insert("group_receipts_tmp", null, contentValuesOf("mms_id" to currentMessageId, "thread_id" to currentMessageThreadId, "receipts" to receipts.encode()))
+        }
+
+        currentMessageId = messageId
+        currentMessageThreadId = cursor.requireLong("thread_id")
+        receipts = GroupReceiptSet.empty()
+      }
+
+      val ordinal = cursor.requireInt("ordinal")
+      receipts.add(ordinal, cursor.requireInt("status"), cursor.requireLong("timestamp"))
+      receipts.setUnidentified(ordinal, cursor.requireBoolean("unidentified"))
+    }
+
+    if (!receipts.isEmpty()) {
+      db.insert("group_receipts_tmp", null, contentValuesOf("mms_id" to currentMessageId, "thread_id" to currentMessageThreadId, "receipts" to receipts.encode()))
+    }
+
+    db.execSQL("DROP TABLE group_receipts")
+    db.execSQL("ALTER TABLE group_receipts_tmp RENAME TO group_receipts")
+
+    db.execSQL("CREATE INDEX IF NOT EXISTS group_receipt_thread_id_index ON group_receipts (thread_id)")
+    db.execSQL("CREATE INDEX IF NOT EXISTS group_receipt_member_thread_recipient_index ON group_receipt_member (thread_id, recipient_id)")
+    db.execSQL("CREATE INDEX IF NOT EXISTS group_receipt_member_recipient_id_index ON group_receipt_member (recipient_id)")
+  }
+}
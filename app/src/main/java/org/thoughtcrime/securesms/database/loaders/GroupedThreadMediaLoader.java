@@ -16,8 +16,8 @@ import org.thoughtcrime.securesms.dependencies.AppDependencies;
 import org.thoughtcrime.securesms.util.CalendarDateOnly;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 
@@ -67,21 +67,35 @@ public final class GroupedThreadMediaLoader extends AsyncTaskLoader<GroupedThrea
 
   @Override
   public GroupedThreadMedia loadInBackground() {
-    Context        context        = getContext();
-    GroupingMethod groupingMethod = sorting.isRelatedToFileSize()
-                                    ? new RoughSizeGroupingMethod(context)
-                                    : new DateGroupingMethod(context, CalendarDateOnly.getInstance());
-
-    PopulatedGroupedThreadMedia mediaGrouping = new PopulatedGroupedThreadMedia(groupingMethod);
+    PopulatedGroupedThreadMedia mediaGrouping = createGrouping(getContext(), sorting);
 
     AppDependencies.getDatabaseObserver().registerAttachmentUpdatedObserver(observer);
 
-    try (Cursor cursor = ThreadMediaLoader.createThreadMediaCursor(context, threadId, mediaType, sorting, limit)) {
+    try (Cursor cursor = ThreadMediaLoader.createThreadMediaCursor(getContext(), threadId, mediaType, sorting, limit)) {
       while (cursor != null && cursor.moveToNext()) {
         mediaGrouping.add(MediaTable.MediaRecord.from(cursor));
       }
     }
 
+    return withSectionOrder(mediaGrouping, sorting);
+  }
+
+  /**
+   * @return An empty grouping for the given sort order. Records must be added in the order they're displayed.
+   */
+  public static @NonNull PopulatedGroupedThreadMedia createGrouping(@NonNull Context context, @NonNull MediaTable.Sorting sorting) {
+    GroupingMethod groupingMethod = sorting.isRelatedToFileSize()
+                                    ? new RoughSizeGroupingMethod(context)
+                                    : new DateGroupingMethod(context, CalendarDateOnly.getInstance());
+
+    return new PopulatedGroupedThreadMedia(groupingMethod);
+  }
+
+  /**
+   * Wraps a grouping so that its sections are displayed in the right order for the sort. The wrapper reads through, so records added to the grouping
+   * afterwards are reflected in it.
+   */
+  public static @NonNull GroupedThreadMedia withSectionOrder(@NonNull PopulatedGroupedThreadMedia mediaGrouping, @NonNull MediaTable.Sorting sorting) {
     if (sorting == MediaTable.Sorting.Oldest || sorting == MediaTable.Sorting.Largest) {
       return new ReversedGroupedThreadMedia(mediaGrouping);
     } else {
@@ -273,7 +287,7 @@ public final class GroupedThreadMediaLoader extends AsyncTaskLoader<GroupedThrea
     }
   }
 
-  private static class PopulatedGroupedThreadMedia extends GroupedThreadMedia {
+  public static final class PopulatedGroupedThreadMedia extends GroupedThreadMedia {
 
     @NonNull
     private final GroupingMethod groupingMethod;
@@ -284,12 +298,12 @@ public final class GroupedThreadMediaLoader extends AsyncTaskLoader<GroupedThrea
       this.groupingMethod = groupingMethod;
     }
 
-    private void add(@NonNull MediaTable.MediaRecord mediaRecord) {
+    public void add(@NonNull MediaTable.MediaRecord mediaRecord) {
       int groupNo = groupingMethod.groupForRecord(mediaRecord);
 
       List<MediaTable.MediaRecord> mediaRecords = records.get(groupNo);
       if (mediaRecords == null) {
-        mediaRecords = new LinkedList<>();
+        mediaRecords = new ArrayList<>();
         records.put(groupNo, mediaRecords);
       }
 
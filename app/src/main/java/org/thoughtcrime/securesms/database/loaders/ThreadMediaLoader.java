@@ -4,6 +4,7 @@ import android.content.Context;
 import android.database.Cursor;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.thoughtcrime.securesms.database.MediaTable;
 import org.thoughtcrime.securesms.database.SignalDatabase;
@@ -47,4 +48,38 @@ public final class ThreadMediaLoader extends MediaLoader {
     }
   }
 
+  /**
+   * Reads a page of media. If {@code after} is set, the page starts with the row following it and {@code offset} should be zero.
+   */
+  public static Cursor createThreadMediaPageCursor(long threadId,
+                                                   @NonNull MediaType mediaType,
+                                                   @NonNull MediaTable.Sorting sorting,
+                                                   int limit,
+                                                   int offset,
+                                                   @Nullable MediaTable.PageKey after)
+  {
+    MediaTable mediaDatabase = SignalDatabase.media();
+
+    switch (mediaType) {
+      case GALLERY : return mediaDatabase.getGalleryMediaForThread(threadId, sorting, limit, offset, after);
+      case DOCUMENT: return mediaDatabase.getDocumentMediaForThread(threadId, sorting, limit, offset, after);
+      case AUDIO   : return mediaDatabase.getAudioMediaForThread(threadId, sorting, limit, offset, after);
+      case LINK    : return mediaDatabase.getLinkMediaPageForThread(threadId, sorting, limit, offset, after);
+      case ALL     : return mediaDatabase.getAllMediaForThread(threadId, sorting, limit, offset, after);
+      default      : throw new AssertionError();
+    }
+  }
+
+  public static int getThreadMediaCount(long threadId, @NonNull MediaType mediaType) {
+    MediaTable mediaDatabase = SignalDatabase.media();
+
+    switch (mediaType) {
+      case GALLERY : return mediaDatabase.getGalleryMediaCountForThread(threadId);
+      case DOCUMENT: return mediaDatabase.getDocumentMediaCountForThread(threadId);
+      case AUDIO   : return mediaDatabase.getAudioMediaCountForThread(threadId);
+      case LINK    : return mediaDatabase.getLinkMediaCountForThread(threadId);
+      case ALL     : return mediaDatabase.getAllMediaCountForThread(threadId);
+      default      : throw new AssertionError();
+    }
+  }
 }
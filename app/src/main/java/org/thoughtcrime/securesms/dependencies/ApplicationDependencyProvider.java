@@ -208,6 +208,7 @@ public class ApplicationDependencyProvider implements AppDependencies.Provider {
                                             RemoteConfig.maxEnvelopeSizeBytes(),
                                             RemoteConfig.maxIncrementalMacsPerEnvelope(),
                                             RemoteConfig::useMessageSendRestFallback,
+                                            RemoteConfig::maxConcurrentMessageSends,
                                             new PreKeyRepository(
                                                 keysApi,
                                                 protocolStore.aci(),
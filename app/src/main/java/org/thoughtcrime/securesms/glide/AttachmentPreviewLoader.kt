@@ -0,0 +1,92 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.glide
+
+import com.bumptech.glide.Priority
+import com.bumptech.glide.load.DataSource
+import com.bumptech.glide.load.Option
+import com.bumptech.glide.load.Options
+import com.bumptech.glide.load.data.DataFetcher
+import com.bumptech.glide.load.model.ModelLoader
+import com.bumptech.glide.load.model.ModelLoaderFactory
+import com.bumptech.glide.load.model.MultiModelLoaderFactory
+import com.bumptech.glide.signature.ObjectKey
+import org.signal.glide.common.io.InputStreamFactory
+import org.signal.glide.decryptableuri.DecryptableUri
+import org.signal.glide.decryptableuri.DecryptableUriStreamLoader
+import org.thoughtcrime.securesms.database.AttachmentTable
+import org.thoughtcrime.securesms.database.SignalDatabase
+import org.thoughtcrime.securesms.mms.PartAuthority
+import java.io.InputStream
+
+/**
+ * Takes over from [DecryptableUriStreamLoader] for attachment thumbnails, and loads them from their preview when it's at least as large as the
+ * request in both dimensions. Anything else, including requests for the original size, is loaded from the attachment's data as usual.
+ *
+ * Only requests that set [ALLOW_PREVIEW] are handled, since the preview is lossy. Everything else (e.g. decoding an image to re-compress it) falls
+ * through to [DecryptableUriStreamLoader] and reads the original.
+ *
+ * Both sources share a cache key. A preview that covers the request decodes to the same result the full image would have, so there's no need to
+ * keep the two apart.
+ */
+class AttachmentPreviewLoader : ModelLoader<DecryptableUri, InputStreamFactory> {
+
+  companion object {
+    /** Set on thumbnail requests to let them be served from the attachment's preview. */
+    @JvmField
+    val ALLOW_PREVIEW: Option<Boolean> = Option.memory("org.thoughtcrime.securesms.glide.AttachmentPreviewLoader.AllowPreview", false)
+  }
+
+  override fun handles(model: DecryptableUri): Boolean = PartAuthority.isAttachmentDataUri(model.uri)
+
+  override fun buildLoadData(model: DecryptableUri, width: Int, height: Int, options: Options): ModelLoader.LoadData<InputStreamFactory>? {
+    if (options.get(ALLOW_PREVIEW) != true) {
+      return null
+    }
+
+    return ModelLoader.LoadData(ObjectKey(model), Fetcher(model, width, height))
+  }
+
+  private class Fetcher(
+    private val model: DecryptableUri,
+    private val width: Int,
+    private val height: Int
+  ) : DataFetcher<InputStreamFactory> {
+
+    override fun getDataClass(): Class<InputStreamFactory> = InputStreamFactory::class.java
+    override fun getDataSource(): DataSource = DataSource.LOCAL
+
+    override fun loadData(priority: Priority, callback: DataFetcher.DataCallback<in InputStreamFactory>) {
+      try {
+        val preview: AttachmentTable.PreviewFileInfo? = if (width > 0 && height > 0) {
+          SignalDatabase.attachments.getPreviewFileInfo(PartAuthority.requireAttachmentId(model.uri))
+        } else {
+          null
+        }
+
+        if (preview != null && preview.width >= width && preview.height >= height) {
+          callback.onDataReady(PreviewStreamFactory(preview))
+        } else {
+          callback.onDataReady(InputStreamFactory.build(model.uri, model.thumbnailTimeUs))
+        }
+      } catch (e: Exception) {
+        callback.onLoadFailed(e)
+      }
+    }
+
+    override fun cancel() = Unit
+    override fun cleanup() = Unit
+  }
+
+  private class PreviewStreamFactory(private val preview: AttachmentTable.PreviewFileInfo) : InputStreamFactory {
+    override fun create(): InputStream = SignalDatabase.attachments.getAttachmentPreviewStream(preview)
+  }
+
+  class Factory : ModelLoaderFactory<DecryptableUri, InputStreamFactory> {
+    override fun build(multiFactory: MultiModelLoaderFactory): ModelLoader<DecryptableUri, InputStreamFactory> = AttachmentPreviewLoader()
+    override fun teardown() = Unit
+  }
+}
@@ -94,6 +94,7 @@ public class SignalGlideComponents implements RegisterGlideComponents {
     registry.prepend(File.class, ApngDecoder.class, new EncryptedApngCacheDecoder(secret));
     registry.register(ApngDecoder.class, Drawable.class, new ApngDrawableTranscoder());
 
+    registry.prepend(DecryptableUri.class, InputStreamFactory.class, new AttachmentPreviewLoader.Factory());
     registry.prepend(BlurHash.class, Bitmap.class, new BlurHashResourceDecoder());
     registry.prepend(StoryTextPostModel.class, Bitmap.class, new StoryTextPostModel.Decoder());
 
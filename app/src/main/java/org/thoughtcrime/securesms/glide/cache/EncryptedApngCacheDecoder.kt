@@ -12,6 +12,7 @@ import org.signal.apng.ApngDecoder
 import org.signal.core.util.logging.Log
 import org.signal.core.util.stream.LimitedInputStream
 import org.signal.glide.apng.ApngOptions
+import org.signal.glide.common.io.InputStreamFactory
 import java.io.File
 import java.io.IOException
 
@@ -39,7 +40,7 @@ internal class EncryptedApngCacheDecoder(private val secret: ByteArray) : Encryp
 
   @Throws(IOException::class)
   override fun decode(source: File, width: Int, height: Int, options: Options): Resource<ApngDecoder>? {
-    val decoder = ApngDecoder.create(contentLength = source.length()) { createEncryptedInputStream(secret, source) }
+    val decoder = ApngDecoder.create(contentLength = source.length(), sourceKey = InputStreamFactory.sourceKeyFor(source)) { createEncryptedInputStream(secret, source) }
     return ApngResource(decoder)
   }
 }
@@ -49,6 +49,7 @@ class EncryptedCacheStreamFactoryDecoder<DecodeType>(
     fun factoryFor(file: File): InputStreamFactory {
       return object : InputStreamFactory {
         override fun create(): InputStream = createEncryptedInputStream(secret, file)
+        override fun sourceKey(): String = InputStreamFactory.sourceKeyFor(file)
       }
     }
   }
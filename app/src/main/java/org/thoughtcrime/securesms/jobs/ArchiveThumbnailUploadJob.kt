@@ -40,8 +40,6 @@ import org.whispersystems.signalservice.internal.crypto.PaddingInputStream
 import org.whispersystems.signalservice.internal.push.AttachmentUploadForm
 import java.io.ByteArrayInputStream
 import java.io.IOException
-import kotlin.math.floor
-import kotlin.math.max
 import kotlin.time.Duration.Companion.days
 
 /**
@@ -56,10 +54,9 @@ class ArchiveThumbnailUploadJob private constructor(
     const val KEY = "ArchiveThumbnailUploadJob"
     private val TAG = Log.tag(ArchiveThumbnailUploadJob::class.java)
 
-    private const val STARTING_IMAGE_QUALITY = 75f
-    private const val MINIMUM_IMAGE_QUALITY = 10f
+    private const val STARTING_IMAGE_QUALITY = 75
+    private const val MINIMUM_IMAGE_QUALITY = 10
     private const val MAX_PIXEL_DIMENSION = 256
-    private const val ADDITIONAL_QUALITY_DECREASE = 10f
 
     /** A set of possible queues this job may use. The number of queues determines the parallelism. */
     val QUEUES = setOf(
@@ -367,21 +364,10 @@ class ArchiveThumbnailUploadJob private constructor(
   }
 
   private fun compress(uri: DecryptableUri, contentType: String): ImageCompressionUtil.Result? {
-    val maxFileSize = RemoteConfig.backupMaxThumbnailFileSize.inWholeBytes.toFloat()
-    var attempts = 0
-    var quality = STARTING_IMAGE_QUALITY
+    val maxFileSize = RemoteConfig.backupMaxThumbnailFileSize.inWholeBytes
 
-    var result: ImageCompressionUtil.Result? = ImageCompressionUtil.compress(context, contentType, MediaUtil.IMAGE_WEBP, uri, MAX_PIXEL_DIMENSION, quality.toInt())
-
-    while (result != null && result.data.size > maxFileSize && attempts < 5 && quality > MINIMUM_IMAGE_QUALITY) {
-      val maxSizeToActualRatio = maxFileSize / result.data.size.toFloat()
-      val newQuality = quality * maxSizeToActualRatio - ADDITIONAL_QUALITY_DECREASE
-
-      quality = floor(max(MINIMUM_IMAGE_QUALITY, newQuality))
-      result = ImageCompressionUtil.compress(context, contentType, MediaUtil.IMAGE_WEBP, uri, MAX_PIXEL_DIMENSION, quality.toInt())
-      attempts++
-    }
-    return result
+    return ImageCompressionUtil.compressWithinSize(context, contentType, MediaUtil.IMAGE_WEBP, uri, MAX_PIXEL_DIMENSION, maxFileSize, MINIMUM_IMAGE_QUALITY, STARTING_IMAGE_QUALITY)
+      ?: ImageCompressionUtil.compress(context, contentType, MediaUtil.IMAGE_WEBP, uri, MAX_PIXEL_DIMENSION, MINIMUM_IMAGE_QUALITY)
   }
 
   private fun buildSignalServiceAttachmentStream(result: ImageCompressionUtil.Result): SignalServiceAttachmentStream {
@@ -50,7 +50,6 @@ import org.thoughtcrime.securesms.video.postprocessing.Mp4FaststartPostProcessor
 import org.thoughtcrime.securesms.video.videoconverter.exceptions.CodecUnavailableException;
 import org.thoughtcrime.securesms.video.videoconverter.exceptions.EncodingException;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -68,6 +67,12 @@ public final class AttachmentCompressionJob extends BaseJob {
   private static final String KEY_MMS           = "mms";
   private static final String KEY_MMS_SUBSCRIPTION_ID = "mms_subscription_id";
 
+  /** Images from a batch are compressed in parallel across this many queues, with decodes held to a memory budget by {@link ImageCompressionUtil}. */
+  private static final int GENERIC_TRANSCODE_QUEUES = 3;
+
+  /** The lowest quality we'll search down to before trying a smaller dimension. */
+  private static final int MINIMUM_IMAGE_QUALITY = 50;
+
   private final AttachmentId attachmentId;
   private final boolean      mms;
   private final int          mmsSubscriptionId;
@@ -91,7 +96,7 @@ public final class AttachmentCompressionJob extends BaseJob {
              .addConstraint(NetworkConstraint.KEY)
              .setLifespan(TimeUnit.DAYS.toMillis(1))
              .setMaxAttempts(Parameters.UNLIMITED)
-             .setQueue(isVideoTranscode ? "VIDEO_TRANSCODE" : "GENERIC_TRANSCODE")
+             .setQueue(isVideoTranscode ? "VIDEO_TRANSCODE" : "GENERIC_TRANSCODE_" + (attachmentId.id % GENERIC_TRANSCODE_QUEUES))
              .build(),
          attachmentId,
          mms,
@@ -203,9 +208,7 @@ public final class AttachmentCompressionJob extends BaseJob {
         }
       } else if (constraints.canResize(attachment.contentType)) {
         Log.i(TAG, "Compressing image.");
-        try (MediaStream converted = compressImage(context, attachment, constraints)) {
-          attachmentDatabase.updateAttachmentData(attachment, converted);
-        }
+        compressImage(context, attachmentDatabase, attachment, constraints);
         attachmentDatabase.markAttachmentAsTransformed(attachmentId, false);
       } else if (isConstraintsSatisfied(context, attachment, constraints)) {
         Log.i(TAG, "Not compressing.");
@@ -213,6 +216,10 @@ public final class AttachmentCompressionJob extends BaseJob {
       } else {
         throw new UndeliverableMessageException("Size constraints could not be met!");
       }
+
+      if (AttachmentPreviewJob.isEligible(attachment)) {
+        AttachmentPreviewJob.enqueue(attachmentId);
+      }
     } catch (IOException | MmsException e) {
       throw new UndeliverableMessageException(e);
     }
@@ -394,12 +401,17 @@ public final class AttachmentCompressionJob extends BaseJob {
   /**
    * Compresses the images. Given that we compress every image, this has the fun side effect of
    * stripping all EXIF data.
+   *
+   * Each dimension target is decoded once, and the highest quality that fits is searched for on that
+   * bitmap before moving on to the next target. Attempts are encoded in memory, and only the one that's
+   * kept is written to a new data file, which replaces the attachment's data.
    */
   @WorkerThread
-  private static MediaStream compressImage(@NonNull Context context,
-                                           @NonNull Attachment attachment,
-                                           @NonNull MediaConstraints mediaConstraints)
-      throws UndeliverableMessageException
+  private static void compressImage(@NonNull Context context,
+                                    @NonNull AttachmentTable attachmentDatabase,
+                                    @NonNull DatabaseAttachment attachment,
+                                    @NonNull MediaConstraints mediaConstraints)
+      throws UndeliverableMessageException, IOException, MmsException
   {
     Uri uri = attachment.getUri();
 
@@ -407,32 +419,41 @@ public final class AttachmentCompressionJob extends BaseJob {
       throw new UndeliverableMessageException("No attachment URI!");
     }
 
-    ImageCompressionUtil.Result result = null;
+    int maxQuality = mediaConstraints.getImageCompressionQualitySetting();
+    int minQuality = Math.min(MINIMUM_IMAGE_QUALITY, maxQuality);
 
     try {
       for (int size : mediaConstraints.getImageDimensionTargets()) {
-        result = ImageCompressionUtil.compressWithinConstraints(context,
-                                                                attachment.contentType,
-                                                                new DecryptableUri(uri),
-                                                                size,
-                                                                mediaConstraints.getImageMaxSize(),
-                                                                mediaConstraints.getImageCompressionQualitySetting());
+        ImageCompressionUtil.Encoded result;
+
+        try (ImageCompressionUtil.DecodedBitmap decoded = ImageCompressionUtil.decode(context, new DecryptableUri(uri), size, false)) {
+          result = ImageCompressionUtil.encodeWithinSize(decoded.getBitmap(),
+                                                         attachment.contentType,
+                                                         mediaConstraints.getImageMaxSize(),
+                                                         minQuality,
+                                                         maxQuality);
+        }
+
         if (result != null) {
-          break;
+          AttachmentTable.PendingDataFile dataFile = attachmentDatabase.newPendingDataFile();
+
+          try {
+            result.writeTo(dataFile);
+            dataFile.close();
+          } catch (IOException e) {
+            dataFile.delete();
+            throw e;
+          }
+
+          attachmentDatabase.updateAttachmentData(attachment, dataFile, result.getMimeType(), result.getWidth(), result.getHeight());
+          return;
         }
       }
     } catch (BitmapDecodingException e) {
       throw new UndeliverableMessageException(e);
     }
 
-    if (result == null) {
-      throw new UndeliverableMessageException("Somehow couldn't meet the constraints!");
-    }
-
-    return new MediaStream(new ByteArrayInputStream(result.getData()),
-                           result.getMimeType(),
-                           result.getWidth(),
-                           result.getHeight());
+    throw new UndeliverableMessageException("Somehow couldn't meet the constraints!");
   }
 
   public static boolean jobSpecMatchesAttachmentId(@NonNull JobSpec jobSpec, @NonNull AttachmentId attachmentId) {
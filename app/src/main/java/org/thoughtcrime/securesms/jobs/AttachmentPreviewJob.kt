@@ -0,0 +1,180 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.jobs
+
+import org.signal.core.models.database.AttachmentId
+import org.signal.core.util.bitmaps.BitmapDecodingException
+import org.signal.core.util.logging.Log
+import org.signal.glide.decryptableuri.DecryptableUri
+import org.thoughtcrime.securesms.R
+import org.thoughtcrime.securesms.attachments.Attachment
+import org.thoughtcrime.securesms.database.AttachmentTable
+import org.thoughtcrime.securesms.database.SignalDatabase
+import org.thoughtcrime.securesms.dependencies.AppDependencies
+import org.thoughtcrime.securesms.jobmanager.Job
+import org.thoughtcrime.securesms.jobmanager.JsonJobData
+import org.thoughtcrime.securesms.mms.PartAuthority
+import org.thoughtcrime.securesms.util.ImageCompressionUtil
+import org.thoughtcrime.securesms.util.MediaUtil
+import java.io.IOException
+import kotlin.time.Duration.Companion.days
+
+/**
+ * Generates the preview for an image attachment: a downscaled copy, encrypted like any other attachment data, that thumbnails can be drawn from
+ * without decoding the full-size image. See [org.thoughtcrime.securesms.glide.AttachmentPreviewLoader].
+ *
+ * Previews are sized to a bucket chosen so they cover the largest thumbnail this device draws, which is a media bubble in a conversation.
+ */
+class AttachmentPreviewJob private constructor(private val attachmentId: AttachmentId, parameters: Parameters) : BaseJob(parameters) {
+
+  companion object {
+    private val TAG = Log.tag(AttachmentPreviewJob::class.java)
+
+    private const val KEY_ATTACHMENT_ID = "attachment_id"
+
+    const val KEY = "AttachmentPreviewJob"
+
+    /** Sizes for the short side of a preview. The first that covers the largest media bubble on this device is used. */
+    private val BUCKETS = intArrayOf(512, 768, 1024, 1536)
+
+    /** Caps the long side of a preview, relative to the short side, so panoramas don't produce previews nearly as large as themselves. */
+    private const val MAX_ASPECT_RATIO = 4
+
+    private const val QUALITY = 80
+
+    private const val WARM_THREADS = 20
+    private const val WARM_IMAGES_PER_THREAD = 50
+
+    @JvmStatic
+    fun isEligible(attachment: Attachment): Boolean {
+      return MediaUtil.isImageType(attachment.contentType) &&
+        !MediaUtil.isGif(attachment.contentType) &&
+        !attachment.quote &&
+        attachment.stickerLocator == null
+    }
+
+    @JvmStatic
+    fun enqueue(attachmentId: AttachmentId) {
+      AppDependencies.jobManager.add(AttachmentPreviewJob(attachmentId))
+    }
+
+    /**
+     * Generates previews for the newest images in the most recently active threads, which are the ones someone is likely to scroll through first.
+     * Used after restoring a backup, where generating previews for every image as it's restored would be wasted work.
+     */
+    @JvmStatic
+    fun enqueueForRecentThreads() {
+      val attachmentIds = SignalDatabase.attachments.getRecentImagesWithoutPreview(WARM_THREADS, WARM_IMAGES_PER_THREAD)
+
+      Log.i(TAG, "Warming previews for ${attachmentIds.size} images.")
+      AppDependencies.jobManager.addAll(attachmentIds.map { AttachmentPreviewJob(it) })
+    }
+  }
+
+  private constructor(attachmentId: AttachmentId) : this(
+    attachmentId,
+    Parameters.Builder()
+      .setQueue("AttachmentPreviewJob")
+      .setLifespan(1.days.inWholeMilliseconds)
+      .setMaxAttempts(1)
+      .build()
+  )
+
+  override fun serialize(): ByteArray? {
+    return JsonJobData.Builder()
+      .putLong(KEY_ATTACHMENT_ID, attachmentId.id)
+      .serialize()
+  }
+
+  override fun getFactoryKey(): String = KEY
+
+  override fun onRun() {
+    val attachment = SignalDatabase.attachments.getAttachment(attachmentId)
+    if (attachment == null) {
+      Log.i(TAG, "[$attachmentId] Attachment no longer exists.")
+      return
+    }
+
+    if (!isEligible(attachment) || attachment.transferState != AttachmentTable.TRANSFER_PROGRESS_DONE) {
+      Log.i(TAG, "[$attachmentId] Not a finished image. Skipping.")
+      return
+    }
+
+    if (SignalDatabase.attachments.getPreviewFileInfo(attachmentId) != null) {
+      Log.i(TAG, "[$attachmentId] Already has a preview.")
+      return
+    }
+
+    val source = SignalDatabase.attachments.getDataFileInfo(attachmentId)
+    if (source == null) {
+      Log.i(TAG, "[$attachmentId] No data.")
+      return
+    }
+
+    val bucket = bucketSize()
+    val shortSide = minOf(attachment.width, attachment.height)
+    val longSide = maxOf(attachment.width, attachment.height)
+
+    if (shortSide in 1..bucket) {
+      Log.i(TAG, "[$attachmentId] Already no larger than a preview (${attachment.width}x${attachment.height}). Skipping.")
+      return
+    }
+
+    val maxDimension = if (shortSide > 0) {
+      (longSide.toLong() * bucket / shortSide).coerceAtMost(bucket.toLong() * MAX_ASPECT_RATIO).toInt()
+    } else {
+      bucket * 2
+    }
+
+    try {
+      ImageCompressionUtil.decode(context, DecryptableUri(PartAuthority.getAttachmentDataUri(attachmentId)), maxDimension, true).use { decoded ->
+        val bitmap = decoded.bitmap
+        val encoded = ImageCompressionUtil.encodeWithinSize(
+          bitmap,
+          if (bitmap.hasAlpha()) MediaUtil.IMAGE_WEBP else MediaUtil.IMAGE_JPEG,
+          Long.MAX_VALUE,
+          QUALITY,
+          QUALITY
+        ) ?: return
+
+        val preview = SignalDatabase.attachments.newPendingDataFile()
+        try {
+          encoded.writeTo(preview)
+          preview.close()
+        } catch (e: IOException) {
+          preview.delete()
+          throw e
+        }
+
+        if (SignalDatabase.attachments.setPreview(source, preview, encoded.width, encoded.height)) {
+          Log.i(TAG, "[$attachmentId] Stored a ${encoded.width}x${encoded.height} preview of ${encoded.size} bytes.")
+        }
+      }
+    } catch (e: BitmapDecodingException) {
+      Log.w(TAG, "[$attachmentId] Failed to decode.", e)
+    }
+  }
+
+  private fun bucketSize(): Int {
+    val resources = context.resources
+    val required = maxOf(resources.getDimensionPixelSize(R.dimen.media_bubble_max_width), resources.getDimensionPixelSize(R.dimen.media_bubble_max_height))
+
+    return BUCKETS.firstOrNull { it >= required } ?: BUCKETS.last()
+  }
+
+  override fun onShouldRetry(e: Exception): Boolean {
+    return false
+  }
+
+  override fun onFailure() = Unit
+
+  class Factory : Job.Factory<AttachmentPreviewJob> {
+    override fun create(parameters: Parameters, serializedData: ByteArray?): AttachmentPreviewJob {
+      val data = JsonJobData.deserialize(serializedData)
+      return AttachmentPreviewJob(AttachmentId(data.getLong(KEY_ATTACHMENT_ID)), parameters)
+    }
+  }
+}
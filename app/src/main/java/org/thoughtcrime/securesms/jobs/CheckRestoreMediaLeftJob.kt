@@ -116,6 +116,8 @@ class CheckRestoreMediaLeftJob private constructor(parameters: Parameters) : Job
       SignalDatabase.attachments.markQuotesThatNeedReconstruction()
       AppDependencies.jobManager.add(QuoteThumbnailReconstructionJob())
     }
+
+    AttachmentPreviewJob.enqueueForRecentThreads()
   }
 
   override fun onFailure() = Unit
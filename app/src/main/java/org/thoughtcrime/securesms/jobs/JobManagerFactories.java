@@ -146,6 +146,7 @@ public final class JobManagerFactories {
       put(AttachmentCopyJob.KEY,                       new AttachmentCopyJob.Factory());
       put(AttachmentDownloadJob.KEY,                   new AttachmentDownloadJob.Factory());
       put(AttachmentHashBackfillJob.KEY,               new AttachmentHashBackfillJob.Factory());
+      put(AttachmentPreviewJob.KEY,                    new AttachmentPreviewJob.Factory());
       put(AttachmentUploadJob.KEY,                     new AttachmentUploadJob.Factory());
       put(AutomaticSessionResetJob.KEY,                new AutomaticSessionResetJob.Factory());
       put(AvatarGroupsV1DownloadJob.KEY,               new AvatarGroupsV1DownloadJob.Factory());
@@ -34,6 +34,7 @@ class MiscellaneousValues internal constructor(store: KeyValueStore) : SignalSto
     private const val LAST_FORCED_PREKEY_REFRESH = "misc.last_forced_prekey_refresh"
     private const val FORCE_PNI_SIGNED_PREKEY_ROTATION = "misc.force_pni_signed_prekey_rotation"
     private const val LAST_CDS_FOREGROUND_SYNC = "misc.last_cds_foreground_sync"
+    private const val LAST_CDS_FULL_CONTACT_READ = "misc.last_cds_full_contact_read"
     private const val LINKED_DEVICE_LAST_ACTIVE_CHECK_TIME = "misc.linked_device.last_active_check_time"
     private const val LEAST_ACTIVE_LINKED_DEVICE = "misc.linked_device.least_active"
     private const val NEXT_DATABASE_ANALYSIS_TIME = "misc.next_database_analysis_time"
@@ -272,6 +273,11 @@ class MiscellaneousValues internal constructor(store: KeyValueStore) : SignalSto
    */
   var lastCdsForegroundSyncTime by longValue(LAST_CDS_FOREGROUND_SYNC, 0)
 
+  /**
+   * The last time a CDS refresh read every system contact, rather than only the ones that changed since the previous refresh.
+   */
+  var lastCdsFullContactReadTime by longValue(LAST_CDS_FULL_CONTACT_READ, 0)
+
   /**
    * The last time we checked for linked device activity.
    */
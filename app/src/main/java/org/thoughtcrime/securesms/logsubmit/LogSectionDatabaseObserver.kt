@@ -0,0 +1,23 @@
+package org.thoughtcrime.securesms.logsubmit
+
+import android.content.Context
+import org.thoughtcrime.securesms.dependencies.AppDependencies
+
+/**
+ * Prints how many database change notifications were requested versus actually delivered to observers after coalescing.
+ */
+class LogSectionDatabaseObserver : LogSection {
+  override fun getTitle(): String = "DATABASE OBSERVER"
+
+  override fun getContent(context: Context): CharSequence {
+    val stats = AppDependencies.databaseObserver.notificationStats
+    val output = StringBuilder()
+
+    output.append("Conversation      : ${stats.conversationDelivered} delivered / ${stats.conversationRequested} requested\n")
+    output.append("Conversation list : ${stats.conversationListDelivered} delivered / ${stats.conversationListRequested} requested\n")
+    output.append("Message update    : ${stats.messageUpdateDelivered} delivered / ${stats.messageUpdateRequested} requested\n")
+    output.append("Message insert    : ${stats.messageInsertDelivered} delivered / ${stats.messageInsertRequested} requested\n")
+
+    return output
+  }
+}
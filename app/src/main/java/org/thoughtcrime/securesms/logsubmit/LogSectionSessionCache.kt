@@ -0,0 +1,24 @@
+package org.thoughtcrime.securesms.logsubmit
+
+import android.content.Context
+import org.thoughtcrime.securesms.database.SignalDatabase
+import java.util.Locale
+
+/**
+ * Prints how effective the in-memory session record cache has been since the process started.
+ */
+class LogSectionSessionCache : LogSection {
+  override fun getTitle(): String = "SESSION CACHE"
+
+  override fun getContent(context: Context): CharSequence {
+    val stats = SignalDatabase.sessions.cacheStats
+    val output = StringBuilder()
+
+    output.append("Size     : ${stats.size}\n")
+    output.append("Hits     : ${stats.hits}\n")
+    output.append("Misses   : ${stats.misses}\n")
+    output.append("Hit rate : ${String.format(Locale.US, "%.1f", stats.hitRate * 100)}%\n")
+
+    return output
+  }
+}
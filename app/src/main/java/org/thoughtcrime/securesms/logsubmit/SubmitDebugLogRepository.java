@@ -88,6 +88,8 @@ public class SubmitDebugLogRepository {
     add(new LogSectionNotifications());
     add(new LogSectionNotificationProfiles());
     add(new LogSectionExoPlayerPool());
+    add(new LogSectionDatabaseObserver());
+    add(new LogSectionSessionCache());
     add(new LogSectionKeyPreferences());
     add(new LogSectionStories());
     add(new LogSectionBadges());
@@ -257,6 +257,30 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
     this.notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTED);
   }
 
+  /**
+   * Selects the given records, including ones that haven't been paged in yet.
+   */
+  void selectMedia(@NonNull Collection<MediaRecord> mediaRecords) {
+    for (MediaRecord mediaRecord : mediaRecords) {
+      selected.put(MediaSelectionKey.from(mediaRecord), mediaRecord);
+    }
+    this.notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTED);
+  }
+
+  /**
+   * @return The record shown at the given adapter position, or null if the position is a header or out of range.
+   */
+  @Nullable MediaRecord getMediaRecordAtAdapterPosition(int position) {
+    if (position < 0 || position >= getItemCount()) {
+      return null;
+    }
+
+    int section = getAdapterPositionSection(position);
+    int offset  = getItemSectionOffset(section, position);
+
+    return offset >= 0 ? media.get(section, offset) : null;
+  }
+
   void setShowFileSizes(boolean showFileSizes) {
     this.showFileSizes = showFileSizes;
   }
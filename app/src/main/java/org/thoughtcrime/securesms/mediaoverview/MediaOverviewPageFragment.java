@@ -5,6 +5,7 @@ import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Configuration;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.view.LayoutInflater;
@@ -23,8 +24,6 @@ import androidx.core.view.WindowInsetsCompat;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
 import androidx.lifecycle.Observer;
-import androidx.loader.app.LoaderManager;
-import androidx.loader.content.Loader;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
@@ -34,6 +33,7 @@ import org.signal.core.ui.compose.SignalIcons;
 import org.signal.core.util.ByteSize;
 import org.signal.core.util.DimensionUnit;
 import org.signal.core.util.concurrent.LifecycleDisposable;
+import org.signal.core.util.concurrent.SimpleTask;
 import org.signal.core.util.logging.Log;
 import org.signal.core.ui.logging.LoggingFragment;
 import org.thoughtcrime.securesms.R;
@@ -47,6 +47,7 @@ import org.thoughtcrime.securesms.database.AttachmentTable;
 import org.thoughtcrime.securesms.database.MediaTable;
 import org.thoughtcrime.securesms.database.loaders.GroupedThreadMediaLoader;
 import org.thoughtcrime.securesms.database.loaders.MediaLoader;
+import org.thoughtcrime.securesms.database.loaders.ThreadMediaLoader;
 import org.thoughtcrime.securesms.jobs.AttachmentDownloadJob;
 import org.thoughtcrime.securesms.mediapreview.MediaIntentFactory;
 import org.thoughtcrime.securesms.mediapreview.MediaPreviewActivity;
@@ -63,7 +64,9 @@ import org.thoughtcrime.securesms.util.ViewUtil;
 import org.json.JSONArray;
 import org.json.JSONException;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Collectors;
 import java.util.Collection;
 import java.util.Collections;
@@ -73,8 +76,7 @@ import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 
 public final class MediaOverviewPageFragment extends LoggingFragment
   implements MediaGalleryAllAdapter.ItemClickListener,
-             MediaGalleryAllAdapter.AudioItemListener,
-             LoaderManager.LoaderCallbacks<GroupedThreadMediaLoader.GroupedThreadMedia>
+             MediaGalleryAllAdapter.AudioItemListener
 {
 
   private static final String TAG = Log.tag(MediaOverviewPageFragment.class);
@@ -82,8 +84,6 @@ public final class MediaOverviewPageFragment extends LoggingFragment
   private static final String THREAD_ID_EXTRA       = "thread_id";
   private static final String MEDIA_TYPE_EXTRA      = "media_type";
   private static final String GRID_MODE             = "grid_mode";
-  private static final int    INITIAL_LOAD_LIMIT    = 500;
-  private static final int    LOAD_MORE_THRESHOLD   = 50;
 
   private final ActionModeCallback            actionModeCallback = new ActionModeCallback();
   private       MediaTable.Sorting            sorting            = MediaTable.Sorting.Newest;
@@ -101,8 +101,8 @@ public final class MediaOverviewPageFragment extends LoggingFragment
   private       SignalProgressDialog          selectAllProgress;
   private       LifecycleDisposable           lifecycleDisposable;
   private       boolean                       pendingLoad = true;
-  private       int                           loadLimit;
-  private       boolean                       allLoaded;
+  private       MediaOverviewPagedMedia       pagedMedia;
+  private       MediaThumbnailPrefetcher      prefetcher;
   private       boolean                       loadingMore;
   private       boolean                       pendingSelectAll;
 
@@ -131,9 +131,6 @@ public final class MediaOverviewPageFragment extends LoggingFragment
     gridMode  = GridMode.values()[arguments.getInt(GRID_MODE)];
 
     if (threadId == Long.MIN_VALUE) throw new AssertionError();
-
-    loadLimit = threadId == MediaTable.ALL_THREADS ? INITIAL_LOAD_LIMIT : 0;
-    allLoaded = loadLimit == 0;
   }
 
   @Override
@@ -148,7 +145,7 @@ public final class MediaOverviewPageFragment extends LoggingFragment
     super.onResume();
     if (pendingLoad) {
       pendingLoad = false;
-      LoaderManager.getInstance(this).restartLoader(0, null, this);
+      startLoading();
     }
   }
 
@@ -185,7 +182,7 @@ public final class MediaOverviewPageFragment extends LoggingFragment
     this.recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
       @Override
       public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
-        if (allLoaded || loadingMore) return;
+        if (pagedMedia == null || pagedMedia.isAllLoaded() || loadingMore) return;
 
         int scrollRange  = rv.computeVerticalScrollRange();
         int scrollOffset = rv.computeVerticalScrollOffset();
@@ -193,23 +190,23 @@ public final class MediaOverviewPageFragment extends LoggingFragment
 
         if (scrollRange > 0 && scrollOffset + scrollExtent * 2 >= scrollRange) {
           loadingMore = true;
-          loadLimit *= 2;
-          LoaderManager.getInstance(MediaOverviewPageFragment.this).restartLoader(0, null, MediaOverviewPageFragment.this);
+          pagedMedia.loadMore();
         }
       }
     });
 
+    this.prefetcher = new MediaThumbnailPrefetcher(Glide.with(this), adapter);
+    this.recyclerView.addOnScrollListener(prefetcher);
+
     MediaOverviewViewModel viewModel = MediaOverviewViewModel.getMediaOverviewViewModel(requireActivity());
 
     viewModel.getSortOrder()
       .observe(getViewLifecycleOwner(), sorting -> {
         if (sorting != null) {
           this.sorting = sorting;
-          this.loadLimit = threadId == MediaTable.ALL_THREADS ? INITIAL_LOAD_LIMIT : 0;
-          this.allLoaded = loadLimit == 0;
           adapter.setShowFileSizes(sorting.isRelatedToFileSize());
           if (isResumed()) {
-            LoaderManager.getInstance(this).restartLoader(0, null, this);
+            startLoading();
           } else {
             pendingLoad = true;
           }
@@ -248,41 +245,37 @@ public final class MediaOverviewPageFragment extends LoggingFragment
   }
 
   @Override
-  public @NonNull Loader<GroupedThreadMediaLoader.GroupedThreadMedia> onCreateLoader(int i, Bundle bundle) {
-    return new GroupedThreadMediaLoader(requireContext(), threadId, mediaType, sorting, loadLimit);
+  public void onDestroyView() {
+    super.onDestroyView();
+    releasePagedMedia();
+    pendingLoad = true;
   }
 
-  @Override
-  public void onLoadFinished(@NonNull Loader<GroupedThreadMediaLoader.GroupedThreadMedia> loader, GroupedThreadMediaLoader.GroupedThreadMedia groupedThreadMedia) {
-    ((MediaGalleryAllAdapter) recyclerView.getAdapter()).setMedia(groupedThreadMedia);
-    ((MediaGalleryAllAdapter) recyclerView.getAdapter()).notifyAllSectionsDataSetChanged();
-
-    if (loadLimit > 0) {
-      int totalMediaItems = 0;
-      for (int i = 0; i < groupedThreadMedia.getSectionCount(); i++) {
-        totalMediaItems += groupedThreadMedia.getSectionItemCount(i);
-      }
-      allLoaded = totalMediaItems < loadLimit;
-    } else {
-      allLoaded = true;
-    }
-
+  private void startLoading() {
+    releasePagedMedia();
     loadingMore = false;
+    pagedMedia  = new MediaOverviewPagedMedia(requireContext(), threadId, mediaType, sorting, getViewLifecycleOwner(), this::onMediaLoaded);
+  }
 
-    if (pendingSelectAll) {
-      pendingSelectAll = false;
-      dismissSelectAllProgress();
-      getListAdapter().selectAllMedia();
-      updateMultiSelect();
+  private void releasePagedMedia() {
+    if (pagedMedia != null) {
+      pagedMedia.release();
+      pagedMedia = null;
     }
 
-    noMedia.setVisibility(recyclerView.getAdapter().getItemCount() > 0 ? View.GONE : View.VISIBLE);
-    getActivity().invalidateOptionsMenu();
+    if (prefetcher != null) {
+      prefetcher.cancel();
+    }
   }
 
-  @Override
-  public void onLoaderReset(@NonNull Loader<GroupedThreadMediaLoader.GroupedThreadMedia> cursorLoader) {
-    ((MediaGalleryAllAdapter) recyclerView.getAdapter()).setMedia(new GroupedThreadMediaLoader.EmptyGroupedThreadMedia());
+  private void onMediaLoaded(@NonNull GroupedThreadMediaLoader.GroupedThreadMedia groupedThreadMedia) {
+    getListAdapter().setMedia(groupedThreadMedia);
+    getListAdapter().notifyAllSectionsDataSetChanged();
+
+    loadingMore = false;
+
+    noMedia.setVisibility(recyclerView.getAdapter().getItemCount() > 0 ? View.GONE : View.VISIBLE);
+    requireActivity().invalidateOptionsMenu();
   }
 
   @Override
@@ -460,17 +453,40 @@ public final class MediaOverviewPageFragment extends LoggingFragment
   }
 
   private void handleSelectAllMedia() {
-    if (allLoaded) {
+    if (pagedMedia != null && pagedMedia.isAllLoaded()) {
       getListAdapter().selectAllMedia();
       updateMultiSelect();
     } else {
       pendingSelectAll = true;
       selectAllProgress = SignalProgressDialog.show(requireContext(), null, null, true);
-      loadLimit = 0;
-      LoaderManager.getInstance(this).restartLoader(0, null, this);
+
+      long                  threadId  = this.threadId;
+      MediaLoader.MediaType mediaType = this.mediaType;
+      MediaTable.Sorting    sorting   = this.sorting;
+
+      SimpleTask.run(getViewLifecycleOwner().getLifecycle(), () -> loadAllMedia(threadId, mediaType, sorting), records -> {
+        if (pendingSelectAll) {
+          pendingSelectAll = false;
+          dismissSelectAllProgress();
+          getListAdapter().selectMedia(records);
+          updateMultiSelect();
+        }
+      });
     }
   }
 
+  private static @NonNull List<MediaTable.MediaRecord> loadAllMedia(long threadId, @NonNull MediaLoader.MediaType mediaType, @NonNull MediaTable.Sorting sorting) {
+    List<MediaTable.MediaRecord> records = new ArrayList<>();
+
+    try (Cursor cursor = ThreadMediaLoader.createThreadMediaPageCursor(threadId, mediaType, sorting, 0, 0, null)) {
+      while (cursor.moveToNext()) {
+        records.add(MediaTable.MediaRecord.from(cursor));
+      }
+    }
+
+    return records;
+  }
+
   private String getActionModeTitle() {
     MediaGalleryAllAdapter adapter       = getListAdapter();
     int                    mediaCount    = adapter.getSelectedMediaCount();
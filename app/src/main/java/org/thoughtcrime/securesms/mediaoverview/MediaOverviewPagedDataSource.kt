@@ -0,0 +1,76 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.mediaoverview
+
+import org.signal.paging.PagedDataSource
+import org.thoughtcrime.securesms.database.MediaTable
+import org.thoughtcrime.securesms.database.MediaTable.MediaRecord
+import org.thoughtcrime.securesms.database.loaders.MediaLoader
+import org.thoughtcrime.securesms.database.loaders.ThreadMediaLoader
+import org.thoughtcrime.securesms.util.SignalTrace
+
+/**
+ * Pages media for the media overview.
+ *
+ * Pages are almost always requested in order as the user scrolls down, so we remember where the last one ended and start the next one by seeking to
+ * that [MediaTable.PageKey]. Anything else, like the first page after an invalidation, falls back to an OFFSET.
+ */
+class MediaOverviewPagedDataSource(
+  private val threadId: Long,
+  private val mediaType: MediaLoader.MediaType,
+  private val sorting: MediaTable.Sorting
+) : PagedDataSource<MediaSelectionKey, MediaRecord> {
+
+  @Volatile
+  private var lastPage: PageEnd? = null
+
+  override fun size(): Int {
+    lastPage = null
+
+    SignalTrace.beginSection("MediaOverview-Size")
+    try {
+      return ThreadMediaLoader.getThreadMediaCount(threadId, mediaType)
+    } finally {
+      SignalTrace.endSection()
+    }
+  }
+
+  override fun load(start: Int, length: Int, totalSize: Int, cancellationSignal: PagedDataSource.CancellationSignal): List<MediaRecord> {
+    val after: MediaTable.PageKey? = lastPage?.takeIf { it.end == start }?.key
+    val records: MutableList<MediaRecord> = ArrayList(length)
+    var lastKey: MediaTable.PageKey? = null
+
+    SignalTrace.beginSection("MediaOverview-Page")
+    try {
+      ThreadMediaLoader.createThreadMediaPageCursor(threadId, mediaType, sorting, length, if (after != null) 0 else start, after).use { cursor ->
+        while (cursor.moveToNext() && !cancellationSignal.isCanceled) {
+          records += MediaRecord.from(cursor)
+
+          if (cursor.isLast) {
+            lastKey = MediaTable.PageKey.from(cursor, sorting)
+          }
+        }
+      }
+    } finally {
+      SignalTrace.endSection()
+    }
+
+    if (!cancellationSignal.isCanceled) {
+      lastPage = lastKey?.let { PageEnd(start + records.size, it) }
+    }
+
+    return records
+  }
+
+  /**
+   * Items are never reloaded individually. Attachment changes invalidate the whole data set instead.
+   */
+  override fun load(key: MediaSelectionKey?): MediaRecord? = null
+
+  override fun getKey(data: MediaRecord): MediaSelectionKey = MediaSelectionKey.from(data)
+
+  private class PageEnd(val end: Int, val key: MediaTable.PageKey)
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.mediaoverview
+
+import android.content.Context
+import androidx.lifecycle.LifecycleOwner
+import org.signal.core.util.ThreadUtil
+import org.signal.paging.LivePagedData
+import org.signal.paging.PagedData
+import org.signal.paging.PagingConfig
+import org.thoughtcrime.securesms.database.DatabaseObserver
+import org.thoughtcrime.securesms.database.MediaTable
+import org.thoughtcrime.securesms.database.MediaTable.MediaRecord
+import org.thoughtcrime.securesms.database.loaders.GroupedThreadMediaLoader
+import org.thoughtcrime.securesms.database.loaders.GroupedThreadMediaLoader.GroupedThreadMedia
+import org.thoughtcrime.securesms.database.loaders.MediaLoader
+import org.thoughtcrime.securesms.dependencies.AppDependencies
+
+/**
+ * Pages media into the media overview with [MediaOverviewPagedDataSource], grouping it into sections as it arrives.
+ *
+ * [MediaGalleryAllAdapter] needs to know every section and its size up front, which we can't know for rows that are still on disk. So rather than
+ * exposing the whole list, we only group and show the loaded prefix of it, and load more as the user nears the end.
+ *
+ * Must be used from the main thread.
+ */
+class MediaOverviewPagedMedia(
+  private val context: Context,
+  threadId: Long,
+  mediaType: MediaLoader.MediaType,
+  private val sorting: MediaTable.Sorting,
+  private val lifecycleOwner: LifecycleOwner,
+  private val listener: Listener
+) {
+
+  companion object {
+    private const val PAGE_SIZE = 100
+  }
+
+  private val pagedData: LivePagedData<MediaSelectionKey, MediaRecord> = PagedData.createForLiveData(
+    MediaOverviewPagedDataSource(threadId, mediaType, sorting),
+    PagingConfig.Builder()
+      .setPageSize(PAGE_SIZE)
+      .setBufferPages(1)
+      .build()
+  )
+
+  private val attachmentObserver = DatabaseObserver.Observer { ThreadUtil.runOnMain(::invalidate) }
+
+  private var grouping: GroupedThreadMediaLoader.PopulatedGroupedThreadMedia = GroupedThreadMediaLoader.createGrouping(context, sorting)
+  private var groupedCount = 0
+  private var totalCount = 0
+  private var loaded = false
+  private var released = false
+
+  /**
+   * After an invalidation, the number of records we had shown. We keep showing the old grouping until the new one has caught up to it, so the list
+   * doesn't collapse and jump back to the top while the earlier pages reload.
+   */
+  private var rebuildTarget = -1
+
+  init {
+    pagedData.data.observe(lifecycleOwner, ::onData)
+    AppDependencies.databaseObserver.registerAttachmentUpdatedObserver(attachmentObserver)
+  }
+
+  /**
+   * True once every record has been loaded and grouped.
+   */
+  val isAllLoaded: Boolean
+    get() = loaded && rebuildTarget < 0 && groupedCount == totalCount
+
+  /**
+   * Asks for the page following the records that have been shown so far.
+   */
+  fun loadMore() {
+    if (!released) {
+      pagedData.controller.onDataNeededAroundIndex(groupedCount)
+    }
+  }
+
+  fun release() {
+    released = true
+    pagedData.data.removeObservers(lifecycleOwner)
+    AppDependencies.databaseObserver.unregisterObserver(attachmentObserver)
+  }
+
+  private fun invalidate() {
+    if (released) {
+      return
+    }
+
+    if (rebuildTarget < 0) {
+      rebuildTarget = groupedCount
+    }
+
+    grouping = GroupedThreadMediaLoader.createGrouping(context, sorting)
+    groupedCount = 0
+    pagedData.controller.onDataInvalidated()
+  }
+
+  private fun onData(records: List<MediaRecord?>) {
+    if (released) {
+      return
+    }
+
+    if (records.size < groupedCount) {
+      grouping = GroupedThreadMediaLoader.createGrouping(context, sorting)
+      groupedCount = 0
+    }
+
+    val previousCount = groupedCount
+    while (groupedCount < records.size) {
+      val record = records[groupedCount] ?: break
+      grouping.add(record)
+      groupedCount++
+    }
+
+    val firstLoad = !loaded
+    loaded = true
+    totalCount = records.size
+
+    if (rebuildTarget >= 0) {
+      if (groupedCount >= minOf(rebuildTarget, totalCount)) {
+        rebuildTarget = -1
+        listener.onMediaChanged(GroupedThreadMediaLoader.withSectionOrder(grouping, sorting))
+      } else {
+        // The controller reloads around wherever it was last asked for, so the start of the list may not be coming on its own
+        loadMore()
+      }
+    } else if (firstLoad || groupedCount != previousCount) {
+      listener.onMediaChanged(GroupedThreadMediaLoader.withSectionOrder(grouping, sorting))
+    }
+  }
+
+  fun interface Listener {
+    /**
+     * Called with the records that should be displayed. The same grouping may be passed again after more records have been added to it.
+     */
+    fun onMediaChanged(media: GroupedThreadMedia)
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.mediaoverview
+
+import android.graphics.drawable.Drawable
+import android.os.SystemClock
+import androidx.recyclerview.widget.RecyclerView
+import com.bumptech.glide.RequestManager
+import com.bumptech.glide.request.target.Target
+import org.thoughtcrime.securesms.R
+import org.thoughtcrime.securesms.components.ThumbnailView
+import org.thoughtcrime.securesms.util.MediaUtil
+import kotlin.math.abs
+import kotlin.math.roundToInt
+
+/**
+ * Decodes the thumbnails just past the edge of the media grid into Glide's memory cache while the user scrolls, so they're ready by the time they're
+ * bound. Glide does the decoding on its own executors, so none of it happens on the main thread.
+ *
+ * How far ahead we look scales with scroll speed, so slow scrolls don't decode more than they need and faster ones stay ahead. Past a certain speed we
+ * stop altogether: anything we'd decode would be off screen again before it was drawn, and would only push useful thumbnails out of the cache.
+ */
+class MediaThumbnailPrefetcher(
+  private val requestManager: RequestManager,
+  private val adapter: MediaGalleryAllAdapter
+) : RecyclerView.OnScrollListener() {
+
+  companion object {
+    /** How far ahead, in time, we try to stay. */
+    private const val LOOKAHEAD_MS = 500f
+
+    private const val MIN_LOOKAHEAD_ITEMS = 8
+    private const val MAX_LOOKAHEAD_ITEMS = 60
+
+    /** In pixels per millisecond. Roughly a hard fling on a phone. */
+    private const val MAX_PREFETCH_VELOCITY = 10f
+
+    /** Scroll events further apart than this are treated as a new scroll rather than used to estimate velocity. */
+    private const val MAX_SAMPLE_GAP_MS = 100L
+
+    private const val VELOCITY_SMOOTHING = 0.3f
+  }
+
+  private val targets: ArrayDeque<Target<Drawable>> = ArrayDeque()
+
+  private var velocity = 0f
+  private var lastScrollTime = 0L
+
+  /** The range of adapter positions we've already prefetched in the current direction, so we don't ask for them again on every scroll event. */
+  private var prefetchedStart = RecyclerView.NO_POSITION
+  private var prefetchedEnd = RecyclerView.NO_POSITION
+
+  override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+    if (dy == 0) {
+      return
+    }
+
+    val now = SystemClock.uptimeMillis()
+    val elapsed = now - lastScrollTime
+    lastScrollTime = now
+
+    if (elapsed in 1L..MAX_SAMPLE_GAP_MS) {
+      velocity += (dy / elapsed.toFloat() - velocity) * VELOCITY_SMOOTHING
+    } else {
+      velocity = 0f
+    }
+
+    if (abs(velocity) > MAX_PREFETCH_VELOCITY) {
+      cancel()
+      return
+    }
+
+    prefetch(recyclerView, forward = dy > 0)
+  }
+
+  override fun onScrollStateChanged(recyclerView: RecyclerView, newState: Int) {
+    if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+      velocity = 0f
+    }
+  }
+
+  /**
+   * Cancels any outstanding decodes. Call when the data changes or the view goes away.
+   */
+  fun cancel() {
+    while (targets.isNotEmpty()) {
+      requestManager.clear(targets.removeFirst())
+    }
+
+    prefetchedStart = RecyclerView.NO_POSITION
+    prefetchedEnd = RecyclerView.NO_POSITION
+  }
+
+  private fun prefetch(recyclerView: RecyclerView, forward: Boolean) {
+    val childCount = recyclerView.childCount
+    if (childCount == 0) {
+      return
+    }
+
+    val firstVisible = recyclerView.getChildAdapterPosition(recyclerView.getChildAt(0))
+    val lastVisible = recyclerView.getChildAdapterPosition(recyclerView.getChildAt(childCount - 1))
+    val size = findThumbnailSize(recyclerView) ?: return
+
+    if (firstVisible == RecyclerView.NO_POSITION || lastVisible == RecyclerView.NO_POSITION) {
+      return
+    }
+
+    val itemsPerRow = (recyclerView.width / size[0]).coerceAtLeast(1)
+    val rowsAhead = abs(velocity) * LOOKAHEAD_MS / size[1]
+    val lookahead = (rowsAhead * itemsPerRow).roundToInt().coerceIn(MIN_LOOKAHEAD_ITEMS, MAX_LOOKAHEAD_ITEMS)
+
+    val start: Int
+    val end: Int
+
+    if (forward) {
+      start = lastVisible + 1
+      end = minOf(lastVisible + lookahead, adapter.itemCount - 1)
+    } else {
+      start = maxOf(firstVisible - lookahead, 0)
+      end = firstVisible - 1
+    }
+
+    for (position in start..end) {
+      if (position in prefetchedStart..prefetchedEnd) {
+        continue
+      }
+
+      val record = adapter.getMediaRecordAtAdapterPosition(position)
+      val attachment = record?.attachment ?: continue
+      if (record.linkPreviewJson != null) {
+        continue
+      }
+
+      if (attachment.displayUri == null || attachment.isPermanentlyFailed || !(MediaUtil.isImage(attachment) || MediaUtil.isVideo(attachment))) {
+        continue
+      }
+
+      targets.addLast(ThumbnailView.preloadThumbnail(requestManager, MediaUtil.getSlideForAttachment(attachment), size[0], size[1]))
+    }
+
+    // Finished decodes are released back to the memory cache, where they stay until they're bound or evicted
+    while (targets.size > MAX_LOOKAHEAD_ITEMS * 2) {
+      requestManager.clear(targets.removeFirst())
+    }
+
+    if (start <= end) {
+      prefetchedStart = start
+      prefetchedEnd = end
+    }
+  }
+
+  /**
+   * Every photo and video in the grid is decoded at the same size, so we borrow it from whichever one is on screen. Link previews use a different
+   * layout, so they're skipped.
+   */
+  private fun findThumbnailSize(recyclerView: RecyclerView): IntArray? {
+    for (i in 0 until recyclerView.childCount) {
+      val child = recyclerView.getChildAt(i)
+      val record = adapter.getMediaRecordAtAdapterPosition(recyclerView.getChildAdapterPosition(child))
+
+      if (record?.attachment == null || record.linkPreviewJson != null) {
+        continue
+      }
+
+      val thumbnail: ThumbnailView? = child.findViewById(R.id.image)
+      val size = thumbnail?.thumbnailTargetSize
+
+      if (size != null) {
+        return size
+      }
+    }
+
+    return null
+  }
+}
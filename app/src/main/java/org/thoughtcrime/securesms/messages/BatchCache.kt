@@ -5,6 +5,7 @@
 
 package org.thoughtcrime.securesms.messages
 
+import org.signal.core.util.collections.LongSet
 import org.signal.libsignal.zkgroup.groups.GroupMasterKey
 import org.signal.libsignal.zkgroup.groups.GroupSecretParams
 import org.thoughtcrime.securesms.database.MessageTable
@@ -42,9 +43,6 @@ abstract class BatchCache {
   val groupRevisionCache = HashMap<GroupId, Int>(BATCH_SIZE)
   val groupRecordCache = HashMap<GroupId.V2, Optional<GroupRecord>>(BATCH_SIZE)
 
-  val deliveryReceiptLookupCache = HashMap<Long, MessageTable.ReceiptData>(BATCH_SIZE)
-  val readReceiptLookupCache = HashMap<Long, MessageTable.ReceiptData>(BATCH_SIZE)
-
   protected val groupSecretParamsAndIdCache = HashMap<GroupMasterKey, Pair<GroupSecretParams, GroupId.V2>>(BATCH_SIZE)
 
   fun getGroupInfo(message: DataMessage): Pair<GroupSecretParams?, GroupId.V2?> {
@@ -63,8 +61,6 @@ abstract class BatchCache {
     groupRevisionCache.clear()
     groupRecordCache.clear()
     groupSecretParamsAndIdCache.clear()
-    deliveryReceiptLookupCache.clear()
-    readReceiptLookupCache.clear()
   }
 
   protected fun flushJob(job: Job) {
@@ -87,10 +83,21 @@ abstract class BatchCache {
     SendDeliveryReceiptJob.create(recipientId, listOf(timestamp), listOf(messageId)).forEach { flushJob(it) }
   }
 
+  /**
+   * An inserter for plain text messages that can be shared across the batch, or null if this cache doesn't outlive a single message.
+   */
+  open fun getIncomingTextInserter(): MessageTable.IncomingTextInserter? = null
+
+  /**
+   * Releases any database resources held by the cache without flushing. Used when the batch was rolled back.
+   */
+  open fun release() = Unit
+
   abstract fun addJob(job: Job)
   abstract fun addIncomingMessageInsertThreadUpdate(threadId: Long)
   abstract fun addMslDelete(recipientId: RecipientId, device: Int, timestamps: List<Long>)
   abstract fun addDeliveryReceipt(recipientId: RecipientId, groupId: GroupId.V2?, timestamp: Long, messageId: MessageId)
+  abstract fun addReceipts(receipts: ReceiptMessageProcessor.PendingReceipts)
   abstract fun requiresEarlyMessageProcessing()
 }
 
@@ -117,6 +124,10 @@ class OneTimeBatchCache : BatchCache() {
     flushDeliveryReceipt(recipientId, timestamp, messageId)
   }
 
+  override fun addReceipts(receipts: ReceiptMessageProcessor.PendingReceipts) {
+    ReceiptMessageProcessor.applyReceipts(listOf(receipts), this)
+  }
+
   override fun requiresEarlyMessageProcessing() {
     flushEarlyMessageProcessing()
   }
@@ -131,15 +142,22 @@ class OneTimeBatchCache : BatchCache() {
  *
  * Why thread updates? Thread updating has always been the longest thing to do in message processing. Deduping allows
  * us to only call it once per thread in a batch instead of X times a message for that thread is in the batch.
+ *
+ * It also holds a [MessageTable.IncomingTextInserter] for the batch, so plain text messages share one compiled insert statement.
+ *
+ * Why receipts? They arrive in bursts, often many to a batch, and applying them together lets the database find and update all of their
+ * messages at once. Unlike the rest, they have to be applied with [flushReceipts] before the batch's transaction is committed.
  */
 class ReusedBatchCache : BatchCache() {
   override val batchThreadUpdates: Boolean = true
 
   private val batchedJobs = ArrayList<Job>(BATCH_SIZE)
-  private val threadUpdates = HashSet<Long>(BATCH_SIZE)
+  private val threadUpdates = LongSet(BATCH_SIZE)
   private val mslDeletes = HashMap<Pair<RecipientId, Int>, MutableList<Long>>(BATCH_SIZE)
   private val deliveryReceipts = HashMap<Pair<RecipientId, GroupId.V2?>, DeliveryReceiptAccumulator>(BATCH_SIZE)
+  private val pendingReceipts = ArrayList<ReceiptMessageProcessor.PendingReceipts>(BATCH_SIZE)
   private var earlyMessageProcessingNeeded = false
+  private var incomingTextInserter: MessageTable.IncomingTextInserter? = null
 
   override fun addJob(job: Job) {
     batchedJobs += job
@@ -159,12 +177,38 @@ class ReusedBatchCache : BatchCache() {
     accumulator.messageIds += messageId
   }
 
+  override fun addReceipts(receipts: ReceiptMessageProcessor.PendingReceipts) {
+    pendingReceipts += receipts
+  }
+
+  /**
+   * Applies the receipts added so far. Should be called within the transaction the envelopes they came from were processed in.
+   */
+  fun flushReceipts() {
+    if (pendingReceipts.isNotEmpty()) {
+      ReceiptMessageProcessor.applyReceipts(pendingReceipts.toList(), this)
+    }
+    pendingReceipts.clear()
+  }
+
   override fun requiresEarlyMessageProcessing() {
     earlyMessageProcessingNeeded = true
   }
 
+  override fun getIncomingTextInserter(): MessageTable.IncomingTextInserter {
+    return incomingTextInserter ?: SignalDatabase.messages.newIncomingTextInserter().also { incomingTextInserter = it }
+  }
+
+  override fun release() {
+    incomingTextInserter?.close()
+    incomingTextInserter = null
+    pendingReceipts.clear()
+  }
+
   override fun flushAndClear() {
+    flushReceipts()
     super.flushAndClear()
+    release()
 
     deliveryReceipts.flatMapTo(batchedJobs) { (key, accumulator) ->
       SendDeliveryReceiptJob.create(key.first, accumulator.timestamps, accumulator.messageIds)
@@ -1034,7 +1034,12 @@ object DataMessageProcessor {
       serverGuid = UuidUtil.getStringUUID(envelope.serverGuid, envelope.serverGuidBinary)
     )
 
-    val insertResult: InsertResult? = SignalDatabase.messages.insertMessageInbox(textMessage, skipThreadUpdate = batchCache.batchThreadUpdates).orNull()
+    val textInserter = batchCache.getIncomingTextInserter()
+    val insertResult: InsertResult? = if (textInserter != null) {
+      textInserter.insert(textMessage, skipThreadUpdate = batchCache.batchThreadUpdates).orNull()
+    } else {
+      SignalDatabase.messages.insertMessageInbox(textMessage, skipThreadUpdate = batchCache.batchThreadUpdates).orNull()
+    }
     localMetrics?.onInsertedTextMessage()
 
     return if (insertResult != null) {
@@ -619,6 +619,8 @@ class IncomingMessageObserver(
             break
           }
         }
+
+        batchCache.flushReceipts()
       }
 
       if (committed) {
@@ -638,6 +640,8 @@ class IncomingMessageObserver(
           AppDependencies.resetNetwork()
           AppDependencies.startNetwork()
         }
+      } else {
+        batchCache.release()
       }
 
       return committed
@@ -656,6 +660,7 @@ class IncomingMessageObserver(
           is EnvelopeResponse.Parsed -> SignalDatabase.runInTransaction {
             val result = processEnvelope(bufferedStore, response.envelope, response.serverDeliveredTimestamp, batchCache)
             bufferedStore.flushToDisk()
+            batchCache.flushReceipts()
             result
           }
           is EnvelopeResponse.Unparseable -> {
@@ -3,6 +3,9 @@ package org.thoughtcrime.securesms.messages
 import android.annotation.SuppressLint
 import android.content.Context
 import org.signal.core.util.Stopwatch
+import org.thoughtcrime.securesms.database.MessageTable.IncomingReceipt
+import org.thoughtcrime.securesms.database.MessageTable.MessageQualifier
+import org.thoughtcrime.securesms.database.MessageTable.ReceiptType
 import org.thoughtcrime.securesms.database.SignalDatabase
 import org.thoughtcrime.securesms.dependencies.AppDependencies
 import org.thoughtcrime.securesms.keyvalue.SignalStore
@@ -43,28 +46,11 @@ object ReceiptMessageProcessor {
     batchCache: BatchCache
   ) {
     log(envelope.clientTimestamp!!, "Processing delivery receipts. Sender: $senderRecipientId, Device: ${metadata.sourceDeviceId}, Timestamps: ${deliveryReceipt.timestamp.joinToString(", ")}")
-    val stopwatch: Stopwatch? = if (VERBOSE) Stopwatch("delivery-receipt", decimalPlaces = 2) else null
 
-    SignalTrace.beginSection("ReceiptMessageProcessor#incrementDeliveryReceiptCounts")
-    val missingTargetTimestamps: Set<Long> = SignalDatabase.messages.incrementDeliveryReceiptCounts(deliveryReceipt.timestamp, senderRecipientId, envelope.clientTimestamp!!, stopwatch, batchCache.deliveryReceiptLookupCache)
-    SignalTrace.endSection()
-
-    for (targetTimestamp in missingTargetTimestamps) {
-      warn(envelope.clientTimestamp!!, "[handleDeliveryReceipt] Could not find matching message! targetTimestamp: $targetTimestamp, receiptAuthor: $senderRecipientId")
-      // Early delivery receipts are special-cased in the database methods
-    }
-
-    if (missingTargetTimestamps.isNotEmpty()) {
-      batchCache.requiresEarlyMessageProcessing()
-    }
+    batchCache.addReceipts(PendingReceipts.create(ReceiptType.DELIVERY, MessageQualifier.ALL, deliveryReceipt.timestamp, senderRecipientId, envelope.clientTimestamp!!, earlyMessageCacheEntry = null))
 
     SignalDatabase.pendingPniSignatureMessages.acknowledgeReceipts(senderRecipientId, deliveryReceipt.timestamp, metadata.sourceDeviceId)
-    stopwatch?.split("pni-signatures")
-
     batchCache.addMslDelete(senderRecipientId, metadata.sourceDeviceId, deliveryReceipt.timestamp)
-    stopwatch?.split("msl")
-
-    stopwatch?.stop(TAG)
   }
 
   @SuppressLint("DefaultLocale")
@@ -84,24 +70,7 @@ object ReceiptMessageProcessor {
 
     log(envelope.clientTimestamp!!, "Processing read receipts. Sender: $senderRecipientId, Device: ${metadata.sourceDeviceId}, Timestamps: ${readReceipt.timestamp.joinToString(", ")}")
 
-    SignalTrace.beginSection("ReceiptMessageProcessor#incrementReadReceiptCounts")
-    val missingTargetTimestamps: Set<Long> = SignalDatabase.messages.incrementReadReceiptCounts(readReceipt.timestamp, senderRecipientId, envelope.clientTimestamp!!, batchCache.readReceiptLookupCache)
-    SignalTrace.endSection()
-
-    if (missingTargetTimestamps.isNotEmpty()) {
-      val selfId = Recipient.self().id
-
-      for (targetTimestamp in missingTargetTimestamps) {
-        warn(envelope.clientTimestamp!!, "[handleReadReceipt] Could not find matching message! targetTimestamp: $targetTimestamp, receiptAuthor: $senderRecipientId | Receipt, so associating with message from self ($selfId)")
-        if (earlyMessageCacheEntry != null) {
-          AppDependencies.earlyMessageCache.store(selfId, targetTimestamp, earlyMessageCacheEntry)
-        }
-      }
-    }
-
-    if (missingTargetTimestamps.isNotEmpty() && earlyMessageCacheEntry != null) {
-      batchCache.requiresEarlyMessageProcessing()
-    }
+    batchCache.addReceipts(PendingReceipts.create(ReceiptType.READ, MessageQualifier.ALL, readReceipt.timestamp, senderRecipientId, envelope.clientTimestamp!!, earlyMessageCacheEntry))
   }
 
   private fun handleViewedReceipt(
@@ -123,30 +92,96 @@ object ReceiptMessageProcessor {
 
     log(envelope.clientTimestamp!!, "Processing viewed receipts. Sender: $senderRecipientId, Device: ${metadata.sourceDeviceId}, Only Stories: ${!readReceipts}, Timestamps: ${viewedReceipt.timestamp.joinToString(", ")}")
 
-    val missingTargetTimestamps: Set<Long> = if (readReceipts && storyViewedReceipts) {
-      SignalDatabase.messages.incrementViewedReceiptCounts(viewedReceipt.timestamp, senderRecipientId, envelope.clientTimestamp!!)
+    val qualifier = if (readReceipts && storyViewedReceipts) {
+      MessageQualifier.ALL
     } else if (readReceipts) {
-      SignalDatabase.messages.incrementViewedNonStoryReceiptCounts(viewedReceipt.timestamp, senderRecipientId, envelope.clientTimestamp!!)
+      MessageQualifier.NORMAL
     } else {
-      SignalDatabase.messages.incrementViewedStoryReceiptCounts(viewedReceipt.timestamp, senderRecipientId, envelope.clientTimestamp!!)
+      MessageQualifier.STORY
     }
 
-    val foundTargetTimestamps: Set<Long> = viewedReceipt.timestamp.toSet() - missingTargetTimestamps.toSet()
-    SignalDatabase.messages.updateViewedStories(foundTargetTimestamps)
+    batchCache.addReceipts(PendingReceipts.create(ReceiptType.VIEWED, qualifier, viewedReceipt.timestamp, senderRecipientId, envelope.clientTimestamp!!, earlyMessageCacheEntry))
+  }
 
-    if (missingTargetTimestamps.isNotEmpty()) {
-      val selfId = Recipient.self().id
+  /**
+   * Applies the receipts from any number of receipt messages at once. The messages they're for are looked up and updated together, so a burst of
+   * receipts costs a handful of statements rather than several per timestamp.
+   *
+   * Must be called within the same transaction as the envelopes the receipts came from, so that unmatched receipts land in the early message cache
+   * before those envelopes are acknowledged.
+   */
+  fun applyReceipts(pending: List<PendingReceipts>, batchCache: BatchCache) {
+    if (pending.isEmpty()) {
+      return
+    }
+
+    val stopwatch: Stopwatch? = if (VERBOSE) Stopwatch("receipts", decimalPlaces = 2) else null
+
+    SignalTrace.beginSection("ReceiptMessageProcessor#applyReceipts")
+    val missing: Set<IncomingReceipt> = SignalDatabase.messages.incrementReceiptCounts(pending.flatMap { it.receipts }, stopwatch)
+    SignalTrace.endSection()
 
-      for (targetTimestamp in missingTargetTimestamps) {
-        warn(envelope.clientTimestamp!!, "[handleViewedReceipt] Could not find matching message! targetTimestamp: $targetTimestamp, receiptAuthor: $senderRecipientId | Receipt so associating with message from self ($selfId)")
-        if (earlyMessageCacheEntry != null) {
-          AppDependencies.earlyMessageCache.store(selfId, targetTimestamp, earlyMessageCacheEntry)
+    val viewedTargetTimestamps: MutableSet<Long> = HashSet()
+    var earlyMessageProcessingNeeded = false
+    val selfId: RecipientId by lazy { Recipient.self().id }
+
+    for (receipts in pending) {
+      val missingTargetTimestamps: List<Long> = receipts.receipts.filter { it in missing }.map { it.targetTimestamp }
+
+      when (receipts.type) {
+        ReceiptType.DELIVERY -> {
+          for (targetTimestamp in missingTargetTimestamps) {
+            warn(receipts.envelopeTimestamp, "[handleDeliveryReceipt] Could not find matching message! targetTimestamp: $targetTimestamp, receiptAuthor: ${receipts.senderRecipientId}")
+            // Early delivery receipts are special-cased in the database methods
+          }
+
+          earlyMessageProcessingNeeded = earlyMessageProcessingNeeded || missingTargetTimestamps.isNotEmpty()
+        }
+        ReceiptType.READ, ReceiptType.VIEWED -> {
+          if (receipts.type == ReceiptType.VIEWED) {
+            viewedTargetTimestamps += receipts.receipts.map { it.targetTimestamp } - missingTargetTimestamps.toSet()
+          }
+
+          val handler = if (receipts.type == ReceiptType.READ) "handleReadReceipt" else "handleViewedReceipt"
+          for (targetTimestamp in missingTargetTimestamps) {
+            warn(receipts.envelopeTimestamp, "[$handler] Could not find matching message! targetTimestamp: $targetTimestamp, receiptAuthor: ${receipts.senderRecipientId} | Receipt, so associating with message from self ($selfId)")
+            if (receipts.earlyMessageCacheEntry != null) {
+              AppDependencies.earlyMessageCache.store(selfId, targetTimestamp, receipts.earlyMessageCacheEntry)
+            }
+          }
+
+          earlyMessageProcessingNeeded = earlyMessageProcessingNeeded || (missingTargetTimestamps.isNotEmpty() && receipts.earlyMessageCacheEntry != null)
         }
       }
     }
 
-    if (missingTargetTimestamps.isNotEmpty() && earlyMessageCacheEntry != null) {
+    if (viewedTargetTimestamps.isNotEmpty()) {
+      SignalDatabase.messages.updateViewedStories(viewedTargetTimestamps)
+    }
+    stopwatch?.split("viewed-stories")
+
+    if (earlyMessageProcessingNeeded) {
       batchCache.requiresEarlyMessageProcessing()
     }
+
+    stopwatch?.stop(TAG)
+  }
+
+  /**
+   * The receipts from a single receipt message, waiting to be applied with the rest of the batch by [applyReceipts].
+   */
+  class PendingReceipts private constructor(
+    val type: ReceiptType,
+    val senderRecipientId: RecipientId,
+    val envelopeTimestamp: Long,
+    val receipts: List<IncomingReceipt>,
+    val earlyMessageCacheEntry: EarlyMessageCacheEntry?
+  ) {
+    companion object {
+      fun create(type: ReceiptType, qualifier: MessageQualifier, targetTimestamps: List<Long>, senderRecipientId: RecipientId, envelopeTimestamp: Long, earlyMessageCacheEntry: EarlyMessageCacheEntry?): PendingReceipts {
+        val receipts = targetTimestamps.map { IncomingReceipt(it, senderRecipientId, envelopeTimestamp, type, qualifier) }
+        return PendingReceipts(type, senderRecipientId, envelopeTimestamp, receipts, earlyMessageCacheEntry)
+      }
+    }
   }
 }
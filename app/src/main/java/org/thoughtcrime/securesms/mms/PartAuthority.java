@@ -201,6 +201,10 @@ public class PartAuthority {
     return match == PART_ROW || match == THUMBNAIL_ROW;
   }
 
+  public static boolean isAttachmentDataUri(@NonNull Uri uri) {
+    return uriMatcher.match(uri) == PART_ROW;
+  }
+
   public static boolean isBlobUri(@NonNull Uri uri) {
     int match = uriMatcher.match(uri);
     return match == BLOB_ROW;
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.service
+
+/**
+ * A min-heap of messages ordered by when they expire.
+ *
+ * Only the (expiresAt, messageId) pair is kept, in parallel primitive arrays, so tracking tens of thousands of expiring messages costs a couple of
+ * longs each rather than an object, a boxed key and a tree node. The same message may be added more than once, in which case it will simply come out
+ * more than once.
+ *
+ * Not thread safe.
+ */
+class ExpirationQueue(initialCapacity: Int = 16) {
+
+  private var expirations = LongArray(initialCapacity.coerceAtLeast(1))
+  private var messageIds = LongArray(initialCapacity.coerceAtLeast(1))
+
+  var size: Int = 0
+    private set
+
+  fun isEmpty(): Boolean = size == 0
+
+  fun add(messageId: Long, expiresAtMillis: Long) {
+    ensureCapacity(size + 1)
+
+    expirations[size] = expiresAtMillis
+    messageIds[size] = messageId
+    siftUp(size)
+    size++
+  }
+
+  /**
+   * Adds everything in [other], leaving it unchanged. Rebuilds the heap in one pass rather than sifting each entry in, which is cheaper when [other]
+   * is large, as it is when merging in everything loaded at startup.
+   */
+  fun addAll(other: ExpirationQueue) {
+    if (other.isEmpty()) {
+      return
+    }
+
+    ensureCapacity(size + other.size)
+
+    System.arraycopy(other.expirations, 0, expirations, size, other.size)
+    System.arraycopy(other.messageIds, 0, messageIds, size, other.size)
+    size += other.size
+
+    for (i in size / 2 - 1 downTo 0) {
+      siftDown(i)
+    }
+  }
+
+  /**
+   * @return The earliest expiration time in the queue.
+   * @throws NoSuchElementException If the queue is empty.
+   */
+  fun peekExpiresAt(): Long {
+    if (isEmpty()) {
+      throw NoSuchElementException()
+    }
+
+    return expirations[0]
+  }
+
+  /**
+   * Removes the messages that expire at or before [deadline], earliest first, up to [limit] of them.
+   *
+   * @return The ids of the removed messages.
+   */
+  fun removeDue(deadline: Long, limit: Int): List<Long> {
+    val due = ArrayList<Long>(minOf(limit, size))
+
+    while (size > 0 && due.size < limit && expirations[0] <= deadline) {
+      due += messageIds[0]
+
+      size--
+      if (size > 0) {
+        expirations[0] = expirations[size]
+        messageIds[0] = messageIds[size]
+        siftDown(0)
+      }
+    }
+
+    return due
+  }
+
+  private fun siftUp(start: Int) {
+    var index = start
+    val expiration = expirations[index]
+    val messageId = messageIds[index]
+
+    while (index > 0) {
+      val parent = (index - 1) ushr 1
+      if (expirations[parent] <= expiration) {
+        break
+      }
+
+      expirations[index] = expirations[parent]
+      messageIds[index] = messageIds[parent]
+      index = parent
+    }
+
+    expirations[index] = expiration
+    messageIds[index] = messageId
+  }
+
+  private fun siftDown(start: Int) {
+    var index = start
+    val expiration = expirations[index]
+    val messageId = messageIds[index]
+
+    while (true) {
+      var child = index * 2 + 1
+      if (child >= size) {
+        break
+      }
+
+      if (child + 1 < size && expirations[child + 1] < expirations[child]) {
+        child++
+      }
+
+      if (expiration <= expirations[child]) {
+        break
+      }
+
+      expirations[index] = expirations[child]
+      messageIds[index] = messageIds[child]
+      index = child
+    }
+
+    expirations[index] = expiration
+    messageIds[index] = messageId
+  }
+
+  private fun ensureCapacity(capacity: Int) {
+    if (capacity > expirations.size) {
+      val newCapacity = maxOf(capacity, expirations.size * 2)
+      expirations = expirations.copyOf(newCapacity)
+      messageIds = messageIds.copyOf(newCapacity)
+    }
+  }
+}
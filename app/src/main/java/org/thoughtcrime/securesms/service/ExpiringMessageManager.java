@@ -7,30 +7,36 @@ import androidx.annotation.NonNull;
 import org.signal.core.util.logging.Log;
 import org.thoughtcrime.securesms.database.MessageTable;
 import org.thoughtcrime.securesms.database.SignalDatabase;
-import org.thoughtcrime.securesms.database.model.MessageRecord;
+import org.thoughtcrime.securesms.util.SignalTrace;
 
-import java.util.Comparator;
 import java.util.List;
-import java.util.TreeSet;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
 
+/**
+ * Deletes disappearing messages once their timers run out.
+ *
+ * Expiration times are kept in an {@link ExpirationQueue}, loaded at startup from an index rather than by reading every expiring message. When the
+ * earliest one comes due, everything else that's due by then is deleted along with it in a single transaction, so a backlog of expired messages
+ * produces a handful of bulk deletes rather than a stream of single-row ones competing with message processing. Nothing is deleted before its time;
+ * once the due messages are gone, we sleep until the next deadline.
+ */
 public class ExpiringMessageManager {
 
   private static final String TAG = Log.tag(ExpiringMessageManager.class);
 
-  private final TreeSet<ExpiringMessageReference> expiringMessageReferences = new TreeSet<>(new ExpiringMessageComparator());
-  private final Executor                          executor                  = Executors.newSingleThreadExecutor();
+  /** Caps each transaction, so that working through a large backlog doesn't hold the database for long stretches at a time. */
+  private static final int MAX_BATCH_SIZE = 500;
 
-  private final MessageTable smsDatabase;
-  private final MessageTable mmsDatabase;
+  private final ExpirationQueue expirationQueue = new ExpirationQueue();
+  private final Executor        executor        = Executors.newSingleThreadExecutor();
+
+  private final MessageTable messageTable;
   private final Context      context;
 
   public ExpiringMessageManager(Context context) {
-    this.context     = context.getApplicationContext();
-    this.smsDatabase = SignalDatabase.messages();
-    this.mmsDatabase = SignalDatabase.messages();
+    this.context      = context.getApplicationContext();
+    this.messageTable = SignalDatabase.messages();
 
     executor.execute(new LoadTask());
     executor.execute(new ProcessTask());
@@ -43,42 +49,39 @@ public class ExpiringMessageManager {
   public void scheduleDeletion(long id, boolean mms, long startedAtTimestamp, long expiresInMillis) {
     long expiresAtMillis = startedAtTimestamp + expiresInMillis;
 
-    synchronized (expiringMessageReferences) {
-      expiringMessageReferences.add(new ExpiringMessageReference(id, mms, expiresAtMillis));
-      expiringMessageReferences.notifyAll();
+    synchronized (expirationQueue) {
+      expirationQueue.add(id, expiresAtMillis);
+      expirationQueue.notifyAll();
     }
   }
 
   public void scheduleDeletion(@NonNull List<MessageTable.ExpirationInfo> expirationInfos) {
-    List<ExpiringMessageReference> references = expirationInfos.stream()
-                                                               .map(info -> new ExpiringMessageReference(info.getId(), info.isMms(), info.getExpireStarted() + info.getExpiresIn()))
-                                                               .collect(Collectors.toList());
-
-    synchronized (expiringMessageReferences) {
-      expiringMessageReferences.addAll(references);
-      expiringMessageReferences.notifyAll();
+    synchronized (expirationQueue) {
+      for (MessageTable.ExpirationInfo info : expirationInfos) {
+        expirationQueue.add(info.getId(), info.getExpireStarted() + info.getExpiresIn());
+      }
+      expirationQueue.notifyAll();
     }
   }
 
   public void checkSchedule() {
-    synchronized (expiringMessageReferences) {
-      expiringMessageReferences.notifyAll();
+    synchronized (expirationQueue) {
+      expirationQueue.notifyAll();
     }
   }
 
   private class LoadTask implements Runnable {
     public void run() {
-      MessageTable.MmsReader mmsReader = MessageTable.mmsReaderFor(mmsDatabase.getExpirationStartedMessages());
+      SignalTrace.beginSection("ExpiringMessageManager#load");
+      ExpirationQueue loaded = messageTable.getExpirationStartedMessages();
+      SignalTrace.endSection();
 
-      MessageRecord messageRecord;
+      Log.i(TAG, "Loaded " + loaded.getSize() + " expiring messages.");
 
-      while ((messageRecord = mmsReader.getNext()) != null) {
-        expiringMessageReferences.add(new ExpiringMessageReference(messageRecord.getId(),
-                                                                   messageRecord.isMms(),
-                                                                   messageRecord.getExpireStarted() + messageRecord.getExpiresIn()));
+      synchronized (expirationQueue) {
+        expirationQueue.addAll(loaded);
+        expirationQueue.notifyAll();
       }
-
-      mmsReader.close();
     }
   }
 
@@ -86,21 +89,20 @@ public class ExpiringMessageManager {
   private class ProcessTask implements Runnable {
     public void run() {
       while (true) {
-        ExpiringMessageReference expiredMessage = null;
+        List<Long> expiredMessages = null;
 
-        synchronized (expiringMessageReferences) {
+        synchronized (expirationQueue) {
           try {
-            while (expiringMessageReferences.isEmpty()) expiringMessageReferences.wait();
+            while (expirationQueue.isEmpty()) expirationQueue.wait();
 
-            ExpiringMessageReference nextReference = expiringMessageReferences.first();
-            long                     waitTime      = nextReference.expiresAtMillis - System.currentTimeMillis();
+            long now      = System.currentTimeMillis();
+            long waitTime = expirationQueue.peekExpiresAt() - now;
 
             if (waitTime > 0) {
               ExpirationListener.setAlarm(context, waitTime);
-              expiringMessageReferences.wait(waitTime);
+              expirationQueue.wait(waitTime);
             } else {
-              expiredMessage = nextReference;
-              expiringMessageReferences.remove(nextReference);
+              expiredMessages = expirationQueue.removeDue(now, MAX_BATCH_SIZE);
             }
 
           } catch (InterruptedException e) {
@@ -108,51 +110,10 @@ public class ExpiringMessageManager {
           }
         }
 
-        if (expiredMessage != null) {
-          if (expiredMessage.mms) mmsDatabase.deleteMessage(expiredMessage.id);
-          else                    smsDatabase.deleteMessage(expiredMessage.id);
+        if (expiredMessages != null) {
+          messageTable.deleteExpiredMessages(expiredMessages);
         }
       }
     }
   }
-
-  private static class ExpiringMessageReference {
-    private final long    id;
-    private final boolean mms;
-    private final long    expiresAtMillis;
-
-    private ExpiringMessageReference(long id, boolean mms, long expiresAtMillis) {
-      this.id = id;
-      this.mms = mms;
-      this.expiresAtMillis = expiresAtMillis;
-    }
-
-    @Override
-    public boolean equals(Object other) {
-      if (other == null) return false;
-      if (!(other instanceof ExpiringMessageReference)) return false;
-
-      ExpiringMessageReference that = (ExpiringMessageReference)other;
-      return this.id == that.id && this.mms == that.mms && this.expiresAtMillis == that.expiresAtMillis;
-    }
-
-    @Override
-    public int hashCode() {
-      return (int)this.id ^ (mms ? 1 : 0) ^ (int)expiresAtMillis;
-    }
-  }
-
-  private static class ExpiringMessageComparator implements Comparator<ExpiringMessageReference> {
-    @Override
-    public int compare(ExpiringMessageReference lhs, ExpiringMessageReference rhs) {
-      if      (lhs.expiresAtMillis < rhs.expiresAtMillis) return -1;
-      else if (lhs.expiresAtMillis > rhs.expiresAtMillis) return 1;
-      else if (lhs.id < rhs.id)                           return -1;
-      else if (lhs.id > rhs.id)                           return 1;
-      else if (!lhs.mms && rhs.mms)                       return -1;
-      else if (lhs.mms && !rhs.mms)                       return 1;
-      else                                                return 0;
-    }
-  }
-
 }
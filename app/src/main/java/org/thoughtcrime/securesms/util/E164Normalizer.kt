@@ -0,0 +1,66 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.util
+
+import androidx.annotation.WorkerThread
+import org.signal.core.util.E164BatchFormatter
+import org.signal.core.util.Stopwatch
+import org.signal.core.util.concurrent.SignalExecutors
+import org.signal.core.util.logging.Log
+import org.thoughtcrime.securesms.database.E164MemoTable
+import org.thoughtcrime.securesms.database.SignalDatabase
+
+/**
+ * Formats whole address books worth of numbers as E164s, giving the same results as [SignalE164Util.formatAsE164].
+ *
+ * Results are memoized in the [E164MemoTable], so a refresh only has to format numbers that are new since the last one. Everything else goes through an
+ * [E164BatchFormatter], which skips most of the work for numbers that are already E164s and spreads large batches across threads.
+ */
+object E164Normalizer {
+
+  private val TAG = Log.tag(E164Normalizer::class.java)
+
+  /**
+   * @param pruneMemo True if [inputs] is the complete set of numbers we care about (e.g. every system contact number), in which case memo entries for
+   *                  anything else are dropped.
+   * @return The formatted E164 for each input, or null if the input can't be interpreted as a phone number.
+   */
+  @WorkerThread
+  @JvmStatic
+  @JvmOverloads
+  fun normalize(inputs: Collection<String>, pruneMemo: Boolean = false): Map<String, String?> {
+    if (inputs.isEmpty()) {
+      return emptyMap()
+    }
+
+    val stopwatch = Stopwatch("e164-normalize")
+
+    val formatterKey = SignalE164Util.getFormatterKey()
+    val formatter = E164BatchFormatter(SignalE164Util.getFormatter(), SignalExecutors.BOUNDED)
+
+    val memo: Map<String, String?> = SignalDatabase.e164Memo.getAll(formatterKey)
+    stopwatch.split("memo-read")
+
+    val result = formatter.formatAll(inputs, memo)
+    stopwatch.split("format")
+
+    if (formatterKey != SignalE164Util.getFormatterKey()) {
+      Log.w(TAG, "Our number changed while formatting. Not updating the memo.")
+    } else {
+      SignalDatabase.e164Memo.putAll(formatterKey, result.newlyFormatted)
+
+      if (pruneMemo) {
+        SignalDatabase.e164Memo.retainOnly(formatterKey, inputs.toSet())
+      }
+    }
+    stopwatch.split("memo-write")
+
+    Log.d(TAG, "Normalized ${inputs.size} numbers. Memo hits: ${result.memoHits}, fast path: ${result.fastPathHits}, formatted: ${result.newlyFormatted.size}")
+    stopwatch.stop(TAG)
+
+    return result.formatted
+  }
+}
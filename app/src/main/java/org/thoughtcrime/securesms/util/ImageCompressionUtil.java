@@ -6,12 +6,15 @@ import android.graphics.Bitmap;
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
 import com.bumptech.glide.load.DataSource;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.FutureTarget;
 import com.bumptech.glide.request.RequestListener;
 import com.bumptech.glide.request.target.Target;
 
@@ -20,12 +23,18 @@ import org.signal.core.util.bitmaps.BitmapDecodingException;
 import org.signal.core.util.logging.Log;
 
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 
 public final class ImageCompressionUtil {
 
   private static final String                  TAG                   = Log.tag(ImageCompressionUtil.class);
+  private static final int                     DECODE_BUDGET_KIB     = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 4 / 1024);
+  private static final Semaphore               decodeBudget          = new Semaphore(DECODE_BUDGET_KIB, true);
   private static final RequestListener<Bitmap> bitmapRequestListener = new RequestListener<>() {
     @Override
     public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<Bitmap> target, boolean isFirstResource) {
@@ -97,19 +106,83 @@ public final class ImageCompressionUtil {
                                          boolean quiet)
       throws BitmapDecodingException
   {
+    try (DecodedBitmap decoded = decode(context, glideModel, maxDimension, quiet)) {
+      Bitmap                scaledBitmap = decoded.getBitmap();
+      ByteArrayOutputStream output       = new ByteArrayOutputStream();
+      Bitmap.CompressFormat format       = mimeTypeToCompressFormat(targetContentType);
+      scaledBitmap.compress(format, quality, output);
+
+      byte[] data = output.toByteArray();
+
+      Log.d(TAG, "[Input] mimeType: " + contentType + " [Output] format: " + format + ", maxDimension: " + maxDimension + ", quality: " + quality + ", size(KiB): " + new ByteSize(data.length).getInWholeKibiBytes());
+      return new Result(data, compressFormatToMimeType(format), scaledBitmap.getWidth(), scaledBitmap.getHeight());
+    }
+  }
+
+  /**
+   * Like {@link #compress(Context, String, String, Object, int, int)}, but searches for the highest quality between minQuality and maxQuality that
+   * fits within maxBytes, decoding the image only once.
+   *
+   * @return The best result that fits, or null if none do.
+   */
+  @WorkerThread
+  public static @Nullable Result compressWithinSize(@NonNull Context context,
+                                                    @Nullable String contentType,
+                                                    @Nullable String targetContentType,
+                                                    @NonNull Object glideModel,
+                                                    int maxDimension,
+                                                    long maxBytes,
+                                                    @IntRange(from = 0, to = 100) int minQuality,
+                                                    @IntRange(from = 0, to = 100) int maxQuality)
+      throws BitmapDecodingException
+  {
+    try (DecodedBitmap decoded = decode(context, glideModel, maxDimension, false)) {
+      Encoded encoded = encodeWithinSize(decoded.getBitmap(), targetContentType, maxBytes, minQuality, maxQuality);
+
+      if (encoded == null) {
+        Log.d(TAG, "[Input] mimeType: " + contentType + ", maxDimension: " + maxDimension + ". Nothing fit in " + maxBytes + " bytes.");
+        return null;
+      }
+
+      return new Result(encoded.toByteArray(), encoded.getMimeType(), encoded.getWidth(), encoded.getHeight());
+    }
+  }
+
+  /**
+   * Decodes the image once, scaled to fit within maxDimension, so that it can be encoded as many times as needed. Close the result to give the
+   * bitmap back to Glide's pool, where the next decode can reuse it.
+   *
+   * Decodes in flight are held to a share of the heap, so a batch of images can be compressed in parallel without running out of memory. A decode
+   * that would exceed it waits for others to finish.
+   */
+  @WorkerThread
+  public static @NonNull DecodedBitmap decode(@NonNull Context context, @NonNull Object glideModel, int maxDimension, boolean quiet)
+      throws BitmapDecodingException
+  {
+    int permits = (int) Math.max(1, Math.min(DECODE_BUDGET_KIB, (long) maxDimension * maxDimension * 4 / 1024));
+
+    try {
+      decodeBudget.acquire(permits);
+    } catch (InterruptedException e) {
+      throw new BitmapDecodingException(e);
+    }
+
+    RequestManager       requestManager = Glide.with(context.getApplicationContext());
+    FutureTarget<Bitmap> target         = requestManager.asBitmap()
+                                                        .addListener(bitmapRequestListener)
+                                                        .load(glideModel)
+                                                        .skipMemoryCache(true)
+                                                        .diskCacheStrategy(DiskCacheStrategy.NONE)
+                                                        .centerInside()
+                                                        .submit(maxDimension, maxDimension);
     Bitmap scaledBitmap;
 
     try {
-      scaledBitmap = Glide.with(context.getApplicationContext())
-                             .asBitmap()
-                             .addListener(bitmapRequestListener)
-                             .load(glideModel)
-                             .skipMemoryCache(true)
-                             .diskCacheStrategy(DiskCacheStrategy.NONE)
-                             .centerInside()
-                             .submit(maxDimension, maxDimension)
-                             .get();
+      scaledBitmap = target.get();
     } catch (ExecutionException | InterruptedException e) {
+      requestManager.clear(target);
+      decodeBudget.release(permits);
+
       if (quiet) {
         throw new BitmapDecodingException(e);
       }
@@ -139,17 +212,87 @@ public final class ImageCompressionUtil {
     }
 
     if (scaledBitmap == null) {
+      requestManager.clear(target);
+      decodeBudget.release(permits);
       throw new BitmapDecodingException("Unable to decode image");
     }
 
-    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    return new DecodedBitmap(requestManager, target, scaledBitmap, permits);
+  }
+
+  /**
+   * Encodes the bitmap at the highest quality between minQuality and maxQuality whose output fits within maxBytes.
+   *
+   * maxQuality is tried first, since it usually fits, and the range below it is binary searched only if it doesn't. That takes a handful of
+   * encodes at most, compared to stepping down one quality at a time. Attempts are kept in memory, and only the one returned is meant to be
+   * written anywhere, so a search that needs several attempts doesn't pay to encrypt and write out the ones it throws away. PNG ignores quality,
+   * so it only gets one attempt.
+   *
+   * @return The best attempt that fits, or null if none do.
+   */
+  @WorkerThread
+  public static @Nullable Encoded encodeWithinSize(@NonNull Bitmap bitmap,
+                                                   @Nullable String targetContentType,
+                                                   long maxBytes,
+                                                   @IntRange(from = 0, to = 100) int minQuality,
+                                                   @IntRange(from = 0, to = 100) int maxQuality)
+  {
     Bitmap.CompressFormat format = mimeTypeToCompressFormat(targetContentType);
-    scaledBitmap.compress(format, quality, output);
 
-    byte[] data = output.toByteArray();
+    return encodeWithinSize((quality, output) -> bitmap.compress(format, quality, output),
+                            compressFormatToMimeType(format),
+                            format != Bitmap.CompressFormat.PNG,
+                            bitmap.getWidth(),
+                            bitmap.getHeight(),
+                            maxBytes,
+                            minQuality,
+                            maxQuality);
+  }
+
+  @VisibleForTesting
+  static @Nullable Encoded encodeWithinSize(@NonNull Encoder encoder,
+                                            @NonNull String mimeType,
+                                            boolean usesQuality,
+                                            int width,
+                                            int height,
+                                            long maxBytes,
+                                            @IntRange(from = 0, to = 100) int minQuality,
+                                            @IntRange(from = 0, to = 100) int maxQuality)
+  {
+    ByteArrayOutputStream best        = null;
+    ByteArrayOutputStream attempt     = new ByteArrayOutputStream();
+    int                   bestQuality = -1;
+    int                   low         = Math.min(minQuality, maxQuality);
+    int                   high        = maxQuality;
+    int                   quality     = maxQuality;
+    int                   attempts    = 0;
 
-    Log.d(TAG, "[Input] mimeType: " + contentType + " [Output] format: " + format + ", maxDimension: " + maxDimension + ", quality: " + quality + ", size(KiB): " + new ByteSize(data.length).getInWholeKibiBytes());
-    return new Result(data, compressFormatToMimeType(format), scaledBitmap.getWidth(), scaledBitmap.getHeight());
+    while (low <= high) {
+      attempt.reset();
+      encoder.encode(quality, attempt);
+      attempts++;
+
+      if (attempt.size() <= maxBytes) {
+        ByteArrayOutputStream previous = best;
+
+        best        = attempt;
+        bestQuality = quality;
+        attempt     = previous != null ? previous : new ByteArrayOutputStream();
+        low         = quality + 1;
+      } else {
+        high = quality - 1;
+      }
+
+      if (!usesQuality || (best != null && quality == maxQuality)) {
+        break;
+      }
+
+      quality = (low + high) >>> 1;
+    }
+
+    Log.d(TAG, "[encodeWithinSize] mimeType: " + mimeType + ", dimensions: " + width + "x" + height + ", attempts: " + attempts + ", quality: " + (best != null ? bestQuality : "none") + ", size(KiB): " + (best != null ? new ByteSize(best.size()).getInWholeKibiBytes() : "n/a") + ", limit(KiB): " + new ByteSize(maxBytes).getInWholeKibiBytes());
+
+    return best != null ? new Encoded(best, bestQuality, mimeType, width, height) : null;
   }
 
   private static @NonNull Bitmap.CompressFormat mimeTypeToCompressFormat(@Nullable String mimeType) {
@@ -179,6 +322,93 @@ public final class ImageCompressionUtil {
     }
   }
 
+  /**
+   * Writes the image at the given quality, for {@link #encodeWithinSize}.
+   */
+  @VisibleForTesting
+  interface Encoder {
+    void encode(@IntRange(from = 0, to = 100) int quality, @NonNull OutputStream output);
+  }
+
+  /**
+   * A decoded bitmap from {@link #decode(Context, Object, int, boolean)}. Must be closed once it's no longer needed.
+   */
+  public static final class DecodedBitmap implements Closeable {
+    private final RequestManager       requestManager;
+    private final FutureTarget<Bitmap> target;
+    private final Bitmap               bitmap;
+    private final int                  permits;
+
+    private boolean closed;
+
+    private DecodedBitmap(@NonNull RequestManager requestManager, @NonNull FutureTarget<Bitmap> target, @NonNull Bitmap bitmap, int permits) {
+      this.requestManager = requestManager;
+      this.target         = target;
+      this.bitmap         = bitmap;
+      this.permits        = permits;
+    }
+
+    public @NonNull Bitmap getBitmap() {
+      return bitmap;
+    }
+
+    @Override
+    public synchronized void close() {
+      if (!closed) {
+        closed = true;
+        requestManager.clear(target);
+        decodeBudget.release(permits);
+      }
+    }
+  }
+
+  /**
+   * An image encoded by {@link #encodeWithinSize}, held in memory until it's written out.
+   */
+  public static final class Encoded {
+    private final ByteArrayOutputStream data;
+    private final int                   quality;
+    private final String                mimeType;
+    private final int                   width;
+    private final int                   height;
+
+    private Encoded(@NonNull ByteArrayOutputStream data, int quality, @NonNull String mimeType, int width, int height) {
+      this.data     = data;
+      this.quality  = quality;
+      this.mimeType = mimeType;
+      this.width    = width;
+      this.height   = height;
+    }
+
+    public void writeTo(@NonNull OutputStream output) throws IOException {
+      data.writeTo(output);
+    }
+
+    public @NonNull byte[] toByteArray() {
+      return data.toByteArray();
+    }
+
+    public long getSize() {
+      return data.size();
+    }
+
+    public int getQuality() {
+      return quality;
+    }
+
+    public @NonNull String getMimeType() {
+      return mimeType;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+  }
+
   public static final class Result {
     private final byte[] data;
     private final String mimeType;
@@ -1212,6 +1212,15 @@ object RemoteConfig {
     hotSwappable = true
   )
 
+  /** The maximum number of recipients a single non-sender-key send will encrypt and have in flight at once. */
+  @JvmStatic
+  @get:JvmName("maxConcurrentMessageSends")
+  val maxConcurrentMessageSends: Int by remoteInt(
+    key = "android.maxConcurrentMessageSends",
+    defaultValue = 16,
+    hotSwappable = true
+  )
+
   @JvmStatic
   @get:JvmName("backupsMegaphone")
   val backupsMegaphone: Boolean by remoteBoolean(
@@ -89,7 +89,14 @@ object SignalE164Util {
     return formatNonShortCodeAsE164(input) != null
   }
 
-  private fun getFormatter(): E164Util.Formatter {
+  /**
+   * Identifies the formatter currently in use. Results formatted under one key are not guaranteed to match what another would produce.
+   */
+  fun getFormatterKey(): String {
+    return SignalStore.account.e164 ?: "region:${defaultFormatter.localRegionCode}"
+  }
+
+  fun getFormatter(): E164Util.Formatter {
     val localNumber = SignalStore.account.e164 ?: return defaultFormatter
     val formatter = cachedFormatters[localNumber]
     if (formatter != null) {
@@ -6,7 +6,9 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import org.signal.core.util.crypto.AttachmentSecret;
+import org.signal.core.util.crypto.ModernDecryptingPartChannel;
 import org.signal.core.util.crypto.ModernDecryptingPartInputStream;
+import org.signal.core.util.logging.Log;
 import org.thoughtcrime.securesms.video.videoconverter.mediadatasource.InputStreamMediaDataSource;
 
 import java.io.File;
@@ -23,11 +25,15 @@ import java.io.InputStream;
  */
 final class ModernEncryptedMediaDataSource extends InputStreamMediaDataSource {
 
+  private static final String TAG = Log.tag(ModernEncryptedMediaDataSource.class);
+
   private final AttachmentSecret attachmentSecret;
   private final File             mediaFile;
   private final byte[]           random;
   private final long             length;
 
+  private ModernDecryptingPartChannel channel;
+
   ModernEncryptedMediaDataSource(@NonNull AttachmentSecret attachmentSecret, @NonNull File mediaFile, @Nullable byte[] random, long length) {
     this.attachmentSecret = attachmentSecret;
     this.mediaFile        = mediaFile;
@@ -35,8 +41,46 @@ final class ModernEncryptedMediaDataSource extends InputStreamMediaDataSource {
     this.length           = length;
   }
 
+  /**
+   * The media framework reads from all over the file while it parses and seeks, so rather than opening a new stream for every read, we keep one
+   * channel open and decrypt each range in place.
+   */
+  @Override
+  public synchronized int readAt(long position, byte[] bytes, int offset, int size) throws IOException {
+    if (position >= length) {
+      return -1;
+    }
+
+    if (channel == null) {
+      channel = random == null ? ModernDecryptingPartChannel.open(attachmentSecret, mediaFile)
+                               : ModernDecryptingPartChannel.open(attachmentSecret, random, mediaFile);
+    }
+
+    int toRead    = (int) Math.min(size, length - position);
+    int totalRead = 0;
+
+    while (totalRead < toRead) {
+      int read = channel.read(position + totalRead, bytes, offset + totalRead, toRead - totalRead);
+      if (read == -1) {
+        break;
+      }
+      totalRead += read;
+    }
+
+    return totalRead == 0 && toRead > 0 ? -1 : totalRead;
+  }
+
   @Override
-  public void close() {}
+  public synchronized void close() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to close channel", e);
+      }
+      channel = null;
+    }
+  }
 
   @Override
   public long getSize() {
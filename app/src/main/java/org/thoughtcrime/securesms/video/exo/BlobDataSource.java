@@ -12,6 +12,7 @@ import androidx.media3.datasource.DataSource;
 import androidx.media3.datasource.DataSpec;
 import androidx.media3.datasource.TransferListener;
 
+import org.signal.core.util.crypto.ModernDecryptingPartChannel;
 import org.thoughtcrime.securesms.dependencies.AppDependencies;
 
 import java.io.EOFException;
@@ -27,8 +28,10 @@ class BlobDataSource implements DataSource {
   private final @NonNull  Context          context;
   private final @Nullable TransferListener listener;
 
-  private DataSpec    dataSpec;
-  private InputStream inputStream;
+  private DataSpec                    dataSpec;
+  private InputStream                 inputStream;
+  private ModernDecryptingPartChannel channel;
+  private long                        channelPosition;
 
   BlobDataSource(@NonNull Context context, @Nullable TransferListener listener) {
     this.context  = context.getApplicationContext();
@@ -42,7 +45,13 @@ class BlobDataSource implements DataSource {
   @Override
   public long open(DataSpec dataSpec) throws IOException {
     this.dataSpec = dataSpec;
-    this.inputStream = AppDependencies.getBlobs().getStream(context, dataSpec.uri, dataSpec.position);
+    this.channel  = AppDependencies.getBlobs().getChannel(context, dataSpec.uri);
+
+    if (channel != null) {
+      this.channelPosition = dataSpec.position;
+    } else {
+      this.inputStream = AppDependencies.getBlobs().getStream(context, dataSpec.uri, dataSpec.position);
+    }
 
     if (listener != null) {
       listener.onTransferStart(this, dataSpec, false);
@@ -64,7 +73,14 @@ class BlobDataSource implements DataSource {
 
   @Override
   public int read(@NonNull byte[] buffer, int offset, int readLength) throws IOException {
-    int read = inputStream.read(buffer, offset, readLength);
+    int read;
+
+    if (channel != null) {
+      read = channel.read(channelPosition, buffer, offset, readLength);
+      if (read > 0) channelPosition += read;
+    } else {
+      read = inputStream.read(buffer, offset, readLength);
+    }
 
     if (read > 0 && listener != null) {
       listener.onBytesTransferred(this, dataSpec, false, read);
@@ -85,7 +101,11 @@ class BlobDataSource implements DataSource {
 
   @Override
   public void close() throws IOException {
-    inputStream.close();
+    if (inputStream != null) inputStream.close();
+    if (channel != null) channel.close();
+
+    inputStream = null;
+    channel     = null;
   }
 }
 
@@ -20,6 +20,7 @@ import org.thoughtcrime.securesms.database.SignalDatabase;
 import org.thoughtcrime.securesms.keyvalue.SignalStore;
 import org.thoughtcrime.securesms.mms.PartUriParser;
 import org.signal.core.util.Base64;
+import org.signal.core.util.crypto.ModernDecryptingPartChannel;
 import org.signal.core.models.backup.MediaName;
 import org.signal.core.models.backup.MediaRootBackupKey;
 import org.whispersystems.signalservice.api.crypto.AttachmentCipherInputStream;
@@ -43,9 +44,11 @@ class PartDataSource implements DataSource {
   private final           String           TAG = Log.tag(PartDataSource.class);
   private final @Nullable TransferListener listener;
 
-  private Uri         uri;
-  private InputStream inputStream;
-  private DataSpec    activeDataSpec;
+  private Uri                         uri;
+  private InputStream                 inputStream;
+  private ModernDecryptingPartChannel channel;
+  private long                        channelPosition;
+  private DataSpec                    activeDataSpec;
 
   PartDataSource(@Nullable TransferListener listener) {
     this.listener = listener;
@@ -118,7 +121,13 @@ class PartDataSource implements DataSource {
       Log.d(TAG, "Successfully loaded partial attachment file.");
     } else if (!inProgress || hasData) {
       Log.d(TAG, "Playing a fully downloaded attachment.");
-      this.inputStream = attachmentDatabase.getAttachmentStream(partUri.getPartId(), dataSpec.position);
+      this.channel = attachmentDatabase.openAttachmentChannel(partUri.getPartId());
+
+      if (channel != null) {
+        this.channelPosition = dataSpec.position;
+      } else {
+        this.inputStream = attachmentDatabase.getAttachmentStream(partUri.getPartId(), dataSpec.position);
+      }
 
       Log.d(TAG, "Successfully loaded completed attachment file.");
     } else {
@@ -139,7 +148,14 @@ class PartDataSource implements DataSource {
 
   @Override
   public int read(@NonNull byte[] buffer, int offset, int readLength) throws IOException {
-    int read = inputStream.read(buffer, offset, readLength);
+    int read;
+
+    if (channel != null) {
+      read = channel.read(channelPosition, buffer, offset, readLength);
+      if (read > 0) channelPosition += read;
+    } else {
+      read = inputStream.read(buffer, offset, readLength);
+    }
 
     if (read > 0 && listener != null) {
       listener.onBytesTransferred(this, activeDataSpec, false, read);
@@ -161,5 +177,9 @@ class PartDataSource implements DataSource {
   @Override
   public void close() throws IOException {
     if (inputStream != null) inputStream.close();
+    if (channel != null) channel.close();
+
+    inputStream = null;
+    channel     = null;
   }
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.backup.v2.database
+
+import android.app.Application
+import android.database.MatrixCursor
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import assertk.assertions.isNull
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(application = Application::class)
+class ArchiveChildCursorTest {
+
+  @Test
+  fun `returns the rows for each message in turn`() {
+    val cursor = childCursor(
+      Row(dateReceived = 1, messageId = 10, value = "a"),
+      Row(dateReceived = 1, messageId = 10, value = "b"),
+      Row(dateReceived = 2, messageId = 5, value = "c")
+    )
+
+    assertThat(cursor.take(dateReceived = 1, messageId = 10)).isEqualTo(listOf("a", "b"))
+    assertThat(cursor.take(dateReceived = 2, messageId = 5)).isEqualTo(listOf("c"))
+  }
+
+  @Test
+  fun `messages without rows get nothing and do not consume the next message's rows`() {
+    val cursor = childCursor(
+      Row(dateReceived = 3, messageId = 1, value = "a")
+    )
+
+    assertThat(cursor.take(dateReceived = 1, messageId = 7)).isNull()
+    assertThat(cursor.take(dateReceived = 2, messageId = 8)).isNull()
+    assertThat(cursor.take(dateReceived = 3, messageId = 1)).isEqualTo(listOf("a"))
+  }
+
+  @Test
+  fun `rows for messages that were passed over are skipped`() {
+    val cursor = childCursor(
+      Row(dateReceived = 1, messageId = 1, value = "skipped"),
+      Row(dateReceived = 1, messageId = 2, value = "a"),
+      Row(dateReceived = 2, messageId = 3, value = "skipped"),
+      Row(dateReceived = 3, messageId = 4, value = "b")
+    )
+
+    assertThat(cursor.take(dateReceived = 1, messageId = 2)).isEqualTo(listOf("a"))
+    assertThat(cursor.take(dateReceived = 3, messageId = 4)).isEqualTo(listOf("b"))
+    assertThat(cursor.take(dateReceived = 4, messageId = 5)).isNull()
+  }
+
+  @Test
+  fun `messages sharing a dateReceived are told apart by id`() {
+    val cursor = childCursor(
+      Row(dateReceived = 1, messageId = 1, value = "a"),
+      Row(dateReceived = 1, messageId = 3, value = "b")
+    )
+
+    assertThat(cursor.take(dateReceived = 1, messageId = 1)).isEqualTo(listOf("a"))
+    assertThat(cursor.take(dateReceived = 1, messageId = 2)).isNull()
+    assertThat(cursor.take(dateReceived = 1, messageId = 3)).isEqualTo(listOf("b"))
+  }
+
+  @Test
+  fun `rows spread over several pages are each returned once`() {
+    val rows = (1L..7L).flatMap { messageId -> (0 until 3).map { Row(dateReceived = messageId / 2, messageId = messageId, value = "$messageId-$it") } }
+    val pagesRead = mutableListOf<Int>()
+    val cursor = childCursor(*rows.toTypedArray(), pageSize = 2, pagesRead = pagesRead)
+
+    for (messageId in 1L..7L) {
+      assertThat(cursor.take(dateReceived = messageId / 2, messageId = messageId)).isEqualTo(listOf("$messageId-0", "$messageId-1", "$messageId-2"))
+    }
+    assertThat(cursor.take(dateReceived = 10, messageId = 10)).isNull()
+
+    assertThat(pagesRead.sum()).isEqualTo(rows.size)
+    assertThat(pagesRead.max()).isEqualTo(2)
+  }
+
+  @Test
+  fun `a page ending in the middle of a message's rows continues from the next row`() {
+    val cursor = childCursor(
+      Row(dateReceived = 1, messageId = 1, value = "a"),
+      Row(dateReceived = 1, messageId = 1, value = "b"),
+      Row(dateReceived = 1, messageId = 1, value = "c"),
+      Row(dateReceived = 1, messageId = 2, value = "d"),
+      pageSize = 2
+    )
+
+    assertThat(cursor.take(dateReceived = 1, messageId = 1)).isEqualTo(listOf("a", "b", "c"))
+    assertThat(cursor.take(dateReceived = 1, messageId = 2)).isEqualTo(listOf("d"))
+  }
+
+  private data class Row(val dateReceived: Long, val messageId: Long, val value: String)
+
+  /**
+   * Serves [rows] the way [ArchiveChildCursor.query] would, a page at a time starting after the given position. Rows must already be in export
+   * order, and their index is used as the child id.
+   */
+  private fun childCursor(vararg rows: Row, pageSize: Int = 100, pagesRead: MutableList<Int> = mutableListOf()): ArchiveChildCursor<String> {
+    val positioned = rows.mapIndexed { index, row -> ArchiveChildCursor.Position(row.dateReceived, row.messageId, index.toLong()) to row }
+    val order = compareBy<ArchiveChildCursor.Position>({ it.dateReceived }, { it.messageId }, { it.childId })
+
+    return ArchiveChildCursor(pageSize, { after, limit ->
+      val page = positioned.filter { after == null || order.compare(it.first, after) > 0 }.take(limit)
+      pagesRead += page.size
+
+      MatrixCursor(arrayOf(MESSAGE_ID, DATE_RECEIVED, CHILD_ID, VALUE)).apply {
+        page.forEach { (position, row) -> addRow(arrayOf<Any>(position.messageId, position.dateReceived, position.childId, row.value)) }
+      }
+    }) { it.getString(it.getColumnIndexOrThrow(VALUE)) }
+  }
+
+  companion object {
+    /** Mirror the column names ArchiveChildCursor.query selects, which are private. */
+    private const val MESSAGE_ID = "archive_message_id"
+    private const val DATE_RECEIVED = "archive_date_received"
+    private const val CHILD_ID = "archive_child_id"
+
+    private const val VALUE = "value"
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.backup.v2.stream
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Test
+import org.signal.archive.proto.AccountData
+import org.signal.archive.proto.BackupInfo
+import org.signal.archive.proto.Frame
+import org.signal.archive.stream.BackupImportReader
+import org.signal.archive.stream.PipelinedBackupImportReader
+import org.signal.archive.stream.PlainTextBackupReader
+import org.signal.archive.stream.PlainTextBackupWriter
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+
+class PipelinedBackupImportReaderTest {
+
+  @Test
+  fun `can read back all frames in order`() {
+    val frameCount = 10_000
+    val plaintext = writePlaintext(frameCount)
+
+    val frames: List<Frame> = PipelinedBackupImportReader(PlainTextBackupReader(plaintext.inputStream(), plaintext.size.toLong()), capacity = 16).use { reader ->
+      assertEquals(1L, reader.getHeader()?.version)
+      reader.asSequence().toList()
+    }
+
+    assertEquals(frameCount, frames.size)
+    for (i in 0 until frameCount) {
+      assertEquals("username-$i", frames[i].account?.username)
+    }
+  }
+
+  @Test
+  fun `bytes read reflects consumed frames`() {
+    val plaintext = writePlaintext(100)
+
+    PipelinedBackupImportReader(PlainTextBackupReader(plaintext.inputStream(), plaintext.size.toLong())).use { reader ->
+      while (reader.hasNext()) {
+        reader.next()
+      }
+
+      assertEquals(plaintext.size.toLong(), reader.getBytesRead())
+      assertFalse(reader.hasNext())
+    }
+  }
+
+  @Test(expected = IOException::class)
+  fun `producer failure is rethrown to consumer`() {
+    val failing = object : BackupImportReader {
+      var count = 0
+      override fun getHeader(): BackupInfo? = null
+      override fun getBytesRead(): Long = 0
+      override fun getStreamLength(): Long = 0
+      override fun hasNext(): Boolean = true
+      override fun next(): Frame {
+        if (count++ > 5) {
+          throw IOException("Boom")
+        }
+        return Frame(account = AccountData(username = "username"))
+      }
+
+      override fun close() = Unit
+    }
+
+    PipelinedBackupImportReader(failing).use { reader ->
+      reader.asSequence().toList()
+    }
+  }
+
+  @Test
+  fun `closing before draining does not hang`() {
+    val plaintext = writePlaintext(10_000)
+
+    PipelinedBackupImportReader(PlainTextBackupReader(plaintext.inputStream(), plaintext.size.toLong()), capacity = 4).use { reader ->
+      reader.next()
+    }
+  }
+
+  private fun writePlaintext(frameCount: Int): ByteArray {
+    val outputStream = ByteArrayOutputStream()
+    PlainTextBackupWriter(outputStream).use { writer ->
+      writer.write(BackupInfo(version = 1, backupTimeMs = 1000L))
+
+      for (i in 0 until frameCount) {
+        writer.write(Frame(account = AccountData(username = "username-$i")))
+      }
+    }
+    return outputStream.toByteArray()
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import android.content.ContentValues
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import assertk.assertions.isFalse
+import assertk.assertions.isNotNull
+import assertk.assertions.isNull
+import assertk.assertions.isTrue
+import org.junit.BeforeClass
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.models.database.AttachmentId
+import org.signal.core.util.logging.Log
+import org.signal.core.util.readToSingleObject
+import org.signal.core.util.requireString
+import org.signal.core.util.select
+import org.thoughtcrime.securesms.testutil.MockAppDependenciesRule
+import org.thoughtcrime.securesms.testutil.SignalDatabaseRule
+import org.thoughtcrime.securesms.testutil.SystemOutLogger
+import java.io.File
+import java.io.FileOutputStream
+
+@Suppress("ClassName")
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class AttachmentTableTest_previews {
+
+  @get:Rule
+  val signalDatabaseRule = SignalDatabaseRule()
+
+  @get:Rule
+  val appDependencies = MockAppDependenciesRule()
+
+  companion object {
+    @BeforeClass
+    @JvmStatic
+    fun setUpClass() {
+      Log.initialize(SystemOutLogger())
+    }
+  }
+
+  @Test
+  fun givenPreviewOnOneAttachment_whenAnotherSharesTheDataFile_thenItSharesThePreview() {
+    // GIVEN
+    val dataFile = newFile()
+    val preview = newFile()
+    insertAttachment(insertMessage(), dataFile, preview)
+    val other = insertAttachment(insertMessage(), dataFile, preview = null)
+
+    // WHEN
+    val info = SignalDatabase.attachments.getPreviewFileInfo(other)
+
+    // THEN
+    assertThat(info).isNotNull()
+    assertThat(info!!.file.absolutePath).isEqualTo(preview.absolutePath)
+    assertThat(info.width).isEqualTo(512)
+  }
+
+  @Test
+  fun givenAttachmentWithoutData_whenPreviewRequested_thenNull() {
+    // GIVEN
+    val attachmentId = insertAttachment(insertMessage(), dataFile = null, preview = null)
+
+    // THEN
+    assertThat(SignalDatabase.attachments.getPreviewFileInfo(attachmentId)).isNull()
+  }
+
+  @Test
+  fun givenPreview_whenDataFileStillShared_thenPreviewIsKept() {
+    // GIVEN
+    val dataFile = newFile()
+    val preview = newFile()
+    val messageId = insertMessage()
+    insertAttachment(messageId, dataFile, preview)
+    insertAttachment(insertMessage(), dataFile, preview)
+
+    // WHEN
+    SignalDatabase.attachments.deleteAttachmentsForMessage(messageId)
+
+    // THEN
+    assertThat(preview.exists()).isTrue()
+  }
+
+  @Test
+  fun givenDataReplaced_whenPreviewStored_thenPreviewIsDiscarded() {
+    // GIVEN
+    val dataFile = newFile()
+    val attachmentId = insertAttachment(insertMessage(), dataFile, preview = null)
+    val source = SignalDatabase.attachments.getDataFileInfo(attachmentId)!!
+
+    SignalDatabase.writableDatabase.update(
+      AttachmentTable.TABLE_NAME,
+      ContentValues().apply { put(AttachmentTable.DATA_RANDOM, ByteArray(32) { 2 }) },
+      "${AttachmentTable.ID} = ?",
+      arrayOf(attachmentId.id.toString())
+    )
+
+    val pending = newPendingFile()
+
+    // WHEN
+    val stored = SignalDatabase.attachments.setPreview(source, pending, 512, 384)
+
+    // THEN
+    assertThat(stored).isFalse()
+    assertThat(pending.file.exists()).isFalse()
+    assertThat(SignalDatabase.attachments.getPreviewFileInfo(attachmentId)).isNull()
+  }
+
+  @Test
+  fun givenUnchangedData_whenPreviewStored_thenEveryAttachmentOnTheFileHasIt() {
+    // GIVEN
+    val dataFile = newFile()
+    val attachmentId = insertAttachment(insertMessage(), dataFile, preview = null)
+    val other = insertAttachment(insertMessage(), dataFile, preview = null)
+    val source = SignalDatabase.attachments.getDataFileInfo(attachmentId)!!
+    val pending = newPendingFile()
+
+    // WHEN
+    val stored = SignalDatabase.attachments.setPreview(source, pending, 512, 384)
+
+    // THEN
+    assertThat(stored).isTrue()
+    assertThat(SignalDatabase.attachments.getPreviewFileInfo(other)!!.file.absolutePath).isEqualTo(pending.file.absolutePath)
+    assertThat(SignalDatabase.attachments.setPreview(source, newPendingFile(), 512, 384)).isFalse()
+  }
+
+  @Test
+  fun givenPreview_whenAttachmentOffloaded_thenPreviewIsClearedAndDeleted() {
+    // GIVEN
+    val preview = newFile()
+    val attachmentId = insertAttachment(insertMessage(), newFile(), preview)
+
+    // WHEN
+    SignalDatabase.attachments.debugOffloadAttachment(attachmentId)
+
+    // THEN
+    assertThat(previewFileColumn(attachmentId)).isNull()
+    assertThat(preview.exists()).isFalse()
+  }
+
+  @Test
+  fun givenPreviewSharedWithAnotherAttachment_whenOneIsOffloaded_thenTheOtherKeepsThePreview() {
+    // GIVEN
+    val dataFile = newFile()
+    val preview = newFile()
+    val offloaded = insertAttachment(insertMessage(), dataFile, preview)
+    val kept = insertAttachment(insertMessage(), dataFile, preview)
+
+    // WHEN
+    SignalDatabase.attachments.debugOffloadAttachment(offloaded)
+
+    // THEN
+    assertThat(previewFileColumn(offloaded)).isNull()
+    assertThat(preview.exists()).isTrue()
+    assertThat(SignalDatabase.attachments.getPreviewFileInfo(kept)!!.file.absolutePath).isEqualTo(preview.absolutePath)
+  }
+
+  @Test
+  fun givenPreview_whenUsagesOfTheDataFileAreCleared_thenPreviewIsClearedAndDeleted() {
+    // GIVEN
+    val dataFile = newFile()
+    val preview = newFile()
+    val first = insertAttachment(insertMessage(), dataFile, preview)
+    val second = insertAttachment(insertMessage(), dataFile, preview)
+
+    // WHEN
+    SignalDatabase.attachments.clearUsagesOfDataFile(dataFile)
+
+    // THEN
+    assertThat(previewFileColumn(first)).isNull()
+    assertThat(previewFileColumn(second)).isNull()
+    assertThat(preview.exists()).isFalse()
+  }
+
+  // region helpers
+
+  private fun newFile(): File {
+    return File.createTempFile("preview-test", ".mms").apply { writeBytes(ByteArray(16)) }
+  }
+
+  private fun newPendingFile(): AttachmentTable.PendingDataFile {
+    val file = newFile()
+    return AttachmentTable.PendingDataFile(file, ByteArray(32) { 3 }, FileOutputStream(file)).apply { close() }
+  }
+
+  private fun previewFileColumn(attachmentId: AttachmentId): String? {
+    return SignalDatabase.writableDatabase
+      .select(AttachmentTable.PREVIEW_FILE)
+      .from(AttachmentTable.TABLE_NAME)
+      .where("${AttachmentTable.ID} = ?", attachmentId.id)
+      .run()
+      .readToSingleObject { it.requireString(AttachmentTable.PREVIEW_FILE) }
+  }
+
+  private fun insertMessage(): Long {
+    return TestSms.insert(signalDatabaseRule.writeableDatabase)
+  }
+
+  private fun insertAttachment(messageId: Long, dataFile: File?, preview: File?): AttachmentId {
+    val id = SignalDatabase.writableDatabase.insert(
+      AttachmentTable.TABLE_NAME,
+      null,
+      ContentValues().apply {
+        put(AttachmentTable.MESSAGE_ID, messageId)
+        put(AttachmentTable.TRANSFER_STATE, AttachmentTable.TRANSFER_PROGRESS_DONE)
+        put(AttachmentTable.CONTENT_TYPE, "image/jpeg")
+        if (dataFile != null) {
+          put(AttachmentTable.DATA_FILE, dataFile.absolutePath)
+          put(AttachmentTable.DATA_RANDOM, ByteArray(32) { 1 })
+          put(AttachmentTable.DATA_SIZE, dataFile.length())
+        }
+        if (preview != null) {
+          put(AttachmentTable.PREVIEW_FILE, preview.absolutePath)
+          put(AttachmentTable.PREVIEW_RANDOM, ByteArray(32) { 3 })
+          put(AttachmentTable.PREVIEW_WIDTH, 512)
+          put(AttachmentTable.PREVIEW_HEIGHT, 384)
+        }
+      }
+    )
+
+    return AttachmentId(id)
+  }
+
+  // endregion
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import android.content.ContentValues
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import assertk.assertions.isFalse
+import assertk.assertions.isNull
+import assertk.assertions.isTrue
+import org.junit.Assert.assertThrows
+import org.junit.BeforeClass
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.models.database.AttachmentId
+import org.signal.core.util.logging.Log
+import org.signal.core.util.readToSingleObject
+import org.signal.core.util.requireBlob
+import org.signal.core.util.requireInt
+import org.signal.core.util.requireLong
+import org.signal.core.util.requireString
+import org.signal.core.util.select
+import org.thoughtcrime.securesms.mms.MmsException
+import org.thoughtcrime.securesms.testutil.MockAppDependenciesRule
+import org.thoughtcrime.securesms.testutil.SignalDatabaseRule
+import org.thoughtcrime.securesms.testutil.SystemOutLogger
+import java.io.File
+import java.io.FileOutputStream
+
+/**
+ * Verifies [AttachmentTable.updateAttachmentData] when given a [AttachmentTable.PendingDataFile] that has already been written.
+ */
+@Suppress("ClassName")
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class AttachmentTableTest_updateAttachmentData {
+
+  @get:Rule
+  val signalDatabaseRule = SignalDatabaseRule()
+
+  @get:Rule
+  val appDependencies = MockAppDependenciesRule()
+
+  companion object {
+    @BeforeClass
+    @JvmStatic
+    fun setUpClass() {
+      Log.initialize(SystemOutLogger())
+    }
+  }
+
+  @Test
+  fun givenAWrittenPendingFile_whenAttachmentDataUpdated_thenItReplacesTheDataFileAndItsMetadata() {
+    // GIVEN
+    val dataFile = newFile(ByteArray(16))
+    val attachmentId = insertAttachment(dataFile)
+    val pending = newPendingFile(ByteArray(64) { 7 })
+
+    // WHEN
+    SignalDatabase.attachments.updateAttachmentData(SignalDatabase.attachments.getAttachment(attachmentId)!!, pending, "image/webp", 640, 480)
+
+    // THEN
+    assertThat(pending.file.exists()).isFalse()
+    assertThat(dataFile.readBytes().contentEquals(ByteArray(64) { 7 })).isTrue()
+
+    val row = readRow(attachmentId)
+    assertThat(row.dataFile).isEqualTo(dataFile.absolutePath)
+    assertThat(row.dataSize).isEqualTo(64L)
+    assertThat(row.random.contentEquals(pending.random)).isTrue()
+    assertThat(row.contentType).isEqualTo("image/webp")
+    assertThat(row.width).isEqualTo(640)
+    assertThat(row.height).isEqualTo(480)
+  }
+
+  @Test
+  fun givenNoDimensions_whenAttachmentDataUpdated_thenTheExistingDimensionsAreKept() {
+    // GIVEN
+    val attachmentId = insertAttachment(newFile(ByteArray(16)))
+
+    // WHEN
+    SignalDatabase.attachments.updateAttachmentData(SignalDatabase.attachments.getAttachment(attachmentId)!!, newPendingFile(ByteArray(32)), "image/jpeg", 0, 0)
+
+    // THEN
+    val row = readRow(attachmentId)
+    assertThat(row.width).isEqualTo(1000)
+    assertThat(row.height).isEqualTo(800)
+  }
+
+  @Test
+  fun givenAnotherAttachmentSharingTheDataFile_whenAttachmentDataUpdated_thenBothPointAtTheNewDataAndThePreviewIsDeleted() {
+    // GIVEN
+    val dataFile = newFile(ByteArray(16))
+    val preview = newFile(ByteArray(16))
+    val attachmentId = insertAttachment(dataFile, preview)
+    val other = insertAttachment(dataFile, preview)
+    val pending = newPendingFile(ByteArray(48))
+
+    // WHEN
+    SignalDatabase.attachments.updateAttachmentData(SignalDatabase.attachments.getAttachment(attachmentId)!!, pending, "image/jpeg", 640, 480)
+
+    // THEN
+    val row = readRow(other)
+    assertThat(row.dataSize).isEqualTo(48L)
+    assertThat(row.random.contentEquals(pending.random)).isTrue()
+    assertThat(row.previewFile).isNull()
+    assertThat(readRow(attachmentId).previewFile).isNull()
+    assertThat(preview.exists()).isFalse()
+  }
+
+  @Test
+  fun givenAnAttachmentWithoutData_whenAttachmentDataUpdated_thenItThrowsAndThePendingFileIsDeleted() {
+    // GIVEN
+    val attachmentId = insertAttachment(dataFile = null)
+    val pending = newPendingFile(ByteArray(32))
+
+    // WHEN
+    assertThrows(MmsException::class.java) {
+      SignalDatabase.attachments.updateAttachmentData(SignalDatabase.attachments.getAttachment(attachmentId)!!, pending, "image/jpeg", 640, 480)
+    }
+
+    // THEN
+    assertThat(pending.file.exists()).isFalse()
+    assertThat(readRow(attachmentId).dataFile).isNull()
+  }
+
+  // region helpers
+
+  private fun newFile(content: ByteArray): File {
+    return File.createTempFile("update-test", ".mms").apply { writeBytes(content) }
+  }
+
+  private fun newPendingFile(content: ByteArray): AttachmentTable.PendingDataFile {
+    val file = File.createTempFile("update-test", ".mms")
+    return AttachmentTable.PendingDataFile(file, ByteArray(32) { 5 }, FileOutputStream(file)).apply {
+      write(content)
+      close()
+    }
+  }
+
+  private fun insertAttachment(dataFile: File?, preview: File? = null): AttachmentId {
+    val id = SignalDatabase.writableDatabase.insert(
+      AttachmentTable.TABLE_NAME,
+      null,
+      ContentValues().apply {
+        put(AttachmentTable.MESSAGE_ID, TestSms.insert(signalDatabaseRule.writeableDatabase))
+        put(AttachmentTable.TRANSFER_STATE, AttachmentTable.TRANSFER_PROGRESS_DONE)
+        put(AttachmentTable.CONTENT_TYPE, "image/png")
+        put(AttachmentTable.WIDTH, 1000)
+        put(AttachmentTable.HEIGHT, 800)
+        if (dataFile != null) {
+          put(AttachmentTable.DATA_FILE, dataFile.absolutePath)
+          put(AttachmentTable.DATA_RANDOM, ByteArray(32) { 1 })
+          put(AttachmentTable.DATA_SIZE, dataFile.length())
+        }
+        if (preview != null) {
+          put(AttachmentTable.PREVIEW_FILE, preview.absolutePath)
+          put(AttachmentTable.PREVIEW_RANDOM, ByteArray(32) { 3 })
+          put(AttachmentTable.PREVIEW_WIDTH, 512)
+          put(AttachmentTable.PREVIEW_HEIGHT, 384)
+        }
+      }
+    )
+
+    return AttachmentId(id)
+  }
+
+  private fun readRow(attachmentId: AttachmentId): Row {
+    return SignalDatabase.writableDatabase
+      .select(
+        AttachmentTable.DATA_FILE,
+        AttachmentTable.DATA_SIZE,
+        AttachmentTable.DATA_RANDOM,
+        AttachmentTable.CONTENT_TYPE,
+        AttachmentTable.WIDTH,
+        AttachmentTable.HEIGHT,
+        AttachmentTable.PREVIEW_FILE
+      )
+      .from(AttachmentTable.TABLE_NAME)
+      .where("${AttachmentTable.ID} = ?", attachmentId.id)
+      .run()
+      .readToSingleObject {
+        Row(
+          dataFile = it.requireString(AttachmentTable.DATA_FILE),
+          dataSize = it.requireLong(AttachmentTable.DATA_SIZE),
+          random = it.requireBlob(AttachmentTable.DATA_RANDOM) ?: ByteArray(0),
+          contentType = it.requireString(AttachmentTable.CONTENT_TYPE),
+          width = it.requireInt(AttachmentTable.WIDTH),
+          height = it.requireInt(AttachmentTable.HEIGHT),
+          previewFile = it.requireString(AttachmentTable.PREVIEW_FILE)
+        )
+      }!!
+  }
+
+  private class Row(
+    val dataFile: String?,
+    val dataSize: Long,
+    val random: ByteArray,
+    val contentType: String?,
+    val width: Int,
+    val height: Int,
+    val previewFile: String?
+  )
+
+  // endregion
+}
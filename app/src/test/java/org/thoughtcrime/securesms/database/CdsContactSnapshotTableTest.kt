@@ -0,0 +1,73 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.thoughtcrime.securesms.database.CdsContactSnapshotTable.RawContact
+import org.thoughtcrime.securesms.testutil.MockAppDependenciesRule
+import org.thoughtcrime.securesms.testutil.SignalDatabaseRule
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class CdsContactSnapshotTableTest {
+
+  @get:Rule
+  val appDependencies = MockAppDependenciesRule()
+
+  @get:Rule
+  val signalDatabaseRule = SignalDatabaseRule()
+
+  @Test
+  fun givenAFullSnapshot_whenIRead_thenIExpectVersionsAndNumbers() {
+    SignalDatabase.cdsContactSnapshot.replaceAll(
+      mapOf(
+        1L to RawContact(3, setOf("(555) 555-0100", "555-0101")),
+        2L to RawContact(7, setOf("555-0101")),
+        3L to RawContact(1, emptySet())
+      )
+    )
+
+    assertEquals(mapOf(1L to 3, 2L to 7, 3L to 1), SignalDatabase.cdsContactSnapshot.getVersions())
+    assertEquals(setOf("(555) 555-0100", "555-0101"), SignalDatabase.cdsContactSnapshot.getAllNumbers())
+  }
+
+  @Test
+  fun givenChanges_whenIApplyThem_thenIExpectOnlyThoseContactsReplaced() {
+    SignalDatabase.cdsContactSnapshot.replaceAll(
+      mapOf(
+        1L to RawContact(3, setOf("555-0100")),
+        2L to RawContact(7, setOf("555-0101")),
+        3L to RawContact(1, setOf("555-0102"))
+      )
+    )
+
+    SignalDatabase.cdsContactSnapshot.applyChanges(
+      updated = mapOf(
+        1L to RawContact(4, setOf("555-0200")),
+        4L to RawContact(1, setOf("555-0300"))
+      ),
+      removed = listOf(3L)
+    )
+
+    assertEquals(mapOf(1L to 4, 2L to 7, 4L to 1), SignalDatabase.cdsContactSnapshot.getVersions())
+    assertEquals(setOf("555-0200", "555-0101", "555-0300"), SignalDatabase.cdsContactSnapshot.getAllNumbers())
+  }
+
+  @Test
+  fun givenASnapshot_whenIReplaceAll_thenIExpectOnlyTheNewContacts() {
+    SignalDatabase.cdsContactSnapshot.replaceAll(mapOf(1L to RawContact(3, setOf("555-0100"))))
+    SignalDatabase.cdsContactSnapshot.replaceAll(mapOf(2L to RawContact(1, setOf("555-0101"))))
+
+    assertEquals(mapOf(2L to 1), SignalDatabase.cdsContactSnapshot.getVersions())
+    assertEquals(setOf("555-0101"), SignalDatabase.cdsContactSnapshot.getAllNumbers())
+  }
+}
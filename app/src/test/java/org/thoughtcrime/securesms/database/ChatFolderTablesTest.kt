@@ -219,4 +219,24 @@ class ChatFolderTablesTest {
 
     assertTrue(actualFolderIsEmpty)
   }
+
+  @Test
+  fun givenAFolder_whenAChatInItGetsAndReadsAMessage_thenIExpectItsUnreadCountToFollow() {
+    SignalDatabase.chatFolders.createFolder(folder1.copy(showUnread = false))
+    val actualFolders = SignalDatabase.chatFolders.getCurrentChatFolders()
+    val folderId = actualFolders.first().id
+
+    val before = SignalDatabase.chatFolders.getUnreadCountAndEmptyAndMutedStatusForFolders(actualFolders)[folderId]!!
+    assertEquals(Triple(0, false, false), before)
+
+    recipients.insertIncomingMessage(alice)
+
+    val unread = SignalDatabase.chatFolders.getUnreadCountAndEmptyAndMutedStatusForFolders(actualFolders)[folderId]!!
+    assertEquals(1, unread.first)
+
+    SignalDatabase.threads.setRead(aliceThread)
+
+    val read = SignalDatabase.chatFolders.getUnreadCountAndEmptyAndMutedStatusForFolders(actualFolders)[folderId]!!
+    assertEquals(0, read.first)
+  }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.random.Random
+
+class EmojiSearchIndexTest {
+
+  private val rows = listOf(
+    EmojiSearchIndex.Row("grinning face", "😀", 1),
+    EmojiSearchIndex.Row("face", "😀", 1),
+    EmojiSearchIndex.Row("smile", "😄", 2),
+    EmojiSearchIndex.Row("Smiling Face", "😊", 3),
+    EmojiSearchIndex.Row("heart", "❤️", 4),
+    EmojiSearchIndex.Row("love", "❤️", 4),
+    EmojiSearchIndex.Row("heart eyes", "😍", Int.MAX_VALUE),
+    EmojiSearchIndex.Row("cat", "🐱", Int.MAX_VALUE),
+    EmojiSearchIndex.Row("cat face", "🐱", Int.MAX_VALUE),
+    EmojiSearchIndex.Row("thumbs up", "👍", 5)
+  )
+
+  @Test
+  fun `search - matches substrings in rank order`() {
+    val index = EmojiSearchIndex.build(rows)
+
+    assertEquals(listOf("face", "grinning face", "Smiling Face", "cat face"), index.search("face", 10).map { it.label })
+  }
+
+  @Test
+  fun `search - ignores ascii case like sqlite`() {
+    val index = EmojiSearchIndex.build(rows)
+
+    assertEquals(listOf("Smiling Face"), index.search("SMILING", 10).map { it.label })
+    assertEquals(listOf("smile", "Smiling Face"), index.search("Smi", 10).map { it.label })
+  }
+
+  @Test
+  fun `search - matches emoji exactly`() {
+    val index = EmojiSearchIndex.build(rows)
+
+    assertEquals(listOf("heart", "love"), index.search("❤️", 10).map { it.label })
+  }
+
+  @Test
+  fun `search - respects limit`() {
+    val index = EmojiSearchIndex.build(rows)
+
+    assertEquals(2, index.search("a", 2).size)
+    assertEquals(2, index.search("face", 2).size)
+  }
+
+  @Test
+  fun `search - maxRank ignores unranked entries`() {
+    assertEquals(5, EmojiSearchIndex.build(rows).maxRank)
+    assertEquals(0, EmojiSearchIndex.build(listOf(EmojiSearchIndex.Row("cat", "🐱", Int.MAX_VALUE))).maxRank)
+  }
+
+  @Test
+  fun `search - incremental queries match a fresh index`() {
+    val index = EmojiSearchIndex.build(rows)
+
+    listOf("h", "he", "hea", "hear", "heart", "heart ", "heart e", "hea", "heat").forEach { query ->
+      assertEquals(query, EmojiSearchIndex.build(rows).search(query, 10), index.search(query, 10))
+    }
+  }
+
+  @Test
+  fun `search - matches a brute force scan over random data`() {
+    val random = Random(35)
+    val alphabet = "abcdeABCDE "
+    val randomRows = List(2_000) {
+      EmojiSearchIndex.Row(
+        label = String(CharArray(3 + random.nextInt(10)) { alphabet[random.nextInt(alphabet.length)] }),
+        emoji = "e${random.nextInt(300)}",
+        rank = if (random.nextInt(4) == 0) Int.MAX_VALUE else random.nextInt(1, 500)
+      )
+    }
+
+    val index = EmojiSearchIndex.build(randomRows)
+    val ordered = randomRows.sortedWith(compareBy<EmojiSearchIndex.Row> { it.rank }.thenBy { it.label }.thenBy { it.emoji })
+
+    val queries = List(200) { String(CharArray(1 + random.nextInt(5)) { alphabet[random.nextInt(alphabet.length)] }) } + listOf("e12", "e299")
+
+    for (query in queries) {
+      val expected = ordered
+        .filter { it.label.contains(query, ignoreCase = true) || it.emoji == query }
+        .take(200)
+        .map { EmojiSearchIndex.Entry(it.label, it.emoji, it.rank) }
+
+      val actual = index.search(query, 200)
+      assertEquals(query, expected, actual)
+      assertTrue(actual.size <= 200)
+    }
+  }
+}
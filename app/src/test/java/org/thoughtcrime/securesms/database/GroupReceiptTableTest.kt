@@ -0,0 +1,180 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import assertk.assertThat
+import assertk.assertions.containsExactlyInAnyOrder
+import assertk.assertions.isEmpty
+import assertk.assertions.isEqualTo
+import assertk.assertions.isFalse
+import assertk.assertions.isTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.util.delete
+import org.signal.core.util.readToSingleInt
+import org.signal.core.util.select
+import org.thoughtcrime.securesms.database.GroupReceiptTable.GroupReceiptInfo
+import org.thoughtcrime.securesms.database.GroupReceiptTable.ReceiptUpdate
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.thoughtcrime.securesms.testutil.MockAppDependenciesRule
+import org.thoughtcrime.securesms.testutil.SignalDatabaseRule
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class GroupReceiptTableTest {
+
+  @get:Rule
+  val signalDatabaseRule = SignalDatabaseRule()
+
+  @get:Rule
+  val appDependencies = MockAppDependenciesRule()
+
+  private val alice = RecipientId.from(100)
+  private val bob = RecipientId.from(101)
+  private val carol = RecipientId.from(102)
+
+  @Test
+  fun givenInsertedReceipts_whenRead_thenEachRecipientHasTheInsertedStatus() {
+    // GIVEN
+    val messageId = insertMessage()
+    SignalDatabase.groupReceipts.insert(listOf(alice, bob), messageId, GroupReceiptTable.STATUS_UNDELIVERED, 1000)
+
+    // THEN
+    assertThat(SignalDatabase.groupReceipts.getGroupReceiptInfo(messageId)).containsExactlyInAnyOrder(
+      GroupReceiptInfo(alice, GroupReceiptTable.STATUS_UNDELIVERED, 1000, false),
+      GroupReceiptInfo(bob, GroupReceiptTable.STATUS_UNDELIVERED, 1000, false)
+    )
+    assertThat(SignalDatabase.groupReceipts.hasReceipt(messageId, alice)).isTrue()
+    assertThat(SignalDatabase.groupReceipts.hasReceipt(messageId, carol)).isFalse()
+  }
+
+  @Test
+  fun givenMessagesInTheSameThread_whenReceiptsInserted_thenMembersAreShared() {
+    // GIVEN
+    val first = insertMessage()
+    val second = insertMessage()
+
+    // WHEN
+    SignalDatabase.groupReceipts.insert(listOf(alice, bob), first, GroupReceiptTable.STATUS_UNDELIVERED, 1000)
+    SignalDatabase.groupReceipts.insert(listOf(bob, carol), second, GroupReceiptTable.STATUS_UNDELIVERED, 1000)
+
+    // THEN
+    assertThat(memberCount()).isEqualTo(3)
+  }
+
+  @Test
+  fun givenBatchedUpdates_whenApplied_thenStatusesOnlyMoveForward() {
+    // GIVEN
+    val first = insertMessage()
+    val second = insertMessage()
+    SignalDatabase.groupReceipts.insert(listOf(alice, bob), first, GroupReceiptTable.STATUS_UNDELIVERED, 1000)
+    SignalDatabase.groupReceipts.insert(listOf(alice, bob), second, GroupReceiptTable.STATUS_READ, 1000)
+
+    // WHEN
+    SignalDatabase.groupReceipts.update(
+      listOf(
+        ReceiptUpdate(alice, first, GroupReceiptTable.STATUS_DELIVERED, 2000),
+        ReceiptUpdate(bob, first, GroupReceiptTable.STATUS_READ, 3000),
+        ReceiptUpdate(alice, second, GroupReceiptTable.STATUS_DELIVERED, 4000),
+        ReceiptUpdate(carol, second, GroupReceiptTable.STATUS_DELIVERED, 5000)
+      )
+    )
+
+    // THEN
+    assertThat(SignalDatabase.groupReceipts.getGroupReceiptInfo(first)).containsExactlyInAnyOrder(
+      GroupReceiptInfo(alice, GroupReceiptTable.STATUS_DELIVERED, 2000, false),
+      GroupReceiptInfo(bob, GroupReceiptTable.STATUS_READ, 3000, false)
+    )
+    assertThat(SignalDatabase.groupReceipts.getGroupReceiptInfo(second)).containsExactlyInAnyOrder(
+      GroupReceiptInfo(alice, GroupReceiptTable.STATUS_READ, 1000, false),
+      GroupReceiptInfo(bob, GroupReceiptTable.STATUS_READ, 1000, false)
+    )
+  }
+
+  @Test
+  fun givenReceipts_whenSkippedAndUnidentifiedSet_thenBothAreReflected() {
+    // GIVEN
+    val messageId = insertMessage()
+    SignalDatabase.groupReceipts.insert(listOf(alice, bob), messageId, GroupReceiptTable.STATUS_READ, 1000)
+
+    // WHEN
+    SignalDatabase.groupReceipts.setSkipped(listOf(alice), messageId)
+    SignalDatabase.groupReceipts.setUnidentified(listOf(alice to false, bob to true), messageId)
+
+    // THEN
+    assertThat(SignalDatabase.groupReceipts.getGroupReceiptInfo(messageId)).containsExactlyInAnyOrder(
+      GroupReceiptInfo(alice, GroupReceiptTable.STATUS_SKIPPED, 1000, false),
+      GroupReceiptInfo(bob, GroupReceiptTable.STATUS_READ, 1000, true)
+    )
+  }
+
+  @Test
+  fun givenTwoRecipientsWithReceipts_whenRemapped_thenBothReceiptsBelongToTheMergedRecipient() {
+    // GIVEN
+    val messageId = insertMessage()
+    SignalDatabase.groupReceipts.insert(listOf(alice, bob), messageId, GroupReceiptTable.STATUS_UNDELIVERED, 1000)
+
+    // WHEN
+    SignalDatabase.groupReceipts.remapRecipient(bob, alice)
+    SignalDatabase.groupReceipts.update(alice, messageId, GroupReceiptTable.STATUS_DELIVERED, 2000)
+
+    // THEN
+    assertThat(SignalDatabase.groupReceipts.getGroupReceiptInfo(messageId)).containsExactlyInAnyOrder(
+      GroupReceiptInfo(alice, GroupReceiptTable.STATUS_DELIVERED, 2000, false),
+      GroupReceiptInfo(alice, GroupReceiptTable.STATUS_DELIVERED, 2000, false)
+    )
+  }
+
+  @Test
+  fun givenDeletedRecipient_whenAnotherIsAdded_thenTheDeletedRecipientsReceiptsAreNotInherited() {
+    // GIVEN
+    val messageId = insertMessage()
+    SignalDatabase.groupReceipts.insert(listOf(alice), messageId, GroupReceiptTable.STATUS_READ, 1000)
+
+    // WHEN
+    SignalDatabase.groupReceipts.onDeletedRecipient(alice)
+    SignalDatabase.groupReceipts.insert(listOf(bob), messageId, GroupReceiptTable.STATUS_UNDELIVERED, 2000)
+
+    // THEN
+    assertThat(SignalDatabase.groupReceipts.getGroupReceiptInfo(messageId)).containsExactlyInAnyOrder(
+      GroupReceiptInfo(bob, GroupReceiptTable.STATUS_UNDELIVERED, 2000, false)
+    )
+  }
+
+  @Test
+  fun givenDeletedMessage_whenAbandonedRowsDeleted_thenItsReceiptsAndMembersAreGone() {
+    // GIVEN
+    val messageId = insertMessage()
+    SignalDatabase.groupReceipts.insert(listOf(alice, bob), messageId, GroupReceiptTable.STATUS_UNDELIVERED, 1000)
+    signalDatabaseRule.writeableDatabase
+      .delete(MessageTable.TABLE_NAME)
+      .where("${MessageTable.ID} = ?", messageId)
+      .run()
+
+    // WHEN
+    SignalDatabase.groupReceipts.deleteAbandonedRows()
+
+    // THEN
+    assertThat(SignalDatabase.groupReceipts.getGroupReceiptInfo(messageId)).isEmpty()
+    assertThat(memberCount()).isEqualTo(0)
+  }
+
+  private fun insertMessage(): Long {
+    return TestSms.insert(signalDatabaseRule.writeableDatabase, type = MessageTypes.BASE_SENT_TYPE)
+  }
+
+  private fun memberCount(): Int {
+    return signalDatabaseRule.readableDatabase
+      .select("COUNT(*)")
+      .from(GroupReceiptTable.MEMBER_TABLE_NAME)
+      .run()
+      .readToSingleInt()
+  }
+}
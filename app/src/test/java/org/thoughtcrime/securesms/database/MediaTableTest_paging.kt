@@ -0,0 +1,197 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import android.content.ContentValues
+import android.database.Cursor
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import org.junit.Before
+import org.junit.BeforeClass
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.models.database.AttachmentId
+import org.signal.core.util.logging.Log
+import org.signal.core.util.requireLong
+import org.signal.paging.PagedDataSource
+import org.thoughtcrime.securesms.database.MediaTable.PageKey
+import org.thoughtcrime.securesms.database.MediaTable.Sorting
+import org.thoughtcrime.securesms.database.loaders.MediaLoader
+import org.thoughtcrime.securesms.mediaoverview.MediaOverviewPagedDataSource
+import org.thoughtcrime.securesms.mediaoverview.MediaSelectionKey
+import org.thoughtcrime.securesms.recipients.Recipient
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.thoughtcrime.securesms.testutil.RecipientTestRule
+import org.thoughtcrime.securesms.testutil.SystemOutLogger
+
+@Suppress("ClassName")
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class MediaTableTest_paging {
+
+  @get:Rule
+  val recipients = RecipientTestRule()
+
+  companion object {
+    @BeforeClass
+    @JvmStatic
+    fun setUpClass() {
+      Log.initialize(SystemOutLogger())
+    }
+  }
+
+  private lateinit var alice: RecipientId
+  private var threadId: Long = 0
+  private val attachmentIds: MutableList<Long> = mutableListOf()
+
+  /**
+   * Four messages with three attachments each. Most attachments share a size, and display orders repeat within a message or are missing entirely, so
+   * every sort has to fall back to display order and then ID to put the rows in a stable order.
+   */
+  @Before
+  fun setUp() {
+    alice = recipients.createRecipient("Alice Android")
+    threadId = SignalDatabase.threads.getOrCreateThreadIdFor(Recipient.resolved(alice))
+
+    insertMessageWithAttachments(sizes = listOf(100, 100, 100), displayOrders = listOf(0, 0, 0))
+    insertMessageWithAttachments(sizes = listOf(100, 200, 100), displayOrders = listOf(null, null, null))
+    insertMessageWithAttachments(sizes = listOf(200, 100, 100), displayOrders = listOf(1, 0, 1))
+    insertMessageWithAttachments(sizes = listOf(100, 100, 200), displayOrders = listOf(2, null, 2))
+  }
+
+  @Test
+  fun givenTiedRows_whenPagingGalleryByNewest_thenEveryRowIsReturnedOnce() {
+    assertKeysetPagingMatchesUnpaged(Sorting.Newest) { limit, after -> SignalDatabase.media.getGalleryMediaForThread(threadId, Sorting.Newest, limit, 0, after) }
+  }
+
+  @Test
+  fun givenTiedRows_whenPagingGalleryByOldest_thenEveryRowIsReturnedOnce() {
+    assertKeysetPagingMatchesUnpaged(Sorting.Oldest) { limit, after -> SignalDatabase.media.getGalleryMediaForThread(threadId, Sorting.Oldest, limit, 0, after) }
+  }
+
+  @Test
+  fun givenTiedRows_whenPagingGalleryByLargest_thenEveryRowIsReturnedOnce() {
+    assertKeysetPagingMatchesUnpaged(Sorting.Largest) { limit, after -> SignalDatabase.media.getGalleryMediaForThread(threadId, Sorting.Largest, limit, 0, after) }
+  }
+
+  @Test
+  fun givenTiedRows_whenPagingAllMedia_thenEveryRowIsReturnedOnce() {
+    for (sorting in Sorting.entries) {
+      assertKeysetPagingMatchesUnpaged(sorting) { limit, after -> SignalDatabase.media.getAllMediaForThread(threadId, sorting, limit, 0, after) }
+    }
+  }
+
+  @Test
+  fun givenTiedRows_whenPagingGalleryByLargest_thenRowsAreOrderedBySizeThenDisplayOrderThenId() {
+    val rows = SignalDatabase.media.getGalleryMediaForThread(threadId, Sorting.Largest).use { cursor ->
+      generateSequence { if (cursor.moveToNext()) PageKey.from(cursor, Sorting.Largest) else null }.toList()
+    }
+
+    val expected = rows.sortedWith(compareByDescending<PageKey> { it.primary }.thenByDescending { it.displayOrder }.thenByDescending { it.id })
+    assertThat(rows).isEqualTo(expected)
+  }
+
+  @Test
+  fun givenSequentialLoads_whenPagingTheDataSource_thenEveryRowIsReturnedOnce() {
+    for (sorting in Sorting.entries) {
+      val dataSource = MediaOverviewPagedDataSource(threadId, MediaLoader.MediaType.GALLERY, sorting)
+      val size = dataSource.size()
+      val loaded = mutableListOf<MediaSelectionKey>()
+
+      while (loaded.size < size) {
+        loaded += dataSource.load(loaded.size, 5, size, PagedDataSource.CancellationSignal { false }).map { dataSource.getKey(it) }
+      }
+
+      assertThat(loaded, name = sorting.name).isEqualTo(unpagedKeys(sorting))
+    }
+  }
+
+  @Test
+  fun givenALoadOutOfOrder_whenPagingTheDataSource_thenItFallsBackToTheOffsetAndSeeksAgainAfterwards() {
+    val dataSource = MediaOverviewPagedDataSource(threadId, MediaLoader.MediaType.GALLERY, Sorting.Newest)
+    val size = dataSource.size()
+    val expected = unpagedKeys(Sorting.Newest)
+
+    dataSource.load(0, 5, size, PagedDataSource.CancellationSignal { false })
+    val jumped = dataSource.load(7, 2, size, PagedDataSource.CancellationSignal { false }).map { dataSource.getKey(it) }
+    val next = dataSource.load(9, 5, size, PagedDataSource.CancellationSignal { false }).map { dataSource.getKey(it) }
+
+    assertThat(jumped).isEqualTo(expected.subList(7, 9))
+    assertThat(next).isEqualTo(expected.subList(9, 12))
+  }
+
+  // region helpers
+
+  /**
+   * Pages through the query a few rows at a time, seeking from the last row of each page, and checks that the pages join up into the unpaged order.
+   * Page sizes that don't divide the row count, or a message's attachment count, make sure page boundaries land in the middle of a tie.
+   */
+  private fun assertKeysetPagingMatchesUnpaged(sorting: Sorting, query: (limit: Int, after: PageKey?) -> Cursor) {
+    val unpaged = query(0, null).use { it.readAttachmentIds() }
+    assertThat(unpaged.sorted(), name = sorting.name).isEqualTo(attachmentIds.sorted())
+
+    for (limit in listOf(1, 2, 5)) {
+      val paged = mutableListOf<Long>()
+      var after: PageKey? = null
+
+      do {
+        val page = query(limit, after).use { cursor ->
+          val ids = mutableListOf<Long>()
+          while (cursor.moveToNext()) {
+            ids += cursor.requireLong(AttachmentTable.ID)
+            if (cursor.isLast) {
+              after = PageKey.from(cursor, sorting)
+            }
+          }
+          ids
+        }
+        paged += page
+      } while (page.size == limit)
+
+      assertThat(paged, name = "${sorting.name}, limit $limit").isEqualTo(unpaged)
+    }
+  }
+
+  private fun unpagedKeys(sorting: Sorting): List<MediaSelectionKey> {
+    return SignalDatabase.media.getGalleryMediaForThread(threadId, sorting).use { cursor ->
+      cursor.readAttachmentIds().map { MediaSelectionKey.Attachment(AttachmentId(it)) }
+    }
+  }
+
+  private fun Cursor.readAttachmentIds(): List<Long> {
+    val ids = mutableListOf<Long>()
+    while (moveToNext()) {
+      ids += requireLong(AttachmentTable.ID)
+    }
+    return ids
+  }
+
+  private fun insertMessageWithAttachments(sizes: List<Int>, displayOrders: List<Int?>) {
+    val messageId = recipients.insertOutgoingMessage(alice)
+
+    for (i in sizes.indices) {
+      attachmentIds += SignalDatabase.writableDatabase.insert(
+        AttachmentTable.TABLE_NAME,
+        null,
+        ContentValues().apply {
+          put(AttachmentTable.MESSAGE_ID, messageId)
+          put(AttachmentTable.TRANSFER_STATE, AttachmentTable.TRANSFER_PROGRESS_DONE)
+          put(AttachmentTable.CONTENT_TYPE, "image/jpeg")
+          put(AttachmentTable.DATA_FILE, "/media-paging-test/$messageId-$i")
+          put(AttachmentTable.DATA_RANDOM, ByteArray(32) { 1 })
+          put(AttachmentTable.DATA_SIZE, sizes[i])
+          put(AttachmentTable.DISPLAY_ORDER, displayOrders[i])
+        }
+      )
+    }
+  }
+
+  // endregion
+}
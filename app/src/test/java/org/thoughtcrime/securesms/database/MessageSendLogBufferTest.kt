@@ -0,0 +1,187 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.thoughtcrime.securesms.database.MessageSendLogBuffer.Destination
+import org.thoughtcrime.securesms.database.MessageSendLogBuffer.PendingPayload
+import org.thoughtcrime.securesms.database.model.MessageId
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.whispersystems.signalservice.api.crypto.ContentHint
+import org.whispersystems.signalservice.internal.push.Content
+
+class MessageSendLogBufferTest {
+
+  private val alice = RecipientId.from(1)
+  private val bob = RecipientId.from(2)
+
+  @Test
+  fun `find - returns pending payload for a destination`() {
+    val buffer = MessageSendLogBuffer()
+    buffer.add(payload(id = 1, dateSent = 100, messageId = 10, alice to 1, bob to 1))
+
+    assertNotNull(buffer.find(alice, 1, 100))
+    assertNotNull(buffer.find(bob, 1, 100))
+    assertNull(buffer.find(alice, 2, 100))
+    assertNull(buffer.find(alice, 1, 101))
+  }
+
+  @Test
+  fun `deleteForRecipient - drops payload once every destination is gone`() {
+    val buffer = MessageSendLogBuffer()
+    buffer.add(payload(id = 1, dateSent = 100, messageId = 10, alice to 1, bob to 1))
+
+    buffer.deleteForRecipient(listOf(100), alice, 1)
+    assertNull(buffer.find(alice, 1, 100))
+    assertNotNull(buffer.find(bob, 1, 100))
+    assertTrue(buffer.isDeletePending(alice, 1, 100))
+
+    buffer.deleteForRecipient(listOf(100), bob, 1)
+    val drained = buffer.startFlush()
+
+    assertTrue(drained.payloads.isEmpty())
+    assertEquals(setOf(Destination(alice, 1), Destination(bob, 1)), drained.deletes.keys)
+    assertTrue(buffer.isEmpty())
+  }
+
+  @Test
+  fun `deleteForRecipient - payload sent again afterwards survives`() {
+    val buffer = MessageSendLogBuffer()
+
+    buffer.deleteForRecipient(listOf(100), alice, 1)
+    buffer.add(payload(id = 1, dateSent = 100, messageId = 10, alice to 1))
+
+    assertNotNull(buffer.find(alice, 1, 100))
+
+    val drained = buffer.startFlush()
+    assertEquals(1, drained.payloads.size)
+    assertEquals(setOf(100L), drained.deletes[Destination(alice, 1)])
+  }
+
+  @Test
+  fun `addRecipient - appends to pending payload and cancels pending delete`() {
+    val buffer = MessageSendLogBuffer()
+    buffer.add(payload(id = 1, dateSent = 100, messageId = 10, alice to 1))
+    buffer.deleteForRecipient(listOf(100), bob, 2)
+
+    assertTrue(buffer.addRecipient(1, bob, listOf(1, 2), 100))
+    assertFalse(buffer.addRecipient(2, bob, listOf(1), 100))
+
+    assertNotNull(buffer.find(bob, 2, 100))
+    assertFalse(buffer.isDeletePending(bob, 2, 100))
+  }
+
+  @Test
+  fun `deleteRelatedToMessage - drops only related payloads`() {
+    val buffer = MessageSendLogBuffer()
+    buffer.add(payload(id = 1, dateSent = 100, messageId = 10, alice to 1))
+    buffer.add(payload(id = 2, dateSent = 200, messageId = 20, alice to 1))
+
+    buffer.deleteRelatedToMessage(10)
+
+    assertNull(buffer.find(alice, 1, 100))
+    assertNotNull(buffer.find(alice, 1, 200))
+  }
+
+  @Test
+  fun `remapRecipient - moves destinations and pending deletes`() {
+    val buffer = MessageSendLogBuffer()
+    buffer.add(payload(id = 1, dateSent = 100, messageId = 10, alice to 1))
+    buffer.deleteForRecipient(listOf(50), alice, 1)
+
+    buffer.remapRecipient(alice, bob)
+
+    assertNull(buffer.find(alice, 1, 100))
+    assertNotNull(buffer.find(bob, 1, 100))
+    assertFalse(buffer.isDeletePending(alice, 1, 50))
+    assertTrue(buffer.isDeletePending(bob, 1, 50))
+  }
+
+  @Test
+  fun `deleteOlderThan - drops expired payloads but keeps deletes`() {
+    val buffer = MessageSendLogBuffer()
+    buffer.add(payload(id = 1, dateSent = 100, messageId = 10, alice to 1))
+    buffer.add(payload(id = 2, dateSent = 200, messageId = 20, alice to 1))
+    buffer.deleteForRecipient(listOf(50), bob, 1)
+
+    buffer.deleteOlderThan(150)
+
+    val drained = buffer.startFlush()
+    assertEquals(listOf(2L), drained.payloads.map { it.id })
+    assertEquals(setOf(50L), drained.deletes[Destination(bob, 1)])
+  }
+
+  @Test
+  fun `startFlush - entries stay visible until the flush finishes`() {
+    val buffer = MessageSendLogBuffer()
+    buffer.add(payload(id = 1, dateSent = 100, messageId = 10, alice to 1))
+    buffer.deleteForRecipient(listOf(50), bob, 1)
+
+    buffer.startFlush()
+
+    assertTrue(buffer.isEmpty())
+    assertNotNull(buffer.find(alice, 1, 100))
+    assertTrue(buffer.isDeletePending(bob, 1, 50))
+
+    buffer.finishFlush(committed = true)
+
+    assertNull(buffer.find(alice, 1, 100))
+    assertFalse(buffer.isDeletePending(bob, 1, 50))
+  }
+
+  @Test
+  fun `finishFlush - entries from a failed flush are put back ahead of newer ones`() {
+    val buffer = MessageSendLogBuffer()
+    buffer.add(payload(id = 1, dateSent = 100, messageId = 10, alice to 1))
+    buffer.deleteForRecipient(listOf(50), bob, 1)
+
+    buffer.startFlush()
+    buffer.add(payload(id = 2, dateSent = 200, messageId = 20, alice to 1))
+    buffer.finishFlush(committed = false)
+
+    val drained = buffer.startFlush()
+    assertEquals(listOf(1L, 2L), drained.payloads.map { it.id })
+    assertEquals(setOf(50L), drained.deletes[Destination(bob, 1)])
+  }
+
+  @Test
+  fun `finishFlush - changes made during a failed flush are kept`() {
+    val buffer = MessageSendLogBuffer()
+    buffer.add(payload(id = 1, dateSent = 100, messageId = 10, alice to 1, bob to 1))
+    buffer.add(payload(id = 2, dateSent = 200, messageId = 20, alice to 1))
+
+    val drained = buffer.startFlush()
+    buffer.deleteForRecipient(listOf(100), alice, 1)
+    buffer.deleteRelatedToMessage(20)
+
+    assertEquals(setOf(Destination(alice, 1), Destination(bob, 1)), drained.payloads.first().destinations)
+    assertNull(buffer.find(alice, 1, 100))
+
+    buffer.finishFlush(committed = false)
+
+    assertNull(buffer.find(alice, 1, 100))
+    assertNotNull(buffer.find(bob, 1, 100))
+    assertNull(buffer.find(alice, 1, 200))
+    assertTrue(buffer.isDeletePending(alice, 1, 100))
+  }
+
+  private fun payload(id: Long, dateSent: Long, messageId: Long, vararg destinations: Pair<RecipientId, Int>): PendingPayload {
+    return PendingPayload(
+      id = id,
+      dateSent = dateSent,
+      content = Content(),
+      contentHint = ContentHint.RESENDABLE,
+      urgent = true,
+      messageIds = listOf(MessageId(messageId)),
+      destinations = destinations.map { Destination(it.first, it.second) }.toMutableSet()
+    )
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import assertk.assertFailure
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import assertk.assertions.isNotNull
+import assertk.assertions.isNull
+import io.mockk.every
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.util.readToSingleInt
+import org.signal.core.util.select
+import org.thoughtcrime.securesms.database.model.MessageId
+import org.thoughtcrime.securesms.recipients.Recipient
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.thoughtcrime.securesms.testutil.RecipientTestRule
+import org.thoughtcrime.securesms.util.RemoteConfig
+import org.whispersystems.signalservice.api.crypto.ContentHint
+import org.whispersystems.signalservice.api.messages.SendMessageResult
+import org.whispersystems.signalservice.api.push.SignalServiceAddress
+import org.whispersystems.signalservice.internal.push.Content
+import org.whispersystems.signalservice.internal.push.DataMessage
+import java.util.Optional
+import kotlin.time.Duration.Companion.days
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class MessageSendLogTablesTest {
+
+  @get:Rule
+  val recipients = RecipientTestRule()
+
+  private val messageLog: MessageSendLogTables
+    get() = SignalDatabase.messageLog
+
+  private lateinit var alice: RecipientId
+  private var messageId: Long = 0
+
+  @Before
+  fun setUp() {
+    every { RemoteConfig.retryReceipts } returns true
+    every { RemoteConfig.retryRespondMaxAge } returns 1.days.inWholeMilliseconds
+
+    alice = recipients.createRecipient("Alice Android")
+    messageId = recipients.insertOutgoingMessage(alice)
+  }
+
+  @Test
+  fun givenAnUnflushedEntry_whenRead_thenItIsFoundInTheBuffer() {
+    // GIVEN
+    val now = System.currentTimeMillis()
+    insert(now, "hello", devices = listOf(1, 2))
+
+    // THEN
+    assertThat(messageLog.getLogEntry(alice, 2, now)?.content?.dataMessage?.body).isEqualTo("hello")
+    assertThat(messageLog.getLogEntry(alice, 3, now)).isNull()
+  }
+
+  @Test
+  fun givenAFlushedEntry_whenRead_thenItIsFoundOnDisk() {
+    // GIVEN
+    val now = System.currentTimeMillis()
+    insert(now, "hello", devices = listOf(1, 2))
+
+    // WHEN
+    messageLog.flush()
+
+    // THEN
+    assertThat(payloadCount()).isEqualTo(1)
+    assertThat(messageLog.getLogEntry(alice, 1, now)?.content?.dataMessage?.body).isEqualTo("hello")
+    assertThat(messageLog.getLogEntry(alice, 1, now)?.relatedMessages).isEqualTo(listOf(MessageId(messageId)))
+  }
+
+  @Test
+  fun givenEveryDeviceDelivered_whenFlushed_thenNothingIsWritten() {
+    // GIVEN
+    val now = System.currentTimeMillis()
+    insert(now, "hello", devices = listOf(1))
+
+    // WHEN
+    messageLog.deleteEntryForRecipient(now, alice, 1)
+    messageLog.flush()
+
+    // THEN
+    assertThat(payloadCount()).isEqualTo(0)
+    assertThat(messageLog.getLogEntry(alice, 1, now)).isNull()
+  }
+
+  @Test
+  fun givenAFlushedEntry_whenADeliveryIsFlushed_thenItIsRemovedFromDisk() {
+    // GIVEN
+    val now = System.currentTimeMillis()
+    insert(now, "hello", devices = listOf(1))
+    messageLog.flush()
+
+    // WHEN
+    messageLog.deleteEntryForRecipient(now, alice, 1)
+
+    // THEN
+    assertThat(messageLog.getLogEntry(alice, 1, now)).isNull()
+
+    messageLog.flush()
+    assertThat(payloadCount()).isEqualTo(0)
+  }
+
+  @Test
+  fun givenAFailedFlush_whenFlushedAgain_thenTheEntryIsWritten() {
+    // GIVEN
+    val now = System.currentTimeMillis()
+    insert(now, "hello", devices = listOf(1))
+    SignalDatabase.writableDatabase.execSQL("ALTER TABLE msl_recipient RENAME TO msl_recipient_hidden")
+
+    // WHEN
+    assertFailure { messageLog.flush() }
+
+    // THEN
+    assertThat(payloadCount()).isEqualTo(0)
+    assertThat(messageLog.getLogEntry(alice, 1, now)?.content?.dataMessage?.body).isEqualTo("hello")
+
+    SignalDatabase.writableDatabase.execSQL("ALTER TABLE msl_recipient_hidden RENAME TO msl_recipient")
+    messageLog.flush()
+
+    assertThat(payloadCount()).isEqualTo(1)
+    assertThat(messageLog.getLogEntry(alice, 1, now)?.content?.dataMessage?.body).isEqualTo("hello")
+  }
+
+  @Test
+  fun givenAReplacedDatabase_whenInserting_thenPayloadIdsDoNotCollide() {
+    // GIVEN
+    val now = System.currentTimeMillis()
+    insert(now - 1000, "old", devices = listOf(1))
+    messageLog.flush()
+    SignalDatabase.writableDatabase.execSQL("INSERT INTO msl_payload (_id, date_sent, content, content_hint) VALUES (2, ${now - 500}, X'', 0)")
+
+    // WHEN
+    messageLog.onDatabaseReplaced()
+    insert(now, "new", devices = listOf(1))
+    messageLog.flush()
+
+    // THEN
+    assertThat(payloadCount()).isEqualTo(3)
+    assertThat(messageLog.getLogEntry(alice, 1, now)?.content?.dataMessage?.body).isEqualTo("new")
+  }
+
+  @Test
+  fun givenEverythingDeleted_whenInsertingAgain_thenTheEntryIsWritten() {
+    // GIVEN
+    val now = System.currentTimeMillis()
+    insert(now - 1000, "old", devices = listOf(1))
+    messageLog.flush()
+
+    // WHEN
+    messageLog.deleteAll()
+    insert(now, "new", devices = listOf(1))
+    messageLog.flush()
+
+    // THEN
+    assertThat(payloadCount()).isEqualTo(1)
+    assertThat(messageLog.getLogEntry(alice, 1, now - 1000)).isNull()
+    assertThat(messageLog.getLogEntry(alice, 1, now)).isNotNull()
+  }
+
+  @Test
+  fun givenMoreExpiredEntriesThanOneBatch_whenTrimmed_thenOnlyExpiredEntriesAreDeleted() {
+    // GIVEN
+    val now = System.currentTimeMillis()
+    for (i in 0 until 1200) {
+      insert(now - 10_000 - (i / 3), "expired $i", devices = listOf(1))
+    }
+    insert(now - 1000, "recent", devices = listOf(1))
+    insert(now, "current", devices = listOf(1))
+    messageLog.flush()
+
+    // WHEN
+    messageLog.trimOldMessages(now, 5_000)
+
+    // THEN
+    assertThat(payloadCount()).isEqualTo(2)
+    assertThat(messageLog.getLogEntry(alice, 1, now - 1000)?.content?.dataMessage?.body).isEqualTo("recent")
+  }
+
+  @Test
+  fun givenAnUnflushedExpiredEntry_whenTrimmed_thenItIsNeverWritten() {
+    // GIVEN
+    val now = System.currentTimeMillis()
+    insert(now - 10_000, "expired", devices = listOf(1))
+
+    // WHEN
+    messageLog.trimOldMessages(now, 5_000)
+    messageLog.flush()
+
+    // THEN
+    assertThat(payloadCount()).isEqualTo(0)
+  }
+
+  private fun insert(dateSent: Long, body: String, devices: List<Int>): Long {
+    val content = Content(dataMessage = DataMessage(body = body, timestamp = dateSent))
+    val address = SignalServiceAddress(Recipient.resolved(alice).requireAci())
+    val result = SendMessageResult.success(address, devices, false, false, 0, Optional.of(content))
+
+    return messageLog.insertIfPossible(alice, dateSent, result, ContentHint.RESENDABLE, MessageId(messageId), true)
+  }
+
+  private fun payloadCount(): Int {
+    return SignalDatabase.readableDatabase
+      .select("COUNT(*)")
+      .from("msl_payload")
+      .run()
+      .readToSingleInt()
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import android.content.ContentValues
+import assertk.assertThat
+import assertk.assertions.contains
+import assertk.assertions.isEmpty
+import assertk.assertions.isEqualTo
+import assertk.assertions.isFalse
+import assertk.assertions.isNotNull
+import assertk.assertions.isNull
+import assertk.assertions.isTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.util.readToList
+import org.thoughtcrime.securesms.mms.OutgoingMessage
+import org.thoughtcrime.securesms.recipients.Recipient
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.thoughtcrime.securesms.testutil.RecipientTestRule
+import java.io.File
+
+/**
+ * Verifies the loading and bulk deletion of disappearing messages, [MessageTable.getExpirationStartedMessages] and
+ * [MessageTable.deleteExpiredMessages].
+ */
+@Suppress("ClassName")
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class MessageTableTest_expiration {
+
+  @get:Rule
+  val recipients = RecipientTestRule()
+
+  private val messages: MessageTable
+    get() = SignalDatabase.messages
+
+  private lateinit var alice: RecipientId
+  private var threadId: Long = 0
+
+  @Before
+  fun setUp() {
+    alice = recipients.createRecipient("Alice Android")
+    threadId = SignalDatabase.threads.getOrCreateThreadIdFor(Recipient.resolved(alice))
+  }
+
+  @Test
+  fun givenStartedAndUnstartedTimers_whenILoadExpirations_thenOnlyStartedOnesAreReturnedByExpirationTime() {
+    // GIVEN
+    val late = insertExpiring(time = 1000, expiresIn = 60_000)
+    val early = insertExpiring(time = 1001, expiresIn = 5_000)
+    insertExpiring(time = 1002, expiresIn = 5_000)
+    insertExpiring(time = 1003, expiresIn = 0)
+    messages.markExpireStarted(late, startedTimestamp = 2000)
+    messages.markExpireStarted(early, startedTimestamp = 3000)
+
+    // WHEN
+    val queue = messages.getExpirationStartedMessages()
+
+    // THEN
+    assertThat(queue.size).isEqualTo(2)
+    assertThat(queue.peekExpiresAt()).isEqualTo(8_000L)
+    assertThat(queue.removeDue(Long.MAX_VALUE, Int.MAX_VALUE)).isEqualTo(listOf(early, late))
+  }
+
+  @Test
+  fun whenILoadExpirations_thenTheQueryIsServedFromTheExpirationIndex() {
+    val plan = SignalDatabase.readableDatabase
+      .rawQuery("EXPLAIN QUERY PLAN SELECT ${MessageTable.ID}, ${MessageTable.EXPIRE_STARTED}, ${MessageTable.EXPIRES_IN} FROM ${MessageTable.TABLE_NAME} WHERE ${MessageTable.EXPIRE_STARTED} > 0", null)
+      .readToList { it.getString(3) }
+
+    assertThat(plan.joinToString()).contains("COVERING INDEX message_expiration_index")
+  }
+
+  @Test
+  fun givenExpiredMessages_whenIDeleteThem_thenOnlyThoseMessagesAreRemovedAndTheThreadSnippetMovesBack() {
+    // GIVEN
+    val kept = insertExpiring(time = 1000, expiresIn = 0, body = "kept")
+    val expired = listOf(
+      insertExpiring(time = 1001, expiresIn = 1_000, body = "expired 1"),
+      insertExpiring(time = 1002, expiresIn = 1_000, body = "expired 2")
+    )
+
+    // WHEN
+    val deleted = messages.deleteExpiredMessages(expired)
+
+    // THEN
+    assertThat(deleted).isEqualTo(2)
+    assertThat(expired.all { messages.getMessageRecordOrNull(it) == null }).isTrue()
+    assertThat(messages.getMessageRecordOrNull(kept)).isNotNull()
+    assertThat(SignalDatabase.threads.getThreadRecord(threadId)?.snippet).isEqualTo("kept")
+  }
+
+  @Test
+  fun givenEveryMessageInAThreadExpired_whenIDeleteThem_thenTheThreadIsDeleted() {
+    // GIVEN
+    val expired = listOf(
+      insertExpiring(time = 1000, expiresIn = 1_000),
+      insertExpiring(time = 1001, expiresIn = 1_000)
+    )
+
+    // WHEN
+    messages.deleteExpiredMessages(expired)
+
+    // THEN
+    assertThat(SignalDatabase.threads.getThreadRecord(threadId)).isNull()
+  }
+
+  @Test
+  fun givenAnExpiredMessageWithAnAttachment_whenIDeleteIt_thenTheAttachmentAndItsFileAreDeleted() {
+    // GIVEN
+    val messageId = insertExpiring(time = 1000, expiresIn = 1_000)
+    val dataFile = File.createTempFile("expiration-test", ".mms").apply { writeBytes(ByteArray(16)) }
+    insertAttachment(messageId, dataFile)
+
+    // WHEN
+    messages.deleteExpiredMessages(listOf(messageId))
+
+    // THEN
+    assertThat(SignalDatabase.attachments.getAttachmentsForMessage(messageId)).isEmpty()
+    assertThat(dataFile.exists()).isFalse()
+  }
+
+  @Test
+  fun givenIdsThatNoLongerExist_whenIDeleteThem_thenTheyAreIgnored() {
+    // GIVEN
+    val messageId = insertExpiring(time = 1000, expiresIn = 1_000)
+    val alreadyDeleted = insertExpiring(time = 1001, expiresIn = 1_000)
+    messages.deleteExpiredMessages(listOf(alreadyDeleted))
+
+    // WHEN
+    val deleted = messages.deleteExpiredMessages(listOf(messageId, alreadyDeleted, 9_999))
+
+    // THEN
+    assertThat(deleted).isEqualTo(1)
+    assertThat(messages.deleteExpiredMessages(listOf(messageId))).isEqualTo(0)
+  }
+
+  private fun insertExpiring(time: Long, expiresIn: Long, body: String = "body"): Long {
+    val message = OutgoingMessage(
+      threadRecipient = Recipient.resolved(alice),
+      sentTimeMillis = time,
+      body = body,
+      expiresIn = expiresIn,
+      isSecure = true
+    )
+    return recipients.insertOutgoingMessage(message, threadId)
+  }
+
+  private fun insertAttachment(messageId: Long, dataFile: File) {
+    SignalDatabase.writableDatabase.insert(
+      AttachmentTable.TABLE_NAME,
+      null,
+      ContentValues().apply {
+        put(AttachmentTable.MESSAGE_ID, messageId)
+        put(AttachmentTable.TRANSFER_STATE, AttachmentTable.TRANSFER_PROGRESS_DONE)
+        put(AttachmentTable.CONTENT_TYPE, "application/octet-stream")
+        put(AttachmentTable.DATA_FILE, dataFile.absolutePath)
+        put(AttachmentTable.DATA_RANDOM, ByteArray(32) { 1 })
+        put(AttachmentTable.DATA_SIZE, dataFile.length())
+      }
+    )
+  }
+}
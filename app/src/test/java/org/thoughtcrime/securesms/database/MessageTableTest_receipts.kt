@@ -0,0 +1,116 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import assertk.assertThat
+import assertk.assertions.containsExactlyInAnyOrder
+import assertk.assertions.isEqualTo
+import assertk.assertions.isFalse
+import assertk.assertions.isTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.thoughtcrime.securesms.database.GroupReceiptTable.GroupReceiptInfo
+import org.thoughtcrime.securesms.database.MessageTable.IncomingReceipt
+import org.thoughtcrime.securesms.database.MessageTable.ReceiptType
+import org.thoughtcrime.securesms.mms.OutgoingMessage
+import org.thoughtcrime.securesms.recipients.Recipient
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.thoughtcrime.securesms.testutil.RecipientTestRule
+
+@Suppress("ClassName")
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class MessageTableTest_receipts {
+
+  @get:Rule
+  val recipients = RecipientTestRule()
+
+  private val messages: MessageTable
+    get() = SignalDatabase.messages
+
+  private lateinit var alice: RecipientId
+  private lateinit var bob: RecipientId
+  private lateinit var carol: RecipientId
+
+  @Before
+  fun setUp() {
+    alice = recipients.createRecipient("Alice Android")
+    bob = recipients.createRecipient("Bob Android")
+    carol = recipients.createRecipient("Carol Android")
+  }
+
+  @Test
+  fun givenReceiptsForSeveralMessages_whenAppliedTogether_thenEachMessageIsMarked() {
+    // GIVEN
+    val toAlice = recipients.insertOutgoingMessage(alice, sentTimeMillis = 1000)
+    val toBob = recipients.insertOutgoingMessage(bob, sentTimeMillis = 2000)
+
+    // WHEN
+    val missing = messages.incrementReceiptCounts(
+      listOf(
+        IncomingReceipt(1000, alice, 5000, ReceiptType.DELIVERY),
+        IncomingReceipt(1000, alice, 6000, ReceiptType.READ),
+        IncomingReceipt(2000, bob, 7000, ReceiptType.DELIVERY)
+      )
+    )
+
+    // THEN
+    assertThat(missing).isEqualTo(emptySet())
+    assertThat(messages.getMessageRecord(toAlice).hasDeliveryReceipt()).isTrue()
+    assertThat(messages.getMessageRecord(toAlice).hasReadReceipt()).isTrue()
+    assertThat(messages.getMessageRecord(toAlice).receiptTimestamp).isEqualTo(6000L)
+    assertThat(messages.getMessageRecord(toBob).hasDeliveryReceipt()).isTrue()
+    assertThat(messages.getMessageRecord(toBob).hasReadReceipt()).isFalse()
+  }
+
+  @Test
+  fun givenReceiptsFromTheWrongAuthorOrForUnknownMessages_whenApplied_thenTheyAreReturnedAsMissing() {
+    // GIVEN
+    val toAlice = recipients.insertOutgoingMessage(alice, sentTimeMillis = 1000)
+    val fromBob = IncomingReceipt(1000, bob, 5000, ReceiptType.READ)
+    val unknown = IncomingReceipt(3000, alice, 5000, ReceiptType.READ)
+
+    // WHEN
+    val missing = messages.incrementReceiptCounts(listOf(fromBob, unknown, IncomingReceipt(1000, alice, 5000, ReceiptType.READ)))
+
+    // THEN
+    assertThat(missing).isEqualTo(setOf(fromBob, unknown))
+    assertThat(messages.getMessageRecord(toAlice).hasReadReceipt()).isTrue()
+  }
+
+  @Test
+  fun givenReceiptsFromGroupMembers_whenApplied_thenOnlyMembersAreRecorded() {
+    // GIVEN
+    val group = recipients.createGroup(alice, bob)
+    val groupRecipient = Recipient.resolved(group.recipientId)
+    val threadId = SignalDatabase.threads.getOrCreateThreadIdFor(groupRecipient)
+    val messageId = recipients.insertOutgoingMessage(OutgoingMessage(recipient = groupRecipient, body = "body", timestamp = 1000, isSecure = true), threadId)
+    val fromCarol = IncomingReceipt(1000, carol, 5000, ReceiptType.DELIVERY)
+
+    // WHEN
+    val missing = messages.incrementReceiptCounts(
+      listOf(
+        IncomingReceipt(1000, alice, 4000, ReceiptType.DELIVERY),
+        IncomingReceipt(1000, bob, 4500, ReceiptType.READ),
+        fromCarol
+      )
+    )
+
+    // THEN
+    assertThat(missing).isEqualTo(setOf(fromCarol))
+    assertThat(messages.getMessageRecord(messageId).hasDeliveryReceipt()).isTrue()
+    assertThat(messages.getMessageRecord(messageId).hasReadReceipt()).isTrue()
+    assertThat(SignalDatabase.groupReceipts.getGroupReceiptInfo(messageId)).containsExactlyInAnyOrder(
+      GroupReceiptInfo(alice, GroupReceiptTable.STATUS_DELIVERED, 4000, false),
+      GroupReceiptInfo(bob, GroupReceiptTable.STATUS_READ, 4500, false)
+    )
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import androidx.core.content.contentValuesOf
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.models.ServiceId.ACI
+import org.signal.core.models.ServiceId.PNI
+import org.signal.core.util.readToList
+import org.signal.core.util.requireBoolean
+import org.signal.core.util.requireLong
+import org.signal.core.util.requireString
+import org.signal.core.util.select
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.thoughtcrime.securesms.testutil.RecipientTestRule
+import java.util.UUID
+import kotlin.random.Random
+
+/**
+ * Checks that [RecipientTable.bulkGetAndPossiblyMerge] is equivalent to calling [RecipientTable.getAndPossiblyMerge] on each tuple in turn.
+ *
+ * Each round builds a random set of recipients and tuples over a small pool of identifiers, so that tuples often collide with each other and with
+ * what's already in the database. The round is written out twice with different identifiers, one copy resolved serially and the other in bulk, and
+ * the two are compared. PNP resolution only cares whether identifiers are equal, so the copies can share a database without affecting each other.
+ */
+@Suppress("ClassName")
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class RecipientTableTest_bulkGetAndPossiblyMerge {
+
+  companion object {
+    private const val ROUNDS = 25
+    private const val POOL_SIZE = 8
+    private const val SEED_ROWS = 6
+    private const val TUPLES = 40
+  }
+
+  @get:Rule
+  val recipients = RecipientTestRule()
+
+  @Test
+  fun bulkMatchesSerial() {
+    val random = Random(1234)
+
+    for (round in 0 until ROUNDS) {
+      val scenario = Scenario.random(random)
+      val serial = Namespace(round * 2 + 1)
+      val bulk = Namespace(round * 2 + 2)
+
+      scenario.seed(serial)
+      scenario.seed(bulk)
+
+      val serialIds: List<RecipientId> = scenario.tuples.map {
+        SignalDatabase.recipients.getAndPossiblyMerge(aci = serial.aci(it.aci), pni = serial.pni(it.pni), e164 = serial.e164(it.e164), pniVerified = it.pniVerified)
+      }
+
+      val bulkIds: List<RecipientId> = SignalDatabase.recipients.bulkGetAndPossiblyMerge(
+        scenario.tuples.map { RecipientTable.PnpTuple(aci = bulk.aci(it.aci), pni = bulk.pni(it.pni), e164 = bulk.e164(it.e164), pniVerified = it.pniVerified) }
+      )
+
+      val serialRows: Map<RecipientId, Row> = readRows(serial)
+      val bulkRows: Map<RecipientId, Row> = readRows(bulk)
+
+      assertEquals("Round $round: ${scenario.tuples}", serialRows.values.toSet(), bulkRows.values.toSet())
+      assertEquals("Round $round", serialRows.size, bulkRows.size)
+      assertEquals("Round $round", serialIds.size, bulkIds.size)
+
+      for (i in serialIds.indices) {
+        assertEquals("Round $round, tuple $i: ${scenario.tuples[i]}", serialRows[serialIds[i]], bulkRows[bulkIds[i]])
+
+        for (j in 0 until i) {
+          assertEquals("Round $round, tuples $j and $i", serialIds[i] == serialIds[j], bulkIds[i] == bulkIds[j])
+        }
+      }
+    }
+  }
+
+  @Test
+  fun emptyInput_returnsNothing() {
+    assertTrue(SignalDatabase.recipients.bulkGetAndPossiblyMerge(emptyList()).isEmpty())
+  }
+
+  /**
+   * Reads every recipient with an identifier from [namespace], with each identifier translated back to its index in the pool.
+   */
+  private fun readRows(namespace: Namespace): Map<RecipientId, Row> {
+    return SignalDatabase.recipients.readableDatabase
+      .select(RecipientTable.ID, RecipientTable.E164, RecipientTable.ACI_COLUMN, RecipientTable.PNI_COLUMN, RecipientTable.PNI_SIGNATURE_VERIFIED)
+      .from(RecipientTable.TABLE_NAME)
+      .run()
+      .readToList { cursor ->
+        RecipientId.from(cursor.requireLong(RecipientTable.ID)) to Row(
+          e164 = namespace.indexOfE164(cursor.requireString(RecipientTable.E164)),
+          aci = namespace.indexOfAci(cursor.requireString(RecipientTable.ACI_COLUMN)),
+          pni = namespace.indexOfPni(cursor.requireString(RecipientTable.PNI_COLUMN)),
+          pniVerified = cursor.requireBoolean(RecipientTable.PNI_SIGNATURE_VERIFIED)
+        )
+      }
+      .filter { (_, row) -> row.e164 != null || row.aci != null || row.pni != null }
+      .toMap()
+  }
+
+  private data class Row(val e164: Int?, val aci: Int?, val pni: Int?, val pniVerified: Boolean)
+
+  private data class Tuple(val e164: Int?, val aci: Int?, val pni: Int?, val pniVerified: Boolean)
+
+  /**
+   * A round of recipients and tuples, described by indices into a pool of identifiers rather than by the identifiers themselves.
+   */
+  private class Scenario(val rows: List<Tuple>, val tuples: List<Tuple>) {
+
+    fun seed(namespace: Namespace) {
+      for (row in rows) {
+        SignalDatabase.recipients.writableDatabase.insert(
+          RecipientTable.TABLE_NAME,
+          null,
+          contentValuesOf(
+            RecipientTable.E164 to namespace.e164(row.e164),
+            RecipientTable.ACI_COLUMN to namespace.aci(row.aci)?.toString(),
+            RecipientTable.PNI_COLUMN to namespace.pni(row.pni)?.toString(),
+            RecipientTable.REGISTERED to RecipientTable.RegisteredState.REGISTERED.id
+          )
+        )
+      }
+    }
+
+    companion object {
+      fun random(random: Random): Scenario {
+        val e164s = (0 until POOL_SIZE).shuffled(random).toMutableList()
+        val acis = (0 until POOL_SIZE).shuffled(random).toMutableList()
+        val pnis = (0 until POOL_SIZE).shuffled(random).toMutableList()
+
+        val rows = List(SEED_ROWS) {
+          Tuple(
+            e164 = if (random.nextInt(10) < 6) e164s.removeLastOrNull() else null,
+            aci = if (random.nextInt(10) < 4) acis.removeLastOrNull() else null,
+            pni = if (random.nextInt(10) < 6) pnis.removeLastOrNull() else null,
+            pniVerified = false
+          )
+        }.filter { it.e164 != null || it.aci != null || it.pni != null }
+
+        val tuples = List(TUPLES) {
+          var tuple: Tuple
+          do {
+            tuple = Tuple(
+              e164 = if (random.nextBoolean()) random.nextInt(POOL_SIZE) else null,
+              aci = if (random.nextBoolean()) random.nextInt(POOL_SIZE) else null,
+              pni = if (random.nextBoolean()) random.nextInt(POOL_SIZE) else null,
+              pniVerified = random.nextInt(4) == 0
+            )
+          } while (tuple.e164 == null && tuple.aci == null && tuple.pni == null)
+          tuple
+        }
+
+        return Scenario(rows, tuples)
+      }
+    }
+  }
+
+  /**
+   * Maps pool indices to concrete identifiers that no other namespace uses.
+   */
+  private class Namespace(private val id: Int) {
+    private val e164s: List<String> = List(POOL_SIZE) { "+1222%03d%04d".format(200 + id, it) }
+    private val acis: List<ACI> = List(POOL_SIZE) { ACI.from(UUID(id.toLong(), it.toLong())) }
+    private val pnis: List<PNI> = List(POOL_SIZE) { PNI.from(UUID(id.toLong() + Int.MAX_VALUE, it.toLong())) }
+
+    fun e164(index: Int?): String? = index?.let { e164s[it] }
+    fun aci(index: Int?): ACI? = index?.let { acis[it] }
+    fun pni(index: Int?): PNI? = index?.let { pnis[it] }
+
+    fun indexOfE164(value: String?): Int? = e164s.indexOf(value).takeIf { it >= 0 }
+    fun indexOfAci(value: String?): Int? = acis.indexOfFirst { it.toString() == value }.takeIf { it >= 0 }
+    fun indexOfPni(value: String?): Int? = pnis.indexOfFirst { it.toString() == value }.takeIf { it >= 0 }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import org.signal.core.models.ServiceId.ACI
+import org.signal.libsignal.protocol.SignalProtocolAddress
+import java.util.UUID
+
+class SessionRecordCacheTest {
+
+  private val key = SessionRecordCache.Key(ACI.from(UUID.randomUUID()), SignalProtocolAddress(ACI.from(UUID.randomUUID()).toString(), 1))
+  private val committed = byteArrayOf(1)
+  private val uncommitted = byteArrayOf(2)
+
+  @Test
+  fun `putFromRead - ignored while the key is dirty`() {
+    val cache = SessionRecordCache(10)
+    cache.markDirty(key)
+
+    cache.putFromRead(key, uncommitted, cache.generation)
+
+    assertNull(cache.get(key))
+  }
+
+  @Test
+  fun `clearDirty - after a rollback, reads are cached again and nothing is left dirty`() {
+    val cache = SessionRecordCache(10)
+    cache.put(key, committed)
+
+    cache.markDirty(key)
+    cache.clearDirty(key)
+
+    assertNull(cache.get(key))
+    assertEquals(0, cache.dirtyCount())
+
+    cache.putFromRead(key, committed, cache.generation)
+    assertArrayEquals(committed, cache.get(key))
+  }
+
+  @Test
+  fun `clearDirty - after a commit, the committed record is cached`() {
+    val cache = SessionRecordCache(10)
+
+    cache.markDirty(key)
+    cache.clearDirty(key)
+    cache.put(key, uncommitted)
+
+    assertArrayEquals(uncommitted, cache.get(key))
+    assertEquals(0, cache.dirtyCount())
+  }
+
+  @Test
+  fun `clearDirty - key stays dirty until every write to it has ended`() {
+    val cache = SessionRecordCache(10)
+
+    cache.markDirty(key)
+    cache.markDirty(key)
+    cache.clearDirty(key)
+
+    cache.putFromRead(key, committed, cache.generation)
+    assertNull(cache.get(key))
+
+    cache.clearDirty(key)
+    cache.putFromRead(key, committed, cache.generation)
+    assertArrayEquals(committed, cache.get(key))
+  }
+
+  @Test
+  fun `put - dropped when another write to the key is still pending`() {
+    val cache = SessionRecordCache(10)
+
+    cache.markDirty(key)
+    cache.put(key, committed)
+
+    assertNull(cache.get(key))
+  }
+
+  @Test
+  fun `putFromRead - ignored when a write happened since the read started`() {
+    val cache = SessionRecordCache(10)
+    val generation = cache.generation
+
+    cache.remove(key)
+    cache.putFromRead(key, committed, generation)
+
+    assertNull(cache.get(key))
+  }
+}
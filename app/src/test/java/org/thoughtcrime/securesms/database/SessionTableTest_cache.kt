@@ -0,0 +1,114 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.models.ServiceId.ACI
+import org.signal.libsignal.protocol.SignalProtocolAddress
+import org.signal.libsignal.protocol.state.SessionRecord
+import org.thoughtcrime.securesms.testutil.MockAppDependenciesRule
+import org.thoughtcrime.securesms.testutil.SignalDatabaseRule
+import java.util.UUID
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class SessionTableTest_cache {
+
+  @get:Rule
+  val appDependencies = MockAppDependenciesRule()
+
+  @get:Rule
+  val signalDatabaseRule = SignalDatabaseRule()
+
+  private val self: ACI = ACI.from(UUID.randomUUID())
+  private val address = SignalProtocolAddress(ACI.from(UUID.randomUUID()).toString(), 1)
+
+  @Test
+  fun givenAStoredSession_whenILoad_thenIExpectTheCachedRecord() {
+    val record = SessionRecord()
+    SignalDatabase.sessions.store(self, address, record)
+
+    val hitsBefore = SignalDatabase.sessions.cacheStats.hits
+    assertArrayEquals(record.serialize(), SignalDatabase.sessions.load(self, address)!!.serialize())
+    assertArrayEquals(record.serialize(), SignalDatabase.sessions.load(self, listOf(address)).single()!!.serialize())
+    assertEquals(hitsBefore + 2, SignalDatabase.sessions.cacheStats.hits)
+  }
+
+  @Test
+  fun givenACachedSession_whenILoadItTwice_thenIExpectIndependentCopies() {
+    val record = SessionRecord()
+    SignalDatabase.sessions.store(self, address, record)
+
+    val first = SignalDatabase.sessions.load(self, address)
+    val second = SignalDatabase.sessions.load(self, address)
+
+    assertNotSame(record, first)
+    assertNotSame(first, second)
+    assertNotSame(first, SignalDatabase.sessions.load(self, listOf(address)).single())
+  }
+
+  @Test
+  fun givenAStoreInATransaction_whenItCommits_thenIExpectTheRecordCached() {
+    val record = SessionRecord()
+
+    SignalDatabase.runInTransaction {
+      SignalDatabase.sessions.store(self, address, record)
+    }
+
+    val hitsBefore = SignalDatabase.sessions.cacheStats.hits
+    assertArrayEquals(record.serialize(), SignalDatabase.sessions.load(self, address)!!.serialize())
+    assertEquals(hitsBefore + 1, SignalDatabase.sessions.cacheStats.hits)
+  }
+
+  @Test
+  fun givenAStoreInATransaction_whenItRollsBack_thenIExpectTheRecordNotCached() {
+    SignalDatabase.sessions.store(self, address, SessionRecord())
+    val rolledBack = SessionRecord()
+
+    val db = SignalDatabase.writableDatabase
+    db.beginTransaction()
+    try {
+      SignalDatabase.sessions.store(self, address, rolledBack)
+      SignalDatabase.sessions.load(self, address)
+    } finally {
+      db.endTransaction()
+    }
+
+    val loaded = SignalDatabase.sessions.load(self, address)
+    assertNotNull(loaded)
+    assertNotSame(rolledBack, loaded)
+  }
+
+  @Test
+  fun givenACachedSession_whenIDelete_thenIExpectItGone() {
+    SignalDatabase.sessions.store(self, address, SessionRecord())
+    SignalDatabase.sessions.delete(self, address)
+
+    assertNull(SignalDatabase.sessions.load(self, address))
+  }
+
+  @Test
+  fun givenCachedSessions_whenIDeleteAllForAnAddress_thenIExpectThemGone() {
+    val otherDevice = SignalProtocolAddress(address.name, 2)
+    SignalDatabase.sessions.store(self, address, SessionRecord())
+    SignalDatabase.sessions.store(self, otherDevice, SessionRecord())
+
+    SignalDatabase.sessions.deleteAllFor(self, address.name)
+
+    assertNull(SignalDatabase.sessions.load(self, address))
+    assertNull(SignalDatabase.sessions.load(self, otherDevice))
+  }
+}
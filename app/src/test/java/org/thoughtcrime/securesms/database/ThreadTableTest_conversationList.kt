@@ -0,0 +1,237 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import android.database.Cursor
+import io.mockk.every
+import io.mockk.mockk
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.util.requireLong
+import org.signal.core.util.update
+import org.thoughtcrime.securesms.components.settings.app.chats.folders.ChatFolderRecord
+import org.thoughtcrime.securesms.conversationlist.model.ConversationFilter
+import org.thoughtcrime.securesms.database.ThreadTable.ConversationListKey
+import org.thoughtcrime.securesms.dependencies.AppDependencies
+import org.thoughtcrime.securesms.testutil.RecipientTestRule
+
+@Suppress("ClassName")
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class ThreadTableTest_conversationList {
+
+  @get:Rule
+  val recipients = RecipientTestRule()
+
+  private val allChats: ChatFolderRecord = ChatFolderRecord(folderType = ChatFolderRecord.FolderType.ALL)
+
+  /** Stands in for [DatabaseObserver.getConversationListVersion], which the mocked observer would otherwise leave at zero. */
+  private var listVersion = 0L
+
+  @Before
+  fun setUp() {
+    val databaseObserver = mockk<DatabaseObserver>(relaxed = true) {
+      every { conversationListVersion } answers { listVersion }
+      every { notifyConversationListListeners() } answers { listVersion++ }
+    }
+
+    every { AppDependencies.databaseObserver } returns databaseObserver
+  }
+
+  @Test
+  fun givenThreadsSharingADate_whenPagingByKey_thenEveryUnpinnedThreadIsReturnedOnceInOrder() {
+    // GIVEN
+    val dates = listOf(2000L, 1000L, 1000L, 3000L, 1000L, 2000L, 1000L)
+    val unpinned = dates.map { insertThread(date = it) }
+    val pinnedAtSharedDate = insertThread(date = 1000L)
+    val pinnedAtOwnDate = insertThread(date = 4000L)
+    SignalDatabase.threads.pinConversations(listOf(pinnedAtSharedDate, pinnedAtOwnDate))
+
+    // WHEN
+    val unpaged = SignalDatabase.threads.getUnarchivedConversationList(ConversationFilter.OFF, false, 0, 0, allChats).use { it.readThreadIds() }
+
+    // THEN
+    val expected = unpinned.zip(dates).sortedWith(compareByDescending<Pair<Long, Long>> { it.second }.thenByDescending { it.first }).map { it.first }
+    assertEquals(expected, unpaged)
+
+    for (limit in listOf(1L, 2L, 3L)) {
+      val paged = mutableListOf<Long>()
+      var after: ConversationListKey? = null
+
+      do {
+        val key = after
+        val page = if (key == null) {
+          SignalDatabase.threads.getUnarchivedConversationList(ConversationFilter.OFF, false, 0, limit, allChats)
+        } else {
+          SignalDatabase.threads.getUnarchivedConversationListAfter(ConversationFilter.OFF, key, limit, allChats)
+        }.use { cursor ->
+          if (cursor.moveToLast()) {
+            after = ConversationListKey.fromCursor(cursor)
+          }
+          cursor.moveToPosition(-1)
+          cursor.readThreadIds()
+        }
+
+        paged += page
+      } while (page.size.toLong() == limit)
+
+      assertEquals("limit $limit", unpaged, paged)
+    }
+
+    val pinned = SignalDatabase.threads.getUnarchivedConversationList(ConversationFilter.OFF, true, 0, 0, allChats).use { it.readThreadIds() }
+    assertEquals(listOf(pinnedAtSharedDate, pinnedAtOwnDate), pinned)
+  }
+
+  @Test
+  fun givenACachedCount_whenAThreadChangesWithoutBeingReported_thenTheCountIsStaleUntilTheVersionChanges() {
+    // GIVEN
+    val first = insertThread(date = 1000L)
+    insertThread(date = 2000L)
+    assertEquals(2, unarchivedCount())
+
+    // WHEN
+    setArchivedDirectly(first)
+
+    // THEN
+    assertEquals(2, unarchivedCount())
+
+    listVersion++
+    assertEquals(1, unarchivedCount())
+    assertEquals(1, archivedCount())
+  }
+
+  @Test
+  fun givenACachedCount_whenAThreadIsMarkedChanged_thenOnlyThatThreadIsCheckedAgain() {
+    // GIVEN
+    val first = insertThread(date = 1000L)
+    val second = insertThread(date = 2000L)
+    insertThread(date = 3000L)
+    assertEquals(3, unarchivedCount())
+    assertEquals(0, archivedCount())
+
+    // WHEN
+    setArchivedDirectly(first)
+    setArchivedDirectly(second)
+    SignalDatabase.threads.incrementUnread(first, 1, 0)
+
+    // THEN
+    assertEquals(2, unarchivedCount())
+    assertEquals(1, archivedCount())
+
+    listVersion++
+    assertEquals(1, unarchivedCount())
+    assertEquals(2, archivedCount())
+  }
+
+  @Test
+  fun givenCachedCounts_whenAThreadIsArchivedAndUnarchived_thenTheCountsFollow() {
+    // GIVEN
+    val threadId = insertThread(date = 1000L)
+    insertThread(date = 2000L)
+    assertEquals(2, unarchivedCount())
+    assertEquals(0, archivedCount())
+
+    // WHEN
+    SignalDatabase.threads.archiveConversation(threadId)
+
+    // THEN
+    assertEquals(1, unarchivedCount())
+    assertEquals(1, archivedCount())
+    assertTrue(threadId in archivedThreadIds())
+
+    // WHEN
+    SignalDatabase.threads.unarchiveConversation(threadId)
+
+    // THEN
+    assertEquals(2, unarchivedCount())
+    assertEquals(0, archivedCount())
+    assertFalse(threadId in archivedThreadIds())
+  }
+
+  @Test
+  fun givenACachedPinnedCount_whenAPinnedThreadIsArchived_thenItIsNoLongerCountedAsPinned() {
+    // GIVEN
+    val threadId = insertThread(date = 1000L)
+    SignalDatabase.threads.pinConversations(listOf(threadId))
+    assertEquals(1, pinnedCount())
+
+    // WHEN
+    SignalDatabase.threads.archiveConversation(threadId)
+
+    // THEN
+    assertEquals(0, pinnedCount())
+    assertEquals(0, unarchivedCount())
+    assertEquals(1, archivedCount())
+  }
+
+  /** A new message unarchives a thread through [ThreadTable.update], which reports the thread rather than bumping the version. */
+  @Test
+  fun givenAnArchivedThread_whenItIsUpdatedWithUnarchive_thenTheCachedCountsFollowWithoutAVersionChange() {
+    // GIVEN
+    val threadId = insertThread(date = 1000L)
+    SignalDatabase.threads.archiveConversation(threadId)
+    assertEquals(0, unarchivedCount())
+    assertEquals(1, archivedCount())
+    val version = listVersion
+
+    // WHEN
+    SignalDatabase.threads.update(threadId, unarchive = true)
+
+    // THEN
+    assertEquals(version, listVersion)
+    assertEquals(1, unarchivedCount())
+    assertEquals(0, archivedCount())
+  }
+
+  private fun insertThread(date: Long): Long {
+    val recipientId = recipients.createRecipient("Buddy $date")
+    recipients.insertOutgoingMessage(recipientId)
+
+    val threadId = SignalDatabase.threads.getThreadIdFor(recipientId)!!
+    SignalDatabase.writableDatabase
+      .update(ThreadTable.TABLE_NAME)
+      .values(ThreadTable.DATE to date)
+      .where("${ThreadTable.ID} = ?", threadId)
+      .run()
+
+    return threadId
+  }
+
+  /** Archives behind the table's back, the way a change that neither reports the thread nor notifies the list would. */
+  private fun setArchivedDirectly(threadId: Long) {
+    SignalDatabase.writableDatabase
+      .update(ThreadTable.TABLE_NAME)
+      .values(ThreadTable.ARCHIVED to 1)
+      .where("${ThreadTable.ID} = ?", threadId)
+      .run()
+  }
+
+  private fun unarchivedCount(): Int = SignalDatabase.threads.getUnarchivedConversationListCount(ConversationFilter.OFF, allChats)
+
+  private fun pinnedCount(): Int = SignalDatabase.threads.getPinnedConversationListCount(ConversationFilter.OFF, allChats)
+
+  private fun archivedCount(): Int = SignalDatabase.threads.getArchivedConversationListCount(ConversationFilter.OFF)
+
+  private fun archivedThreadIds(): List<Long> {
+    return SignalDatabase.threads.getArchivedConversationList(ConversationFilter.OFF).use { it.readThreadIds() }
+  }
+
+  private fun Cursor.readThreadIds(): List<Long> {
+    val ids = mutableListOf<Long>()
+    while (moveToNext()) {
+      ids += requireLong(ThreadTable.ID)
+    }
+    return ids
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database.helpers.migration
+
+import android.app.Application
+import androidx.test.core.app.ApplicationProvider
+import assertk.assertThat
+import assertk.assertions.containsExactlyInAnyOrder
+import assertk.assertions.isEmpty
+import assertk.assertions.isEqualTo
+import io.mockk.every
+import io.mockk.mockk
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.util.insertInto
+import org.signal.core.util.readToList
+import org.signal.core.util.requireInt
+import org.signal.core.util.requireLong
+import org.signal.core.util.select
+import org.thoughtcrime.securesms.database.GroupReceiptTable
+import org.thoughtcrime.securesms.database.GroupReceiptTable.GroupReceiptInfo
+import org.thoughtcrime.securesms.database.SignalDatabase
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.thoughtcrime.securesms.testutil.SignalDatabaseMigrationRule
+
+@Suppress("ClassName")
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class V331_CompactGroupReceiptsTest {
+
+  @get:Rule val signalDatabaseRule = SignalDatabaseMigrationRule(330)
+
+  private val db get() = signalDatabaseRule.database
+
+  @Test
+  fun migrate_keepsEachRecipientsStatusAndTimestamp() {
+    val (alice, bob, carol, dave) = List(4) { insertRecipient() }
+    val threadId = insertThread()
+    val messageId = insertMessage(threadId)
+
+    insertReceipt(messageId, alice, GroupReceiptTable.STATUS_UNDELIVERED, timestamp = 0)
+    insertReceipt(messageId, bob, GroupReceiptTable.STATUS_DELIVERED, timestamp = 1_700_000_000_500)
+    insertReceipt(messageId, carol, GroupReceiptTable.STATUS_READ, timestamp = 1_700_000_000_100)
+    insertReceipt(messageId, dave, GroupReceiptTable.STATUS_VIEWED, timestamp = 1_700_000_009_000)
+
+    migrate()
+
+    assertThat(receiptsFor(messageId)).containsExactlyInAnyOrder(
+      GroupReceiptInfo(RecipientId.from(alice), GroupReceiptTable.STATUS_UNDELIVERED, 0, false),
+      GroupReceiptInfo(RecipientId.from(bob), GroupReceiptTable.STATUS_DELIVERED, 1_700_000_000_500, false),
+      GroupReceiptInfo(RecipientId.from(carol), GroupReceiptTable.STATUS_READ, 1_700_000_000_100, false),
+      GroupReceiptInfo(RecipientId.from(dave), GroupReceiptTable.STATUS_VIEWED, 1_700_000_009_000, false)
+    )
+  }
+
+  @Test
+  fun migrate_keepsSkippedAndFailedStatuses() {
+    val (alice, bob) = List(2) { insertRecipient() }
+    val messageId = insertMessage(insertThread())
+
+    insertReceipt(messageId, alice, GroupReceiptTable.STATUS_SKIPPED, timestamp = 10)
+    insertReceipt(messageId, bob, GroupReceiptTable.STATUS_FAILED, timestamp = 20)
+
+    migrate()
+
+    assertThat(receiptsFor(messageId)).containsExactlyInAnyOrder(
+      GroupReceiptInfo(RecipientId.from(alice), GroupReceiptTable.STATUS_SKIPPED, 10, false),
+      GroupReceiptInfo(RecipientId.from(bob), GroupReceiptTable.STATUS_FAILED, 20, false)
+    )
+  }
+
+  @Test
+  fun migrate_keepsUnidentifiedFlags() {
+    val (alice, bob, carol) = List(3) { insertRecipient() }
+    val messageId = insertMessage(insertThread())
+
+    insertReceipt(messageId, alice, GroupReceiptTable.STATUS_DELIVERED, timestamp = 10, unidentified = true)
+    insertReceipt(messageId, bob, GroupReceiptTable.STATUS_DELIVERED, timestamp = 10, unidentified = false)
+    insertReceipt(messageId, carol, GroupReceiptTable.STATUS_READ, timestamp = 30, unidentified = true)
+
+    migrate()
+
+    assertThat(receiptsFor(messageId)).containsExactlyInAnyOrder(
+      GroupReceiptInfo(RecipientId.from(alice), GroupReceiptTable.STATUS_DELIVERED, 10, true),
+      GroupReceiptInfo(RecipientId.from(bob), GroupReceiptTable.STATUS_DELIVERED, 10, false),
+      GroupReceiptInfo(RecipientId.from(carol), GroupReceiptTable.STATUS_READ, 30, true)
+    )
+  }
+
+  /** A member who left the group keeps their receipts on the messages they were sent, and isn't added to the ones after. */
+  @Test
+  fun migrate_keepsReceiptsOfMembersWhoLeft() {
+    val (alice, bob) = List(2) { insertRecipient() }
+    val threadId = insertThread()
+    val beforeLeaving = insertMessage(threadId)
+    val afterLeaving = insertMessage(threadId)
+
+    insertReceipt(beforeLeaving, alice, GroupReceiptTable.STATUS_READ, timestamp = 10)
+    insertReceipt(beforeLeaving, bob, GroupReceiptTable.STATUS_READ, timestamp = 20)
+    insertReceipt(afterLeaving, alice, GroupReceiptTable.STATUS_DELIVERED, timestamp = 30)
+
+    migrate()
+
+    assertThat(receiptsFor(beforeLeaving)).containsExactlyInAnyOrder(
+      GroupReceiptInfo(RecipientId.from(alice), GroupReceiptTable.STATUS_READ, 10, false),
+      GroupReceiptInfo(RecipientId.from(bob), GroupReceiptTable.STATUS_READ, 20, false)
+    )
+    assertThat(receiptsFor(afterLeaving)).containsExactlyInAnyOrder(
+      GroupReceiptInfo(RecipientId.from(alice), GroupReceiptTable.STATUS_DELIVERED, 30, false)
+    )
+  }
+
+  @Test
+  fun migrate_dropsReceiptsOfRecipientsThatNoLongerExist() {
+    val alice = insertRecipient()
+    val deleted = insertRecipient()
+    val messageId = insertMessage(insertThread())
+
+    insertReceipt(messageId, alice, GroupReceiptTable.STATUS_DELIVERED, timestamp = 10)
+    insertReceipt(messageId, deleted, GroupReceiptTable.STATUS_DELIVERED, timestamp = 20)
+    db.delete("recipient", "_id = ?", arrayOf(deleted.toString()))
+
+    migrate()
+
+    assertThat(receiptsFor(messageId)).containsExactlyInAnyOrder(
+      GroupReceiptInfo(RecipientId.from(alice), GroupReceiptTable.STATUS_DELIVERED, 10, false)
+    )
+    assertThat(memberRecipientIds()).isEqualTo(listOf(alice))
+  }
+
+  @Test
+  fun migrate_dropsReceiptsOfMessagesThatNoLongerExist() {
+    val alice = insertRecipient()
+    val messageId = insertMessage(insertThread())
+
+    insertReceipt(messageId, alice, GroupReceiptTable.STATUS_DELIVERED, timestamp = 10)
+    insertReceipt(messageId + 100, alice, GroupReceiptTable.STATUS_DELIVERED, timestamp = 10)
+
+    migrate()
+
+    assertThat(receiptMessageIds()).isEqualTo(listOf(messageId))
+    assertThat(receiptsFor(messageId + 100)).isEmpty()
+  }
+
+  @Test
+  fun migrate_writesOneRowPerMessage() {
+    val recipients = List(3) { insertRecipient() }
+    val threadId = insertThread()
+    val messageIds = List(2) { insertMessage(threadId) }
+
+    for (messageId in messageIds) {
+      for (recipient in recipients) {
+        insertReceipt(messageId, recipient, GroupReceiptTable.STATUS_DELIVERED, timestamp = 10)
+      }
+    }
+
+    migrate()
+
+    assertThat(receiptMessageIds()).isEqualTo(messageIds)
+  }
+
+  @Test
+  fun migrate_numbersMembersFromZeroInEachThread() {
+    val (alice, bob, carol) = List(3) { insertRecipient() }
+    val firstThread = insertThread()
+    val secondThread = insertThread()
+    val firstMessage = insertMessage(firstThread)
+    val secondMessage = insertMessage(secondThread)
+
+    insertReceipt(firstMessage, alice, GroupReceiptTable.STATUS_DELIVERED, timestamp = 10)
+    insertReceipt(firstMessage, bob, GroupReceiptTable.STATUS_DELIVERED, timestamp = 10)
+    insertReceipt(secondMessage, carol, GroupReceiptTable.STATUS_DELIVERED, timestamp = 10)
+    insertReceipt(secondMessage, alice, GroupReceiptTable.STATUS_DELIVERED, timestamp = 10)
+
+    migrate()
+
+    assertThat(membersOf(firstThread)).isEqualTo(listOf(0 to alice, 1 to bob))
+    assertThat(membersOf(secondThread)).isEqualTo(listOf(0 to alice, 1 to carol))
+  }
+
+  private fun migrate() {
+    V331_CompactGroupReceipts.migrate(ApplicationProvider.getApplicationContext(), db, 330, 331)
+  }
+
+  /**
+   * Reads the migrated receipts back through [GroupReceiptTable], so that the test covers what the rest of the app will see.
+   */
+  private fun receiptsFor(messageId: Long): List<GroupReceiptInfo> {
+    val signalDatabase = mockk<SignalDatabase>(relaxed = true)
+    every { signalDatabase.signalReadableDatabase } returns db
+    every { signalDatabase.signalWritableDatabase } returns db
+
+    return GroupReceiptTable(ApplicationProvider.getApplicationContext(), signalDatabase).getGroupReceiptInfo(messageId)
+  }
+
+  private fun insertRecipient(): Long {
+    return db.insertInto("recipient").values("type" to 0).run()
+  }
+
+  private fun insertThread(): Long {
+    return db.insertInto("thread").values("recipient_id" to insertRecipient()).run()
+  }
+
+  private fun insertMessage(threadId: Long): Long {
+    return db.insertInto("message")
+      .values(
+        "date_sent" to 1,
+        "date_received" to 1,
+        "thread_id" to threadId,
+        "from_recipient_id" to 1,
+        "to_recipient_id" to 1,
+        "type" to 0
+      )
+      .run()
+  }
+
+  private fun insertReceipt(messageId: Long, recipientId: Long, status: Int, timestamp: Long, unidentified: Boolean = false) {
+    db.insertInto("group_receipts")
+      .values(
+        "mms_id" to messageId,
+        "address" to recipientId,
+        "status" to status,
+        "timestamp" to timestamp,
+        "unidentified" to if (unidentified) 1 else 0
+      )
+      .run()
+  }
+
+  private fun receiptMessageIds(): List<Long> {
+    return db.select("mms_id").from("group_receipts").orderBy("mms_id").run().readToList { it.requireLong("mms_id") }
+  }
+
+  private fun memberRecipientIds(): List<Long> {
+    return db.select("recipient_id").from("group_receipt_member").orderBy("recipient_id").run().readToList { it.requireLong("recipient_id") }
+  }
+
+  private fun membersOf(threadId: Long): List<Pair<Int, Long>> {
+    return db.select("ordinal", "recipient_id")
+      .from("group_receipt_member")
+      .where("thread_id = ?", threadId)
+      .orderBy("ordinal")
+      .run()
+      .readToList { it.requireInt("ordinal") to it.requireLong("recipient_id") }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.glide
+
+import android.app.Application
+import android.net.Uri
+import assertk.assertThat
+import assertk.assertions.isNotNull
+import assertk.assertions.isNull
+import com.bumptech.glide.load.Options
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.glide.decryptableuri.DecryptableUri
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class AttachmentPreviewLoaderTest {
+
+  private val model = DecryptableUri(Uri.parse("content://org.thoughtcrime.securesms/attachment/1"))
+
+  @Test
+  fun givenARequestWithoutThePreviewOption_whenBuildingLoadData_thenItIsLeftToTheNextLoader() {
+    assertThat(AttachmentPreviewLoader().buildLoadData(model, 100, 100, Options())).isNull()
+  }
+
+  @Test
+  fun givenAThumbnailRequest_whenBuildingLoadData_thenThePreviewLoaderHandlesIt() {
+    val options = Options().set(AttachmentPreviewLoader.ALLOW_PREVIEW, true)
+
+    assertThat(AttachmentPreviewLoader().buildLoadData(model, 100, 100, options)).isNotNull()
+  }
+}
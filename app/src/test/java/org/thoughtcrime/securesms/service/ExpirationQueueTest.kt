@@ -0,0 +1,79 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.service
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.random.Random
+
+class ExpirationQueueTest {
+
+  @Test
+  fun `removes messages in expiration order`() {
+    val queue = ExpirationQueue()
+    val expirations = List(1_000) { Random.nextLong(0, 10_000) }
+
+    expirations.forEachIndexed { id, expiresAt -> queue.add(id.toLong(), expiresAt) }
+
+    val removed = queue.removeDue(Long.MAX_VALUE, Int.MAX_VALUE)
+
+    assertEquals(expirations.sorted(), removed.map { expirations[it.toInt()] })
+    assertTrue(queue.isEmpty())
+  }
+
+  @Test
+  fun `only removes messages due by the deadline`() {
+    val queue = ExpirationQueue()
+    queue.add(1, 300)
+    queue.add(2, 100)
+    queue.add(3, 200)
+    queue.add(4, 400)
+
+    assertEquals(listOf(2L, 3L), queue.removeDue(250, Int.MAX_VALUE))
+    assertEquals(300L, queue.peekExpiresAt())
+    assertEquals(2, queue.size)
+  }
+
+  @Test
+  fun `removes at most the limit`() {
+    val queue = ExpirationQueue()
+    for (i in 1L..10L) {
+      queue.add(i, i)
+    }
+
+    assertEquals(listOf(1L, 2L, 3L), queue.removeDue(100, 3))
+    assertEquals(4L, queue.peekExpiresAt())
+    assertEquals(7, queue.size)
+  }
+
+  @Test
+  fun `addAll merges into an existing queue`() {
+    val queue = ExpirationQueue()
+    queue.add(1, 50)
+    queue.add(2, 5)
+
+    val loaded = ExpirationQueue(2)
+    for (i in 10L until 100L) {
+      loaded.add(i, 100 - i)
+    }
+
+    queue.addAll(loaded)
+
+    assertEquals(92, queue.size)
+    assertEquals(90, loaded.size)
+
+    val removed = queue.removeDue(Long.MAX_VALUE, Int.MAX_VALUE)
+    val expirations = removed.map { if (it == 1L) 50L else if (it == 2L) 5L else 100 - it }
+
+    assertEquals(expirations.sorted(), expirations)
+  }
+
+  @Test(expected = NoSuchElementException::class)
+  fun `peek on an empty queue throws`() {
+    ExpirationQueue().peekExpiresAt()
+  }
+}
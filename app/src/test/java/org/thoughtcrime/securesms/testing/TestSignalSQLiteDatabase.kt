@@ -199,6 +199,10 @@ class TestSignalSQLiteDatabase(private val database: SupportSQLiteDatabase) : Si
     task.run()
   }
 
+  override fun runPostTransaction(task: Runnable) {
+    task.run()
+  }
+
   override val isDbLockedByCurrentThread: Boolean
     get() = database.isDbLockedByCurrentThread
 
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.util
+
+import android.app.Application
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import assertk.assertions.isLessThanOrEqualTo
+import assertk.assertions.isNotNull
+import assertk.assertions.isNull
+import assertk.assertions.isTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class ImageCompressionUtilTest {
+
+  private val attempts = mutableListOf<Int>()
+
+  /** Writes [BYTES_PER_QUALITY] bytes per quality point, each holding the quality, so that the size and contents show which attempt won. */
+  private val encoder = ImageCompressionUtil.Encoder { quality, output ->
+    attempts += quality
+    output.write(ByteArray(quality * BYTES_PER_QUALITY) { quality.toByte() })
+  }
+
+  @Test
+  fun `encodeWithinSize - returns max quality after a single attempt when it fits`() {
+    val encoded = encode(maxBytes = 1_000L * BYTES_PER_QUALITY, minQuality = 10, maxQuality = 80)
+
+    assertThat(encoded).isNotNull()
+    assertThat(encoded!!.quality).isEqualTo(80)
+    assertThat(attempts).isEqualTo(listOf(80))
+  }
+
+  @Test
+  fun `encodeWithinSize - converges on the highest quality that fits`() {
+    val encoded = encode(maxBytes = 47L * BYTES_PER_QUALITY + 5, minQuality = 10, maxQuality = 80)
+
+    assertThat(encoded).isNotNull()
+    assertThat(encoded!!.quality).isEqualTo(47)
+    assertThat(encoded.size).isEqualTo(47L * BYTES_PER_QUALITY)
+    assertThat(encoded.toByteArray().all { it == 47.toByte() }).isTrue()
+    assertThat(attempts.size).isLessThanOrEqualTo(8)
+    assertThat(attempts.first()).isEqualTo(80)
+  }
+
+  @Test
+  fun `encodeWithinSize - keeps the winning attempt when later attempts are too large`() {
+    val encoded = encode(maxBytes = 11L * BYTES_PER_QUALITY, minQuality = 10, maxQuality = 80)
+
+    assertThat(encoded!!.quality).isEqualTo(11)
+    assertThat(attempts.last()).isEqualTo(12)
+    assertThat(encoded.toByteArray().all { it == 11.toByte() }).isTrue()
+  }
+
+  @Test
+  fun `encodeWithinSize - an attempt exactly at the limit fits`() {
+    val encoded = encode(maxBytes = 30L * BYTES_PER_QUALITY, minQuality = 10, maxQuality = 80)
+
+    assertThat(encoded!!.quality).isEqualTo(30)
+    assertThat(encoded.size).isEqualTo(30L * BYTES_PER_QUALITY)
+  }
+
+  @Test
+  fun `encodeWithinSize - max quality exactly at the limit fits after a single attempt`() {
+    val encoded = encode(maxBytes = 80L * BYTES_PER_QUALITY, minQuality = 10, maxQuality = 80)
+
+    assertThat(encoded!!.quality).isEqualTo(80)
+    assertThat(attempts).isEqualTo(listOf(80))
+  }
+
+  @Test
+  fun `encodeWithinSize - returns null when nothing fits`() {
+    val encoded = encode(maxBytes = 10L * BYTES_PER_QUALITY - 1, minQuality = 10, maxQuality = 80)
+
+    assertThat(encoded).isNull()
+    assertThat(attempts.size).isLessThanOrEqualTo(8)
+    assertThat(attempts.last()).isEqualTo(10)
+  }
+
+  @Test
+  fun `encodeWithinSize - only makes one attempt when quality is ignored`() {
+    val encoded = ImageCompressionUtil.encodeWithinSize(encoder, MediaUtil.IMAGE_PNG, false, 100, 50, 20L * BYTES_PER_QUALITY, 10, 80)
+
+    assertThat(encoded).isNull()
+    assertThat(attempts).isEqualTo(listOf(80))
+  }
+
+  private fun encode(maxBytes: Long, minQuality: Int, maxQuality: Int): ImageCompressionUtil.Encoded? {
+    return ImageCompressionUtil.encodeWithinSize(encoder, MediaUtil.IMAGE_JPEG, true, 100, 50, maxBytes, minQuality, maxQuality)
+  }
+
+  companion object {
+    private const val BYTES_PER_QUALITY = 100
+  }
+}
@@ -45,12 +45,18 @@ object BenchmarkMetrics {
 
   val deliveryReceipt: List<TraceSectionMetric>
     get() = listOf(
-      TraceSectionMetric("ReceiptMessageProcessor#incrementDeliveryReceiptCounts", Mode.Average)
+      TraceSectionMetric("ReceiptMessageProcessor#applyReceipts", Mode.Average),
+      TraceSectionMetric("ReceiptMessageProcessor#applyReceipts", Mode.Sum),
+      TraceSectionMetric("GroupReceiptTable#update", Mode.Average),
+      TraceSectionMetric("GroupReceiptTable#update", Mode.Sum)
     )
 
   val readReceipt: List<TraceSectionMetric>
     get() = listOf(
-      TraceSectionMetric("ReceiptMessageProcessor#incrementReadReceiptCounts", Mode.Average)
+      TraceSectionMetric("ReceiptMessageProcessor#applyReceipts", Mode.Average),
+      TraceSectionMetric("ReceiptMessageProcessor#applyReceipts", Mode.Sum),
+      TraceSectionMetric("GroupReceiptTable#update", Mode.Average),
+      TraceSectionMetric("GroupReceiptTable#update", Mode.Sum)
     )
 
   val threadDeletion: List<TraceSectionMetric>
@@ -59,4 +65,19 @@ object BenchmarkMetrics {
       TraceSectionMetric("MessageTable#deleteMessagesInThread", Mode.Sum),
       TraceSectionMetric("deleteMessages", Mode.Sum)
     )
+
+  val messageExpiration: List<TraceSectionMetric>
+    get() = listOf(
+      TraceSectionMetric("ExpiringMessageManager#load", Mode.Sum),
+      TraceSectionMetric("MessageTable#deleteExpiredMessages", Mode.Sum),
+      TraceSectionMetric("MessageTable#deleteExpiredMessages", Mode.Average)
+    )
+
+  val conversationList: List<TraceSectionMetric>
+    get() = listOf(
+      TraceSectionMetric("ConversationListDataSource#size", Mode.Average),
+      TraceSectionMetric("ConversationListDataSource#load", Mode.Average),
+      TraceSectionMetric("ConversationListDataSource#load", Mode.Sum),
+      TraceSectionMetric("ThreadTable#countConversationList", Mode.Sum)
+    )
 }
@@ -41,6 +41,10 @@ object BenchmarkSetup {
     device.benchmarkCommandBroadcast("delete-thread")
   }
 
+  fun openAllMedia(device: UiDevice) {
+    device.benchmarkCommandBroadcast("open-all-media")
+  }
+
   private fun UiDevice.benchmarkCommandBroadcast(command: String) {
     executeShellCommand("am broadcast -a org.signal.benchmark.action.COMMAND -e command $command -n $TARGET_PACKAGE/$RECEIVER")
   }
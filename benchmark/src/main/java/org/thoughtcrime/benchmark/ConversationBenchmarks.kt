@@ -5,10 +5,12 @@ import android.os.Build
 import androidx.annotation.RequiresApi
 import androidx.benchmark.macro.CompilationMode
 import androidx.benchmark.macro.ExperimentalMetricApi
+import androidx.benchmark.macro.FrameTimingMetric
 import androidx.benchmark.macro.TraceSectionMetric
 import androidx.benchmark.macro.junit4.MacrobenchmarkRule
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import androidx.test.uiautomator.By
+import androidx.test.uiautomator.Direction
 import androidx.test.uiautomator.Until
 import org.junit.Rule
 import org.junit.Test
@@ -53,4 +55,125 @@ class ConversationBenchmarks {
       device.wait(Until.hasObject(By.textContains("Test")), 5_000L)
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Re-opens a conversation that was viewed earlier in the same process, which should be served from the in-memory page cache.
+   */
+  @OptIn(ExperimentalMetricApi::class)
+  @Test
+  fun warmConversationReopen() {
+    var setup = false
+    benchmarkRule.measureRepeated(
+      packageName = "org.thoughtcrime.securesms.benchmark",
+      metrics = listOf(
+        TraceSectionMetric("6-ConversationOpen"),
+        TraceSectionMetric("3-ConversationOpen-Data-Loaded"),
+        TraceSectionMetric("4-ConversationOpen-Data-Posted"),
+        TraceSectionMetric("5-ConversationOpen-Render"),
+      ),
+      iterations = 3,
+      compilationMode = CompilationMode.Partial(),
+      setupBlock = {
+        if (!setup) {
+          BenchmarkSetup.setup("conversation-open", device)
+          setup = true
+          killProcess()
+          if (Build.VERSION.SDK_INT >= 33) {
+            device.executeShellCommand("pm grant $packageName ${Manifest.permission.POST_NOTIFICATIONS}")
+          }
+          startActivityAndWait()
+          device.waitForIdle()
+        } else {
+          // Leave the conversation opened by the previous iteration
+          device.pressBack()
+          device.wait(Until.hasObject(By.textContains("Buddy")), 5_000L)
+        }
+
+        device.findObject(By.textContains("Buddy")).click()
+        device.wait(Until.hasObject(By.textContains("Signal message")), 10_000L)
+        device.pressBack()
+        device.wait(Until.hasObject(By.textContains("Buddy")), 5_000L)
+        device.waitForIdle()
+      }) {
+      device.findObject(By.textContains("Buddy")).click()
+      device.wait(Until.hasObject(By.textContains("Signal message")), 10_000L)
+      device.wait(Until.hasObject(By.textContains("Test")), 5_000L)
+    }
+  }
+
+  /**
+   * Flings down a chat list of 5,000 conversations. Deep pages should load as quickly as the first one.
+   */
+  @OptIn(ExperimentalMetricApi::class)
+  @Test
+  fun conversationListScroll() {
+    var setup = false
+    benchmarkRule.measureRepeated(
+      packageName = "org.thoughtcrime.securesms.benchmark",
+      metrics = BenchmarkMetrics.conversationList + FrameTimingMetric(),
+      iterations = 3,
+      compilationMode = CompilationMode.Partial(),
+      setupBlock = {
+        if (!setup) {
+          BenchmarkSetup.setup("conversation-list-scroll", device, timeout = 600_000L)
+          setup = true
+        }
+        killProcess()
+        if (Build.VERSION.SDK_INT >= 33) {
+          device.executeShellCommand("pm grant $packageName ${Manifest.permission.POST_NOTIFICATIONS}")
+        }
+        startActivityAndWait()
+        device.waitForIdle()
+      }
+    ) {
+      val list = device.wait(Until.findObject(By.res(RESOURCE_PACKAGE, "list")), 10_000L)
+      list.setGestureMargin(device.displayWidth / 5)
+
+      repeat(FLINGS) {
+        list.fling(Direction.DOWN)
+        device.waitForIdle()
+      }
+    }
+  }
+
+  /**
+   * Switches back and forth between All chats and a folder holding a tenth of them, which reloads the list and its counts each time.
+   */
+  @OptIn(ExperimentalMetricApi::class)
+  @Test
+  fun chatFolderSwitch() {
+    var setup = false
+    benchmarkRule.measureRepeated(
+      packageName = "org.thoughtcrime.securesms.benchmark",
+      metrics = BenchmarkMetrics.conversationList,
+      iterations = 3,
+      compilationMode = CompilationMode.Partial(),
+      setupBlock = {
+        if (!setup) {
+          BenchmarkSetup.setup("conversation-list-scroll", device, timeout = 600_000L)
+          setup = true
+        }
+        killProcess()
+        if (Build.VERSION.SDK_INT >= 33) {
+          device.executeShellCommand("pm grant $packageName ${Manifest.permission.POST_NOTIFICATIONS}")
+        }
+        startActivityAndWait()
+        device.waitForIdle()
+      }
+    ) {
+      repeat(FOLDER_SWITCHES) {
+        device.findObject(By.text("Unread")).click()
+        device.wait(Until.hasObject(By.textContains("Unread message")), 5_000L)
+        device.findObject(By.text("All chats")).click()
+        device.wait(Until.hasObject(By.textContains("Buddy")), 5_000L)
+        device.waitForIdle()
+      }
+    }
+  }
+
+  companion object {
+    private const val RESOURCE_PACKAGE = "org.thoughtcrime.securesms"
+    private const val FLINGS = 20
+    private const val FOLDER_SWITCHES = 5
+  }
+}
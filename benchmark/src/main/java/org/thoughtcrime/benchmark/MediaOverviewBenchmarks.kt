@@ -0,0 +1,80 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.benchmark
+
+import android.Manifest
+import android.os.Build
+import androidx.annotation.RequiresApi
+import androidx.benchmark.macro.CompilationMode
+import androidx.benchmark.macro.ExperimentalMetricApi
+import androidx.benchmark.macro.FrameTimingMetric
+import androidx.benchmark.macro.TraceSectionMetric
+import androidx.benchmark.macro.TraceSectionMetric.Mode
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.uiautomator.By
+import androidx.test.uiautomator.Direction
+import androidx.test.uiautomator.Until
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Macrobenchmark for the media overview.
+ *
+ * Seeds a conversation with 100,000 photos, opens All media and flings down the grid. Measures how long the count and the pages take to load via the
+ * [MediaOverviewPagedDataSource] trace sections, and how smoothly the grid scrolls while pages and thumbnails load behind it.
+ */
+@RunWith(AndroidJUnit4::class)
+@RequiresApi(31)
+class MediaOverviewBenchmarks {
+  @get:Rule
+  val benchmarkRule = MacrobenchmarkRule()
+
+  @OptIn(ExperimentalMetricApi::class)
+  @Test
+  fun allMediaScroll() {
+    var setup = false
+    benchmarkRule.measureRepeated(
+      packageName = "org.thoughtcrime.securesms.benchmark",
+      metrics = listOf(
+        TraceSectionMetric("MediaOverview-Size"),
+        TraceSectionMetric("MediaOverview-Page", Mode.Sum),
+        TraceSectionMetric("MediaOverview-Page", Mode.Average),
+        FrameTimingMetric()
+      ),
+      iterations = 3,
+      compilationMode = CompilationMode.Partial(),
+      setupBlock = {
+        if (!setup) {
+          BenchmarkSetup.setup("media-overview", device, timeout = 600_000L)
+          setup = true
+        }
+        killProcess()
+        if (Build.VERSION.SDK_INT >= 33) {
+          device.executeShellCommand("pm grant $packageName ${Manifest.permission.POST_NOTIFICATIONS}")
+        }
+        startActivityAndWait()
+        device.waitForIdle()
+      }
+    ) {
+      BenchmarkSetup.openAllMedia(device)
+
+      val grid = device.wait(Until.findObject(By.res(RESOURCE_PACKAGE, "media_grid")), 10_000L)
+      grid.setGestureMargin(device.displayWidth / 5)
+
+      repeat(FLINGS) {
+        grid.fling(Direction.DOWN)
+        device.waitForIdle()
+      }
+    }
+  }
+
+  companion object {
+    private const val RESOURCE_PACKAGE = "org.thoughtcrime.securesms"
+    private const val FLINGS = 10
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.benchmark
+
+import androidx.annotation.RequiresApi
+import androidx.benchmark.macro.CompilationMode
+import androidx.benchmark.macro.ExperimentalMetricApi
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.uiautomator.By
+import androidx.test.uiautomator.Until
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Macrobenchmark for disappearing-message expiration.
+ *
+ * Seeds 50,000 messages across 10 conversations whose timers all ran out while the app was closed, then launches the app and waits for every
+ * conversation to disappear from the list. Measures loading the expiration schedule and the bulk deletes that follow.
+ */
+@OptIn(ExperimentalMetricApi::class)
+@RunWith(AndroidJUnit4::class)
+@RequiresApi(31)
+class MessageExpirationBenchmarks {
+  @get:Rule
+  val benchmarkRule = MacrobenchmarkRule()
+
+  @Test
+  fun expire50kMessages() {
+    benchmarkRule.measureRepeated(
+      packageName = "org.thoughtcrime.securesms.benchmark",
+      metrics = BenchmarkMetrics.messageExpiration,
+      iterations = 1,
+      compilationMode = CompilationMode.Partial(),
+      setupBlock = {
+        BenchmarkSetup.setup("disappearing-messages", device, timeout = 300_000L)
+        killProcess()
+      }
+    ) {
+      startActivityAndWait()
+      device.wait(Until.gone(By.textContains("Buddy")), 300_000L)
+    }
+  }
+}
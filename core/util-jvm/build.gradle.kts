@@ -62,6 +62,21 @@ sourceSets.named("test") {
   )
 }
 
+// Benchmarks are plain JVM programs rather than tests, so that they stay out of the unit test task and are only run on purpose.
+val benchmark = sourceSets.create("benchmark") {
+  compileClasspath += sourceSets.getByName("main").output
+  runtimeClasspath += sourceSets.getByName("main").output
+}
+
+configurations.named("benchmarkImplementation") { extendsFrom(configurations.getByName("implementation")) }
+configurations.named("benchmarkRuntimeOnly") { extendsFrom(configurations.getByName("runtimeOnly")) }
+
+tasks.register<JavaExec>("runDeviceTransferBenchmark") {
+  description = "Sends a device-transfer-shaped stream over a loopback socket, directly and pipelined, and prints the throughput of each."
+  classpath = benchmark.runtimeClasspath
+  mainClass.set("org.signal.core.util.stream.DeviceTransferLoopbackBenchmarkKt")
+}
+
 dependencies {
   implementation(libs.kotlin.reflect)
   implementation(libs.kotlinx.coroutines.core)
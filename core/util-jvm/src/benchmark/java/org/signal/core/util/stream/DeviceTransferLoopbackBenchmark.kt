@@ -0,0 +1,224 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.stream
+
+import org.signal.core.util.crypto.EncryptedFrameWriter
+import org.signal.core.util.crypto.ParallelCtrEncryptor
+import java.io.File
+import java.io.FileInputStream
+import java.io.OutputStream
+import java.io.RandomAccessFile
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.nio.ByteBuffer
+import java.security.MessageDigest
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import javax.crypto.Cipher
+import javax.crypto.CipherInputStream
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+import kotlin.random.Random
+import kotlin.system.exitProcess
+
+/**
+ * Sends a device-transfer-shaped stream over a loopback socket two ways, both through [EncryptedFrameWriter] as the backup exporter uses it: writing
+ * straight to the socket and streaming attachments through a single cipher, the way the old device used to, and through [PipelinedOutputStream] with
+ * attachments encrypted by [ParallelCtrEncryptor], the way it does now.
+ *
+ * The stream is a run of small frames, like database rows, followed by attachments that are decrypted from disk and re-encrypted for the transfer.
+ * Both ways must put the exact same bytes on the wire. Runs on a plain JVM over TCP rather than TLS.
+ *
+ * Run with `./gradlew :core:util-jvm:runDeviceTransferBenchmark`.
+ */
+fun main() {
+  val benchmark = DeviceTransferLoopbackBenchmark()
+
+  try {
+    benchmark.run()
+  } finally {
+    benchmark.close()
+  }
+}
+
+private class DeviceTransferLoopbackBenchmark : AutoCloseable {
+
+  companion object {
+    private const val FRAME_COUNT = 20_000
+    private const val FRAME_SIZE = 300
+    private const val ATTACHMENT_COUNT = 4
+    private const val ATTACHMENT_SIZE = 8 * 1024 * 1024 + 123
+
+    private const val WARMUP_ROUNDS = 2
+    private const val MEASURED_ROUNDS = 5
+
+    // Matches NetworkClientThread and FullBackupExporter
+    private const val TRANSFER_BUFFER_SIZE = 512 * 1024
+    private const val TRANSFER_BUFFER_COUNT = 4
+    private const val TRANSFER_RESERVED_THREADS = 2
+  }
+
+  private val storageKey = SecretKeySpec(Random.nextBytes(32), "AES")
+  private val cipherKey = Random.nextBytes(32)
+  private val macKey = Random.nextBytes(32)
+  private val iv = Random.nextBytes(16)
+  private val frames = List(FRAME_COUNT) { Random.nextBytes(FRAME_SIZE) }
+  private val attachments: List<File> = List(ATTACHMENT_COUNT) { writeEncryptedAttachment(Random.nextBytes(ATTACHMENT_SIZE)) }
+
+  private val parallelism = (Runtime.getRuntime().availableProcessors() - TRANSFER_RESERVED_THREADS).coerceAtLeast(1)
+  private val encryptExecutor: ExecutorService = Executors.newFixedThreadPool(parallelism)
+  private val receiveExecutor: ExecutorService = Executors.newSingleThreadExecutor()
+
+  fun run() {
+    val direct = sendOverLoopback(::sendDirect)
+    val pipelined = sendOverLoopback(::sendPipelined)
+
+    if (!direct.digest.contentEquals(pipelined.digest)) {
+      System.err.println("The pipelined transfer did not send the same bytes as the direct transfer!")
+      exitProcess(1)
+    }
+
+    repeat(WARMUP_ROUNDS) {
+      sendOverLoopback(::sendDirect)
+      sendOverLoopback(::sendPipelined)
+    }
+
+    val directMillis = LongArray(MEASURED_ROUNDS)
+    val pipelinedMillis = LongArray(MEASURED_ROUNDS)
+
+    for (i in 0 until MEASURED_ROUNDS) {
+      directMillis[i] = sendOverLoopback(::sendDirect).millis
+      pipelinedMillis[i] = sendOverLoopback(::sendPipelined).millis
+    }
+
+    println("Sent ${direct.bytes / 1024 / 1024} MB per round, $FRAME_COUNT frames and $ATTACHMENT_COUNT attachments, with $parallelism encrypting threads.")
+    println("Direct:    ${describe(direct.bytes, directMillis)}")
+    println("Pipelined: ${describe(pipelined.bytes, pipelinedMillis)}")
+  }
+
+  override fun close() {
+    attachments.forEach { it.delete() }
+    encryptExecutor.shutdownNow()
+    receiveExecutor.shutdownNow()
+  }
+
+  private fun sendDirect(output: OutputStream) {
+    val writer = EncryptedFrameWriter(output, cipherKey, macKey, iv, encryptLength = true)
+
+    for (frame in frames) {
+      writer.writeFrame(frame)
+    }
+
+    for (attachment in attachments) {
+      CipherInputStream(FileInputStream(attachment), storageCipher(0)).use { writer.writeBody(it) }
+    }
+
+    output.flush()
+  }
+
+  private fun sendPipelined(output: OutputStream) {
+    val pipelined = PipelinedOutputStream(output, TRANSFER_BUFFER_SIZE, TRANSFER_BUFFER_COUNT, "loopback-send")
+
+    try {
+      val writer = EncryptedFrameWriter(pipelined, cipherKey, macKey, iv, encryptLength = true, parallelEncryptor = ParallelCtrEncryptor(encryptExecutor, parallelism))
+
+      for (frame in frames) {
+        writer.writeFrame(frame)
+      }
+
+      for (attachment in attachments) {
+        RandomAccessFile(attachment, "r").channel.use { channel ->
+          writer.writeBody({ position, buffer, offset, length ->
+            val target = ByteBuffer.wrap(buffer, offset, length)
+            var read = 0
+
+            while (target.hasRemaining()) {
+              val result = channel.read(target, position + read)
+              if (result == -1) {
+                break
+              }
+              read += result
+            }
+
+            storageCipher(position).update(buffer, offset, read, buffer, offset)
+            if (read == 0) -1 else read
+          }, ATTACHMENT_SIZE.toLong())
+        }
+      }
+
+      pipelined.finish()
+    } finally {
+      pipelined.abort()
+    }
+
+    output.flush()
+  }
+
+  private fun sendOverLoopback(send: (OutputStream) -> Unit): Result {
+    ServerSocket(0, 1, InetAddress.getLoopbackAddress()).use { server ->
+      val received: Future<Pair<Long, ByteArray>> = receiveExecutor.submit(
+        Callable {
+          server.accept().use { socket ->
+            val digest = MessageDigest.getInstance("SHA-256")
+            val buffer = ByteArray(64 * 1024)
+            val input = socket.getInputStream()
+            var total = 0L
+
+            while (true) {
+              val read = input.read(buffer)
+              if (read == -1) {
+                break
+              }
+              digest.update(buffer, 0, read)
+              total += read
+            }
+
+            total to digest.digest()
+          }
+        }
+      )
+
+      val start = System.nanoTime()
+      Socket(InetAddress.getLoopbackAddress(), server.localPort).use { socket ->
+        send(socket.getOutputStream())
+      }
+
+      val (bytes, digest) = received.get()
+      return Result(bytes, digest, (System.nanoTime() - start) / 1_000_000)
+    }
+  }
+
+  /**
+   * Attachments are stored with the block number in the last four bytes of an otherwise zero IV.
+   */
+  private fun storageCipher(position: Long): Cipher {
+    val iv = ByteArray(16)
+    ByteBuffer.wrap(iv, 12, 4).putInt((position / 16).toInt())
+
+    return Cipher.getInstance("AES/CTR/NoPadding").apply {
+      init(Cipher.DECRYPT_MODE, storageKey, IvParameterSpec(iv))
+      update(ByteArray((position % 16).toInt()))
+    }
+  }
+
+  private fun writeEncryptedAttachment(plaintext: ByteArray): File {
+    val file = File.createTempFile("transfer", ".mms")
+    file.writeBytes(storageCipher(0).update(plaintext))
+    return file
+  }
+
+  private fun describe(bytes: Long, millis: LongArray): String {
+    val median = millis.sorted()[millis.size / 2].coerceAtLeast(1)
+    val megabytesPerSecond = bytes / 1024.0 / 1024.0 / (median / 1000.0)
+
+    return "median $median ms (${millis.joinToString()}), %.1f MB/s".format(megabytesPerSecond)
+  }
+
+  private class Result(val bytes: Long, val digest: ByteArray, val millis: Long)
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util
+
+import com.google.i18n.phonenumbers.NumberParseException
+import com.google.i18n.phonenumbers.PhoneNumberUtil
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Formats large batches of numbers (e.g. an entire address book) as E164s with the same results as [E164Util.Formatter.formatAsE164], but cheaper:
+ *
+ * - Inputs found in a caller-provided memo of previous results are not formatted again.
+ * - Inputs that are already strict, canonical E164s skip the lenient cleanup and short code checks.
+ * - When there are more than [parallelThreshold] inputs left to format, the work is split across [executor].
+ */
+class E164BatchFormatter @JvmOverloads constructor(
+  private val formatter: E164Util.Formatter,
+  private val executor: ExecutorService? = null,
+  private val parallelThreshold: Int = DEFAULT_PARALLEL_THRESHOLD
+) {
+
+  companion object {
+    private const val DEFAULT_PARALLEL_THRESHOLD = 500
+    private const val CHUNK_SIZE = 250
+
+    /**
+     * Short codes are never longer than this many digits, so a national number of at least this length can't be one. This is what allows the fast path
+     * to skip the short code check.
+     */
+    private const val MIN_FAST_PATH_NATIONAL_NUMBER_LENGTH = 9
+
+    private val STRICT_E164 = "^\\+[1-9]\\d{6,14}$".toRegex()
+  }
+
+  /**
+   * @param memo Previously formatted results, keyed by input. A null value means the input was previously found to not be a phone number.
+   */
+  fun formatAll(inputs: Collection<String>, memo: Map<String, String?> = emptyMap()): Result {
+    val results: MutableMap<String, String?> = HashMap(inputs.size)
+    val misses: MutableList<String> = ArrayList()
+    var memoHits = 0
+    var fastPathHits = 0
+
+    for (input in inputs) {
+      if (results.containsKey(input)) {
+        continue
+      }
+
+      if (memo.containsKey(input)) {
+        results[input] = memo[input]
+        memoHits++
+        continue
+      }
+
+      val canonical = formatCanonical(input)
+      if (canonical != null) {
+        results[input] = canonical
+        fastPathHits++
+        continue
+      }
+
+      misses += input
+    }
+
+    val formatted: Map<String, String?> = if (executor != null && misses.size > parallelThreshold) {
+      formatInParallel(misses, executor)
+    } else {
+      misses.associateWith { formatter.formatAsE164(it) }
+    }
+
+    results.putAll(formatted)
+
+    return Result(
+      formatted = results,
+      newlyFormatted = formatted,
+      memoHits = memoHits,
+      fastPathHits = fastPathHits
+    )
+  }
+
+  /**
+   * Returns the input as-is if it's a strict E164 that formatting would leave untouched, otherwise null.
+   *
+   * A strict E164 (leading '+', no separators) skips everything in [E164Util.Formatter.formatAsE164] but the parse itself: there's nothing to clean up, no
+   * area code to apply, and it's long enough to rule out short codes. Formatting the parsed number back out and comparing catches anything that
+   * libphonenumber would still rewrite, like a national prefix after the country code.
+   */
+  fun formatCanonical(input: String): String? {
+    if (!STRICT_E164.matches(input)) {
+      return null
+    }
+
+    return try {
+      val parsed = PhoneNumberUtil.getInstance().parse(input, null)
+      val nationalNumber = PhoneNumberUtil.getInstance().getNationalSignificantNumber(parsed)
+
+      if (nationalNumber.length >= MIN_FAST_PATH_NATIONAL_NUMBER_LENGTH && PhoneNumberUtil.getInstance().format(parsed, PhoneNumberUtil.PhoneNumberFormat.E164) == input) {
+        input
+      } else {
+        null
+      }
+    } catch (e: NumberParseException) {
+      null
+    }
+  }
+
+  /**
+   * Splits the inputs into chunks that are claimed by whichever thread gets to them first. The calling thread works through chunks too, and only waits
+   * on chunks another thread has already started, so this can't deadlock even if [executor] is saturated (or is the executor we were called from).
+   */
+  private fun formatInParallel(inputs: List<String>, executor: ExecutorService): Map<String, String?> {
+    val chunks: List<List<String>> = inputs.chunked(CHUNK_SIZE)
+    val chunkResults: Array<Map<String, String?>?> = arrayOfNulls(chunks.size)
+    val nextChunk = AtomicInteger(0)
+    val remaining = CountDownLatch(chunks.size)
+
+    val worker = Runnable {
+      while (true) {
+        val index = nextChunk.getAndIncrement()
+        if (index >= chunks.size) {
+          break
+        }
+
+        try {
+          chunkResults[index] = chunks[index].associateWith { formatter.formatAsE164(it) }
+        } catch (e: RuntimeException) {
+          // Left for the calling thread to retry, so that the exception surfaces there rather than on an executor thread
+        } finally {
+          remaining.countDown()
+        }
+      }
+    }
+
+    val helpers = (Runtime.getRuntime().availableProcessors() - 1).coerceIn(0, chunks.size - 1)
+    repeat(helpers) { executor.execute(worker) }
+
+    worker.run()
+    remaining.await()
+
+    val results: MutableMap<String, String?> = HashMap(inputs.size)
+    chunkResults.forEachIndexed { index, chunkResult ->
+      if (chunkResult != null) {
+        results.putAll(chunkResult)
+      } else {
+        chunks[index].forEach { results[it] = formatter.formatAsE164(it) }
+      }
+    }
+
+    return results
+  }
+
+  /**
+   * @param formatted The result for every input, or null if it could not be interpreted as a phone number.
+   * @param newlyFormatted The subset of [formatted] that went through the full formatter, i.e. what's worth adding to the memo.
+   */
+  class Result(
+    val formatted: Map<String, String?>,
+    val newlyFormatted: Map<String, String?>,
+    val memoHits: Int,
+    val fastPathHits: Int
+  )
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.collections
+
+/**
+ * The open-addressed hash table of `long` keys behind [LongSet], [LongIntMap], and [LongObjectMap]. Keys are stored in a flat [LongArray] and found by
+ * linear probing, so nothing is boxed on the way in or out. Removals shift later entries back rather than leaving tombstones behind.
+ *
+ * Subclasses keep their values in arrays parallel to [keys] and are told through [onRehash], [onMove], and [onRemove] whenever an entry changes slots.
+ */
+sealed class LongHashTable(initialCapacity: Int) {
+
+  companion object {
+    private const val MIN_CAPACITY = 8
+
+    /** Fibonacci hashing constant, 2^64 / phi, which spreads sequential ids (the common case here) across the table. */
+    private const val PHI = -7046029254386353131L
+
+    private fun tableSizeFor(expectedSize: Int): Int {
+      require(expectedSize >= 0) { "Expected size must not be negative: $expectedSize" }
+
+      val minimum = maxOf(MIN_CAPACITY, (expectedSize.toLong() * 4 / 3 + 1).toInt())
+      return Integer.highestOneBit(minimum - 1) shl 1
+    }
+  }
+
+  @PublishedApi
+  @JvmField
+  internal var keys: LongArray = LongArray(tableSizeFor(initialCapacity))
+
+  @PublishedApi
+  @JvmField
+  internal var used: BooleanArray = BooleanArray(keys.size)
+
+  private var mask: Int = keys.size - 1
+
+  var size: Int = 0
+    private set
+
+  fun isEmpty(): Boolean = size == 0
+
+  fun isNotEmpty(): Boolean = size != 0
+
+  fun clear() {
+    if (size == 0) {
+      return
+    }
+
+    used.fill(false)
+    size = 0
+    onClear()
+  }
+
+  /**
+   * All of the keys, in no particular order.
+   */
+  fun keysToArray(): LongArray {
+    val out = LongArray(size)
+    var index = 0
+    for (slot in keys.indices) {
+      if (used[slot]) {
+        out[index++] = keys[slot]
+      }
+    }
+    return out
+  }
+
+  /**
+   * @return The slot holding [key], or -1 if it isn't present.
+   */
+  protected fun slotOf(key: Long): Int {
+    var slot = idealSlot(key)
+    while (used[slot]) {
+      if (keys[slot] == key) {
+        return slot
+      }
+      slot = (slot + 1) and mask
+    }
+    return -1
+  }
+
+  /**
+   * @return The slot holding [key], or the bitwise inverse of the slot it was just inserted into if it wasn't already present.
+   */
+  protected fun insert(key: Long): Int {
+    val existing = slotOf(key)
+    if (existing >= 0) {
+      return existing
+    }
+
+    if ((size + 1).toLong() * 4 > keys.size.toLong() * 3) {
+      rehash(keys.size shl 1)
+    }
+
+    val slot = emptySlotFor(key)
+    keys[slot] = key
+    used[slot] = true
+    size++
+    return slot.inv()
+  }
+
+  /**
+   * Removes the entry in [slot], moving any entries that probed past it back to fill the gap.
+   */
+  protected fun removeAt(slot: Int) {
+    var hole = slot
+    var next = slot
+
+    used[hole] = false
+    onRemove(hole)
+    size--
+
+    while (true) {
+      next = (next + 1) and mask
+      if (!used[next]) {
+        return
+      }
+
+      // An entry can fill the hole unless its ideal slot sits cyclically in (hole, next], in which case moving it would put it before where lookups start
+      val ideal = idealSlot(keys[next])
+      val stays = if (hole <= next) ideal in (hole + 1)..next else ideal > hole || ideal <= next
+
+      if (!stays) {
+        keys[hole] = keys[next]
+        used[hole] = true
+        used[next] = false
+        onMove(next, hole)
+        hole = next
+      }
+    }
+  }
+
+  /** Values must be moved into a new array of [newCapacity], where the entry that was in slot `i` is now in slot `mapping[i]`, or nowhere if that's -1. */
+  protected open fun onRehash(newCapacity: Int, mapping: IntArray) = Unit
+
+  /** The value in slot [from] must be moved to slot [to], and [from] released. */
+  protected open fun onMove(from: Int, to: Int) = Unit
+
+  /** The value in [slot] was removed and should be released. */
+  protected open fun onRemove(slot: Int) = Unit
+
+  /** Every value was removed and should be released. */
+  protected open fun onClear() = Unit
+
+  private fun idealSlot(key: Long): Int {
+    val hash = key * PHI
+    return (hash xor (hash ushr 32)).toInt() and mask
+  }
+
+  private fun emptySlotFor(key: Long): Int {
+    var slot = idealSlot(key)
+    while (used[slot]) {
+      slot = (slot + 1) and mask
+    }
+    return slot
+  }
+
+  private fun rehash(newCapacity: Int) {
+    val oldKeys = keys
+    val oldUsed = used
+
+    keys = LongArray(newCapacity)
+    used = BooleanArray(newCapacity)
+    mask = newCapacity - 1
+
+    val mapping = IntArray(oldKeys.size)
+    for (slot in oldKeys.indices) {
+      if (oldUsed[slot]) {
+        val newSlot = emptySlotFor(oldKeys[slot])
+        keys[newSlot] = oldKeys[slot]
+        used[newSlot] = true
+        mapping[slot] = newSlot
+      } else {
+        mapping[slot] = -1
+      }
+    }
+
+    onRehash(newCapacity, mapping)
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.collections
+
+/**
+ * A map of `long` keys to `int` values that, unlike a `HashMap<Long, Int>`, boxes neither. Iteration order is unspecified.
+ *
+ * Not thread safe.
+ */
+class LongIntMap @JvmOverloads constructor(initialCapacity: Int = 0) : LongHashTable(initialCapacity) {
+
+  @PublishedApi
+  @JvmField
+  internal var values: IntArray = IntArray(keys.size)
+
+  fun containsKey(key: Long): Boolean = slotOf(key) >= 0
+
+  fun getOrDefault(key: Long, defaultValue: Int): Int {
+    val slot = slotOf(key)
+    return if (slot >= 0) values[slot] else defaultValue
+  }
+
+  operator fun set(key: Long, value: Int) {
+    put(key, value)
+  }
+
+  fun put(key: Long, value: Int) {
+    val slot = insert(key)
+    values[if (slot >= 0) slot else slot.inv()] = value
+  }
+
+  /**
+   * @return True if the key was removed, false if it wasn't present.
+   */
+  fun remove(key: Long): Boolean {
+    val slot = slotOf(key)
+    if (slot < 0) {
+      return false
+    }
+
+    removeAt(slot)
+    return true
+  }
+
+  inline fun forEach(action: (key: Long, value: Int) -> Unit) {
+    val keys = keys
+    val used = used
+    val values = values
+    for (slot in keys.indices) {
+      if (used[slot]) {
+        action(keys[slot], values[slot])
+      }
+    }
+  }
+
+  override fun onRehash(newCapacity: Int, mapping: IntArray) {
+    val oldValues = values
+    values = IntArray(newCapacity)
+    for (slot in mapping.indices) {
+      if (mapping[slot] >= 0) {
+        values[mapping[slot]] = oldValues[slot]
+      }
+    }
+  }
+
+  override fun onMove(from: Int, to: Int) {
+    values[to] = values[from]
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.collections
+
+/**
+ * A growable array of `long`s, for building up a [LongArray] without boxing each element into a `List<Long>` first.
+ *
+ * Not thread safe.
+ */
+class LongList @JvmOverloads constructor(initialCapacity: Int = 10) {
+
+  @PublishedApi
+  @JvmField
+  internal var elements: LongArray = LongArray(maxOf(initialCapacity, 1))
+
+  var size: Int = 0
+    private set
+
+  fun isEmpty(): Boolean = size == 0
+
+  fun isNotEmpty(): Boolean = size != 0
+
+  operator fun get(index: Int): Long {
+    if (index < 0 || index >= size) {
+      throw IndexOutOfBoundsException("Index: $index, Size: $size")
+    }
+    return elements[index]
+  }
+
+  fun add(value: Long) {
+    ensureCapacity(size + 1)
+    elements[size++] = value
+  }
+
+  fun addAll(values: LongArray) {
+    ensureCapacity(size + values.size)
+    values.copyInto(elements, destinationOffset = size)
+    size += values.size
+  }
+
+  operator fun plusAssign(value: Long) {
+    add(value)
+  }
+
+  operator fun contains(value: Long): Boolean {
+    for (i in 0 until size) {
+      if (elements[i] == value) {
+        return true
+      }
+    }
+    return false
+  }
+
+  fun clear() {
+    size = 0
+  }
+
+  fun toLongArray(): LongArray = elements.copyOf(size)
+
+  inline fun forEach(action: (Long) -> Unit) {
+    val elements = elements
+    for (i in 0 until size) {
+      action(elements[i])
+    }
+  }
+
+  private fun ensureCapacity(capacity: Int) {
+    if (capacity > elements.size) {
+      elements = elements.copyOf(maxOf(capacity, elements.size * 2))
+    }
+  }
+
+  override fun equals(other: Any?): Boolean {
+    if (this === other) return true
+    if (other !is LongList || other.size != size) return false
+
+    for (i in 0 until size) {
+      if (elements[i] != other.elements[i]) return false
+    }
+    return true
+  }
+
+  override fun hashCode(): Int {
+    var hash = 1
+    forEach { hash = 31 * hash + it.hashCode() }
+    return hash
+  }
+
+  override fun toString(): String {
+    return toLongArray().joinToString(prefix = "[", postfix = "]")
+  }
+}
+
+/**
+ * Builds a [LongArray] of unknown size, the way [buildList] would for a `List<Long>`.
+ */
+inline fun buildLongArray(initialCapacity: Int = 10, builderAction: LongList.() -> Unit): LongArray {
+  return LongList(initialCapacity).apply(builderAction).toLongArray()
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.collections
+
+/**
+ * A map of `long` keys to objects that, unlike a `HashMap<Long, V>`, doesn't box its keys. Iteration order is unspecified. Null values aren't
+ * supported, as null is what [get] returns for a missing key.
+ *
+ * Not thread safe.
+ */
+class LongObjectMap<V : Any> @JvmOverloads constructor(initialCapacity: Int = 0) : LongHashTable(initialCapacity) {
+
+  @PublishedApi
+  @JvmField
+  internal var values: Array<Any?> = arrayOfNulls(keys.size)
+
+  fun containsKey(key: Long): Boolean = slotOf(key) >= 0
+
+  operator fun get(key: Long): V? {
+    val slot = slotOf(key)
+    @Suppress("UNCHECKED_CAST")
+    return if (slot >= 0) values[slot] as V else null
+  }
+
+  operator fun set(key: Long, value: V) {
+    put(key, value)
+  }
+
+  /**
+   * @return The value previously mapped to [key], if any.
+   */
+  fun put(key: Long, value: V): V? {
+    val slot = insert(key)
+    return if (slot >= 0) {
+      @Suppress("UNCHECKED_CAST")
+      val previous = values[slot] as V
+      values[slot] = value
+      previous
+    } else {
+      values[slot.inv()] = value
+      null
+    }
+  }
+
+  inline fun getOrPut(key: Long, defaultValue: () -> V): V {
+    return get(key) ?: defaultValue().also { put(key, it) }
+  }
+
+  /**
+   * @return The value that was mapped to [key], if any.
+   */
+  fun remove(key: Long): V? {
+    val slot = slotOf(key)
+    if (slot < 0) {
+      return null
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    val previous = values[slot] as V
+    removeAt(slot)
+    return previous
+  }
+
+  /**
+   * A snapshot of the values, in no particular order.
+   */
+  fun valuesToList(): List<V> {
+    val out = ArrayList<V>(size)
+    forEach { _, value -> out += value }
+    return out
+  }
+
+  /**
+   * The number of slots in the table. Together with [valueAt] this lets Java callers, which can't use the inline [forEach], visit the values
+   * without allocating.
+   */
+  val capacity: Int
+    get() = keys.size
+
+  /**
+   * @return The value stored in [slot], or null if the slot is empty.
+   */
+  fun valueAt(slot: Int): V? {
+    @Suppress("UNCHECKED_CAST")
+    return if (used[slot]) values[slot] as V else null
+  }
+
+  inline fun forEach(action: (key: Long, value: V) -> Unit) {
+    val keys = keys
+    val used = used
+    val values = values
+    for (slot in keys.indices) {
+      if (used[slot]) {
+        @Suppress("UNCHECKED_CAST")
+        action(keys[slot], values[slot] as V)
+      }
+    }
+  }
+
+  override fun onRehash(newCapacity: Int, mapping: IntArray) {
+    val oldValues = values
+    values = arrayOfNulls(newCapacity)
+    for (slot in mapping.indices) {
+      if (mapping[slot] >= 0) {
+        values[mapping[slot]] = oldValues[slot]
+      }
+    }
+  }
+
+  override fun onMove(from: Int, to: Int) {
+    values[to] = values[from]
+    values[from] = null
+  }
+
+  override fun onRemove(slot: Int) {
+    values[slot] = null
+  }
+
+  override fun onClear() {
+    values.fill(null)
+  }
+}
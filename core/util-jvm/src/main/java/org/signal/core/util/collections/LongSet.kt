@@ -0,0 +1,98 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.collections
+
+/**
+ * A set of `long`s that, unlike a `HashSet<Long>`, doesn't box its elements. Iteration order is unspecified.
+ *
+ * Not thread safe.
+ */
+class LongSet @JvmOverloads constructor(initialCapacity: Int = 0) : LongHashTable(initialCapacity) {
+
+  companion object {
+    @JvmStatic
+    fun of(vararg values: Long): LongSet {
+      return LongSet(values.size).apply { addAll(values) }
+    }
+  }
+
+  operator fun contains(value: Long): Boolean = slotOf(value) >= 0
+
+  /**
+   * @return True if the value was added, false if it was already present.
+   */
+  fun add(value: Long): Boolean = insert(value) < 0
+
+  fun addAll(values: LongArray) {
+    for (value in values) {
+      insert(value)
+    }
+  }
+
+  fun addAll(values: LongSet) {
+    values.forEach { insert(it) }
+  }
+
+  /**
+   * @return True if the value was removed, false if it wasn't present.
+   */
+  fun remove(value: Long): Boolean {
+    val slot = slotOf(value)
+    if (slot < 0) {
+      return false
+    }
+
+    removeAt(slot)
+    return true
+  }
+
+  operator fun plusAssign(value: Long) {
+    add(value)
+  }
+
+  operator fun minusAssign(value: Long) {
+    remove(value)
+  }
+
+  fun toLongArray(): LongArray = keysToArray()
+
+  /**
+   * A boxed copy, for handing to APIs that take a `Set<Long>`.
+   */
+  fun toSet(): Set<Long> {
+    val out = HashSet<Long>(size * 4 / 3 + 1)
+    forEach { out += it }
+    return out
+  }
+
+  inline fun forEach(action: (Long) -> Unit) {
+    val keys = keys
+    val used = used
+    for (slot in keys.indices) {
+      if (used[slot]) {
+        action(keys[slot])
+      }
+    }
+  }
+
+  override fun equals(other: Any?): Boolean {
+    if (this === other) return true
+    if (other !is LongSet || other.size != size) return false
+
+    forEach { if (it !in other) return false }
+    return true
+  }
+
+  override fun hashCode(): Int {
+    var hash = 0
+    forEach { hash += it.hashCode() }
+    return hash
+  }
+
+  override fun toString(): String {
+    return toLongArray().joinToString(prefix = "[", postfix = "]")
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.crypto
+
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.ByteBuffer
+import javax.crypto.Cipher
+import javax.crypto.Mac
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * Writes the encrypted framing used by full backups and device transfers. Every frame and every file body gets its own AES/CTR counter in the first
+ * four bytes of [iv], and is followed by a truncated HMAC-SHA256 over its ciphertext.
+ *
+ * Callers encode the frames themselves, so that this can be shared by anything that speaks the format without depending on its protos.
+ *
+ * @param encryptLength Whether each frame's length prefix is encrypted and covered by the MAC, as it is in newer backup versions.
+ * @param parallelEncryptor If present, [writeBody] with a [ParallelCtrEncryptor.PositionalSource] encrypts in parallel chunks. The output is the
+ *                          same either way.
+ */
+class EncryptedFrameWriter(
+  private val output: OutputStream,
+  private val cipherKey: ByteArray,
+  macKey: ByteArray,
+  iv: ByteArray,
+  private val encryptLength: Boolean,
+  private val parallelEncryptor: ParallelCtrEncryptor? = null
+) {
+
+  companion object {
+    const val MAC_LENGTH = 10
+
+    private const val STREAM_BUFFER_SIZE = 8192
+  }
+
+  private val cipher: Cipher = Cipher.getInstance("AES/CTR/NoPadding")
+  private val mac: Mac = Mac.getInstance("HmacSHA256").apply { init(SecretKeySpec(macKey, "HmacSHA256")) }
+  private val cipherKeySpec = SecretKeySpec(cipherKey, "AES")
+  private val iv: ByteArray = iv.clone()
+  private var counter: Int = ByteBuffer.wrap(iv, 0, 4).int
+
+  /**
+   * Whether [writeBody] with a [ParallelCtrEncryptor.PositionalSource] is available. When it isn't, the stream variant is just as fast.
+   */
+  val canEncryptInParallel: Boolean
+    get() = parallelEncryptor != null
+
+  /**
+   * Encrypts and writes a single encoded frame, preceded by its length.
+   */
+  @Throws(IOException::class)
+  fun writeFrame(encodedFrame: ByteArray) {
+    initCipher()
+
+    // this assumes a stream cipher
+    var length = ByteBuffer.allocate(4).putInt(encodedFrame.size + MAC_LENGTH).array()
+    if (encryptLength) {
+      val encryptedLength = cipher.update(length)
+      if (encryptedLength.size != length.size) {
+        throw IOException("Stream cipher assumption has been violated!")
+      }
+      mac.update(encryptedLength)
+      length = encryptedLength
+    }
+
+    val frameCiphertext = cipher.doFinal(encodedFrame)
+    if (frameCiphertext.size != encodedFrame.size) {
+      throw IOException("Stream cipher assumption has been violated!")
+    }
+
+    val frameMac = mac.doFinal(frameCiphertext)
+
+    output.write(length)
+    output.write(frameCiphertext)
+    output.write(frameMac, 0, MAC_LENGTH)
+  }
+
+  /**
+   * Encrypts and writes a file body that follows a frame announcing its length.
+   *
+   * @return The amount of data read from [input].
+   */
+  @Throws(IOException::class)
+  fun writeBody(input: InputStream): Long {
+    initCipher()
+    mac.update(iv)
+
+    val buffer = ByteArray(STREAM_BUFFER_SIZE)
+    var total = 0L
+
+    while (true) {
+      val read = input.read(buffer)
+      if (read == -1) {
+        break
+      }
+
+      val ciphertext: ByteArray? = cipher.update(buffer, 0, read)
+      if (ciphertext != null) {
+        output.write(ciphertext)
+        mac.update(ciphertext)
+      }
+
+      total += read
+    }
+
+    val remainder = cipher.doFinal()
+    output.write(remainder)
+    mac.update(remainder)
+
+    output.write(mac.doFinal(), 0, MAC_LENGTH)
+
+    return total
+  }
+
+  /**
+   * Same output as [writeBody] with a stream, but with the reading and encrypting spread across [parallelEncryptor]'s threads. Only the MAC, which
+   * has to see the ciphertext in order, is left on this thread.
+   *
+   * @return The amount of data read from [source].
+   */
+  @Throws(IOException::class)
+  fun writeBody(source: ParallelCtrEncryptor.PositionalSource, size: Long): Long {
+    val encryptor = checkNotNull(parallelEncryptor) { "Parallel encryption is not enabled!" }
+
+    nextIv()
+    mac.update(iv)
+
+    val total = encryptor.encrypt(cipherKey, iv.clone(), source, size) { ciphertext, length ->
+      output.write(ciphertext, 0, length)
+      mac.update(ciphertext, 0, length)
+    }
+
+    output.write(mac.doFinal(), 0, MAC_LENGTH)
+
+    return total
+  }
+
+  private fun initCipher() {
+    nextIv()
+    cipher.init(Cipher.ENCRYPT_MODE, cipherKeySpec, IvParameterSpec(iv))
+  }
+
+  private fun nextIv() {
+    ByteBuffer.wrap(iv, 0, 4).putInt(counter++)
+  }
+}
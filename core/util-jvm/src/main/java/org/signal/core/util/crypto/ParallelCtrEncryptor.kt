@@ -0,0 +1,173 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.crypto
+
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.security.GeneralSecurityException
+import java.util.ArrayDeque
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import javax.crypto.Cipher
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * Encrypts a large input with AES/CTR on several threads at once, while still handing the ciphertext back in order.
+ *
+ * In CTR mode every 16-byte block is encrypted independently with its own counter value, so the input can be split into chunks that each start
+ * their cipher at `iv + blockIndex`. The output is identical to running a single `AES/CTR/NoPadding` cipher over the whole input, whose counter is
+ * the full 128-bit IV incremented as a big-endian integer.
+ *
+ * Chunks are read from a [PositionalSource], which must be safe to call from several threads, on [executor]. At most [parallelism] chunks are in
+ * flight, and their buffers are reused, so memory stays at roughly `(parallelism + 1) * chunkSize` regardless of the input size.
+ */
+class ParallelCtrEncryptor @JvmOverloads constructor(
+  private val executor: ExecutorService,
+  private val parallelism: Int,
+  private val chunkSize: Int = DEFAULT_CHUNK_SIZE
+) {
+
+  companion object {
+    const val DEFAULT_CHUNK_SIZE = 1024 * 1024
+
+    private const val BLOCK_SIZE = 16
+
+    private val CIPHER: ThreadLocal<Cipher> = ThreadLocal.withInitial { Cipher.getInstance("AES/CTR/NoPadding") }
+
+    /**
+     * @return [iv] advanced by [blocks], treating it as a 128-bit big-endian counter.
+     */
+    @JvmStatic
+    fun ivForBlock(iv: ByteArray, blocks: Long): ByteArray {
+      require(iv.size == BLOCK_SIZE) { "IV must be $BLOCK_SIZE bytes." }
+
+      val result = iv.copyOf()
+      var carry = blocks
+      var i = BLOCK_SIZE - 1
+
+      while (i >= 0 && carry != 0L) {
+        val sum = (result[i].toLong() and 0xFF) + (carry and 0xFF)
+        result[i] = sum.toByte()
+        carry = (carry ushr 8) + (sum ushr 8)
+        i--
+      }
+
+      return result
+    }
+  }
+
+  init {
+    require(parallelism > 0) { "Parallelism must be positive." }
+    require(chunkSize > 0 && chunkSize % BLOCK_SIZE == 0) { "Chunk size must be a positive multiple of $BLOCK_SIZE." }
+  }
+
+  /**
+   * Encrypts [length] bytes from [source] with [key] and [iv], handing each chunk of ciphertext to [consumer] in order on the calling thread.
+   *
+   * @return The number of bytes encrypted, which is less than [length] only if [source] ended early.
+   */
+  @Throws(IOException::class)
+  fun encrypt(key: ByteArray, iv: ByteArray, source: PositionalSource, length: Long, consumer: ChunkConsumer): Long {
+    val keySpec = SecretKeySpec(key, "AES")
+    val buffers = ArrayBlockingQueue<ByteArray>(parallelism + 1)
+    val inFlight = ArrayDeque<Future<Chunk>>(parallelism)
+
+    repeat(parallelism + 1) { buffers.add(ByteArray(chunkSize)) }
+
+    var nextPosition = 0L
+    var total = 0L
+
+    try {
+      while (nextPosition < length || inFlight.isNotEmpty()) {
+        while (nextPosition < length && inFlight.size < parallelism) {
+          val position = nextPosition
+          val size = minOf(chunkSize.toLong(), length - position).toInt()
+          val buffer = buffers.take()
+
+          inFlight.add(executor.submit<Chunk> { encryptChunk(keySpec, iv, source, position, buffer, size) })
+          nextPosition += size
+        }
+
+        val chunk = await(inFlight.removeFirst())
+
+        consumer.accept(chunk.buffer, chunk.length)
+        total += chunk.length
+        buffers.add(chunk.buffer)
+
+        if (chunk.length < chunk.requested) {
+          break
+        }
+      }
+    } catch (e: InterruptedException) {
+      throw InterruptedIOException("Interrupted while encrypting.")
+    } finally {
+      for (future in inFlight) {
+        future.cancel(false)
+      }
+    }
+
+    return total
+  }
+
+  private fun encryptChunk(key: SecretKeySpec, iv: ByteArray, source: PositionalSource, position: Long, buffer: ByteArray, size: Int): Chunk {
+    var read = 0
+    while (read < size) {
+      val result = source.read(position + read, buffer, read, size - read)
+      if (result == -1) {
+        break
+      }
+      read += result
+    }
+
+    if (read > 0) {
+      val cipher = CIPHER.get()!!
+      cipher.init(Cipher.ENCRYPT_MODE, key, IvParameterSpec(ivForBlock(iv, position / BLOCK_SIZE)))
+
+      if (cipher.update(buffer, 0, read, buffer, 0) != read) {
+        throw IOException("Stream cipher assumption has been violated!")
+      }
+    }
+
+    return Chunk(buffer, read, size)
+  }
+
+  private fun await(future: Future<Chunk>): Chunk {
+    try {
+      return future.get()
+    } catch (e: ExecutionException) {
+      when (val cause = e.cause) {
+        is IOException -> throw cause
+        is GeneralSecurityException -> throw AssertionError(cause)
+        is RuntimeException -> throw cause
+        else -> throw IOException(cause)
+      }
+    }
+  }
+
+  private class Chunk(val buffer: ByteArray, val length: Int, val requested: Int)
+
+  /**
+   * Reads plaintext at an absolute position. Called from several threads at once.
+   */
+  fun interface PositionalSource {
+    /**
+     * @return The number of bytes read, or -1 at the end of the input.
+     */
+    @Throws(IOException::class)
+    fun read(position: Long, buffer: ByteArray, offset: Int, length: Int): Int
+  }
+
+  fun interface ChunkConsumer {
+    /**
+     * Receives the next [length] bytes of ciphertext. [buffer] is reused once this returns.
+     */
+    @Throws(IOException::class)
+    fun accept(buffer: ByteArray, length: Int)
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.stream
+
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.io.OutputStream
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Moves writes to [wrapped] onto a dedicated thread, so the thread producing the data can keep working while the previous data is being sent.
+ *
+ * Writes are coalesced into buffers of [bufferSize] bytes, which are only handed off once they're full. That keeps writes to [wrapped] large, which
+ * matters for things like TLS sockets where every write becomes at least one record. At most [bufferCount] buffers exist at a time, so a producer
+ * that outpaces the sender blocks rather than queueing data without bound.
+ *
+ * Failures on the sending thread are rethrown from the next call on the producing thread. Either [close], [finish] or [abort] must be called to
+ * stop the sending thread.
+ */
+class PipelinedOutputStream @JvmOverloads constructor(
+  private val wrapped: OutputStream,
+  private val bufferSize: Int = DEFAULT_BUFFER_SIZE,
+  bufferCount: Int = DEFAULT_BUFFER_COUNT,
+  threadName: String = "pipelined-output"
+) : OutputStream() {
+
+  companion object {
+    const val DEFAULT_BUFFER_SIZE = 256 * 1024
+    const val DEFAULT_BUFFER_COUNT = 4
+
+    private const val POLL_INTERVAL_MS = 100L
+  }
+
+  private val freeBuffers = ArrayBlockingQueue<ByteArray>(bufferCount)
+  private val pending = ArrayBlockingQueue<Item>(bufferCount + 1)
+  private val sender = Thread(::runSender, threadName)
+
+  private var current: ByteArray
+  private var currentLength = 0
+  private var stopped = false
+
+  @Volatile
+  private var failure: IOException? = null
+
+  @Volatile
+  private var aborted = false
+
+  init {
+    require(bufferCount >= 2) { "Need at least two buffers to overlap producing and sending." }
+
+    repeat(bufferCount - 1) { freeBuffers.add(ByteArray(bufferSize)) }
+    current = ByteArray(bufferSize)
+
+    sender.isDaemon = true
+    sender.start()
+  }
+
+  override fun write(b: Int) {
+    throwIfClosedOrFailed()
+
+    if (currentLength == bufferSize) {
+      handOff()
+    }
+
+    current[currentLength++] = b.toByte()
+  }
+
+  override fun write(data: ByteArray, offset: Int, length: Int) {
+    throwIfClosedOrFailed()
+
+    var written = 0
+    while (written < length) {
+      if (currentLength == bufferSize) {
+        handOff()
+      }
+
+      val toCopy = minOf(length - written, bufferSize - currentLength)
+      System.arraycopy(data, offset + written, current, currentLength, toCopy)
+      currentLength += toCopy
+      written += toCopy
+    }
+  }
+
+  /**
+   * Sends everything written so far, and returns once [wrapped] has been flushed.
+   */
+  override fun flush() {
+    throwIfClosedOrFailed()
+
+    if (currentLength > 0) {
+      handOff()
+    }
+
+    val flushed = CountDownLatch(1)
+    enqueue(Item.Flush(flushed))
+
+    while (!flushed.await(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+      throwIfFailed()
+    }
+
+    throwIfFailed()
+  }
+
+  /**
+   * Sends everything written so far and stops the sending thread, but leaves [wrapped] open.
+   */
+  fun finish() {
+    if (stopped) {
+      return
+    }
+
+    flush()
+    stopped = true
+    enqueue(Item.Stop)
+    joinSender()
+    throwIfFailed()
+  }
+
+  /**
+   * Flushes everything written so far and then closes [wrapped].
+   */
+  override fun close() {
+    try {
+      finish()
+    } finally {
+      abort()
+      wrapped.close()
+    }
+  }
+
+  /**
+   * Drops anything that hasn't been sent yet and stops the sending thread without waiting for it. Safe to call at any point, including after
+   * [finish] or [close]. If the sending thread is blocked writing to [wrapped], it will exit once that write returns or fails.
+   */
+  fun abort() {
+    if (aborted) {
+      return
+    }
+
+    aborted = true
+    stopped = true
+
+    while (true) {
+      val item = pending.poll() ?: break
+      if (item is Item.Data) {
+        freeBuffers.offer(item.buffer)
+      } else if (item is Item.Flush) {
+        item.flushed.countDown()
+      }
+    }
+
+    pending.offer(Item.Stop)
+  }
+
+  private fun handOff() {
+    enqueue(Item.Data(current, currentLength))
+
+    var next: ByteArray? = null
+    while (next == null) {
+      throwIfFailed()
+      next = freeBuffers.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)
+    }
+
+    current = next
+    currentLength = 0
+  }
+
+  private fun enqueue(item: Item) {
+    while (!pending.offer(item, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+      throwIfFailed()
+    }
+  }
+
+  private fun throwIfClosedOrFailed() {
+    if (stopped && !aborted) {
+      throw IOException("Stream is closed.")
+    }
+
+    throwIfFailed()
+  }
+
+  private fun throwIfFailed() {
+    failure?.let { throw IOException("Failed to write to the wrapped stream.", it) }
+
+    if (aborted) {
+      throw IOException("Stream was aborted.")
+    }
+  }
+
+  private fun joinSender() {
+    try {
+      sender.join()
+    } catch (e: InterruptedException) {
+      throw InterruptedIOException("Interrupted while waiting for the sender to finish.")
+    }
+  }
+
+  private fun runSender() {
+    while (true) {
+      val item = try {
+        pending.take()
+      } catch (e: InterruptedException) {
+        failure = InterruptedIOException("Sender was interrupted.")
+        return
+      }
+
+      when (item) {
+        is Item.Data -> {
+          if (failure == null && !aborted) {
+            try {
+              wrapped.write(item.buffer, 0, item.length)
+            } catch (e: IOException) {
+              failure = e
+            }
+          }
+          freeBuffers.offer(item.buffer)
+        }
+        is Item.Flush -> {
+          if (failure == null && !aborted) {
+            try {
+              wrapped.flush()
+            } catch (e: IOException) {
+              failure = e
+            }
+          }
+          item.flushed.countDown()
+        }
+        Item.Stop -> return
+      }
+    }
+  }
+
+  private sealed interface Item {
+    class Data(val buffer: ByteArray, val length: Int) : Item
+    class Flush(val flushed: CountDownLatch) : Item
+    data object Stop : Item
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import java.util.concurrent.Executors
+import kotlin.random.Random
+
+class E164BatchFormatterTest {
+
+  private val formatter: E164Util.Formatter = E164Util.createFormatterForE164("+14152222222")
+
+  @Test
+  fun `formatAll - matches the formatter for a mix of inputs`() {
+    val inputs = listOf(
+      "(415) 111-1122",
+      "415.111.1125",
+      "+1 (415) 111 1128",
+      "+14151111129",
+      "+442079460018",
+      "+4402079460018",
+      "+0015551234567",
+      "+4930123456",
+      "+39061234567",
+      "911",
+      "+456-7890",
+      "1111122",
+      "abc",
+      ""
+    )
+
+    val result = E164BatchFormatter(formatter).formatAll(inputs)
+
+    inputs.forEach { assertEquals(it, formatter.formatAsE164(it), result.formatted[it]) }
+  }
+
+  @Test
+  fun `formatAll - matches the formatter for a synthetic address book in parallel`() {
+    val inputs = syntheticAddressBook(5_000)
+    val executor = Executors.newFixedThreadPool(4)
+
+    try {
+      val result = E164BatchFormatter(formatter, executor, parallelThreshold = 100).formatAll(inputs)
+      inputs.forEach { assertEquals(it, formatter.formatAsE164(it), result.formatted[it]) }
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+  @Test
+  fun `formatAll - uses memo entries instead of formatting`() {
+    val memo = mapOf(
+      "(415) 111-1122" to "+19999999999",
+      "not a number" to null
+    )
+
+    val result = E164BatchFormatter(formatter).formatAll(listOf("(415) 111-1122", "not a number", "(415) 111-1123"), memo)
+
+    assertEquals("+19999999999", result.formatted["(415) 111-1122"])
+    assertNull(result.formatted["not a number"])
+    assertEquals("+14151111123", result.formatted["(415) 111-1123"])
+    assertEquals(2, result.memoHits)
+    assertEquals(setOf("(415) 111-1123"), result.newlyFormatted.keys)
+  }
+
+  @Test
+  fun `formatCanonical - only accepts numbers formatting would leave untouched`() {
+    val batchFormatter = E164BatchFormatter(formatter)
+
+    assertEquals("+14151111129", batchFormatter.formatCanonical("+14151111129"))
+    assertEquals("+442079460018", batchFormatter.formatCanonical("+442079460018"))
+    assertNull(batchFormatter.formatCanonical("+1 415 111 1129"))
+    assertNull(batchFormatter.formatCanonical("4151111129"))
+    assertNull(batchFormatter.formatCanonical("+4567890"))
+  }
+
+  private fun syntheticAddressBook(size: Int): List<String> {
+    val random = Random(1234)
+
+    return List(size) { i ->
+      val area = 200 + random.nextInt(800)
+      val exchange = 200 + random.nextInt(800)
+      val line = random.nextInt(10_000).toString().padStart(4, '0')
+
+      when (i % 6) {
+        0 -> "+1$area$exchange$line"
+        1 -> "($area) $exchange-$line"
+        2 -> "$area.$exchange.$line"
+        3 -> "+44 20 ${random.nextInt(10_000_000, 99_999_999)}"
+        4 -> "$exchange$line"
+        else -> "+49 ${random.nextInt(100, 999)} ${random.nextInt(1_000_000, 9_999_999)}"
+      }
+    }
+  }
+}
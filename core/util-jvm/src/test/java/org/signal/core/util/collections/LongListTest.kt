@@ -0,0 +1,49 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.collections
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class LongListTest {
+
+  @Test
+  fun `keeps values in the order they were added`() {
+    val list = LongList(1)
+    list += 3
+    list += 1
+    list.addAll(longArrayOf(4, 1, 5))
+
+    assertEquals(5, list.size)
+    assertEquals(4L, list[2])
+    assertArrayEquals(longArrayOf(3, 1, 4, 1, 5), list.toLongArray())
+    assertTrue(5L in list)
+    assertFalse(2L in list)
+  }
+
+  @Test(expected = IndexOutOfBoundsException::class)
+  fun `get past the end throws even when the backing array is larger`() {
+    val list = LongList(10)
+    list += 1
+
+    list[1]
+  }
+
+  @Test
+  fun `buildLongArray returns exactly what was added`() {
+    val array = buildLongArray(initialCapacity = 2) {
+      for (i in 0L until 100L) {
+        add(i * i)
+      }
+    }
+
+    assertEquals(100, array.size)
+    assertEquals(99L * 99L, array[99])
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.collections
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.random.Random
+
+class LongMapTest {
+
+  @Test
+  fun `object map put returns the previous value`() {
+    val map = LongObjectMap<String>()
+
+    assertNull(map.put(1, "a"))
+    assertEquals("a", map.put(1, "b"))
+    assertEquals("b", map[1])
+    assertNull(map[2])
+  }
+
+  @Test
+  fun `object map getOrPut only creates missing values`() {
+    val map = LongObjectMap<MutableList<Int>>()
+
+    map.getOrPut(7) { mutableListOf() } += 1
+    map.getOrPut(7) { mutableListOf() } += 2
+
+    assertEquals(listOf(1, 2), map[7])
+    assertEquals(1, map.size)
+  }
+
+  @Test
+  fun `object map matches a HashMap through random puts and removes`() {
+    val random = Random(5678)
+    val map = LongObjectMap<String>()
+    val expected = HashMap<Long, String>()
+
+    repeat(50_000) { i ->
+      val key = random.nextLong(-250, 250)
+      if (random.nextInt(3) != 0) {
+        assertEquals(expected.put(key, "$i"), map.put(key, "$i"))
+      } else {
+        assertEquals(expected.remove(key), map.remove(key))
+      }
+    }
+
+    assertEquals(expected.size, map.size)
+    for (key in -250L until 250L) {
+      assertEquals(expected[key], map[key])
+    }
+
+    val actual = HashMap<Long, String>()
+    map.forEach { key, value -> actual[key] = value }
+    assertEquals(expected, actual)
+    assertEquals(expected.values.sorted(), map.valuesToList().sorted())
+  }
+
+  @Test
+  fun `object map valueAt visits every value`() {
+    val map = LongObjectMap<String>()
+    for (key in 0L until 100L) {
+      map[key] = "$key"
+    }
+    map.remove(50)
+
+    val visited = (0 until map.capacity).mapNotNull { map.valueAt(it) }
+
+    assertEquals(map.valuesToList().sorted(), visited.sorted())
+    assertEquals(99, visited.size)
+  }
+
+  @Test
+  fun `int map matches a HashMap through random puts and removes`() {
+    val random = Random(91011)
+    val map = LongIntMap()
+    val expected = HashMap<Long, Int>()
+
+    repeat(50_000) { i ->
+      val key = random.nextLong(0, 300)
+      if (random.nextInt(3) != 0) {
+        expected[key] = i
+        map[key] = i
+      } else {
+        assertEquals(expected.remove(key) != null, map.remove(key))
+      }
+    }
+
+    assertEquals(expected.size, map.size)
+    for (key in 0L until 300L) {
+      assertEquals(expected.containsKey(key), map.containsKey(key))
+      assertEquals(expected[key] ?: -1, map.getOrDefault(key, -1))
+    }
+  }
+
+  @Test
+  fun `clear empties the maps`() {
+    val objects = LongObjectMap<String>().apply { put(1, "a") }
+    val ints = LongIntMap().apply { put(1, 1) }
+
+    objects.clear()
+    ints.clear()
+
+    assertTrue(objects.isEmpty())
+    assertNull(objects[1])
+    assertFalse(ints.containsKey(1))
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.collections
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.random.Random
+
+class LongSetTest {
+
+  @Test
+  fun `add reports whether the value was new`() {
+    val set = LongSet()
+
+    assertTrue(set.add(5))
+    assertFalse(set.add(5))
+    assertTrue(set.add(0))
+    assertTrue(set.add(-1))
+
+    assertEquals(3, set.size)
+    assertTrue(0L in set)
+    assertFalse(6L in set)
+  }
+
+  @Test
+  fun `grows past its initial capacity`() {
+    val set = LongSet(2)
+    for (value in 0L until 1000L) {
+      set += value
+    }
+
+    assertEquals(1000, set.size)
+    for (value in 0L until 1000L) {
+      assertTrue(value in set)
+    }
+    assertEquals((0L until 1000L).toSet(), set.toLongArray().toSet())
+  }
+
+  @Test
+  fun `matches a HashSet through random adds and removes`() {
+    val random = Random(1234)
+    val set = LongSet()
+    val expected = HashSet<Long>()
+
+    repeat(50_000) {
+      // A small range of values so that removals and collisions are common
+      val value = random.nextLong(0, 500)
+      if (random.nextBoolean()) {
+        assertEquals(expected.add(value), set.add(value))
+      } else {
+        assertEquals(expected.remove(value), set.remove(value))
+      }
+    }
+
+    assertEquals(expected.size, set.size)
+    assertEquals(expected, set.toLongArray().toSet())
+    assertEquals(expected, set.toSet())
+    for (value in 0L until 500L) {
+      assertEquals(value in expected, value in set)
+    }
+  }
+
+  @Test
+  fun `clear empties the set`() {
+    val set = LongSet.of(1, 2, 3)
+
+    set.clear()
+
+    assertTrue(set.isEmpty())
+    assertFalse(1L in set)
+    assertTrue(set.add(1))
+  }
+
+  @Test
+  fun `sets with the same values are equal`() {
+    assertEquals(LongSet.of(1, 2, 3), LongSet.of(3, 2, 1))
+    assertEquals(LongSet.of(1, 2, 3).hashCode(), LongSet.of(3, 2, 1).hashCode())
+  }
+}
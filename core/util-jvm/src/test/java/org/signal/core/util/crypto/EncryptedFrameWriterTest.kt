@@ -0,0 +1,90 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.crypto
+
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.util.concurrent.Executors
+import javax.crypto.Cipher
+import javax.crypto.Mac
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+import kotlin.random.Random
+
+class EncryptedFrameWriterTest {
+
+  private val executor = Executors.newFixedThreadPool(3)
+
+  private val cipherKey = Random.nextBytes(32)
+  private val macKey = Random.nextBytes(32)
+  private val iv = Random.nextBytes(16)
+
+  @After
+  fun tearDown() {
+    executor.shutdownNow()
+  }
+
+  @Test
+  fun `writeFrame - encrypts the length and frame with the next counter and appends a truncated mac`() {
+    val frame = Random.nextBytes(100)
+    val output = ByteArrayOutputStream()
+
+    EncryptedFrameWriter(output, cipherKey, macKey, iv, encryptLength = true).writeFrame(frame)
+
+    // The counter starts from the IV's first four bytes, so the first frame is encrypted with the IV as given
+    val cipher = Cipher.getInstance("AES/CTR/NoPadding").apply { init(Cipher.ENCRYPT_MODE, SecretKeySpec(cipherKey, "AES"), IvParameterSpec(iv)) }
+    val ciphertext = cipher.doFinal(ByteBuffer.allocate(4).putInt(frame.size + EncryptedFrameWriter.MAC_LENGTH).array() + frame)
+    val mac = Mac.getInstance("HmacSHA256").apply { init(SecretKeySpec(macKey, "HmacSHA256")) }.doFinal(ciphertext)
+
+    assertArrayEquals(ciphertext + mac.copyOf(EncryptedFrameWriter.MAC_LENGTH), output.toByteArray())
+  }
+
+  @Test
+  fun `writeBody - parallel encryption writes the same bytes as streaming`() {
+    val frames = List(3) { Random.nextBytes(50) }
+    val body = Random.nextBytes(CHUNK_SIZE * 3 + 7)
+
+    val streamed = ByteArrayOutputStream()
+    EncryptedFrameWriter(streamed, cipherKey, macKey, iv, encryptLength = true).apply {
+      frames.forEach { writeFrame(it) }
+      assertEquals(body.size.toLong(), writeBody(ByteArrayInputStream(body)))
+      writeFrame(frames[0])
+    }
+
+    val parallel = ByteArrayOutputStream()
+    EncryptedFrameWriter(parallel, cipherKey, macKey, iv, encryptLength = true, parallelEncryptor = ParallelCtrEncryptor(executor, 3, CHUNK_SIZE)).apply {
+      frames.forEach { writeFrame(it) }
+      assertEquals(body.size.toLong(), writeBody({ position, buffer, offset, length -> readAt(body, position, buffer, offset, length) }, body.size.toLong()))
+      writeFrame(frames[0])
+    }
+
+    assertArrayEquals(streamed.toByteArray(), parallel.toByteArray())
+  }
+
+  @Test(expected = IllegalStateException::class)
+  fun `writeBody - parallel encryption requires an encryptor`() {
+    EncryptedFrameWriter(ByteArrayOutputStream(), cipherKey, macKey, iv, encryptLength = true).writeBody({ _, _, _, _ -> -1 }, 0)
+  }
+
+  private fun readAt(source: ByteArray, position: Long, buffer: ByteArray, offset: Int, length: Int): Int {
+    if (position >= source.size) {
+      return -1
+    }
+
+    val count = minOf(length.toLong(), source.size - position).toInt()
+    System.arraycopy(source, position.toInt(), buffer, offset, count)
+    return count
+  }
+
+  companion object {
+    private const val CHUNK_SIZE = 1024
+  }
+}
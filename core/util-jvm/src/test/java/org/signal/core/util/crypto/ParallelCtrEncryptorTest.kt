@@ -0,0 +1,139 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.crypto
+
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.util.concurrent.Executors
+import javax.crypto.Cipher
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+import kotlin.random.Random
+
+class ParallelCtrEncryptorTest {
+
+  private val executor = Executors.newFixedThreadPool(4)
+
+  @After
+  fun tearDown() {
+    executor.shutdownNow()
+  }
+
+  @Test
+  fun `output matches a single cipher for lengths around chunk boundaries`() {
+    val encryptor = ParallelCtrEncryptor(executor, 3, CHUNK_SIZE)
+
+    for (length in listOf(0, 1, 15, 16, 17, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, CHUNK_SIZE * 7 + 5)) {
+      val key = Random.nextBytes(32)
+      val iv = Random.nextBytes(16)
+      val plaintext = Random.nextBytes(length)
+
+      assertArrayEquals("length $length", encryptSequentially(key, iv, plaintext), encryptInParallel(encryptor, key, iv, plaintext))
+    }
+  }
+
+  @Test
+  fun `output matches a single cipher when the counter carries across bytes`() {
+    val encryptor = ParallelCtrEncryptor(executor, 4, CHUNK_SIZE)
+    val key = Random.nextBytes(32)
+    val iv = ByteArray(16) { if (it < 8) 0x12 else 0xFF.toByte() }.also { it[15] = 0xF0.toByte() }
+    val plaintext = Random.nextBytes(CHUNK_SIZE * 5)
+
+    assertArrayEquals(encryptSequentially(key, iv, plaintext), encryptInParallel(encryptor, key, iv, plaintext))
+  }
+
+  @Test
+  fun `output matches a single cipher with a single worker`() {
+    val encryptor = ParallelCtrEncryptor(executor, 1, CHUNK_SIZE)
+    val key = Random.nextBytes(32)
+    val iv = Random.nextBytes(16)
+    val plaintext = Random.nextBytes(CHUNK_SIZE * 3 + 100)
+
+    assertArrayEquals(encryptSequentially(key, iv, plaintext), encryptInParallel(encryptor, key, iv, plaintext))
+  }
+
+  @Test
+  fun `stops at the end of a source that is shorter than requested`() {
+    val encryptor = ParallelCtrEncryptor(executor, 3, CHUNK_SIZE)
+    val key = Random.nextBytes(32)
+    val iv = Random.nextBytes(16)
+    val plaintext = Random.nextBytes(CHUNK_SIZE * 2 + 10)
+    val output = ByteArrayOutputStream()
+
+    val written = encryptor.encrypt(key, iv, sourceOf(plaintext), plaintext.size + CHUNK_SIZE * 4L) { buffer, length -> output.write(buffer, 0, length) }
+
+    assertEquals(plaintext.size.toLong(), written)
+    assertArrayEquals(encryptSequentially(key, iv, plaintext), output.toByteArray())
+  }
+
+  @Test(expected = IOException::class)
+  fun `source failures are rethrown to the caller`() {
+    val encryptor = ParallelCtrEncryptor(executor, 3, CHUNK_SIZE)
+
+    encryptor.encrypt(Random.nextBytes(32), Random.nextBytes(16), { position, _, _, length -> if (position >= CHUNK_SIZE * 2) throw IOException() else length }, CHUNK_SIZE * 6L) { _, _ -> }
+  }
+
+  @Test
+  fun `ivForBlock adds as a big endian counter`() {
+    val iv = ByteArray(16).also {
+      it[13] = 0x01
+      it[14] = 0xFF.toByte()
+      it[15] = 0xFF.toByte()
+    }
+
+    val expected = ByteArray(16).also {
+      it[13] = 0x02
+      it[14] = 0x00
+      it[15] = 0x01
+    }
+
+    assertArrayEquals(expected, ParallelCtrEncryptor.ivForBlock(iv, 2))
+  }
+
+  @Test
+  fun `ivForBlock wraps around at 128 bits`() {
+    val iv = ByteArray(16) { 0xFF.toByte() }
+
+    assertArrayEquals(ByteArray(16).also { it[15] = 0x04 }, ParallelCtrEncryptor.ivForBlock(iv, 5))
+  }
+
+  private fun encryptSequentially(key: ByteArray, iv: ByteArray, plaintext: ByteArray): ByteArray {
+    val cipher = Cipher.getInstance("AES/CTR/NoPadding")
+    cipher.init(Cipher.ENCRYPT_MODE, SecretKeySpec(key, "AES"), IvParameterSpec(iv))
+    return cipher.update(plaintext) ?: ByteArray(0)
+  }
+
+  private fun encryptInParallel(encryptor: ParallelCtrEncryptor, key: ByteArray, iv: ByteArray, plaintext: ByteArray): ByteArray {
+    val output = ByteArrayOutputStream()
+    val written = encryptor.encrypt(key, iv, sourceOf(plaintext), plaintext.size.toLong()) { buffer, length -> output.write(buffer, 0, length) }
+
+    assertEquals(plaintext.size.toLong(), written)
+    return output.toByteArray()
+  }
+
+  /**
+   * Hands back at most 1000 bytes at a time, so the encryptor has to cope with short reads.
+   */
+  private fun sourceOf(data: ByteArray): ParallelCtrEncryptor.PositionalSource {
+    return ParallelCtrEncryptor.PositionalSource { position, buffer, offset, length ->
+      if (position >= data.size) {
+        -1
+      } else {
+        val toCopy = minOf(length, 1000, data.size - position.toInt())
+        System.arraycopy(data, position.toInt(), buffer, offset, toCopy)
+        toCopy
+      }
+    }
+  }
+
+  companion object {
+    private const val CHUNK_SIZE = 4096
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.stream
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.io.OutputStream
+import java.util.concurrent.CountDownLatch
+import kotlin.random.Random
+
+class PipelinedOutputStreamTest {
+
+  @Test
+  fun `writes arrive in order and unchanged`() {
+    val data = Random.nextBytes(100_000)
+    val output = RecordingOutputStream()
+
+    PipelinedOutputStream(output, 1024, 3).use { stream ->
+      var position = 0
+      while (position < data.size) {
+        val length = minOf(Random.nextInt(1, 3000), data.size - position)
+        if (length == 1) {
+          stream.write(data[position].toInt())
+        } else {
+          stream.write(data, position, length)
+        }
+        position += length
+      }
+    }
+
+    assertArrayEquals(data, output.toByteArray())
+    assertTrue(output.closed)
+  }
+
+  @Test
+  fun `small writes are coalesced into full buffers`() {
+    val output = RecordingOutputStream()
+
+    PipelinedOutputStream(output, 1024, 2).use { stream ->
+      repeat(4096) { stream.write(it) }
+    }
+
+    assertEquals(listOf(1024, 1024, 1024, 1024), output.writeSizes)
+  }
+
+  @Test
+  fun `flush sends everything written so far`() {
+    val output = RecordingOutputStream()
+    val stream = PipelinedOutputStream(output, 1024, 2)
+
+    stream.write(byteArrayOf(1, 2, 3))
+    stream.flush()
+
+    assertArrayEquals(byteArrayOf(1, 2, 3), output.toByteArray())
+    assertEquals(1, output.flushes)
+
+    stream.close()
+  }
+
+  @Test
+  fun `finish leaves the wrapped stream open`() {
+    val output = RecordingOutputStream()
+    val stream = PipelinedOutputStream(output, 1024, 2)
+
+    stream.write(byteArrayOf(1, 2, 3))
+    stream.finish()
+
+    assertArrayEquals(byteArrayOf(1, 2, 3), output.toByteArray())
+    assertFalse(output.closed)
+
+    try {
+      stream.write(4)
+      fail()
+    } catch (e: IOException) {
+      // Expected
+    }
+
+    stream.abort()
+  }
+
+  @Test
+  fun `failures on the sending thread are rethrown to the writer`() {
+    val output = object : OutputStream() {
+      override fun write(b: Int) = throw IOException("Broken pipe")
+      override fun write(b: ByteArray, off: Int, len: Int) = throw IOException("Broken pipe")
+    }
+
+    val stream = PipelinedOutputStream(output, 16, 2)
+
+    try {
+      repeat(10_000) { stream.write(ByteArray(16)) }
+      stream.flush()
+      fail()
+    } catch (e: IOException) {
+      assertEquals("Broken pipe", e.cause?.message)
+    } finally {
+      stream.abort()
+    }
+  }
+
+  @Test
+  fun `abort unblocks a writer waiting on a stalled sender`() {
+    val stalled = CountDownLatch(1)
+    val output = object : OutputStream() {
+      override fun write(b: Int) = Unit
+      override fun write(b: ByteArray, off: Int, len: Int) {
+        stalled.await()
+      }
+    }
+
+    val stream = PipelinedOutputStream(output, 16, 2)
+    val writer = Thread {
+      try {
+        repeat(100) { stream.write(ByteArray(16)) }
+      } catch (e: IOException) {
+        // Expected
+      }
+    }
+
+    writer.start()
+    Thread.sleep(200)
+    stream.abort()
+    writer.join(5_000)
+    stalled.countDown()
+
+    assertFalse(writer.isAlive)
+  }
+
+  private class RecordingOutputStream : ByteArrayOutputStream() {
+    val writeSizes = mutableListOf<Int>()
+    var flushes = 0
+    var closed = false
+
+    @Synchronized
+    override fun write(b: ByteArray, off: Int, len: Int) {
+      writeSizes += len
+      super.write(b, off, len)
+    }
+
+    override fun flush() {
+      flushes++
+    }
+
+    override fun close() {
+      closed = true
+    }
+  }
+}
@@ -331,6 +331,21 @@ object SqlUtil {
     return Query("$prefixFilter$column IN (SELECT e.value FROM json_each(?) e)", arrayOf(jsonEncode(buildArgs(values))))
   }
 
+  /**
+   * Same as [buildFastCollectionQuery], but for primitive ids, which are written straight into the JSON array without being boxed or quoted.
+   */
+  @JvmStatic
+  @JvmOverloads
+  fun buildFastCollectionQuery(
+    column: String,
+    values: LongArray,
+    prefix: String = ""
+  ): Query {
+    require(values.isNotEmpty()) { "Must have values!" }
+    val prefixFilter = if (prefix.isEmpty() || prefix.endsWith(" ")) prefix else "$prefix "
+    return Query("$prefixFilter$column IN (SELECT e.value FROM json_each(?) e)", arrayOf(values.joinToString(prefix = "[", postfix = "]", separator = ",")))
+  }
+
   /**
    * A convenient way of making queries in the form: WHERE [column] IN (?, ?, ..., ?)
    *
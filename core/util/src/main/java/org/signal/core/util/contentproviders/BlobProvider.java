@@ -25,6 +25,7 @@ import org.signal.core.util.concurrent.SignalExecutors;
 import org.signal.core.util.crypto.AttachmentSecret;
 import org.signal.core.util.crypto.AttachmentSecretProvider;
 import org.signal.core.util.crypto.AttachmentSecretStore;
+import org.signal.core.util.crypto.ModernDecryptingPartChannel;
 import org.signal.core.util.crypto.ModernDecryptingPartInputStream;
 import org.signal.core.util.crypto.ModernEncryptingPartOutputStream;
 import org.signal.core.util.logging.Log;
@@ -158,6 +159,29 @@ public class BlobProvider {
                                                                                    position));
   }
 
+  /**
+   * Opens the content with the specified URI for random access, or returns null if it's held in memory, where a stream is already as cheap to seek.
+   *
+   * @throws IOException If the file fails to open or the spec of the URI doesn't match.
+   */
+  public synchronized @Nullable ModernDecryptingPartChannel getChannel(@NonNull Context context, @NonNull Uri uri) throws IOException {
+    waitUntilInitialized();
+
+    if (!isAuthority(uri)) {
+      throw new IOException("Provided URI does not match this spec. Uri: " + uri);
+    }
+
+    // Checked up front, since asking for the byte representation of a single-use blob would consume it
+    if (StorageType.decode(uri.getPathSegments().get(STORAGE_TYPE_PATH_SEGMENT)).isMemory()) {
+      return null;
+    }
+
+    return getBlobRepresentation(context,
+                                 uri,
+                                 bytes -> null,
+                                 file -> ModernDecryptingPartChannel.open(getAttachmentSecret(context), file));
+  }
+
   /**
    * Retreives a representation of a blob given the byte and file representations.
    *
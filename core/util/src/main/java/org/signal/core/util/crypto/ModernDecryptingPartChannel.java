@@ -0,0 +1,240 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.crypto;
+
+
+import androidx.annotation.NonNull;
+
+import org.signal.core.util.Conversions;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Random access to a file written by {@link ModernEncryptingPartOutputStream}.
+ *
+ * Unlike {@link ModernDecryptingPartInputStream}, which has to be recreated and skipped forward for every seek, this decrypts any range of the file
+ * in place: AES/CTR lets us start the cipher at the block containing the requested position, so a seek costs a cipher init rather than a new stream
+ * and a fresh key derivation. Reads that pick up where the previous one left off continue the same cipher without reinitializing it.
+ *
+ * Positions are in plaintext bytes. Instances are thread safe. {@link #read(long, ByteBuffer)} calls are serialized, while
+ * {@link #readConcurrently(long, byte[], int, int)} calls are not.
+ */
+public final class ModernDecryptingPartChannel implements Closeable {
+
+  private static final int RANDOM_SIZE = 32;
+  private static final int BLOCK_SIZE  = 16;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final ThreadLocal<Cipher> CONCURRENT_CIPHER = new ThreadLocal<>();
+
+  private final FileChannel   channel;
+  private final long          dataOffset;
+  private final SecretKeySpec key;
+  private final Cipher        cipher;
+  private final ByteBuffer    cipherBuffer;
+  private final ByteBuffer    discardBuffer;
+
+  /** The plaintext position the cipher will decrypt next, or -1 if it needs to be initialized before the next read. */
+  private long nextPosition = -1;
+
+  /**
+   * Opens a file whose random is stored separately, as with attachments.
+   */
+  public static @NonNull ModernDecryptingPartChannel open(@NonNull AttachmentSecret attachmentSecret, @NonNull byte[] random, @NonNull File file) throws IOException {
+    return new ModernDecryptingPartChannel(attachmentSecret, random, new RandomAccessFile(file, "r").getChannel(), 0);
+  }
+
+  /**
+   * Opens a file whose random is stored inline at the start of the file, as with blobs.
+   */
+  public static @NonNull ModernDecryptingPartChannel open(@NonNull AttachmentSecret attachmentSecret, @NonNull File file) throws IOException {
+    FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+
+    try {
+      ByteBuffer random = ByteBuffer.allocate(RANDOM_SIZE);
+
+      while (random.hasRemaining()) {
+        if (channel.read(random, random.position()) == -1) {
+          throw new IOException(ModernDecryptingPartInputStream.PREMATURE_END_ERROR_MESSAGE);
+        }
+      }
+
+      return new ModernDecryptingPartChannel(attachmentSecret, random.array(), channel, RANDOM_SIZE);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private ModernDecryptingPartChannel(@NonNull AttachmentSecret attachmentSecret, @NonNull byte[] random, @NonNull FileChannel channel, long dataOffset) {
+    this.channel       = channel;
+    this.dataOffset    = dataOffset;
+    this.key           = ModernDecryptingPartInputStream.deriveKey(attachmentSecret, random);
+    this.cipherBuffer  = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    this.discardBuffer = ByteBuffer.allocate(BLOCK_SIZE);
+
+    try {
+      this.cipher = Cipher.getInstance("AES/CTR/NoPadding");
+    } catch (GeneralSecurityException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * @return The length of the plaintext.
+   */
+  public long size() throws IOException {
+    return Math.max(channel.size() - dataOffset, 0);
+  }
+
+  /**
+   * Decrypts bytes starting at plaintext {@code position} into {@code dst}, up to its remaining space.
+   *
+   * @return The number of bytes read, which may be fewer than requested, or -1 if {@code position} is at or past the end of the file.
+   */
+  public synchronized int read(long position, @NonNull ByteBuffer dst) throws IOException {
+    if (position < 0) {
+      throw new IllegalArgumentException("Negative position: " + position);
+    }
+
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+
+    boolean continuing = position == nextPosition;
+    int     skip       = continuing ? 0 : (int) (position % BLOCK_SIZE);
+
+    if (!continuing) {
+      initCipher(position / BLOCK_SIZE);
+    }
+
+    cipherBuffer.clear();
+    cipherBuffer.limit((int) Math.min(cipherBuffer.capacity(), (long) dst.remaining() + skip));
+
+    long readFrom = dataOffset + position - skip;
+    int  read     = 0;
+
+    while (cipherBuffer.hasRemaining()) {
+      int result = channel.read(cipherBuffer, readFrom + read);
+      if (result == -1) {
+        break;
+      }
+      read += result;
+    }
+
+    if (read <= skip) {
+      nextPosition = -1;
+      return -1;
+    }
+
+    cipherBuffer.flip();
+
+    try {
+      if (skip > 0) {
+        cipherBuffer.limit(skip);
+        discardBuffer.clear();
+        cipher.update(cipherBuffer, discardBuffer);
+        cipherBuffer.limit(read);
+      }
+
+      int expected = read - skip;
+      int produced = cipher.update(cipherBuffer, dst);
+
+      // CTR is a stream mode so this always matches, but if a provider ever held bytes back our position would no longer line up with the cipher's
+      nextPosition = produced == expected ? position + produced : -1;
+
+      return produced;
+    } catch (GeneralSecurityException e) {
+      nextPosition = -1;
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Convenience for {@link #read(long, ByteBuffer)} into a byte array.
+   */
+  public int read(long position, @NonNull byte[] buffer, int offset, int length) throws IOException {
+    return read(position, ByteBuffer.wrap(buffer, offset, length));
+  }
+
+  /**
+   * Like {@link #read(long, byte[], int, int)}, but may be called from several threads at once without waiting on each other. Each call initializes
+   * its own cipher, so this is meant for large reads at scattered positions, like encrypting a file in parallel chunks.
+   *
+   * @return The number of bytes read, which is fewer than requested only at the end of the file, or -1 if {@code position} is at or past the end.
+   */
+  public int readConcurrently(long position, @NonNull byte[] buffer, int offset, int length) throws IOException {
+    if (position < 0) {
+      throw new IllegalArgumentException("Negative position: " + position);
+    }
+
+    ByteBuffer target = ByteBuffer.wrap(buffer, offset, length);
+
+    while (target.hasRemaining()) {
+      if (channel.read(target, dataOffset + position + target.position() - offset) == -1) {
+        break;
+      }
+    }
+
+    int read = target.position() - offset;
+    if (read == 0) {
+      return length == 0 ? 0 : -1;
+    }
+
+    try {
+      Cipher cipher = CONCURRENT_CIPHER.get();
+      if (cipher == null) {
+        cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        CONCURRENT_CIPHER.set(cipher);
+      }
+
+      byte[] iv = new byte[BLOCK_SIZE];
+      Conversions.longTo4ByteArray(iv, 12, position / BLOCK_SIZE);
+      cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+
+      int remainder = (int) (position % BLOCK_SIZE);
+      if (remainder > 0) {
+        cipher.update(new byte[remainder]);
+      }
+
+      cipher.update(buffer, offset, read, buffer, offset);
+    } catch (GeneralSecurityException e) {
+      throw new IOException(e);
+    }
+
+    return read;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Uses the same counter layout as {@link ModernDecryptingPartInputStream}: the block number is written as a 4-byte value at the end of an
+   * otherwise zero IV.
+   */
+  private void initCipher(long block) throws IOException {
+    byte[] iv = new byte[BLOCK_SIZE];
+    Conversions.longTo4ByteArray(iv, 12, block);
+
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+    } catch (GeneralSecurityException e) {
+      throw new IOException(e);
+    }
+  }
+}
@@ -14,9 +14,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
@@ -29,6 +33,18 @@ public class ModernDecryptingPartInputStream {
 
   public static final String PREMATURE_END_ERROR_MESSAGE = "Prematurely reached end of stream!";
 
+  private static final int MAX_CACHED_KEYS = 32;
+
+  /**
+   * Deriving a file's key costs an HMAC, and media playback reopens the same file on every seek, so we keep the most recently used ones around.
+   */
+  private static final Map<ByteBuffer, CachedKey> KEY_CACHE = new LinkedHashMap<ByteBuffer, CachedKey>(MAX_CACHED_KEYS, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<ByteBuffer, CachedKey> eldest) {
+      return size() > MAX_CACHED_KEYS;
+    }
+  };
+
   public static InputStream createFor(@NonNull AttachmentSecret attachmentSecret, @NonNull byte[] random, @NonNull File file, long offset)
       throws IOException
   {
@@ -48,16 +64,12 @@ public class ModernDecryptingPartInputStream {
 
   private static InputStream createFor(@NonNull AttachmentSecret attachmentSecret, @NonNull byte[] random, @NonNull InputStream inputStream, long offset) throws IOException {
     try {
-      Mac mac = Mac.getInstance("HmacSHA256");
-      mac.init(new SecretKeySpec(attachmentSecret.getModernKey(), "HmacSHA256"));
-
       byte[] iv        = new byte[16];
       int    remainder = (int) (offset % 16);
       Conversions.longTo4ByteArray(iv, 12, offset / 16);
 
-      byte[] key    = mac.doFinal(random);
       Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
-      cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+      cipher.init(Cipher.DECRYPT_MODE, deriveKey(attachmentSecret, random), new IvParameterSpec(iv));
 
       long skipped = inputStream.skip(offset - remainder);
 
@@ -76,6 +88,36 @@ public class ModernDecryptingPartInputStream {
     }
   }
 
+  /**
+   * @return The AES key for a file encrypted with the given random.
+   */
+  static @NonNull SecretKeySpec deriveKey(@NonNull AttachmentSecret attachmentSecret, @NonNull byte[] random) {
+    byte[]     modernKey = attachmentSecret.getModernKey();
+    ByteBuffer cacheKey  = ByteBuffer.wrap(random.clone());
+
+    synchronized (KEY_CACHE) {
+      CachedKey cached = KEY_CACHE.get(cacheKey);
+      if (cached != null && Arrays.equals(cached.modernKey, modernKey)) {
+        return cached.key;
+      }
+    }
+
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(modernKey, "HmacSHA256"));
+
+      SecretKeySpec key = new SecretKeySpec(mac.doFinal(random), "AES");
+
+      synchronized (KEY_CACHE) {
+        KEY_CACHE.put(cacheKey, new CachedKey(modernKey.clone(), key));
+      }
+
+      return key;
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      throw new AssertionError(e);
+    }
+  }
+
   private static void readFully(InputStream in, byte[] buffer) throws IOException {
     int offset = 0;
 
@@ -88,4 +130,13 @@ public class ModernDecryptingPartInputStream {
     }
   }
 
+  private static final class CachedKey {
+    private final byte[]        modernKey;
+    private final SecretKeySpec key;
+
+    private CachedKey(@NonNull byte[] modernKey, @NonNull SecretKeySpec key) {
+      this.modernKey = modernKey;
+      this.key       = key;
+    }
+  }
 }
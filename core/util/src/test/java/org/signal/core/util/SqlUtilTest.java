@@ -187,6 +187,14 @@ public final class SqlUtilTest {
     assertArrayEquals(new String[] { "[\"1\",\"2\",\"3\"]" }, updateQuery.getWhereArgs());
   }
 
+  @Test
+  public void buildFastCollectionQuery_longArray() {
+    SqlUtil.Query updateQuery = SqlUtil.buildFastCollectionQuery("a", new long[] { 1, -2, 3000000000L }, "b = 1 AND");
+
+    assertEquals("b = 1 AND a IN (SELECT e.value FROM json_each(?) e)", updateQuery.getWhere());
+    assertArrayEquals(new String[] { "[1,-2,3000000000]" }, updateQuery.getWhereArgs());
+  }
+
   @Test
   public void buildFastCollectionQuery_withPrefix() {
     SqlUtil.Query updateQuery = SqlUtil.buildFastCollectionQuery("a", Arrays.asList(1), "b = 1 AND");
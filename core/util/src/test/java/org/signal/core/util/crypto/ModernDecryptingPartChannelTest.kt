@@ -0,0 +1,138 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.crypto
+
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.ByteBuffer
+import java.util.Random
+
+class ModernDecryptingPartChannelTest {
+
+  private val random = Random(1234)
+
+  private val attachmentSecret = AttachmentSecret(ByteArray(32), ByteArray(32), ByteArray(32).also { random.nextBytes(it) })
+  private val plaintext = ByteArray(200_000).also { random.nextBytes(it) }
+
+  private lateinit var file: File
+
+  @Before
+  fun setUp() {
+    file = File.createTempFile("part", ".mms")
+  }
+
+  @After
+  fun tearDown() {
+    file.delete()
+  }
+
+  @Test
+  fun `sequential reads match plaintext`() {
+    val fileRandom = encrypt(inline = false)
+
+    ModernDecryptingPartChannel.open(attachmentSecret, fileRandom, file).use { channel ->
+      assertEquals(plaintext.size.toLong(), channel.size())
+      assertArrayEquals(plaintext, readAll(channel, chunkSize = 4_099))
+    }
+  }
+
+  @Test
+  fun `reads at arbitrary positions match plaintext`() {
+    val fileRandom = encrypt(inline = false)
+
+    ModernDecryptingPartChannel.open(attachmentSecret, fileRandom, file).use { channel ->
+      repeat(200) {
+        val position = random.nextInt(plaintext.size)
+        val length = random.nextInt(50_000) + 1
+        val buffer = ByteArray(length)
+
+        val read = channel.read(position.toLong(), buffer, 0, length)
+
+        assertEquals(minOf(length, plaintext.size - position), read)
+        assertArrayEquals(plaintext.copyOfRange(position, position + read), buffer.copyOf(read))
+      }
+    }
+  }
+
+  @Test
+  fun `inline random is read from the start of the file`() {
+    encrypt(inline = true)
+
+    ModernDecryptingPartChannel.open(attachmentSecret, file).use { channel ->
+      assertEquals(plaintext.size.toLong(), channel.size())
+      assertArrayEquals(plaintext, readAll(channel, chunkSize = 65_536))
+    }
+  }
+
+  @Test
+  fun `direct buffers are filled`() {
+    val fileRandom = encrypt(inline = false)
+
+    ModernDecryptingPartChannel.open(attachmentSecret, fileRandom, file).use { channel ->
+      val buffer = ByteBuffer.allocateDirect(1_000)
+      val read = channel.read(12_345, buffer)
+
+      val actual = ByteArray(read)
+      buffer.flip()
+      buffer.get(actual)
+
+      assertArrayEquals(plaintext.copyOfRange(12_345, 12_345 + read), actual)
+    }
+  }
+
+  @Test
+  fun `matches stream at the same offset`() {
+    val fileRandom = encrypt(inline = false)
+
+    ModernDecryptingPartChannel.open(attachmentSecret, fileRandom, file).use { channel ->
+      val fromStream = ModernDecryptingPartInputStream.createFor(attachmentSecret, fileRandom, file, 777).use { it.readBytes() }
+      val fromChannel = ByteArray(fromStream.size)
+
+      var total = 0
+      while (total < fromChannel.size) {
+        total += channel.read(777L + total, fromChannel, total, fromChannel.size - total)
+      }
+
+      assertArrayEquals(fromStream, fromChannel)
+    }
+  }
+
+  @Test
+  fun `reading at or past the end returns -1`() {
+    val fileRandom = encrypt(inline = false)
+
+    ModernDecryptingPartChannel.open(attachmentSecret, fileRandom, file).use { channel ->
+      assertEquals(-1, channel.read(plaintext.size.toLong(), ByteArray(10), 0, 10))
+      assertEquals(-1, channel.read(plaintext.size + 5L, ByteArray(10), 0, 10))
+    }
+  }
+
+  private fun encrypt(inline: Boolean): ByteArray {
+    val (fileRandom, outputStream) = ModernEncryptingPartOutputStream.createFor(attachmentSecret, file, inline)
+    outputStream.use { it.write(plaintext) }
+    return fileRandom
+  }
+
+  private fun readAll(channel: ModernDecryptingPartChannel, chunkSize: Int): ByteArray {
+    val output = ByteArray(plaintext.size)
+    var position = 0
+
+    while (position < output.size) {
+      val read = channel.read(position.toLong(), output, position, minOf(chunkSize, output.size - position))
+      if (read == -1) {
+        break
+      }
+      position += read
+    }
+
+    assertEquals(-1, channel.read(position.toLong(), ByteArray(1), 0, 1))
+    return output
+  }
+}
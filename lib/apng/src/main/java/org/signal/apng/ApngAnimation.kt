@@ -0,0 +1,235 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.apng
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.graphics.Color
+import android.graphics.Paint
+import android.graphics.Rect
+import androidx.core.graphics.BlendModeCompat
+import androidx.core.graphics.setBlendMode
+import java.io.IOException
+
+/**
+ * The playback state of a single APNG, shared by every [ApngDrawable] that is showing the same image (see [ApngFrameCache]).
+ *
+ * Frames are composited into a single canvas-sized bitmap that drawables draw directly. A frame's disposeOp is applied right before the next frame is
+ * rendered rather than right after its own, which means the canvas always holds exactly what should be on screen, and we don't need a second bitmap to
+ * hold a copy of it. The bitmap used to restore [ApngDecoder.Chunk.fcTL.DisposeOp.PREVIOUS] frames is only allocated if the image actually uses them.
+ *
+ * The animation owns [decoder] and closes it when recycled, unless told otherwise with [ownsDecoder].
+ *
+ * Not thread safe -- like any drawable, it's meant to be driven from the main thread.
+ */
+internal class ApngAnimation(val decoder: ApngDecoder, private val ownsDecoder: Boolean = true) {
+
+  companion object {
+    private val CLEAR_PAINT = Paint().apply {
+      color = Color.TRANSPARENT
+      setBlendMode(BlendModeCompat.CLEAR)
+    }
+  }
+
+  val key: String = decoder.contentKey
+  val frames: List<ApngDecoder.Frame> = decoder.frames
+
+  /** Guarded by [ApngFrameCache]. */
+  var refCount = 0
+
+  /** The index of the next frame to be rendered by [advance]. */
+  var position = 0
+    private set
+
+  var playCount = 0
+    private set
+
+  var timeForNextFrame = 0L
+    private set
+
+  /** The index of the frame most recently rendered into [bitmap], or -1 if nothing has been rendered yet. */
+  var renderedIndex = -1
+    private set
+
+  var failed = false
+    private set
+
+  val bitmap: Bitmap = ApngFrameCache.obtainBitmap(decoder.metadata.width, decoder.metadata.height)
+  private val canvas = Canvas(bitmap)
+
+  private var disposeOpBitmap: Bitmap? = null
+  private var frameBitmap: Bitmap? = null
+
+  private val frameRect = Rect()
+  private var pendingDisposeOp: ApngDecoder.Chunk.fcTL.DisposeOp? = null
+  private val pendingDisposeRect = Rect()
+  private var pendingDisposeIsFirstFrame = false
+
+  private var recycled = false
+
+  /**
+   * Renders the next frame if it's due, advancing the shared clock. Drawables call this on every draw, so with several drawables showing the same image,
+   * only the first one to draw once the frame is due does any work.
+   */
+  @Throws(IOException::class)
+  fun advance(now: Long) {
+    if (failed || recycled || now < timeForNextFrame) {
+      return
+    }
+
+    val frame = frames[position]
+    renderFrame(position)
+
+    position = (position + 1) % frames.size
+    if (position == 0) {
+      playCount++
+    }
+
+    timeForNextFrame = now + frame.delayMs
+  }
+
+  /**
+   * Renders every frame from the start up to and including [index], so that the canvas matches another animation that is showing that frame. The next call
+   * to [nextFrame] continues from there.
+   */
+  @Throws(IOException::class)
+  fun renderThrough(index: Int) {
+    for (i in 0..index) {
+      renderFrame(i)
+    }
+    position = index.coerceAtLeast(0)
+  }
+
+  @Throws(IOException::class)
+  fun nextFrame() {
+    position = (position + 1) % frames.size
+    if (position == 0) {
+      playCount++
+    }
+    renderFrame(position)
+  }
+
+  @Throws(IOException::class)
+  fun prevFrame() {
+    if (position == 0) {
+      position = frames.size - 1
+      playCount--
+    } else {
+      position--
+    }
+    renderFrame(position)
+  }
+
+  fun recycle() {
+    recycled = true
+    if (ownsDecoder) {
+      decoder.close()
+    }
+    ApngFrameCache.returnBitmap(bitmap)
+    disposeOpBitmap?.let { ApngFrameCache.returnBitmap(it) }
+    frameBitmap?.let { ApngFrameCache.returnBitmap(it) }
+    disposeOpBitmap = null
+    frameBitmap = null
+  }
+
+  @Throws(IOException::class)
+  private fun renderFrame(frameIndex: Int) {
+    if (recycled) {
+      return
+    }
+
+    val frame = frames[frameIndex]
+    frameRect.updateBoundsFrom(frame)
+
+    applyPendingDisposeOp()
+
+    // If the disposeOp is PREVIOUS, then we need to save the contents of the frame before we draw into it
+    if (frame.fcTL.disposeOp == ApngDecoder.Chunk.fcTL.DisposeOp.PREVIOUS) {
+      val saved = disposeOpBitmap ?: ApngFrameCache.obtainBitmap(bitmap.width, bitmap.height).also { disposeOpBitmap = it }
+      Canvas(saved).drawBitmap(bitmap, frameRect, frameRect, null)
+    }
+
+    // Start with a clean slate if this is the first frame
+    if (frameIndex == 0) {
+      bitmap.eraseColor(Color.TRANSPARENT)
+    }
+
+    when (frame.fcTL.blendOp) {
+      ApngDecoder.Chunk.fcTL.BlendOp.SOURCE -> {
+        // This blendOp means that we want all of our new pixels to completely replace the old ones, including the transparent pixels.
+        // Normally drawing bitmaps will composite over the existing content, so to allow our new transparent pixels to overwrite old ones,
+        // we clear out the drawing region before drawing the new frame.
+        canvas.drawRect(frameRect, CLEAR_PAINT)
+      }
+      ApngDecoder.Chunk.fcTL.BlendOp.OVER -> {
+        // This blendOp means that we composite the new pixels over the old ones, as if layering two PNG's over top of each other in photoshop.
+        // We don't need to do anything special here -- the canvas naturally draws bitmaps like this by default.
+      }
+    }
+
+    val decoded = try {
+      decoder.decodeFrame(frameIndex, frameBitmap ?: ApngFrameCache.obtainBitmap(bitmap.width, bitmap.height).also { frameBitmap = it })
+    } catch (e: IOException) {
+      failed = true
+      throw e
+    }
+
+    if (decoded !== frameBitmap) {
+      frameBitmap?.let { ApngFrameCache.returnBitmap(it) }
+      frameBitmap = decoded
+    }
+
+    canvas.drawBitmap(decoded, frame.fcTL.xOffset.toFloat(), frame.fcTL.yOffset.toFloat(), null)
+
+    // The disposeOp is deferred until the next frame, so that the canvas keeps showing this one in the meantime
+    pendingDisposeOp = frame.fcTL.disposeOp
+    pendingDisposeRect.set(frameRect)
+    pendingDisposeIsFirstFrame = frameIndex == 0
+    renderedIndex = frameIndex
+  }
+
+  /**
+   * disposeOp's are how a frame is supposed to clean itself up after it's rendered.
+   */
+  private fun applyPendingDisposeOp() {
+    when (pendingDisposeOp) {
+      null,
+      ApngDecoder.Chunk.fcTL.DisposeOp.NONE -> {
+        // This disposeOp means we don't have to do anything
+      }
+      ApngDecoder.Chunk.fcTL.DisposeOp.BACKGROUND -> {
+        // This disposeOp means that we want to reset the drawing region of the frame to transparent
+        canvas.drawRect(pendingDisposeRect, CLEAR_PAINT)
+      }
+      ApngDecoder.Chunk.fcTL.DisposeOp.PREVIOUS -> {
+        // This disposeOp means we want to reset the drawing region of the frame to the content that was there before it was drawn.
+        canvas.drawRect(pendingDisposeRect, CLEAR_PAINT)
+
+        // Per spec, if the first frame has a disposeOp of DISPOSE_OP_PREVIOUS, we treat it as DISPOSE_OP_BACKGROUND
+        if (!pendingDisposeIsFirstFrame) {
+          disposeOpBitmap?.let { canvas.drawBitmap(it, pendingDisposeRect, pendingDisposeRect, null) }
+        }
+      }
+    }
+
+    pendingDisposeOp = null
+  }
+
+  private fun Rect.updateBoundsFrom(frame: ApngDecoder.Frame) {
+    left = frame.fcTL.xOffset.toInt()
+    right = frame.fcTL.xOffset.toInt() + frame.fcTL.width.toInt()
+    top = frame.fcTL.yOffset.toInt()
+    bottom = frame.fcTL.yOffset.toInt() + frame.fcTL.height.toInt()
+  }
+
+  private val ApngDecoder.Frame.delayMs: Long
+    get() {
+      val delayNumerator = fcTL.delayNum.toInt()
+      val delayDenominator = fcTL.delayDen.toInt().takeIf { it > 0 } ?: 100
+
+      return (delayNumerator * 1000 / delayDenominator).toLong()
+    }
+}
@@ -8,6 +8,7 @@ package org.signal.apng
 import android.graphics.Bitmap
 import android.graphics.BitmapFactory
 import androidx.annotation.WorkerThread
+import org.signal.core.util.Hex
 import org.signal.core.util.readNBytesOrThrow
 import org.signal.core.util.readUInt
 import org.signal.core.util.skipNBytesOrThrow
@@ -20,6 +21,7 @@ import java.io.Closeable
 import java.io.IOException
 import java.io.InputStream
 import java.io.OutputStream
+import java.security.MessageDigest
 
 /**
  * A streaming APNG decoder that only holds lightweight metadata in memory.
@@ -30,13 +32,20 @@ import java.io.OutputStream
  *
  * At draw time, [decodeFrame] opens a stream from the factory and reads forward to the
  * requested frame's data. Since frames are almost always requested in order, each call
- * reads forward from the current position. The stream is only reopened when the animation
- * loops back to an earlier frame.
+ * reads forward from the current position. Each frame's encoded data is kept in the
+ * [ApngFrameCache] under the decoder's [contentKey], so later loops (and other decoders of
+ * the same image) normally don't need to touch the stream at all. The stream is only
+ * reopened when looping back to a frame that has since been evicted.
+ *
+ * [contentKey] identifies the image, so two decoders for the same image (e.g. the same sticker
+ * shown in several places) share cached frames and animation state. It's derived from the
+ * source key given to [create] when there is one, and is otherwise a digest of the stream.
  *
  * Full spec: http://www.w3.org/TR/PNG/
  */
 class ApngDecoder private constructor(
   val streamFactory: () -> InputStream,
+  val contentKey: String,
   val metadata: Metadata,
   val frames: List<Frame>,
   private val ihdr: Chunk.IHDR,
@@ -86,12 +95,14 @@ class ApngDecoder private constructor(
      * Scans the stream to build metadata, then closes it. No frame image data is retained.
      *
      * @param contentLength An upper bound on the number of bytes the stream will yield, if known
+     * @param sourceKey Identifies the source (e.g. its path and length) if what it holds can't change. Decoders with the same key share cached
+     *                  frames. Without one, the whole stream has to be read and digested to identify it, rather than skipping over frame data.
      */
     @Throws(IOException::class)
-    fun create(contentLength: Long? = null, streamFactory: () -> InputStream): ApngDecoder {
+    fun create(contentLength: Long? = null, sourceKey: String? = null, streamFactory: () -> InputStream): ApngDecoder {
       val inputStream = streamFactory()
       try {
-        return scanMetadata(inputStream, streamFactory, contentLength)
+        return scanMetadata(inputStream, streamFactory, contentLength, sourceKey)
       } finally {
         inputStream.close()
       }
@@ -131,9 +142,9 @@ class ApngDecoder private constructor(
      * Unlike the old approach (which read all frame data into memory), this method only records byte offsets into the stream where frame data lives.
      * The actual frame data is read on demand in [decodeFrame].
      */
-    private fun scanMetadata(inputStream: InputStream, streamFactory: () -> InputStream, contentLength: Long?): ApngDecoder {
+    private fun scanMetadata(inputStream: InputStream, streamFactory: () -> InputStream, contentLength: Long?, sourceKey: String?): ApngDecoder {
       val maxChunkLength: Long = contentLength?.takeIf { it > 0 }?.coerceAtMost(MAX_CHUNK_LENGTH.toLong()) ?: MAX_CHUNK_LENGTH.toLong()
-      val scanner = StreamScanner(inputStream, maxChunkLength)
+      val scanner = StreamScanner(inputStream, maxChunkLength, digest = sourceKey == null)
 
       // Read the magic bytes to verify that this is a PNG
       val magic = scanner.readBytes(8)
@@ -292,6 +303,7 @@ class ApngDecoder private constructor(
 
       return ApngDecoder(
         streamFactory = streamFactory,
+        contentKey = sourceKey?.let { "source:$it" } ?: "sha256:${scanner.digest()}",
         metadata = metadata,
         frames = frames,
         ihdr = ihdr,
@@ -346,12 +358,37 @@ class ApngDecoder private constructor(
   private var currentStreamPos: Long = 0
 
   /**
-   * Decodes the frame at the given index by streaming from the source.
-   * For sequential access (the normal case), this just reads forward from the current position.
-   * When looping back to an earlier frame, the stream is reopened.
+   * Decodes the frame at the given index. The encoded frame is taken from the [ApngFrameCache] when possible, and otherwise read by streaming from the
+   * source. For sequential access (the normal case), this just reads forward from the current position. When looping back to an earlier frame that is no
+   * longer cached, the stream is reopened.
+   *
+   * @param reuse A mutable bitmap to decode into via [BitmapFactory.Options.inBitmap]. It's used if it is large enough, in which case it's returned.
    */
   @WorkerThread
-  fun decodeFrame(index: Int): Bitmap {
+  fun decodeFrame(index: Int, reuse: Bitmap? = null): Bitmap {
+    val pngData = ApngFrameCache.getEncodedFrame(contentKey, index) ?: readEncodedFrame(index).also { ApngFrameCache.putEncodedFrame(contentKey, index, it) }
+
+    if (reuse != null && !reuse.isRecycled && reuse.isMutable) {
+      val options = BitmapFactory.Options().apply {
+        inMutable = true
+        inBitmap = reuse
+      }
+
+      try {
+        BitmapFactory.decodeByteArray(pngData, 0, pngData.size, options)?.let { return it }
+      } catch (e: IllegalArgumentException) {
+        // The bitmap can't be reused for this frame, fall through to a regular decode
+      }
+    }
+
+    return BitmapFactory.decodeByteArray(pngData, 0, pngData.size, BitmapFactory.Options().apply { inMutable = reuse != null })
+      ?: throw IOException("Failed to decode frame bitmap")
+  }
+
+  /**
+   * Reads the frame's data from the stream and wraps it up as a standalone PNG.
+   */
+  private fun readEncodedFrame(index: Int): ByteArray {
     val frame = frames[index]
     val regions = frame.dataRegions
     val targetOffset = regions.first().streamOffset
@@ -405,11 +442,14 @@ class ApngDecoder private constructor(
       currentStreamPos += 4
     }
 
-    // Encode as a standalone PNG and decode to bitmap
+    // There's nothing left to read past the last frame, so don't hold the stream open until the next loop
+    if (index == frames.lastIndex) {
+      close()
+    }
+
+    // Encode as a standalone PNG
     val frameIhdr = if (frame.isIdat) ihdr else ihdr.copy(width = frame.fcTL.width, height = frame.fcTL.height)
-    val pngData = encodePng(frameIhdr, prefixChunks, totalDataSize.toUInt(), frameData)
-    return BitmapFactory.decodeByteArray(pngData, 0, pngData.size)
-      ?: throw IOException("Failed to decode frame bitmap")
+    return encodePng(frameIhdr, prefixChunks, totalDataSize.toUInt(), frameData)
   }
 
   override fun close() {
@@ -466,14 +506,19 @@ class ApngDecoder private constructor(
   }
 
   /**
-   * Tracks position while reading through a stream during the metadata scan.
+   * Tracks position while reading through a stream during the metadata scan. If [digest] is set, everything read or skipped is also digested, so
+   * that the decoder can be identified by its content (see [contentKey]).
    */
-  private class StreamScanner(private val inputStream: InputStream, private val maxChunkLength: Long) {
+  private class StreamScanner(private val inputStream: InputStream, private val maxChunkLength: Long, digest: Boolean) {
     var position: Long = 0
       private set
 
+    private val messageDigest: MessageDigest? = if (digest) MessageDigest.getInstance("SHA-256") else null
+    private val skipBuffer: ByteArray? = if (digest) ByteArray(8192) else null
+
     fun readBytes(n: Int): ByteArray {
       val bytes = inputStream.readNBytesOrThrow(n)
+      messageDigest?.update(bytes)
       position += n
       return bytes
     }
@@ -494,10 +539,35 @@ class ApngDecoder private constructor(
       return length
     }
 
+    /**
+     * When digesting, skipped bytes still need to be digested, so they're read rather than skipped. A hostile length just runs off the end of the
+     * stream.
+     */
     fun skipBytes(n: Long) {
-      inputStream.skipNBytesOrThrow(n)
+      if (messageDigest == null || skipBuffer == null) {
+        inputStream.skipNBytesOrThrow(n)
+        position += n
+        return
+      }
+
+      var remaining = n
+      while (remaining > 0) {
+        val read = inputStream.read(skipBuffer, 0, remaining.coerceAtMost(skipBuffer.size.toLong()).toInt())
+        if (read == -1) {
+          throw IOException("Stream ended before $n bytes could be skipped (${n - remaining} skipped)")
+        }
+        messageDigest.update(skipBuffer, 0, read)
+        remaining -= read
+      }
       position += n
     }
+
+    /**
+     * A hex digest of everything that has been scanned so far.
+     */
+    fun digest(): String {
+      return Hex.toStringCondensed(checkNotNull(messageDigest) { "Not digesting!" }.digest())
+    }
   }
 
   /**
@@ -5,30 +5,29 @@
 
 package org.signal.apng
 
-import android.graphics.Bitmap
 import android.graphics.Canvas
 import android.graphics.Color
 import android.graphics.ColorFilter
 import android.graphics.Paint
 import android.graphics.PixelFormat
-import android.graphics.PorterDuff
 import android.graphics.Rect
 import android.graphics.drawable.Animatable
 import android.graphics.drawable.Drawable
 import android.os.SystemClock
-import androidx.core.graphics.BlendModeCompat
-import androidx.core.graphics.setBlendMode
 import org.signal.core.util.logging.Log
 import java.io.IOException
 
+/**
+ * Plays an APNG. Drawables showing the same image share a single [ApngAnimation] through the [ApngFrameCache], so each frame is decoded and composited
+ * once no matter how many copies are on screen, and they all advance on the same clock. Stepping through frames by hand with [nextFrame] and [prevFrame]
+ * moves this drawable onto an animation of its own, so that the other copies keep playing.
+ *
+ * Call [recycle] once the drawable is no longer needed so that the shared animation can be released.
+ */
 class ApngDrawable(val decoder: ApngDecoder) : Drawable(), Animatable {
   companion object {
     private val TAG = Log.tag(ApngDrawable::class)
 
-    private val CLEAR_PAINT = Paint().apply {
-      color = Color.TRANSPARENT
-      setBlendMode(BlendModeCompat.CLEAR)
-    }
     private val DEBUG_PAINT = Paint().apply {
       color = Color.RED
       style = Paint.Style.STROKE
@@ -36,68 +35,52 @@ class ApngDrawable(val decoder: ApngDecoder) : Drawable(), Animatable {
     }
   }
 
+  private val sharedAnimation: ApngAnimation = ApngFrameCache.acquireAnimation(decoder)
+
+  /** Created the first time this drawable is stepped through by hand. It picks up from the shared animation, which is then left alone. */
+  private var steppedAnimation: ApngAnimation? = null
+
+  private val animation: ApngAnimation
+    get() = steppedAnimation ?: sharedAnimation
+
   val currentFrame: ApngDecoder.Frame
-    get() = decoder.frames[position]
-  var position = 0
-    private set
+    get() = animation.frames[position]
+  val position: Int
+    get() = animation.position
   val frameCount: Int
-    get() = decoder.frames.size
+    get() = animation.frames.size
 
   var debugDrawBounds = false
   var loopForever = false
 
-  private var playCount = 0
+  /** The shared animation may already have played some loops before this drawable joined it. */
+  private val startingPlayCount = sharedAnimation.playCount
 
   private val frameRect = Rect(0, 0, 0, 0)
 
-  private var timeForNextFrame = 0L
-
-  private val activeBitmap = Bitmap.createBitmap(decoder.metadata.width, decoder.metadata.height, Bitmap.Config.ARGB_8888)
-  private val pendingBitmap = Bitmap.createBitmap(decoder.metadata.width, decoder.metadata.height, Bitmap.Config.ARGB_8888)
-  private val disposeOpBitmap = Bitmap.createBitmap(decoder.metadata.width, decoder.metadata.height, Bitmap.Config.ARGB_8888)
-
-  private val pendingCanvas = Canvas(pendingBitmap)
-  private val activeCanvas = Canvas(activeBitmap)
-  private val disposeOpCanvas = Canvas(disposeOpBitmap)
-
   private var playing = true
+  private var recycled = false
 
   override fun draw(canvas: Canvas) {
-    if (!playing) {
-      canvas.drawBitmap(activeBitmap, 0f, 0f, null)
-      return
-    }
-
-    if (SystemClock.uptimeMillis() < timeForNextFrame) {
-      canvas.drawBitmap(activeBitmap, 0f, 0f, null)
-      scheduleSelf({ invalidateSelf() }, timeForNextFrame)
+    if (recycled) {
       return
     }
 
-    val totalPlays = decoder.metadata.numPlays
-    if (playCount >= totalPlays && !loopForever) {
-      canvas.drawBitmap(activeBitmap, 0f, 0f, null)
-      return
-    }
-
-    val frame = decoder.frames[position]
-    try {
-      drawFrame(frame, position)
-    } catch (e: IOException) {
-      Log.w(TAG, "Failed to decode frame $position. Stopping the animation.", e)
-      playing = false
-      canvas.drawBitmap(activeBitmap, 0f, 0f, null)
-      return
-    }
-    canvas.drawBitmap(activeBitmap, 0f, 0f, null)
-
-    position = (position + 1) % decoder.frames.size
-    if (position == 0) {
-      playCount++
+    if (playing && !animation.failed) {
+      val totalPlays = decoder.metadata.numPlays
+      val playCount = if (steppedAnimation != null) animation.playCount else animation.playCount - startingPlayCount
+      if (loopForever || playCount < totalPlays) {
+        try {
+          animation.advance(SystemClock.uptimeMillis())
+          scheduleSelf({ invalidateSelf() }, animation.timeForNextFrame)
+        } catch (e: IOException) {
+          Log.w(TAG, "Failed to decode frame ${animation.position}. Stopping the animation.", e)
+          playing = false
+        }
+      }
     }
 
-    timeForNextFrame = SystemClock.uptimeMillis() + frame.delayMs
-    scheduleSelf({ invalidateSelf() }, timeForNextFrame)
+    drawActiveFrame(canvas)
   }
 
   override fun getIntrinsicWidth(): Int {
@@ -144,103 +127,55 @@ class ApngDrawable(val decoder: ApngDecoder) : Drawable(), Animatable {
   }
 
   fun nextFrame() {
-    position = (position + 1) % decoder.frames.size
-    if (position == 0) {
-      playCount++
-    }
-    drawFrame(decoder.frames[position], position)
+    requireSteppedAnimation().nextFrame()
+    invalidateSelf()
   }
 
   fun prevFrame() {
-    if (position == 0) {
-      position = decoder.frames.size - 1
-      playCount--
-    } else {
-      position--
-    }
-    drawFrame(decoder.frames[position], position)
+    requireSteppedAnimation().prevFrame()
+    invalidateSelf()
   }
 
   fun recycle() {
-    decoder.close()
-    activeBitmap.recycle()
-    pendingBitmap.recycle()
-    disposeOpBitmap.recycle()
-  }
-
-  private fun drawFrame(frame: ApngDecoder.Frame, frameIndex: Int) {
-    frameRect.updateBoundsFrom(frame)
-
-    // If the disposeOp is PREVIOUS, then we need to save the contents of the frame before we draw into it
-    if (frame.fcTL.disposeOp == ApngDecoder.Chunk.fcTL.DisposeOp.PREVIOUS) {
-      disposeOpCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR)
-      disposeOpCanvas.drawBitmap(pendingBitmap, 0f, 0f, null)
-    }
-
-    // Start with a clean slate if this is the first frame
-    if (frameIndex == 0) {
-      pendingCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR)
+    if (recycled) {
+      return
     }
 
-    when (frame.fcTL.blendOp) {
-      ApngDecoder.Chunk.fcTL.BlendOp.SOURCE -> {
-        // This blendOp means that we want all of our new pixels to completely replace the old ones, including the transparent pixels.
-        // Normally drawing bitmaps will composite over the existing content, so to allow our new transparent pixels to overwrite old ones,
-        // we clear out the drawing region before drawing the new frame.
-        pendingCanvas.drawRect(frameRect, CLEAR_PAINT)
-      }
-      ApngDecoder.Chunk.fcTL.BlendOp.OVER -> {
-        // This blendOp means that we composite the new pixels over the old ones, as if layering two PNG's over top of each other in photoshop.
-        // We don't need to do anything special here -- the canvas naturally draws bitmaps like this by default.
-      }
-    }
+    recycled = true
+    playing = false
 
-    val frameBitmap = decoder.decodeFrame(frameIndex)
-    pendingCanvas.drawBitmap(frameBitmap, frame.fcTL.xOffset.toFloat(), frame.fcTL.yOffset.toFloat(), null)
-    frameBitmap.recycle()
+    steppedAnimation?.recycle()
+    steppedAnimation = null
 
-    // Copy the contents of the pending bitmap into the active bitmap
-    activeCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR)
-    activeCanvas.drawBitmap(pendingBitmap, 0f, 0f, null)
-    if (debugDrawBounds) {
-      activeCanvas.drawRect(frameRect, DEBUG_PAINT)
+    // If the shared animation adopted our decoder, it's closed along with the animation once nobody else is using it
+    ApngFrameCache.releaseAnimation(sharedAnimation)
+    if (sharedAnimation.decoder !== decoder) {
+      decoder.close()
     }
+  }
 
-    // disposeOp's are how a frame is supposed to clean itself up after it's rendered.
-    when (frame.fcTL.disposeOp) {
-      ApngDecoder.Chunk.fcTL.DisposeOp.NONE -> {
-        // This disposeOp means we don't have to do anything
-      }
-      ApngDecoder.Chunk.fcTL.DisposeOp.BACKGROUND -> {
-        // This disposeOp means that we want to reset the drawing region of the frame to transparent
-        pendingCanvas.drawRect(frameRect, CLEAR_PAINT)
-      }
-      ApngDecoder.Chunk.fcTL.DisposeOp.PREVIOUS -> {
-        // This disposeOp means we want to reset the drawing region of the frame to the content that was there before it was drawn.
-
-        // Per spec, if the first frame has a disposeOp of DISPOSE_OP_PREVIOUS, we treat it as DISPOSE_OP_BACKGROUND
-        if (frameIndex == 0) {
-          pendingCanvas.drawRect(frameRect, CLEAR_PAINT)
-        } else {
-          pendingCanvas.drawRect(frameRect, CLEAR_PAINT)
-          pendingCanvas.drawBitmap(disposeOpBitmap, frameRect, frameRect, null)
-        }
-      }
+  private fun requireSteppedAnimation(): ApngAnimation {
+    steppedAnimation?.let { return it }
+
+    // The decoder is still owned by whoever owned it before, so this animation must not close it
+    return ApngAnimation(decoder, ownsDecoder = false).also {
+      it.renderThrough(sharedAnimation.renderedIndex)
+      steppedAnimation = it
     }
   }
 
-  private val ApngDecoder.Frame.delayMs: Long
-    get() {
-      val delayNumerator = fcTL.delayNum.toInt()
-      val delayDenominator = fcTL.delayDen.toInt().takeIf { it > 0 } ?: 100
+  private fun drawActiveFrame(canvas: Canvas) {
+    canvas.drawBitmap(animation.bitmap, 0f, 0f, null)
 
-      return (delayNumerator * 1000 / delayDenominator).toLong()
+    if (debugDrawBounds && animation.renderedIndex >= 0) {
+      val frame = animation.frames[animation.renderedIndex]
+      frameRect.set(
+        frame.fcTL.xOffset.toInt(),
+        frame.fcTL.yOffset.toInt(),
+        frame.fcTL.xOffset.toInt() + frame.fcTL.width.toInt(),
+        frame.fcTL.yOffset.toInt() + frame.fcTL.height.toInt()
+      )
+      canvas.drawRect(frameRect, DEBUG_PAINT)
     }
-
-  private fun Rect.updateBoundsFrom(frame: ApngDecoder.Frame) {
-    left = frame.fcTL.xOffset.toInt()
-    right = frame.fcTL.xOffset.toInt() + frame.fcTL.width.toInt()
-    top = frame.fcTL.yOffset.toInt()
-    bottom = frame.fcTL.yOffset.toInt() + frame.fcTL.height.toInt()
   }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.apng
+
+import android.graphics.Bitmap
+import android.graphics.Color
+import android.util.LruCache
+
+/**
+ * Process-wide state shared by every [ApngDrawable], so that showing the same APNG many times at once (e.g. a sticker keyboard, or a chat full of the same
+ * animated sticker) doesn't repeat the work per instance.
+ *
+ * It holds three things:
+ * - The encoded data of recently played frames, keyed by [ApngDecoder.contentKey] and frame index, so that looping doesn't have to reopen (and re-decrypt)
+ *   the source stream.
+ * - One [ApngAnimation] per image that is currently on screen. Every drawable showing that image draws from the same animation, which is composited once
+ *   per frame on a shared clock.
+ * - A small pool of canvas-sized bitmaps left behind by finished animations, so that the next animation of the same size can reuse them.
+ *
+ * The encoded frames and the pool each get half of a memory budget that scales with the heap. Bitmaps owned by live animations are outside of the budget.
+ */
+object ApngFrameCache {
+
+  private const val MAX_MEMORY_BUDGET_BYTES = 24 * 1024 * 1024
+
+  private val memoryBudgetBytes: Int = (Runtime.getRuntime().maxMemory() / 32).coerceAtMost(MAX_MEMORY_BUDGET_BYTES.toLong()).toInt()
+
+  private val encodedFrames = object : LruCache<FrameKey, ByteArray>(memoryBudgetBytes / 2) {
+    override fun sizeOf(key: FrameKey, value: ByteArray): Int = value.size
+  }
+
+  private val animations: MutableMap<String, ApngAnimation> = HashMap()
+
+  private val bitmapPool: ArrayDeque<Bitmap> = ArrayDeque()
+  private val maxPoolBytes: Int = memoryBudgetBytes / 2
+  private var poolBytes: Int = 0
+
+  fun getEncodedFrame(contentKey: String, index: Int): ByteArray? {
+    return encodedFrames[FrameKey(contentKey, index)]
+  }
+
+  fun putEncodedFrame(contentKey: String, index: Int, data: ByteArray) {
+    encodedFrames.put(FrameKey(contentKey, index), data)
+  }
+
+  /**
+   * Returns the shared animation for the decoder's image, creating it with [decoder] if there isn't one yet. In that case the animation takes ownership of
+   * [decoder], and closes it once the last reference is released. Otherwise, the caller is still responsible for closing it. Every call must be balanced by
+   * a call to [releaseAnimation].
+   */
+  @Synchronized
+  internal fun acquireAnimation(decoder: ApngDecoder): ApngAnimation {
+    val animation = animations.getOrPut(decoder.contentKey) { ApngAnimation(decoder) }
+    animation.refCount++
+    return animation
+  }
+
+  @Synchronized
+  internal fun releaseAnimation(animation: ApngAnimation) {
+    animation.refCount--
+    if (animation.refCount <= 0 && animations[animation.key] === animation) {
+      animations.remove(animation.key)
+      animation.recycle()
+    }
+  }
+
+  /**
+   * Returns a cleared, mutable ARGB bitmap of the given size, reusing a pooled one if it's large enough.
+   */
+  @Synchronized
+  internal fun obtainBitmap(width: Int, height: Int): Bitmap {
+    val requiredBytes = width * height * 4
+    val pooled = bitmapPool.firstOrNull { !it.isRecycled && it.allocationByteCount >= requiredBytes }
+
+    if (pooled != null) {
+      bitmapPool.remove(pooled)
+      poolBytes -= pooled.allocationByteCount
+      pooled.reconfigure(width, height, Bitmap.Config.ARGB_8888)
+      pooled.eraseColor(Color.TRANSPARENT)
+      return pooled
+    }
+
+    return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+  }
+
+  /**
+   * Offers a bitmap back to the pool. It's recycled if it doesn't fit within the budget.
+   */
+  @Synchronized
+  internal fun returnBitmap(bitmap: Bitmap) {
+    if (bitmap.isRecycled) {
+      return
+    }
+
+    if (!bitmap.isMutable || bitmap.allocationByteCount > maxPoolBytes) {
+      bitmap.recycle()
+      return
+    }
+
+    bitmapPool.addLast(bitmap)
+    poolBytes += bitmap.allocationByteCount
+
+    while (poolBytes > maxPoolBytes) {
+      val evicted = bitmapPool.removeFirst()
+      poolBytes -= evicted.allocationByteCount
+      evicted.recycle()
+    }
+  }
+
+  /**
+   * Drops all cached frames and pooled bitmaps. Live animations are unaffected.
+   */
+  @Synchronized
+  fun clear() {
+    encodedFrames.evictAll()
+    bitmapPool.forEach { it.recycle() }
+    bitmapPool.clear()
+    poolBytes = 0
+  }
+
+  private data class FrameKey(val contentKey: String, val index: Int)
+}
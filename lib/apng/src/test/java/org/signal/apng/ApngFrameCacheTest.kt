@@ -0,0 +1,195 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.apng
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.io.FilterInputStream
+import java.io.InputStream
+
+@RunWith(RobolectricTestRunner::class)
+class ApngFrameCacheTest {
+
+  private var opens = 0
+  private var closes = 0
+
+  @Before
+  fun setUp() {
+    ApngFrameCache.clear()
+    opens = 0
+    closes = 0
+  }
+
+  @Test
+  fun `decoders of the same image share a content key`() {
+    val first = ApngDecoder.create { open("ball.png") }
+    val second = ApngDecoder.create { open("ball.png") }
+    val other = ApngDecoder.create { open("clock.png") }
+
+    assertEquals(first.contentKey, second.contentKey)
+    assertNotEquals(first.contentKey, other.contentKey)
+  }
+
+  @Test
+  fun `decoders with the same source key share a content key`() {
+    val first = ApngDecoder.create(sourceKey = "ball") { open("ball.png") }
+    val second = ApngDecoder.create(sourceKey = "ball") { open("ball.png") }
+    val other = ApngDecoder.create(sourceKey = "clock") { open("clock.png") }
+    val digested = ApngDecoder.create { open("ball.png") }
+
+    assertEquals(first.contentKey, second.contentKey)
+    assertNotEquals(first.contentKey, other.contentKey)
+    assertNotEquals(first.contentKey, digested.contentKey)
+  }
+
+  @Test
+  fun `a source key lets the scan skip frame data rather than read it`() {
+    var keyedBytesRead = 0L
+    val keyed = ApngDecoder.create(sourceKey = "ball") { countingReads(open("ball.png")) { keyedBytesRead += it } }
+
+    var digestedBytesRead = 0L
+    val digested = ApngDecoder.create { countingReads(open("ball.png")) { digestedBytesRead += it } }
+
+    val frameDataSize = keyed.frames.sumOf { frame -> frame.dataRegions.sumOf { it.length } }
+    assertEquals(keyed.frames.size, digested.frames.size)
+    assertTrue(digestedBytesRead - keyedBytesRead >= frameDataSize)
+  }
+
+  @Test
+  fun `looping does not reopen the stream once frames are cached`() {
+    val decoder = ApngDecoder.create { open("ball.png") }
+    assertEquals(1, opens)
+
+    decoder.frames.indices.forEach { assertNotNull(decoder.decodeFrame(it)) }
+    assertEquals(2, opens)
+
+    decoder.frames.indices.forEach { assertNotNull(decoder.decodeFrame(it)) }
+    assertEquals(2, opens)
+  }
+
+  @Test
+  fun `a second decoder of the same image reads frames from the cache`() {
+    val first = ApngDecoder.create { open("elephant.png") }
+    first.frames.indices.forEach { first.decodeFrame(it) }
+    val opensAfterFirst = opens
+
+    val second = ApngDecoder.create { open("elephant.png") }
+    second.frames.indices.forEach { second.decodeFrame(it) }
+
+    // Only the metadata scan should have touched the stream
+    assertEquals(opensAfterFirst + 1, opens)
+  }
+
+  @Test
+  fun `drawables of the same image share one animation`() {
+    val first = ApngDecoder.create { open("clock.png") }
+    val second = ApngDecoder.create { open("clock.png") }
+
+    val firstAnimation = ApngFrameCache.acquireAnimation(first)
+    val secondAnimation = ApngFrameCache.acquireAnimation(second)
+
+    assertSame(firstAnimation, secondAnimation)
+    assertEquals(2, firstAnimation.refCount)
+
+    ApngFrameCache.releaseAnimation(firstAnimation)
+    ApngFrameCache.releaseAnimation(secondAnimation)
+    assertEquals(0, firstAnimation.refCount)
+
+    val thirdAnimation = ApngFrameCache.acquireAnimation(ApngDecoder.create { open("clock.png") })
+    assertNotEquals(firstAnimation, thirdAnimation)
+    ApngFrameCache.releaseAnimation(thirdAnimation)
+  }
+
+  @Test
+  fun `shared animation only advances once per frame`() {
+    val animation = ApngFrameCache.acquireAnimation(ApngDecoder.create { open("ball.png") })
+
+    animation.advance(now = 1000)
+    animation.advance(now = animation.timeForNextFrame - 1)
+    animation.advance(now = animation.timeForNextFrame - 1)
+
+    assertEquals(1, animation.position)
+    assertEquals(0, animation.renderedIndex)
+
+    ApngFrameCache.releaseAnimation(animation)
+  }
+
+  @Test
+  fun `recycling the drawable whose decoder was adopted leaves it open for the others`() {
+    val first = ApngDrawable(ApngDecoder.create { open("ball.png") })
+    val second = ApngDrawable(ApngDecoder.create { open("ball.png") })
+    val animation = ApngFrameCache.acquireAnimation(second.decoder)
+    assertSame(first.decoder, animation.decoder)
+
+    // Leaves the adopted decoder with an open stream partway through the image
+    animation.advance(now = 1000)
+    val closesBeforeRecycle = closes
+
+    first.recycle()
+    assertEquals(closesBeforeRecycle, closes)
+
+    second.recycle()
+    assertEquals(closesBeforeRecycle, closes)
+
+    ApngFrameCache.releaseAnimation(animation)
+    assertEquals(closesBeforeRecycle + 1, closes)
+  }
+
+  @Test
+  fun `stepping one drawable by hand does not move the others`() {
+    val first = ApngDrawable(ApngDecoder.create { open("ball.png") })
+    val second = ApngDrawable(ApngDecoder.create { open("ball.png") })
+
+    first.nextFrame()
+    first.nextFrame()
+
+    assertEquals(2, first.position)
+    assertEquals(0, second.position)
+
+    second.nextFrame()
+
+    assertEquals(2, first.position)
+    assertEquals(1, second.position)
+
+    first.recycle()
+    second.recycle()
+  }
+
+  /**
+   * Reports the bytes actually read from [stream]. Skipped bytes aren't counted.
+   */
+  private fun countingReads(stream: InputStream, onRead: (Int) -> Unit): InputStream {
+    return object : FilterInputStream(stream) {
+      override fun read(): Int {
+        return super.read().also { if (it >= 0) onRead(1) }
+      }
+
+      override fun read(b: ByteArray, off: Int, len: Int): Int {
+        return super.read(b, off, len).also { if (it > 0) onRead(it) }
+      }
+    }
+  }
+
+  private fun open(filename: String): InputStream {
+    opens++
+    val stream = javaClass.classLoader!!.getResourceAsStream("apng/$filename")
+      ?: throw IllegalStateException("Test resource not found: apng/$filename")
+
+    return object : FilterInputStream(stream) {
+      override fun close() {
+        closes++
+        super.close()
+      }
+    }
+  }
+}
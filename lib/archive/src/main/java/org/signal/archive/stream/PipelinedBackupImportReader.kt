@@ -0,0 +1,105 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.archive.stream
+
+import org.signal.archive.proto.BackupInfo
+import org.signal.archive.proto.Frame
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.BlockingQueue
+
+/**
+ * Wraps a [BackupImportReader] so that frames are read, decrypted and decoded on a dedicated producer thread while the caller consumes them.
+ *
+ * The hand-off queue is bounded by [capacity], so a slow consumer (i.e. the database) will apply backpressure to the producer rather than letting decoded
+ * frames pile up in memory. Any exception thrown by the underlying reader is rethrown to the consumer at the point in the stream where it happened.
+ *
+ * [getBytesRead] reports the position of the most recently *consumed* frame, not the position of the producer, so progress reporting stays accurate.
+ */
+class PipelinedBackupImportReader(
+  private val delegate: BackupImportReader,
+  capacity: Int = DEFAULT_CAPACITY
+) : BackupImportReader {
+
+  companion object {
+    const val DEFAULT_CAPACITY = 1000
+  }
+
+  private val queue: BlockingQueue<Item> = ArrayBlockingQueue(capacity)
+  private var pending: Item? = null
+  private var bytesRead: Long = 0
+
+  @Volatile
+  private var closed = false
+
+  private val producer: Thread = Thread(this::produce, "backup-frame-reader").apply {
+    isDaemon = true
+    start()
+  }
+
+  override fun getHeader(): BackupInfo? = delegate.getHeader()
+
+  override fun getBytesRead(): Long = bytesRead
+
+  override fun getStreamLength(): Long = delegate.getStreamLength()
+
+  override fun hasNext(): Boolean {
+    return when (val item = peek()) {
+      is Item.Next -> true
+      is Item.End -> false
+      is Item.Failure -> throw item.throwable
+    }
+  }
+
+  override fun next(): Frame {
+    return when (val item = peek()) {
+      is Item.Next -> {
+        pending = null
+        bytesRead = item.bytesRead
+        item.frame
+      }
+      is Item.End -> throw NoSuchElementException()
+      is Item.Failure -> throw item.throwable
+    }
+  }
+
+  override fun close() {
+    closed = true
+    producer.interrupt()
+    delegate.close()
+    producer.join()
+  }
+
+  private fun peek(): Item {
+    return pending ?: queue.take().also { pending = it }
+  }
+
+  private fun produce() {
+    val terminal: Item = try {
+      while (!closed && delegate.hasNext()) {
+        val frame = delegate.next()
+        queue.put(Item.Next(frame, delegate.getBytesRead()))
+      }
+      Item.End
+    } catch (e: InterruptedException) {
+      // Consumer closed the reader, nothing left to hand off.
+      return
+    } catch (e: Throwable) {
+      Item.Failure(e)
+    }
+
+    try {
+      queue.put(terminal)
+    } catch (e: InterruptedException) {
+      // Consumer closed the reader before draining the queue.
+    }
+  }
+
+  private sealed interface Item {
+    class Next(val frame: Frame, val bytesRead: Long) : Item
+    data object End : Item
+    class Failure(val throwable: Throwable) : Item
+  }
+}
@@ -175,6 +175,58 @@ object SystemContactsRepository {
     return results
   }
 
+  /**
+   * Retrieves the [ContactsContract.RawContacts.VERSION] of every raw contact, keyed by raw contact ID. The version is bumped whenever the raw contact
+   * or any of its data changes, so comparing it against a previous snapshot tells you which contacts need to be re-read.
+   */
+  @JvmStatic
+  fun getRawContactVersions(context: Context): Map<Long, Int> {
+    val versions: MutableMap<Long, Int> = mutableMapOf()
+
+    context.contentResolver.query(
+      ContactsContract.RawContacts.CONTENT_URI,
+      arrayOf(ContactsContract.RawContacts._ID, ContactsContract.RawContacts.VERSION),
+      "${ContactsContract.RawContacts.DELETED} = ?",
+      SqlUtil.buildArgs(0),
+      null
+    ).use { cursor ->
+      while (cursor != null && cursor.moveToNext()) {
+        versions[cursor.requireLong(ContactsContract.RawContacts._ID)] = cursor.requireInt(ContactsContract.RawContacts.VERSION)
+      }
+    }
+
+    return versions
+  }
+
+  /**
+   * Retrieves the display numbers of the specified raw contacts (or every raw contact, if [rawContactIds] is null), keyed by raw contact ID. Raw contacts
+   * without any numbers are left out.
+   */
+  @JvmStatic
+  fun getDisplayNumbersByRawContact(context: Context, rawContactIds: Collection<Long>?): Map<Long, Set<String>> {
+    val results: MutableMap<Long, MutableSet<String>> = mutableMapOf()
+    val projection = arrayOf(ContactsContract.CommonDataKinds.Phone.RAW_CONTACT_ID, ContactsContract.CommonDataKinds.Phone.NUMBER)
+
+    val queries: List<SqlUtil.Query?> = if (rawContactIds == null) {
+      listOf(null)
+    } else {
+      SqlUtil.buildCollectionQuery(ContactsContract.CommonDataKinds.Phone.RAW_CONTACT_ID, rawContactIds)
+    }
+
+    for (query in queries) {
+      context.contentResolver.query(ContactsContract.CommonDataKinds.Phone.CONTENT_URI, projection, query?.where, query?.whereArgs, null).use { cursor ->
+        while (cursor != null && cursor.moveToNext()) {
+          val formattedPhone: String? = cursor.requireString(ContactsContract.CommonDataKinds.Phone.NUMBER)
+          if (formattedPhone != null && formattedPhone.isNotEmpty()) {
+            results.getOrPut(cursor.requireLong(ContactsContract.CommonDataKinds.Phone.RAW_CONTACT_ID)) { mutableSetOf() } += formattedPhone
+          }
+        }
+      }
+    }
+
+    return results
+  }
+
   /**
    * Retrieves a system account for the provided applicationId, creating one if necessary.
    */
@@ -16,7 +16,8 @@ public interface ClientTask extends Serializable {
 
   /**
    * @param context      Android context, mostly like the foreground transfer service
-   * @param outputStream Output stream associated with socket connected to remote server.
+   * @param outputStream Output stream associated with socket connected to remote server. Writes are coalesced and sent from a separate thread, so
+   *                     callers don't need to buffer it.
    */
   void run(@NonNull Context context, @NonNull OutputStream outputStream) throws IOException;
 
@@ -9,6 +9,7 @@ import androidx.annotation.NonNull;
 import org.signal.core.util.StreamUtil;
 import org.signal.core.util.ThreadUtil;
 import org.signal.core.util.logging.Log;
+import org.signal.core.util.stream.PipelinedOutputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,6 +35,13 @@ final class NetworkClientThread extends Thread {
   public static final int NETWORK_CLIENT_SSL_ESTABLISHED = 1003;
   public static final int NETWORK_CLIENT_STOPPED         = 1004;
 
+  /**
+   * The task's writes are sent from their own thread in chunks of this size, so producing the data and sending it overlap and each TLS write is
+   * large. A 16KB TLS record limit means this still goes out as many records, but in one call rather than one per small write.
+   */
+  private static final int TRANSFER_BUFFER_SIZE  = 512 * 1024;
+  private static final int TRANSFER_BUFFER_COUNT = 4;
+
   private volatile SSLSocket client;
   private volatile boolean   isRunning;
   private volatile Boolean   isVerified;
@@ -111,7 +119,14 @@ final class NetworkClientThread extends Thread {
 
           transferStarted = true;
           handler.sendEmptyMessage(NETWORK_CLIENT_CONNECTED);
-          clientTask.run(context, outputStream);
+
+          PipelinedOutputStream transferStream = new PipelinedOutputStream(outputStream, TRANSFER_BUFFER_SIZE, TRANSFER_BUFFER_COUNT, "transfer-send");
+          try {
+            clientTask.run(context, transferStream);
+            transferStream.finish();
+          } finally {
+            transferStream.abort();
+          }
           outputStream.flush();
 
           Log.d(TAG, "Waiting for server to tell us they got everything");
@@ -22,6 +22,12 @@ interface InputStreamFactory {
 
     @JvmStatic
     fun build(file: File): InputStreamFactory = FileInputStreamFactory(file)
+
+    /**
+     * A [sourceKey] for a file that is only ever written once, or that is rewritten in a way that changes its length or modification time.
+     */
+    @JvmStatic
+    fun sourceKeyFor(file: File): String = "${file.absolutePath}:${file.length()}:${file.lastModified()}"
   }
 
   fun create(): InputStream
@@ -31,6 +37,12 @@ interface InputStreamFactory {
    * An upper bound on the number of bytes [create] will yield, if cheaply knowable, else null.
    */
   fun length(): Long? = null
+
+  /**
+   * Identifies what [create] reads, if two factories with the same key are known to yield the same bytes, else null. Lets decoders recognize an
+   * image they've already seen without reading all of it.
+   */
+  fun sourceKey(): String? = null
 }
 
 /**
@@ -53,4 +65,6 @@ class FileInputStreamFactory(
   }
 
   override fun length(): Long? = file.length().takeIf { it > 0 }
+
+  override fun sourceKey(): String = InputStreamFactory.sourceKeyFor(file)
 }
@@ -54,6 +54,7 @@ import org.whispersystems.signalservice.api.keys.KeysApi;
 import org.whispersystems.signalservice.api.keys.PreKeyRepository;
 import org.whispersystems.signalservice.api.message.MessageApi;
 import org.whispersystems.signalservice.api.message.MessageApiKt;
+import org.whispersystems.signalservice.api.message.SendFanOut;
 import org.whispersystems.signalservice.api.messages.SendMessageResult;
 import org.whispersystems.signalservice.api.messages.SignalServiceAttachment;
 import org.whispersystems.signalservice.api.messages.SignalServiceAttachmentPointer;
@@ -149,12 +150,12 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.exceptions.CompositeException;
@@ -192,6 +193,7 @@ public class SignalServiceMessageSender {
   private final long            maxEnvelopeSize;
   private final int             maxIncrementalMacsPerEnvelope;
   private final BooleanSupplier useRestFallback;
+  private final IntSupplier     maxConcurrentSends;
 
   public SignalServiceMessageSender(PushServiceSocket pushServiceSocket,
                                     SignalServiceDataStore store,
@@ -203,6 +205,7 @@ public class SignalServiceMessageSender {
                                     long maxEnvelopeSize,
                                     int maxIncrementalMacsPerEnvelope,
                                     BooleanSupplier useRestFallback,
+                                    IntSupplier maxConcurrentSends,
                                     PreKeyRepository preKeyRepository)
   {
     CredentialsProvider credentialsProvider = pushServiceSocket.getCredentialsProvider();
@@ -223,6 +226,7 @@ public class SignalServiceMessageSender {
     this.keysApi                       = keysApi;
     this.preKeyRepository              = preKeyRepository;
     this.useRestFallback               = useRestFallback;
+    this.maxConcurrentSends            = maxConcurrentSends;
   }
 
   private static @Nullable IdentityKeyPair localPniIdentity(SignalServiceDataStore store) {
@@ -2140,7 +2144,7 @@ public class SignalServiceMessageSender {
   }
 
   /**
-   * Send a message to multiple recipients.
+   * Send a message to multiple recipients. At most {@link #maxConcurrentSends} recipients are encrypted and in flight at a time, see {@link SendFanOut}.
    *
    * @return An unordered list of a {@link SendMessageResult} for each send.
    * @throws IOException - Unknown failure or a failure not representable by an unsuccessful {@code SendMessageResult}.
@@ -2173,30 +2177,29 @@ public class SignalServiceMessageSender {
       return kotlin.Unit.INSTANCE;
     });
 
-    List<Observable<SendMessageResult>> singleResults              = new LinkedList<>();
-    Iterator<SignalServiceAddress>      recipientIterator          = recipients.iterator();
-    Iterator<SealedSenderAccess>        sealedSenderAccessIterator = sealedSenderAccesses.iterator();
+    List<Single<SendMessageResult>> singleResults              = new ArrayList<>(recipients.size());
+    Iterator<SignalServiceAddress>  recipientIterator          = recipients.iterator();
+    Iterator<SealedSenderAccess>    sealedSenderAccessIterator = sealedSenderAccesses.iterator();
 
     while (recipientIterator.hasNext()) {
       SignalServiceAddress recipient          = recipientIterator.next();
       SealedSenderAccess   sealedSenderAccess = sealedSenderAccessIterator.next();
 
-      singleResults.add(sendMessageRx(recipient, sealedSenderAccess, timestamp, content, online, cancelationSignal, sendEvents, urgent, story, 0).toObservable());
+      // Deferred so that encryption and the per-recipient timer only start once the fan-out has room for this recipient
+      singleResults.add(Single.defer(() -> sendMessageRx(recipient, sealedSenderAccess, timestamp, content, online, cancelationSignal, sendEvents, urgent, story, 0)));
     }
 
+    int        maxConcurrency = Math.max(1, maxConcurrentSends.getAsInt());
+    SendFanOut fanOut         = new SendFanOut(maxConcurrency);
+
     List<SendMessageResult> results;
     try {
-      results = Observable.mergeDelayError(singleResults, Integer.MAX_VALUE, 1)
-                          .observeOn(scheduler, true)
-                          .scan(new ArrayList<SendMessageResult>(singleResults.size()), (state, result) -> {
-                            state.add(result);
-                            if (partialListener != null) {
-                              partialListener.onPartialSendComplete(result);
-                            }
-                            return state;
-                          })
-                          .lastOrError()
-                          .blockingGet();
+      results = fanOut.execute(singleResults, scheduler, result -> {
+        if (partialListener != null) {
+          partialListener.onPartialSendComplete(result);
+        }
+        return Unit.INSTANCE;
+      });
     } catch (RuntimeException e) {
       Throwable cause = e instanceof CompositeException ? ((CompositeException) e).getExceptions().get(0)
                                                         : e.getCause();
@@ -2214,23 +2217,19 @@ public class SignalServiceMessageSender {
       }
     }
 
-    double sendsForAverage = 0;
+    List<Long> durations = new ArrayList<>(results.size());
     for (SendMessageResult result : results) {
       if (result.getSuccess() != null && result.getSuccess().getDuration() != -1) {
-        sendsForAverage++;
+        durations.add(result.getSuccess().getDuration());
       }
     }
 
     double average = 0;
-    if (sendsForAverage > 0) {
-      for (SendMessageResult result : results) {
-        if (result.getSuccess() != null && result.getSuccess().getDuration() != -1) {
-          average += result.getSuccess().getDuration() / sendsForAverage;
-        }
-      }
+    for (long duration : durations) {
+      average += duration / (double) durations.size();
     }
 
-    Log.d(TAG, "[" + timestamp + "] Completed send to " + recipients.size() + " recipients in " + (System.currentTimeMillis() - startTime) + " ms, with an average time of " + Math.round(average) + " ms per send via Rx.");
+    Log.d(TAG, "[" + timestamp + "] Completed send to " + recipients.size() + " recipients in " + (System.currentTimeMillis() - startTime) + " ms, with an average time of " + Math.round(average) + " ms per send via Rx (" + SendFanOut.describeLatencies(durations) + ", at most " + Math.min(maxConcurrency, recipients.size()) + " in flight).");
     return results;
   }
 
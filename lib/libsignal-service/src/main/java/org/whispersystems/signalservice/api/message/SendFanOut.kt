@@ -0,0 +1,68 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.signalservice.api.message
+
+import io.reactivex.rxjava3.core.Observable
+import io.reactivex.rxjava3.core.Scheduler
+import io.reactivex.rxjava3.core.Single
+
+/**
+ * Fans a send out to many recipients while keeping at most [maxConcurrency] of them in flight at once.
+ *
+ * Each send is only subscribed to once a slot frees up, so whatever work a send does at subscription time (encryption, handing the request to the I/O
+ * scheduler) happens just ahead of the network rather than for every recipient up front. This bounds the memory held by encrypted payloads and the number
+ * of I/O threads a single large send can occupy, so it can't starve other sends.
+ */
+class SendFanOut(private val maxConcurrency: Int) {
+
+  init {
+    require(maxConcurrency > 0) { "maxConcurrency must be positive" }
+  }
+
+  /**
+   * Runs all of the [sends], blocking until they've all completed, and returns their results in completion order. [onResult] is called for each result on
+   * [observeScheduler] as it completes.
+   *
+   * Errors are delayed until every send has finished, matching [Observable.mergeDelayError].
+   */
+  fun <T : Any> execute(sends: List<Single<T>>, observeScheduler: Scheduler, onResult: (T) -> Unit): List<T> {
+    if (sends.isEmpty()) {
+      return emptyList()
+    }
+
+    val concurrency = maxConcurrency.coerceAtMost(sends.size)
+
+    return Observable.mergeDelayError(sends.map { it.toObservable() }, concurrency, 1)
+      .observeOn(observeScheduler, true)
+      .scan(ArrayList<T>(sends.size)) { state, result ->
+        state.add(result)
+        onResult(result)
+        state
+      }
+      .lastOrError()
+      .blockingGet()
+  }
+
+  companion object {
+    /**
+     * Summarizes per-recipient send latencies for logging, e.g. "p50 120 ms, p95 480 ms, max 900 ms".
+     */
+    @JvmStatic
+    fun describeLatencies(durations: List<Long>): String {
+      if (durations.isEmpty()) {
+        return "no timed sends"
+      }
+
+      val sorted = durations.sorted()
+      return "p50 ${sorted.percentile(50)} ms, p95 ${sorted.percentile(95)} ms, max ${sorted.last()} ms"
+    }
+
+    private fun List<Long>.percentile(percent: Int): Long {
+      val index = ((size - 1) * percent) / 100
+      return this[index]
+    }
+  }
+}
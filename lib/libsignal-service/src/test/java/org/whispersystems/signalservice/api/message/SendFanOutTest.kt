@@ -0,0 +1,117 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.signalservice.api.message
+
+import assertk.assertFailure
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import assertk.assertions.isInstanceOf
+import assertk.assertions.isLessThanOrEqualTo
+import io.mockk.every
+import io.mockk.mockk
+import io.reactivex.rxjava3.core.Single
+import io.reactivex.rxjava3.schedulers.Schedulers
+import org.junit.Test
+import org.signal.network.NetworkResult
+import org.signal.network.websocket.WebSocketRequestMessage
+import org.signal.network.websocket.WebsocketResponse
+import org.whispersystems.signalservice.api.websocket.SignalWebSocket
+import org.whispersystems.signalservice.internal.push.OutgoingPushMessageList
+import org.whispersystems.signalservice.internal.push.SendMessageResponse
+import java.io.IOException
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Runs [SendFanOut] against a real [MessageApi] backed by a local fake websocket that simulates server latency, and tracks how many requests are
+ * outstanding at once.
+ */
+class SendFanOutTest {
+
+  private val inFlight = AtomicInteger()
+  private val maxInFlight = AtomicInteger()
+  private val started = AtomicInteger()
+
+  private val authWebSocket: SignalWebSocket.AuthenticatedWebSocket = mockk {
+    every { request(any<WebSocketRequestMessage>()) } answers {
+      Single.fromCallable {
+        val current = inFlight.incrementAndGet()
+        maxInFlight.accumulateAndGet(current) { a, b -> maxOf(a, b) }
+        Thread.sleep(5)
+        inFlight.decrementAndGet()
+
+        val path = firstArg<WebSocketRequestMessage>().path!!
+        if (path.contains("fail")) {
+          WebsocketResponse(500, "", emptyMap(), false)
+        } else {
+          WebsocketResponse(200, "{}", emptyMap(), false)
+        }
+      }
+    }
+  }
+
+  private val messageApi = MessageApi(authWebSocket, mockk())
+
+  @Test
+  fun `never has more than maxConcurrency sends in flight`() {
+    val sends = (0 until 200).map { send("recipient-$it") }
+
+    val results = SendFanOut(maxConcurrency = 8).execute(sends, Schedulers.single()) { }
+
+    assertThat(results.size).isEqualTo(200)
+    assertThat(maxInFlight.get()).isLessThanOrEqualTo(8)
+    assertThat(started.get()).isEqualTo(200)
+  }
+
+  @Test
+  fun `reports every result to the listener`() {
+    val sends = (0 until 50).map { send("recipient-$it") }
+    val reported = AtomicInteger()
+
+    SendFanOut(maxConcurrency = 4).execute(sends, Schedulers.single()) { reported.incrementAndGet() }
+
+    assertThat(reported.get()).isEqualTo(50)
+  }
+
+  @Test
+  fun `errors are delayed until every send has finished`() {
+    val sends = (0 until 20).map { if (it == 3) send("fail") else send("recipient-$it") }
+    val reported = AtomicInteger()
+
+    assertFailure {
+      SendFanOut(maxConcurrency = 4).execute(sends, Schedulers.single()) { reported.incrementAndGet() }
+    }.isInstanceOf(RuntimeException::class)
+
+    assertThat(reported.get()).isEqualTo(19)
+  }
+
+  @Test
+  fun `describeLatencies reports percentiles`() {
+    val durations = (1L..100L).toList().shuffled()
+
+    assertThat(SendFanOut.describeLatencies(durations)).isEqualTo("p50 50 ms, p95 95 ms, max 100 ms")
+    assertThat(SendFanOut.describeLatencies(emptyList())).isEqualTo("no timed sends")
+  }
+
+  /**
+   * Mirrors the shape of a real per-recipient send: deferred work on subscription (standing in for encryption) followed by the network request on the
+   * I/O scheduler.
+   */
+  private fun send(destination: String): Single<SendMessageResponse> {
+    return Single.defer {
+      started.incrementAndGet()
+      val messages = OutgoingPushMessageList(destination, 1000, emptyList(), false, true)
+
+      Single.fromCallable { messageApi.sendMessage(messages, null, false) }
+        .subscribeOn(Schedulers.io())
+        .map { result ->
+          when (result) {
+            is NetworkResult.Success -> result.result
+            else -> throw IOException("Failed to send to $destination")
+          }
+        }
+    }
+  }
+}
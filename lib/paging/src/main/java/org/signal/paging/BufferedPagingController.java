@@ -2,6 +2,7 @@ package org.signal.paging;
 
 import androidx.annotation.NonNull;
 
+import java.util.Collection;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -72,6 +73,15 @@ class BufferedPagingController<Key, Data> implements PagingController<Key> {
     });
   }
 
+  @Override
+  public void onDataItemsChanged(@NonNull Collection<Key> keys) {
+    serializationExecutor.execute(() -> {
+      if (activeController != null) {
+        activeController.onDataItemsChanged(keys);
+      }
+    });
+  }
+
   @Override
   public void onDataItemInserted(Key key, int position) {
     serializationExecutor.execute(() -> {
@@ -6,6 +6,7 @@ import org.signal.core.util.ThreadUtil;
 import org.signal.core.util.concurrent.SignalExecutors;
 import org.signal.core.util.logging.Log;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -183,6 +184,60 @@ class FixedSizePagingController<Key, Data> implements PagingController<Key> {
     });
   }
 
+  /**
+   * Like {@link #onDataItemChanged(Object)}, but for many keys at once. Only the given keys that are currently in the cache are reloaded, and the result is
+   * published once, rather than emitting a new list per item.
+   */
+  @Override
+  public void onDataItemsChanged(@NonNull Collection<Key> keys) {
+    if (DEBUG) Log.d(TAG, "[onDataItemsChanged(" + keys.size() + " keys), size: " + loadState.size() + "]");
+
+    FETCH_EXECUTOR.execute(() -> {
+      if (invalidated) {
+        Log.w(TAG, "Invalidated! Just before " + keys.size() + " individual changes were loaded.");
+        return;
+      }
+
+      List<Data> updatedList = null;
+
+      for (Key key : keys) {
+        Integer position = keyToPosition.get(key);
+
+        if (position == null) {
+          if (DEBUG) Log.d(TAG, "Notified of key " + key + " but it wasn't in the cache.");
+          continue;
+        }
+
+        synchronized (loadState) {
+          loadState.mark(position);
+        }
+
+        Data item = dataSource.load(key);
+
+        if (item == null) {
+          Log.w(TAG, "Notified of key " + key + " but the loaded item was null!");
+          continue;
+        }
+
+        if (invalidated) {
+          Log.w(TAG, "Invalidated! Just after individual change was loaded for position " + position);
+          return;
+        }
+
+        if (updatedList == null) {
+          updatedList = new CompressedList<>(data);
+        }
+
+        updatedList.set(position, item);
+      }
+
+      if (updatedList != null) {
+        data = updatedList;
+        dataStream.next(updatedList);
+      }
+    });
+  }
+
   @Override
   public void onDataItemInserted(Key key, int inputPosition) {
     if (DEBUG) Log.d(TAG, buildItemInsertedLog(key, inputPosition, ""));
@@ -1,6 +1,10 @@
 package org.signal.paging;
 
 
+import androidx.annotation.NonNull;
+
+import java.util.Collection;
+
 public interface PagingController<Key> {
   int POSITION_END = -1;
 
@@ -8,4 +12,13 @@ public interface PagingController<Key> {
   void onDataInvalidated();
   void onDataItemChanged(Key key);
   void onDataItemInserted(Key key, int position);
+
+  /**
+   * Indicates that several items changed in place. Implementations may reload them together and publish a single update.
+   */
+  default void onDataItemsChanged(@NonNull Collection<Key> keys) {
+    for (Key key : keys) {
+      onDataItemChanged(key);
+    }
+  }
 }
@@ -1,7 +1,10 @@
 package org.signal.paging;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.Collection;
+
 /**
  * A controller that forwards calls to a secondary, proxied controller. This is useful when you want
  * to keep a single, static controller, even when the true controller may be changing due to data
@@ -32,6 +35,13 @@ public class ProxyPagingController<Key> implements PagingController<Key> {
     }
   }
 
+  @Override
+  public void onDataItemsChanged(@NonNull Collection<Key> keys) {
+    if (proxied != null) {
+      proxied.onDataItemsChanged(keys);
+    }
+  }
+
   @Override
   public void onDataItemInserted(Key key, int position) {
     if (proxied != null) {
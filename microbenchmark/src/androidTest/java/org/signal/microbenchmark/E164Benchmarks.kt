@@ -0,0 +1,95 @@
+package org.signal.microbenchmark
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.After
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.signal.core.util.E164BatchFormatter
+import org.signal.core.util.E164Util
+import java.util.concurrent.Executors
+import kotlin.random.Random
+
+/**
+ * Benchmarks for formatting a large (20k contact) address book as E164s, the way a full contact discovery refresh does.
+ */
+@RunWith(AndroidJUnit4::class)
+class E164Benchmarks {
+
+  companion object {
+    private const val ADDRESS_BOOK_SIZE = 20_000
+  }
+
+  @get:Rule
+  val benchmarkRule = BenchmarkRule()
+
+  private val formatter: E164Util.Formatter = E164Util.createFormatterForE164("+14152222222")
+  private val addressBook: List<String> = syntheticAddressBook(ADDRESS_BOOK_SIZE)
+  private val executor = Executors.newFixedThreadPool(4)
+
+  @After
+  fun tearDown() {
+    executor.shutdown()
+  }
+
+  @Test
+  fun formatAll_oneAtATime() {
+    benchmarkRule.measureRepeated {
+      addressBook.forEach { formatter.formatAsE164(it) }
+    }
+  }
+
+  @Test
+  fun formatAll_batch_cold() {
+    val batchFormatter = E164BatchFormatter(formatter)
+
+    benchmarkRule.measureRepeated {
+      batchFormatter.formatAll(addressBook)
+    }
+  }
+
+  @Test
+  fun formatAll_batch_cold_parallel() {
+    val batchFormatter = E164BatchFormatter(formatter, executor)
+
+    benchmarkRule.measureRepeated {
+      batchFormatter.formatAll(addressBook)
+    }
+  }
+
+  @Test
+  fun formatAll_batch_warmMemo() {
+    val batchFormatter = E164BatchFormatter(formatter, executor)
+    val memo = batchFormatter.formatAll(addressBook).newlyFormatted
+
+    benchmarkRule.measureRepeated {
+      batchFormatter.formatAll(addressBook, memo)
+    }
+  }
+
+  /**
+   * A mix of the formats people actually have in their address books: some already E164, most in a national format, a few without an area code, and
+   * some international numbers.
+   */
+  private fun syntheticAddressBook(size: Int): List<String> {
+    val random = Random(20_000)
+
+    return List(size) { i ->
+      val area = 200 + random.nextInt(800)
+      val exchange = 200 + random.nextInt(800)
+      val line = random.nextInt(10_000).toString().padStart(4, '0')
+
+      when (i % 10) {
+        0, 1, 2 -> "+1$area$exchange$line"
+        3, 4 -> "($area) $exchange-$line"
+        5 -> "$area-$exchange-$line"
+        6 -> "+1 $area.$exchange.$line"
+        7 -> "$exchange$line"
+        8 -> "+44 20 ${random.nextInt(10_000_000, 99_999_999)}"
+        else -> "+49 ${random.nextInt(100, 999)} ${random.nextInt(1_000_000, 9_999_999)}"
+      }
+    }
+  }
+}
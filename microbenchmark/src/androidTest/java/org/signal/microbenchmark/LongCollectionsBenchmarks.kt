@@ -0,0 +1,123 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.microbenchmark
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.signal.core.util.collections.LongObjectMap
+import org.signal.core.util.collections.LongSet
+import kotlin.random.Random
+
+/**
+ * Compares [LongSet] and [LongObjectMap] against the boxed collections they replaced, on the kind of work the database layer does with them: gathering
+ * a batch of message ids, grouping them by thread, and checking membership. Look at the allocation counts as well as the timings, since avoiding the
+ * boxing is most of the point.
+ */
+@RunWith(AndroidJUnit4::class)
+class LongCollectionsBenchmarks {
+
+  companion object {
+    private const val MESSAGE_COUNT = 5_000
+    private const val THREAD_COUNT = 50
+  }
+
+  @get:Rule
+  val benchmarkRule = BenchmarkRule()
+
+  private val messageIds: LongArray = syntheticMessageIds(MESSAGE_COUNT)
+  private val threadIds: LongArray = LongArray(MESSAGE_COUNT) { (it % THREAD_COUNT).toLong() + 1 }
+
+  @Test
+  fun set_addAndContains_boxed() {
+    benchmarkRule.measureRepeated {
+      val set = HashSet<Long>()
+      for (id in messageIds) {
+        set.add(id)
+      }
+
+      var hits = 0
+      for (id in messageIds) {
+        if (id + 1 in set) {
+          hits++
+        }
+      }
+      consume(hits)
+    }
+  }
+
+  @Test
+  fun set_addAndContains_longSet() {
+    benchmarkRule.measureRepeated {
+      val set = LongSet()
+      for (id in messageIds) {
+        set.add(id)
+      }
+
+      var hits = 0
+      for (id in messageIds) {
+        if (id + 1 in set) {
+          hits++
+        }
+      }
+      consume(hits)
+    }
+  }
+
+  @Test
+  fun map_groupByThread_boxed() {
+    benchmarkRule.measureRepeated {
+      val byThread = HashMap<Long, MutableSet<Long>>()
+      for (i in messageIds.indices) {
+        byThread.getOrPut(threadIds[i]) { HashSet() }.add(messageIds[i])
+      }
+
+      var total = 0
+      for (threadId in 1L..THREAD_COUNT) {
+        total += byThread[threadId]?.size ?: 0
+      }
+      consume(total)
+    }
+  }
+
+  @Test
+  fun map_groupByThread_longObjectMap() {
+    benchmarkRule.measureRepeated {
+      val byThread = LongObjectMap<LongSet>()
+      for (i in messageIds.indices) {
+        byThread.getOrPut(threadIds[i]) { LongSet() }.add(messageIds[i])
+      }
+
+      var total = 0
+      for (threadId in 1L..THREAD_COUNT) {
+        total += byThread[threadId]?.size ?: 0
+      }
+      consume(total)
+    }
+  }
+
+  private var sink = 0
+
+  private fun consume(value: Int) {
+    sink += value
+  }
+
+  /**
+   * Message ids are mostly ascending with gaps, like rows in the message table, and large enough that none of them hit the `Long` box cache.
+   */
+  private fun syntheticMessageIds(size: Int): LongArray {
+    val random = Random(5_000)
+    var next = 1_000_000L
+
+    return LongArray(size) {
+      next += 1 + random.nextInt(3)
+      next
+    }
+  }
+}